@@ -0,0 +1,287 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+/**
+ * Compares the running times of the shortest path searches on large synthetic grids,
+ * as well as the speed and the size of the network formats and snapshots.
+ * Kept apart from the regular tests, in the "benchmark" source directory, which is
+ * only compiled and run by the "benchmark" profile: "mvn test -Pbenchmark".
+ * The results of the compared implementations are still checked against each other.
+ */
+public class RouterBenchmark {
+
+	private static final int QUERIES = 20;
+
+	@Test
+	public void benchmarkSmallGrid() {
+		runBenchmark(100, 100, true);
+	}
+
+	@Test
+	public void benchmarkHundredThousandNodes() {
+		runBenchmark(316, 316, false);
+	}
+
+	@Test
+	public void benchmarkMillionNodes() {
+		runBenchmark(1000, 1000, false);
+	}
+
+	@Test
+	public void benchmarkBatch() {
+		Network network = new Network();
+		NetworkTest.createRandomGrid(network, 316, 316, 1);
+		NetworkSnapshot snapshot = network.freeze();
+		Random random = new Random(3);
+		int pairCount = 2000;
+		int[] origins = new int[pairCount];
+		int[] destinations = new int[pairCount];
+		for (int i = 0; i < pairCount; i++) {
+			origins[i] = random.nextInt(200);
+			destinations[i] = random.nextInt(snapshot.getNodeCount());
+		}
+
+		Router router = new Router(snapshot);
+		long start = System.nanoTime();
+		double[] expected = new double[pairCount];
+		for (int i = 0; i < pairCount; i++) {
+			expected[i] = router.getDistance(snapshot.getNode(origins[i]), snapshot.getNode(destinations[i]));
+		}
+		long single = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		double[] distances = new BatchRouter(snapshot).getDistances(origins, destinations);
+		long batch = System.nanoTime() - start;
+		for (int i = 0; i < pairCount; i++) {
+			assertEquals(expected[i], distances[i], 1e-6);
+		}
+
+		System.out.println(String.format("%d pairs from 200 origins on %d nodes", pairCount, snapshot.getNodeCount()));
+		System.out.println(String.format("  Router A* pair by pair: %8d ms", single / 1000000));
+		System.out.println(String.format("  BatchRouter:            %8d ms", batch / 1000000));
+	}
+
+	@Test
+	public void benchmarkContractionHierarchy() {
+		Network network = new Network();
+		Node[] grid = createHighwayGrid(network, 316, 316, 1);
+		NetworkSnapshot snapshot = network.freeze();
+		long start = System.nanoTime();
+		ContractionHierarchy hierarchy = ContractionHierarchy.create(snapshot);
+		long preparation = System.nanoTime() - start;
+
+		Random random = new Random(2);
+		Router router = new Router(snapshot);
+		ContractionHierarchyRouter hierarchyRouter = new ContractionHierarchyRouter(hierarchy);
+		int queries = 1000;
+		long aStar = 0;
+		long contracted = 0;
+		for (int i = 0; i < queries; i++) {
+			Node source = grid[random.nextInt(grid.length)];
+			Node target = grid[random.nextInt(grid.length)];
+			start = System.nanoTime();
+			double expected = NetworkTest.getPathLength(router.getShortestPathAStar(source, target));
+			aStar += System.nanoTime() - start;
+			start = System.nanoTime();
+			double length = NetworkTest.getPathLength(hierarchyRouter.getShortestPath(source, target));
+			contracted += System.nanoTime() - start;
+			assertEquals(expected, length, 1e-6);
+		}
+
+		System.out.println(String.format("%d nodes, hierarchy with %d shortcuts created in %d ms",
+				grid.length, hierarchy.getShortcutCount(), preparation / 1000000));
+		System.out.println(String.format("  Router A*:                  %8.3f ms/query", aStar / 1e6 / queries));
+		System.out.println(String.format("  ContractionHierarchyRouter: %8.3f ms/query", contracted / 1e6 / queries));
+	}
+
+	@Test
+	public void benchmarkNetworkFormats() throws IOException, ClassNotFoundException, SAXException {
+		Network network = new Network();
+		NetworkTest.createRandomGrid(network, 316, 316, 1);
+		for (Link link : network.getLinks()) {
+			link.addMode("car");
+		}
+
+		File binary = File.createTempFile("network", NetworkBinaryFormat.EXTENSION);
+		binary.deleteOnExit();
+		long start = System.nanoTime();
+		NetworkBinaryFormat.write(network, binary);
+		long binaryWrite = System.nanoTime() - start;
+		start = System.nanoTime();
+		Network fromBinary = NetworkBinaryFormat.read(binary).getNetwork();
+		long binaryRead = System.nanoTime() - start;
+		assertEquals(network.getLinks().size(), fromBinary.getLinks().size());
+
+		File serialized = File.createTempFile("network", ".ser");
+		serialized.deleteOnExit();
+		start = System.nanoTime();
+		try (ObjectOutputStream output = new ObjectOutputStream(
+				new BufferedOutputStream(new FileOutputStream(serialized)))) {
+			output.writeObject(network);
+		}
+		long serializedWrite = System.nanoTime() - start;
+		start = System.nanoTime();
+		Network fromSerialized;
+		try (ObjectInputStream input = new ObjectInputStream(
+				new BufferedInputStream(new FileInputStream(serialized)))) {
+			fromSerialized = (Network) input.readObject();
+		}
+		long serializedRead = System.nanoTime() - start;
+		assertEquals(network.getLinks().size(), fromSerialized.getLinks().size());
+
+		File xml = File.createTempFile("network", ".xml");
+		xml.deleteOnExit();
+		start = System.nanoTime();
+		try (FileOutputStream output = new FileOutputStream(xml);
+				NetworkWriter writer = new NetworkWriter(output, false)) {
+			writer.write(network);
+		}
+		long xmlWrite = System.nanoTime() - start;
+		start = System.nanoTime();
+		Network fromXml = NetworkReader.read(xml).getNetwork();
+		long xmlRead = System.nanoTime() - start;
+		assertEquals(network.getLinks().size(), fromXml.getLinks().size());
+
+		System.out.println(String.format("%d nodes, %d links", network.getNodes().size(), network.getLinks().size()));
+		System.out.println(String.format("  NetworkBinaryFormat: write %6d ms, read %6d ms, %8d kB",
+				binaryWrite / 1000000, binaryRead / 1000000, binary.length() / 1024));
+		System.out.println(String.format("  Java serialization:  write %6d ms, read %6d ms, %8d kB",
+				serializedWrite / 1000000, serializedRead / 1000000, serialized.length() / 1024));
+		System.out.println(String.format("  Matsim XML:          write %6d ms, read %6d ms, %8d kB",
+				xmlWrite / 1000000, xmlRead / 1000000, xml.length() / 1024));
+	}
+
+	@Test
+	public void benchmarkSnapshotFootprint() {
+		long before = getUsedMemory();
+		Network network = new Network();
+		NetworkTest.createRandomGrid(network, 316, 316, 5);
+		long afterNetwork = getUsedMemory();
+		NetworkSnapshot snapshot = network.freeze();
+		long afterSnapshot = getUsedMemory();
+
+		System.out.println(String.format("%d nodes, %d links", snapshot.getNodeCount(), snapshot.getLinkCount()));
+		System.out.println(String.format("  Network:  %8d kB on the heap", (afterNetwork - before) / 1024));
+		System.out.println(String.format("  Snapshot: %8d kB on the heap, %8d kB estimated",
+				(afterSnapshot - afterNetwork) / 1024, snapshot.getFootprint() / 1024));
+	}
+
+	/**
+	 * Measures the used heap after a few garbage collections. Only a rough estimate,
+	 * as the collections are not guaranteed to free all the unreachable objects.
+	 */
+	private static long getUsedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	/**
+	 * Fills the network with a grid like {@link NetworkTest#createRandomGrid}, where every
+	 * tenth row and column is a road twice as fast as the others, as in real road networks.
+	 * The lengths of the links are never shorter than the Euclidean distance of their end nodes.
+	 * @return The nodes of the grid, row by row.
+	 */
+	private static Node[] createHighwayGrid(Network network, int width, int height, long seed) {
+		Random random = new Random(seed);
+		Node[] grid = new Node[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Node node = new Node(x * 100, y * 100);
+				grid[y * width + x] = node;
+				network.addNode(node);
+			}
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Node node = grid[y * width + x];
+				if (x + 1 < width) {
+					double factor = (y % 10 == 0) ? 100 : 200;
+					Node right = grid[y * width + x + 1];
+					network.addLink(new Link(node, right, factor * (1 + 0.5 * random.nextDouble())));
+					network.addLink(new Link(right, node, factor * (1 + 0.5 * random.nextDouble())));
+				}
+				if (y + 1 < height) {
+					double factor = (x % 10 == 0) ? 100 : 200;
+					Node below = grid[(y + 1) * width + x];
+					network.addLink(new Link(node, below, factor * (1 + 0.5 * random.nextDouble())));
+					network.addLink(new Link(below, node, factor * (1 + 0.5 * random.nextDouble())));
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Measures the given number of random queries on a grid of the given size.
+	 * The original {@link Dijkstra} is only measured when requested, as it
+	 * scans the whole network in every query.
+	 */
+	private void runBenchmark(int width, int height, boolean withOriginal) {
+		Network network = new Network();
+		Node[] grid = NetworkTest.createRandomGrid(network, width, height, 1);
+		long start = System.nanoTime();
+		Router router = new Router(network);
+		long preparation = System.nanoTime() - start;
+
+		Random random = new Random(2);
+		Node[] sources = new Node[QUERIES];
+		Node[] targets = new Node[QUERIES];
+		for (int i = 0; i < QUERIES; i++) {
+			sources[i] = grid[random.nextInt(grid.length)];
+			targets[i] = grid[random.nextInt(grid.length)];
+		}
+
+		double[] lengths = new double[QUERIES];
+		long settledDijkstra = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < QUERIES; i++) {
+			lengths[i] = NetworkTest.getPathLength(router.getShortestPath(sources[i], targets[i]));
+			settledDijkstra += router.getSettledCount();
+		}
+		long dijkstra = System.nanoTime() - start;
+
+		long settledAStar = 0;
+		start = System.nanoTime();
+		for (int i = 0; i < QUERIES; i++) {
+			double length = NetworkTest.getPathLength(router.getShortestPathAStar(sources[i], targets[i]));
+			settledAStar += router.getSettledCount();
+			assertEquals(lengths[i], length, 1e-6);
+		}
+		long aStar = System.nanoTime() - start;
+
+		System.out.println(String.format("%d nodes, %d links, router prepared in %d ms",
+				grid.length, network.getLinks().size(), preparation / 1000000));
+		System.out.println(String.format("  Router Dijkstra: %8.2f ms/query, %d nodes settled/query",
+				dijkstra / 1e6 / QUERIES, settledDijkstra / QUERIES));
+		System.out.println(String.format("  Router A*:       %8.2f ms/query, %d nodes settled/query",
+				aStar / 1e6 / QUERIES, settledAStar / QUERIES));
+
+		if (withOriginal) {
+			start = System.nanoTime();
+			for (int i = 0; i < QUERIES; i++) {
+				double length = NetworkTest.getPathLength(Dijkstra.getShortestPath(network, sources[i], targets[i]));
+				assertEquals(lengths[i], length, 1e-6);
+			}
+			long original = System.nanoTime() - start;
+			System.out.println(String.format("  Dijkstra:        %8.2f ms/query",
+					original / 1e6 / QUERIES));
+		}
+	}
+}
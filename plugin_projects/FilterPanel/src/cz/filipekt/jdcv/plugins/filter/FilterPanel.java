@@ -9,6 +9,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import cz.filipekt.jdcv.network.NetworkIndex;
 import cz.filipekt.jdcv.plugins.PluginWithPreferences;
 import cz.filipekt.jdcv.plugins.filter.filters.EnsembleCoordFilter;
 import cz.filipekt.jdcv.plugins.filter.filters.EnsembleMemberFilter;
@@ -17,6 +18,7 @@ import cz.filipekt.jdcv.plugins.filter.filters.LinkFromFilter;
 import cz.filipekt.jdcv.plugins.filter.filters.LinkIDFilter;
 import cz.filipekt.jdcv.plugins.filter.filters.LinkToFilter;
 import cz.filipekt.jdcv.plugins.filter.filters.NodeIDFilter;
+import cz.filipekt.jdcv.plugins.filter.filters.NodeRadiusFilter;
 import cz.filipekt.jdcv.plugins.filter.filters.NodeXFilter;
 import cz.filipekt.jdcv.plugins.filter.filters.NodeYFilter;
 import cz.filipekt.jdcv.prefs.LinkPrefs;
@@ -170,7 +172,8 @@ public class FilterPanel extends PluginWithPreferences {
 	/**
 	 * Attributes associated with nodes
 	 */
-	private final List<String> attributesForNode = Arrays.asList("ID", "x-coordinate", "y-coordinate");
+	private final List<String> attributesForNode = Arrays.asList("ID", "x-coordinate", "y-coordinate", 
+			"Within radius (x y radius)");
 	
 	/**
 	 * Attributes associated with links
@@ -365,6 +368,18 @@ public class FilterPanel extends PluginWithPreferences {
 								filter = new NodeYFilter(yCoord, nodePrefs);
 							} catch (NumberFormatException ex) {}	
 							break;
+						case "Within radius (x y radius)":
+							String[] parts = value.trim().split("\\s+");
+							NetworkIndex index = (getGeneralPrefs() == null) ? null : getGeneralPrefs().getNetworkIndex();
+							if ((parts.length == 3) && (index != null)){
+								try {
+									double xCoord = Double.parseDouble(parts[0]);
+									double yCoord = Double.parseDouble(parts[1]);
+									double radius = Double.parseDouble(parts[2]);
+									filter = new NodeRadiusFilter(xCoord, yCoord, radius, index, nodePrefs);
+								} catch (NumberFormatException ex) {}
+							}
+							break;
 						default:
 							break;
 					}
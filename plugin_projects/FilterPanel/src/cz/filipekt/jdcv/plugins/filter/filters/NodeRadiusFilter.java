@@ -0,0 +1,85 @@
+package cz.filipekt.jdcv.plugins.filter.filters;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import cz.filipekt.jdcv.network.NetworkIndex;
+import cz.filipekt.jdcv.plugins.filter.VisibilityFilter;
+import cz.filipekt.jdcv.prefs.NodePrefs;
+
+/**
+ * A filter which manages to filter out the nodes farther from the position 
+ * given in constructor parameters than the given radius. The nodes are
+ * looked up in the spatial index of the network.
+ * 
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class NodeRadiusFilter extends VisibilityFilter {
+	
+	/**
+	 * The x-coordinate of the center of the circle
+	 */
+	private final double xCoord;
+	
+	/**
+	 * The y-coordinate of the center of the circle
+	 */
+	private final double yCoord;
+	
+	/**
+	 * Only nodes within this distance from the center will be shown 
+	 * after the filter is applied
+	 */
+	private final double radius;
+	
+	/**
+	 * Spatial index of the network nodes, used to find the nodes within the circle
+	 */
+	private final NetworkIndex index;
+	
+	/**
+	 * Database of the preferences objects for all nodes
+	 */
+	private final Map<String,NodePrefs> nodePrefs;
+
+	/**
+	 * @param xCoord The x-coordinate of the center of the circle
+	 * @param yCoord The y-coordinate of the center of the circle
+	 * @param radius Only nodes within this distance from the center will be shown 
+	 * after the filter is applied
+	 * @param index Spatial index of the network nodes, used to find the nodes within the circle
+	 * @param nodePrefs Database of the preferences objects for all nodes
+	 */
+	public NodeRadiusFilter(double xCoord, double yCoord, double radius, NetworkIndex index, 
+			Map<String, NodePrefs> nodePrefs) {
+		this.xCoord = xCoord;
+		this.yCoord = yCoord;
+		this.radius = radius;
+		this.index = index;
+		this.nodePrefs = nodePrefs;
+	}
+
+	/**
+	 * Notes the nodes which will be affected by the filter
+	 */
+	@Override
+	public void initializeSelection() {
+		Set<String> nodesWithin = new HashSet<>(Arrays.asList(index.getNodesWithin(xCoord, yCoord, radius)));
+		for (String nodeID : nodePrefs.keySet()){
+			if (!nodesWithin.contains(nodeID)){
+				NodePrefs prefs = nodePrefs.get(nodeID);
+				affectedNodes.add(prefs);
+			}
+		}
+	}
+
+	/**
+	 * @return A short description of what this filter does
+	 */
+	@Override
+	public String toString() {
+		return "Nodes within " + radius + " of [" + xCoord + ", " + yCoord + "]"; 
+	}	
+}
\ No newline at end of file
@@ -0,0 +1,330 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes the shortest paths between many pairs of nodes of a {@link NetworkSnapshot} at once.
+ * <p>
+ * The pairs are grouped by their origins and a single search is run from each distinct
+ * origin, which stops as soon as all the destinations of the origin are settled.
+ * The searches run in parallel in a {@link ForkJoinPool}. Each search borrows an idle
+ * {@link Router} of the batch router and returns it when done, so the searches do not
+ * allocate memory proportional to the size of the network. The routers are never
+ * bound to the threads of the pool, so they are released with the batch router.
+ * </p>
+ * <p>
+ * The nodes and the links are identified by their indices in the snapshot and
+ * the results are returned as primitive arrays. The methods of the batch router
+ * can be called from several threads at once.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public class BatchRouter {
+
+	/**
+	 * Processes the pairs with the given origin.
+	 */
+	private interface OriginHandler {
+
+		/**
+		 * Process the pairs with the given origin.
+		 * @param router The router borrowed for the search.
+		 * @param group The index of the group of the pairs with the same origin.
+		 */
+		void handle(Router router, int group);
+	}
+
+	/**
+	 * Processes the groups of the pairs with the same origin in parallel,
+	 * splitting the range of the groups in halves.
+	 */
+	private class OriginTask extends RecursiveAction {
+
+		/**
+		 * Generated UID.
+		 */
+		private static final long serialVersionUID = -2270581957154484006L;
+
+		/**
+		 * Processes the pairs of a single group.
+		 */
+		private final OriginHandler handler;
+
+		/**
+		 * The index of the first group to be processed.
+		 */
+		private final int first;
+
+		/**
+		 * The index after the last group to be processed.
+		 */
+		private final int last;
+
+		/**
+		 * Create a task processing the given range of the groups.
+		 * @param handler Processes the pairs of a single group.
+		 * @param first The index of the first group to be processed.
+		 * @param last The index after the last group to be processed.
+		 */
+		public OriginTask(OriginHandler handler, int first, int last){
+			this.handler = handler;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected void compute() {
+			if(last - first == 1){
+				Router router = routers.poll();
+				if(router == null){
+					router = new Router(network);
+				}
+				try {
+					handler.handle(router, first);
+				} finally {
+					routers.offer(router);
+				}
+			} else {
+				int middle = (first + last) >>> 1;
+				invokeAll(new OriginTask(handler, first, middle), new OriginTask(handler, middle, last));
+			}
+		}
+	}
+
+	/**
+	 * The network to search the paths in.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The pool in which the searches run.
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The idle routers. A new router is created only when all the routers are in use,
+	 * so there are never more routers than searches running at once.
+	 */
+	private final Queue<Router> routers = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * Create a batch router running the searches in the common {@link ForkJoinPool}.
+	 * @param network The network to search the paths in.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public BatchRouter(NetworkSnapshot network){
+		this(network, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Create a batch router running the searches in the given pool.
+	 * @param network The network to search the paths in.
+	 * @param pool The pool in which the searches run.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null.
+	 */
+	public BatchRouter(NetworkSnapshot network, ForkJoinPool pool){
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		if(pool == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "pool"));
+		}
+		this.network = network;
+		this.pool = pool;
+	}
+
+	/**
+	 * Compute the lengths of the shortest paths from each origin to each destination.
+	 * @param origins The indices of the nodes to start from.
+	 * @param destinations The indices of the nodes to finish at.
+	 * @return The matrix of the distances, the row i holds the distances from the origin i.
+	 * 		The distances to the unreachable destinations are +&infin;.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null
+	 * 		or contains an index of a node which is not in the network.
+	 */
+	public double[][] getDistanceMatrix(final int[] origins, final int[] destinations){
+		checkNodes(origins, "origins");
+		checkNodes(destinations, "destinations");
+		final double[][] matrix = new double[origins.length][destinations.length];
+		final int[] order = sortByOrigins(origins);
+		final int[] groups = getGroups(origins, order);
+		run(groups.length - 1, new OriginHandler() {
+			@Override
+			public void handle(Router router, int group) {
+				router.searchFrom(origins[order[groups[group]]], destinations, 0, destinations.length);
+				double[] row = matrix[order[groups[group]]];
+				for(int j = 0; j < destinations.length; j++){
+					row[j] = router.getSearchedDistance(destinations[j]);
+				}
+				for(int i = groups[group] + 1; i < groups[group + 1]; i++){
+					System.arraycopy(row, 0, matrix[order[i]], 0, row.length);
+				}
+			}
+		});
+		return matrix;
+	}
+
+	/**
+	 * Compute the lengths of the shortest paths between the given pairs of nodes.
+	 * The pair i consists of origins[i] and destinations[i].
+	 * @param origins The indices of the nodes to start from.
+	 * @param destinations The indices of the nodes to finish at.
+	 * @return The distances between the pairs. The distances of the unreachable pairs are +&infin;.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null, the arguments
+	 * 		differ in length or contain an index of a node which is not in the network.
+	 */
+	public double[] getDistances(final int[] origins, final int[] destinations){
+		checkPairs(origins, destinations);
+		final double[] distances = new double[origins.length];
+		final int[] order = sortByOrigins(origins);
+		final int[] sortedDestinations = permute(destinations, order);
+		final int[] groups = getGroups(origins, order);
+		run(groups.length - 1, new OriginHandler() {
+			@Override
+			public void handle(Router router, int group) {
+				int start = groups[group];
+				int end = groups[group + 1];
+				router.searchFrom(origins[order[start]], sortedDestinations, start, end);
+				for(int i = start; i < end; i++){
+					distances[order[i]] = router.getSearchedDistance(sortedDestinations[i]);
+				}
+			}
+		});
+		return distances;
+	}
+
+	/**
+	 * Compute the shortest paths between the given pairs of nodes.
+	 * The pair i consists of origins[i] and destinations[i].
+	 * @param origins The indices of the nodes to start from.
+	 * @param destinations The indices of the nodes to finish at.
+	 * @return The paths between the pairs, as the indices of the links which constitute them.
+	 * 		The paths of the unreachable pairs are null.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null, the arguments
+	 * 		differ in length or contain an index of a node which is not in the network.
+	 */
+	public int[][] getPaths(final int[] origins, final int[] destinations){
+		checkPairs(origins, destinations);
+		final int[][] paths = new int[origins.length][];
+		final int[] order = sortByOrigins(origins);
+		final int[] sortedDestinations = permute(destinations, order);
+		final int[] groups = getGroups(origins, order);
+		run(groups.length - 1, new OriginHandler() {
+			@Override
+			public void handle(Router router, int group) {
+				int start = groups[group];
+				int end = groups[group + 1];
+				router.searchFrom(origins[order[start]], sortedDestinations, start, end);
+				for(int i = start; i < end; i++){
+					paths[order[i]] = router.getSearchedPath(sortedDestinations[i]);
+				}
+			}
+		});
+		return paths;
+	}
+
+	/**
+	 * Process the given number of the groups in the pool and wait until all of them are done.
+	 * @param groupCount The number of the groups.
+	 * @param handler Processes the pairs of a single group.
+	 */
+	private void run(int groupCount, OriginHandler handler){
+		if(groupCount > 0){
+			pool.invoke(new OriginTask(handler, 0, groupCount));
+		}
+	}
+
+	/**
+	 * Sort the positions in the array of the origins by the origins.
+	 * @param origins The indices of the origin nodes.
+	 * @return The positions in the origins array, ordered by the origins they hold.
+	 */
+	private static int[] sortByOrigins(int[] origins){
+		long[] keys = new long[origins.length];
+		for(int i = 0; i < origins.length; i++){
+			keys[i] = ((long) origins[i] << 32) | i;
+		}
+		Arrays.sort(keys);
+		int[] order = new int[origins.length];
+		for(int i = 0; i < keys.length; i++){
+			order[i] = (int) keys[i];
+		}
+		return order;
+	}
+
+	/**
+	 * Find the groups of the positions with the same origin.
+	 * @param origins The indices of the origin nodes.
+	 * @param order The positions in the origins array, ordered by the origins they hold.
+	 * @return The beginnings of the groups in the order array, followed by the length of the array.
+	 */
+	private static int[] getGroups(int[] origins, int[] order){
+		int[] groups = new int[order.length + 1];
+		int groupCount = 0;
+		for(int i = 0; i < order.length; i++){
+			if(i == 0 || origins[order[i]] != origins[order[i - 1]]){
+				groups[groupCount++] = i;
+			}
+		}
+		groups[groupCount] = order.length;
+		return Arrays.copyOf(groups, groupCount + 1);
+	}
+
+	/**
+	 * Reorder the values of the array.
+	 * @param values The values to be reordered.
+	 * @param order The positions of the values in the required order.
+	 * @return The reordered values.
+	 */
+	private static int[] permute(int[] values, int[] order){
+		int[] permuted = new int[order.length];
+		for(int i = 0; i < order.length; i++){
+			permuted[i] = values[order[i]];
+		}
+		return permuted;
+	}
+
+	/**
+	 * Check that the pairs are given correctly.
+	 * @param origins The indices of the origin nodes.
+	 * @param destinations The indices of the destination nodes.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null, the arguments
+	 * 		differ in length or contain an index of a node which is not in the network.
+	 */
+	private void checkPairs(int[] origins, int[] destinations){
+		checkNodes(origins, "origins");
+		checkNodes(destinations, "destinations");
+		if(origins.length != destinations.length){
+			throw new IllegalArgumentException(String.format(
+					"The arguments \"%s\" and \"%s\" have to be of the same length.",
+					"origins", "destinations"));
+		}
+	}
+
+	/**
+	 * Check that the array holds indices of the nodes of the network.
+	 * @param nodes The indices of the nodes.
+	 * @param argument The name of the argument, for the error message.
+	 * @throws IllegalArgumentException Thrown if the nodes argument is null or contains
+	 * 		an index of a node which is not in the network.
+	 */
+	private void checkNodes(int[] nodes, String argument){
+		if(nodes == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", argument));
+		}
+		for(int node : nodes){
+			if(node < 0 || node >= network.getNodeCount()){
+				throw new IllegalArgumentException(String.format(
+						"The argument \"%s\" contains %d, which is not an index of a node.", argument, node));
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+/**
+ * Computes the centrality of the nodes of a {@link NetworkSnapshot}, measured
+ * along the shortest paths with respect to the lengths of the links.
+ * <p>
+ * Both measures need the shortest paths from every node, so they take
+ * O(n m log n) time. The results are indexed by the indices of the nodes.
+ * Links of zero length are not considered to lie on any shortest path.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class Centrality {
+
+	/**
+	 * The network to be examined.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The distances from the current source.
+	 */
+	private final double[] distances;
+
+	/**
+	 * The number of the shortest paths from the current source.
+	 */
+	private final double[] pathCounts;
+
+	/**
+	 * The nodes in the order in which they have been settled.
+	 */
+	private final int[] settledOrder;
+
+	/**
+	 * The number of the nodes settled from the current source.
+	 */
+	private int settledCount;
+
+	/**
+	 * The nodes reached but not settled yet.
+	 */
+	private final IndexedMinHeap unvisited;
+
+	/**
+	 * Prepare the computation for the given network.
+	 * @param network The network to be examined.
+	 */
+	private Centrality(NetworkSnapshot network){
+		this.network = network;
+		int nodeCount = network.getNodeCount();
+		distances = new double[nodeCount];
+		pathCounts = new double[nodeCount];
+		settledOrder = new int[nodeCount];
+		unvisited = new IndexedMinHeap(nodeCount);
+	}
+
+	/**
+	 * Compute the betweenness centrality of the nodes using the Brandes' algorithm.
+	 * The centrality of a node is the sum, over all the pairs of other nodes,
+	 * of the fraction of the shortest paths between the pair going through the node.
+	 * @param network The network to be examined.
+	 * @return The betweenness centrality of each node.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public static double[] getBetweenness(NetworkSnapshot network){
+		checkNetwork(network);
+		Centrality centrality = new Centrality(network);
+		int nodeCount = network.getNodeCount();
+		double[] betweenness = new double[nodeCount];
+		double[] dependencies = new double[nodeCount];
+		for(int source = 0; source < nodeCount; source++){
+			centrality.searchFrom(source);
+			for(int i = 0; i < centrality.settledCount; i++){
+				dependencies[centrality.settledOrder[i]] = 0;
+			}
+			// the nodes are processed from the farthest ones, so their dependencies are final
+			for(int i = centrality.settledCount - 1; i > 0; i--){
+				int node = centrality.settledOrder[i];
+				for(int link = network.getFirstLink(node); link < network.getFirstLink(node + 1); link++){
+					// the links are only traversed forward, so the predecessors are found through the successors
+					int successor = network.getTarget(link);
+					if(centrality.isOnShortestPath(node, link, successor)){
+						dependencies[node] += centrality.pathCounts[node]
+								/ centrality.pathCounts[successor] * (1 + dependencies[successor]);
+					}
+				}
+				betweenness[node] += dependencies[node];
+			}
+		}
+		return betweenness;
+	}
+
+	/**
+	 * Compute the closeness centrality of the nodes. The centrality of a node is
+	 * the number of the other nodes reachable from it divided by the sum of their
+	 * distances, 0 for the nodes from which no other node is reachable.
+	 * @param network The network to be examined.
+	 * @return The closeness centrality of each node.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public static double[] getCloseness(NetworkSnapshot network){
+		checkNetwork(network);
+		Centrality centrality = new Centrality(network);
+		int nodeCount = network.getNodeCount();
+		double[] closeness = new double[nodeCount];
+		for(int source = 0; source < nodeCount; source++){
+			centrality.searchFrom(source);
+			double sum = 0;
+			for(int i = 1; i < centrality.settledCount; i++){
+				sum += centrality.distances[centrality.settledOrder[i]];
+			}
+			closeness[source] = (sum > 0) ? (centrality.settledCount - 1) / sum : 0;
+		}
+		return closeness;
+	}
+
+	/**
+	 * Find the distances and the numbers of the shortest paths from the source
+	 * to all the reachable nodes.
+	 * @param source The index of the node to start from.
+	 */
+	private void searchFrom(int source){
+		settledCount = 0;
+		for(int i = 0; i < distances.length; i++){
+			distances[i] = Double.POSITIVE_INFINITY;
+		}
+		distances[source] = 0;
+		pathCounts[source] = 1;
+		unvisited.insertOrDecrease(source, 0);
+		while(!unvisited.isEmpty()){
+			int current = unvisited.poll();
+			settledOrder[settledCount++] = current;
+			for(int link = network.getFirstLink(current); link < network.getFirstLink(current + 1); link++){
+				int successor = network.getTarget(link);
+				double distance = distances[current] + network.getLength(link);
+				if(distance < distances[successor]){
+					distances[successor] = distance;
+					pathCounts[successor] = pathCounts[current];
+					unvisited.insertOrDecrease(successor, distance);
+				} else if(distance == distances[successor] && unvisited.contains(successor)){
+					pathCounts[successor] += pathCounts[current];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Check whether the link lies on a shortest path from the current source.
+	 * @param from The index of the node from which the link goes.
+	 * @param link The index of the link.
+	 * @param to The index of the node to which the link goes.
+	 * @return True if the link lies on a shortest path from the current source.
+	 */
+	private boolean isOnShortestPath(int from, int link, int to){
+		return distances[to] != Double.POSITIVE_INFINITY
+				&& distances[from] + network.getLength(link) == distances[to]
+				&& network.getLength(link) > 0;
+	}
+
+	/**
+	 * Check that the network is not null.
+	 * @param network The network to be checked.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	private static void checkNetwork(NetworkSnapshot network){
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,177 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.Arrays;
+
+/**
+ * Finds the connected components of a {@link NetworkSnapshot}.
+ * <p>
+ * The components are returned as arrays indexed by the indices of the nodes,
+ * holding the number of the component of each node. The components are numbered
+ * 0 .. k-1 in the order of the lowest index of their nodes, so the number of the
+ * components is the maximum of the array plus one.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class Connectivity {
+
+	private Connectivity(){
+	}
+
+	/**
+	 * Find the weakly connected components, in which the direction of the links is ignored.
+	 * @param network The network to be examined.
+	 * @return The number of the component of each node.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public static int[] getWeakComponents(NetworkSnapshot network){
+		checkNetwork(network);
+		int nodeCount = network.getNodeCount();
+		int[] parents = new int[nodeCount];
+		for(int i = 0; i < nodeCount; i++){
+			parents[i] = i;
+		}
+		for(int link = 0; link < network.getLinkCount(); link++){
+			int first = find(parents, network.getSource(link));
+			int second = find(parents, network.getTarget(link));
+			if(first != second){
+				// the root with the lower index stays, so the numbering is stable
+				parents[Math.max(first, second)] = Math.min(first, second);
+			}
+		}
+		int[] components = new int[nodeCount];
+		int componentCount = 0;
+		for(int i = 0; i < nodeCount; i++){
+			int root = find(parents, i);
+			components[i] = (root == i) ? componentCount++ : components[root];
+		}
+		return components;
+	}
+
+	/**
+	 * Find the strongly connected components, in which every node can be reached
+	 * from every other node along the direction of the links.
+	 * Uses the Tarjan's algorithm without recursion, so the size of the network
+	 * is not limited by the size of the stack.
+	 * @param network The network to be examined.
+	 * @return The number of the component of each node.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public static int[] getStrongComponents(NetworkSnapshot network){
+		checkNetwork(network);
+		int nodeCount = network.getNodeCount();
+		int[] order = new int[nodeCount];
+		int[] lowLinks = new int[nodeCount];
+		int[] nextLinks = new int[nodeCount];
+		int[] callStack = new int[nodeCount];
+		int[] componentStack = new int[nodeCount];
+		boolean[] onStack = new boolean[nodeCount];
+		int[] components = new int[nodeCount];
+		Arrays.fill(order, -1);
+		int visitedCount = 0;
+		int componentStackSize = 0;
+		int componentCount = 0;
+
+		for(int root = 0; root < nodeCount; root++){
+			if(order[root] >= 0){
+				continue;
+			}
+			int callStackSize = 0;
+			callStack[callStackSize++] = root;
+			order[root] = lowLinks[root] = visitedCount++;
+			nextLinks[root] = network.getFirstLink(root);
+			componentStack[componentStackSize++] = root;
+			onStack[root] = true;
+
+			while(callStackSize > 0){
+				int node = callStack[callStackSize - 1];
+				if(nextLinks[node] < network.getFirstLink(node + 1)){
+					int successor = network.getTarget(nextLinks[node]++);
+					if(order[successor] < 0){
+						order[successor] = lowLinks[successor] = visitedCount++;
+						nextLinks[successor] = network.getFirstLink(successor);
+						componentStack[componentStackSize++] = successor;
+						onStack[successor] = true;
+						callStack[callStackSize++] = successor;
+					} else if(onStack[successor]){
+						lowLinks[node] = Math.min(lowLinks[node], order[successor]);
+					}
+					continue;
+				}
+				callStackSize--;
+				if(callStackSize > 0){
+					int parent = callStack[callStackSize - 1];
+					lowLinks[parent] = Math.min(lowLinks[parent], lowLinks[node]);
+				}
+				if(lowLinks[node] == order[node]){
+					int member;
+					do{
+						member = componentStack[--componentStackSize];
+						onStack[member] = false;
+						components[member] = componentCount;
+					} while(member != node);
+					componentCount++;
+				}
+			}
+		}
+		return renumber(components);
+	}
+
+	/**
+	 * Get the number of the components.
+	 * @param components The number of the component of each node, as returned
+	 * 		by {@link #getWeakComponents(NetworkSnapshot)} or {@link #getStrongComponents(NetworkSnapshot)}.
+	 * @return The number of the components.
+	 */
+	public static int getComponentCount(int[] components){
+		int max = -1;
+		for(int component : components){
+			max = Math.max(max, component);
+		}
+		return max + 1;
+	}
+
+	/**
+	 * Find the root of the tree containing the given node, halving the path to it.
+	 * @param parents The parents of the nodes in the union-find forest.
+	 * @param node The index of the node.
+	 * @return The index of the root.
+	 */
+	private static int find(int[] parents, int node){
+		while(parents[node] != node){
+			parents[node] = parents[parents[node]];
+			node = parents[node];
+		}
+		return node;
+	}
+
+	/**
+	 * Number the components in the order of the lowest index of their nodes.
+	 * @param components The number of the component of each node.
+	 * @return The renumbered components.
+	 */
+	private static int[] renumber(int[] components){
+		int[] numbers = new int[components.length];
+		Arrays.fill(numbers, -1);
+		int componentCount = 0;
+		for(int i = 0; i < components.length; i++){
+			if(numbers[components[i]] < 0){
+				numbers[components[i]] = componentCount++;
+			}
+			components[i] = numbers[components[i]];
+		}
+		return components;
+	}
+
+	/**
+	 * Check that the network is not null.
+	 * @param network The network to be checked.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	private static void checkNetwork(NetworkSnapshot network){
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,562 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * The contraction hierarchy of a {@link NetworkSnapshot}, which speeds up
+ * the shortest path queries answered by {@link ContractionHierarchyRouter}.
+ * <p>
+ * The nodes are ordered by their importance. Each of them is contracted in turn,
+ * and shortcut edges are added between its neighbours to keep the distances
+ * between the more important nodes. A query then only searches the edges leading
+ * to more important nodes from both of its ends.
+ * </p>
+ * <p>
+ * Creating the hierarchy is expensive, so it can be saved to a file next to
+ * the network, see {@link #getFile(File)}, and loaded again. The file is bound
+ * to the network by a fingerprint of the coordinates of the nodes and the ends and
+ * lengths of the links, and of their identifiers if the network has been read
+ * by a {@link NetworkReader}.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class ContractionHierarchy {
+
+	/**
+	 * The first bytes of the saved hierarchy.
+	 */
+	private static final int MAGIC = 0x4A444348;
+
+	/**
+	 * The version of the format of the saved hierarchy.
+	 */
+	private static final int VERSION = 2;
+
+	/**
+	 * The extension of the file with the saved hierarchy.
+	 */
+	public static final String EXTENSION = ".ch";
+
+	/**
+	 * The network the hierarchy has been created for.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The order in which the nodes have been contracted, indexed by the nodes.
+	 */
+	private final int[] ranks;
+
+	/**
+	 * The nodes from which the edges go.
+	 */
+	private final int[] sources;
+
+	/**
+	 * The nodes to which the edges go.
+	 */
+	private final int[] targets;
+
+	/**
+	 * The lengths of the edges.
+	 */
+	private final double[] weights;
+
+	/**
+	 * The indices of the links represented by the edges, -1 for the shortcuts.
+	 */
+	private final int[] links;
+
+	/**
+	 * The first edges of the paths replaced by the shortcuts, -1 for the links.
+	 */
+	private final int[] firstHalves;
+
+	/**
+	 * The second edges of the paths replaced by the shortcuts, -1 for the links.
+	 */
+	private final int[] secondHalves;
+
+	/**
+	 * The edges going from the node i to more important nodes are at positions
+	 * upwardOffsets[i] .. upwardOffsets[i+1]-1 of {@link #upwardEdges}.
+	 */
+	private final int[] upwardOffsets;
+
+	/**
+	 * The edges going to more important nodes, grouped by the node they go from.
+	 */
+	private final int[] upwardEdges;
+
+	/**
+	 * The edges coming to the node i from more important nodes are at positions
+	 * downwardOffsets[i] .. downwardOffsets[i+1]-1 of {@link #downwardEdges}.
+	 */
+	private final int[] downwardOffsets;
+
+	/**
+	 * The edges coming from more important nodes, grouped by the node they go to.
+	 */
+	private final int[] downwardEdges;
+
+	/**
+	 * Create the hierarchy from the contracted network.
+	 * @param network The network the hierarchy has been created for.
+	 * @param ranks The order in which the nodes have been contracted.
+	 * @param sources The nodes from which the edges go.
+	 * @param targets The nodes to which the edges go.
+	 * @param weights The lengths of the edges.
+	 * @param links The indices of the links represented by the edges, -1 for the shortcuts.
+	 * @param firstHalves The first edges of the paths replaced by the shortcuts, -1 for the links.
+	 * @param secondHalves The second edges of the paths replaced by the shortcuts, -1 for the links.
+	 */
+	ContractionHierarchy(NetworkSnapshot network, int[] ranks, int[] sources, int[] targets,
+			double[] weights, int[] links, int[] firstHalves, int[] secondHalves){
+		this.network = network;
+		this.ranks = ranks;
+		this.sources = sources;
+		this.targets = targets;
+		this.weights = weights;
+		this.links = links;
+		this.firstHalves = firstHalves;
+		this.secondHalves = secondHalves;
+
+		int nodeCount = ranks.length;
+		upwardOffsets = new int[nodeCount + 1];
+		downwardOffsets = new int[nodeCount + 1];
+		for(int edge = 0; edge < sources.length; edge++){
+			if(isUpward(edge)){
+				upwardOffsets[sources[edge] + 1]++;
+			} else {
+				downwardOffsets[targets[edge] + 1]++;
+			}
+		}
+		for(int i = 0; i < nodeCount; i++){
+			upwardOffsets[i + 1] += upwardOffsets[i];
+			downwardOffsets[i + 1] += downwardOffsets[i];
+		}
+		upwardEdges = new int[upwardOffsets[nodeCount]];
+		downwardEdges = new int[downwardOffsets[nodeCount]];
+		int[] upwardPositions = upwardOffsets.clone();
+		int[] downwardPositions = downwardOffsets.clone();
+		for(int edge = 0; edge < sources.length; edge++){
+			if(isUpward(edge)){
+				upwardEdges[upwardPositions[sources[edge]]++] = edge;
+			} else {
+				downwardEdges[downwardPositions[targets[edge]]++] = edge;
+			}
+		}
+	}
+
+	/**
+	 * Create the contraction hierarchy of the given network.
+	 * @param network The network to be contracted.
+	 * @return The contraction hierarchy of the network.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public static ContractionHierarchy create(NetworkSnapshot network){
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		return new ContractionHierarchyBuilder(network).build();
+	}
+
+	/**
+	 * Get the file in which the hierarchy of the network stored in the given file is saved.
+	 * @param networkFile The file with the network.
+	 * @return The file with the hierarchy, next to the network file.
+	 * @throws IllegalArgumentException Thrown if the networkFile argument is null.
+	 */
+	public static File getFile(File networkFile){
+		if(networkFile == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "networkFile"));
+		}
+		return new File(networkFile.getPath() + EXTENSION);
+	}
+
+	/**
+	 * Save the hierarchy to the given file. The identifiers of the nodes and the links
+	 * are not part of the fingerprint, use {@link #save(File, NetworkReader)} for a network
+	 * read from a file.
+	 * @param file The file to save the hierarchy to.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if the file argument is null.
+	 */
+	public void save(File file) throws IOException {
+		write(file, null);
+	}
+
+	/**
+	 * Save the hierarchy of a network read by the given reader to the given file.
+	 * The identifiers of the nodes and the links from the reader are part of the fingerprint.
+	 * @param file The file to save the hierarchy to.
+	 * @param reader The reader the network has been read by.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null
+	 * 		or if the reader does not know all the nodes and links of the network.
+	 */
+	public void save(File file, NetworkReader reader) throws IOException {
+		if(reader == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "reader"));
+		}
+		write(file, reader);
+	}
+
+	/**
+	 * Save the hierarchy to the given file.
+	 * @param file The file to save the hierarchy to.
+	 * @param ids The reader the network has been read by, null if the identifiers
+	 * 		are not part of the fingerprint.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if the file argument is null
+	 * 		or if the reader does not know all the nodes and links of the network.
+	 */
+	private void write(File file, NetworkReader ids) throws IOException {
+		if(file == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "file"));
+		}
+		long fingerprint = getFingerprint(network, ids);
+		try(DataOutputStream output = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file), 64 * 1024))){
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeLong(fingerprint);
+			output.writeInt(ranks.length);
+			for(int rank : ranks){
+				output.writeInt(rank);
+			}
+			output.writeInt(sources.length);
+			for(int edge = 0; edge < sources.length; edge++){
+				output.writeInt(sources[edge]);
+				output.writeInt(targets[edge]);
+				output.writeDouble(weights[edge]);
+				output.writeInt(links[edge]);
+				output.writeInt(firstHalves[edge]);
+				output.writeInt(secondHalves[edge]);
+			}
+		}
+	}
+
+	/**
+	 * Load the hierarchy of the given network from the given file, saved by {@link #save(File)}.
+	 * @param file The file the hierarchy has been saved to.
+	 * @param network The network the hierarchy has been created for.
+	 * @return The loaded hierarchy.
+	 * @throws IOException Thrown if the file cannot be read, is corrupted
+	 * 		or has been created for a different network.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null.
+	 */
+	public static ContractionHierarchy load(File file, NetworkSnapshot network) throws IOException {
+		return read(file, network, null);
+	}
+
+	/**
+	 * Load the hierarchy of the given network read by the given reader from the given file,
+	 * saved by {@link #save(File, NetworkReader)}.
+	 * @param file The file the hierarchy has been saved to.
+	 * @param network The network the hierarchy has been created for.
+	 * @param reader The reader the network has been read by.
+	 * @return The loaded hierarchy.
+	 * @throws IOException Thrown if the file cannot be read, is corrupted
+	 * 		or has been created for a different network.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null
+	 * 		or if the reader does not know all the nodes and links of the network.
+	 */
+	public static ContractionHierarchy load(File file, NetworkSnapshot network, NetworkReader reader) throws IOException {
+		if(reader == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "reader"));
+		}
+		return read(file, network, reader);
+	}
+
+	/**
+	 * Load the hierarchy of the given network from the given file.
+	 * @param file The file the hierarchy has been saved to.
+	 * @param network The network the hierarchy has been created for.
+	 * @param ids The reader the network has been read by, null if the identifiers
+	 * 		are not part of the fingerprint.
+	 * @return The loaded hierarchy.
+	 * @throws IOException Thrown if the file cannot be read, is corrupted
+	 * 		or has been created for a different network.
+	 * @throws IllegalArgumentException Thrown if the file or network argument is null
+	 * 		or if the reader does not know all the nodes and links of the network.
+	 */
+	private static ContractionHierarchy read(File file, NetworkSnapshot network, NetworkReader ids) throws IOException {
+		if(file == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "file"));
+		}
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		long fingerprint = getFingerprint(network, ids);
+		try(DataInputStream input = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file), 64 * 1024))){
+			if(input.readInt() != MAGIC){
+				throw new IOException("The file does not contain a contraction hierarchy.");
+			}
+			int version = input.readInt();
+			if(version != VERSION){
+				throw new IOException("Unsupported version of the contraction hierarchy: " + version);
+			}
+			if(input.readLong() != fingerprint || input.readInt() != network.getNodeCount()){
+				throw new IOException("The contraction hierarchy has been created for a different network.");
+			}
+			int nodeCount = network.getNodeCount();
+			int[] ranks = new int[nodeCount];
+			boolean[] ranked = new boolean[nodeCount];
+			for(int i = 0; i < nodeCount; i++){
+				ranks[i] = input.readInt();
+				// The ranks have to be a permutation of the nodes
+				if(ranks[i] < 0 || ranks[i] >= nodeCount || ranked[ranks[i]]){
+					throw new IOException("The contraction hierarchy is corrupted.");
+				}
+				ranked[ranks[i]] = true;
+			}
+			int edgeCount = input.readInt();
+			if(edgeCount < 0){
+				throw new IOException("The contraction hierarchy is corrupted.");
+			}
+			int[] sources = new int[edgeCount];
+			int[] targets = new int[edgeCount];
+			double[] weights = new double[edgeCount];
+			int[] links = new int[edgeCount];
+			int[] firstHalves = new int[edgeCount];
+			int[] secondHalves = new int[edgeCount];
+			for(int edge = 0; edge < edgeCount; edge++){
+				sources[edge] = input.readInt();
+				targets[edge] = input.readInt();
+				weights[edge] = input.readDouble();
+				links[edge] = input.readInt();
+				firstHalves[edge] = input.readInt();
+				secondHalves[edge] = input.readInt();
+				if(sources[edge] < 0 || sources[edge] >= nodeCount || targets[edge] < 0 || targets[edge] >= nodeCount
+						|| links[edge] >= network.getLinkCount() || firstHalves[edge] >= edgeCount || secondHalves[edge] >= edgeCount
+						|| (links[edge] < 0 && (firstHalves[edge] < 0 || secondHalves[edge] < 0))){
+					throw new IOException("The contraction hierarchy is corrupted.");
+				}
+			}
+			for(int edge = 0; edge < edgeCount; edge++){
+				if(!isValidEdge(network, ranks, sources, targets, links, firstHalves, secondHalves, edge)){
+					throw new IOException("The contraction hierarchy is corrupted.");
+				}
+			}
+			return new ContractionHierarchy(network, ranks, sources, targets, weights, links, firstHalves, secondHalves);
+		}
+	}
+
+	/**
+	 * Check that the edge of a loaded hierarchy is consistent. An edge representing a link
+	 * has to connect the ends of the link. A shortcut has to replace two edges meeting
+	 * in a node less important than both ends of the shortcut, so that unpacking
+	 * the shortcuts always terminates.
+	 * @param network The network the hierarchy has been created for.
+	 * @param ranks The order in which the nodes have been contracted.
+	 * @param sources The nodes from which the edges go.
+	 * @param targets The nodes to which the edges go.
+	 * @param links The indices of the links represented by the edges, -1 for the shortcuts.
+	 * @param firstHalves The first edges of the paths replaced by the shortcuts.
+	 * @param secondHalves The second edges of the paths replaced by the shortcuts.
+	 * @param edge The index of the edge to be checked.
+	 * @return True if the edge is consistent.
+	 */
+	private static boolean isValidEdge(NetworkSnapshot network, int[] ranks, int[] sources, int[] targets,
+			int[] links, int[] firstHalves, int[] secondHalves, int edge){
+		int source = sources[edge];
+		int target = targets[edge];
+		if(links[edge] >= 0){
+			return network.getSource(links[edge]) == source && network.getTarget(links[edge]) == target;
+		}
+		int first = firstHalves[edge];
+		int second = secondHalves[edge];
+		int middle = targets[first];
+		return sources[first] == source && sources[second] == middle && targets[second] == target
+				&& ranks[middle] < ranks[source] && ranks[middle] < ranks[target];
+	}
+
+	/**
+	 * Get the network the hierarchy has been created for.
+	 * @return The network the hierarchy has been created for.
+	 */
+	public NetworkSnapshot getNetwork(){
+		return network;
+	}
+
+	/**
+	 * Get the number of the shortcuts added to the network.
+	 * @return The number of the shortcuts.
+	 */
+	public int getShortcutCount(){
+		int shortcutCount = 0;
+		for(int link : links){
+			if(link < 0){
+				shortcutCount++;
+			}
+		}
+		return shortcutCount;
+	}
+
+	/**
+	 * Get the index of the first edge going from the node to more important nodes.
+	 * The edges going from the node i have the positions getUpwardOffset(i) .. getUpwardOffset(i+1)-1.
+	 * @param node The index of the node.
+	 * @return The position of the first edge going from the node to more important nodes.
+	 */
+	int getUpwardOffset(int node){
+		return upwardOffsets[node];
+	}
+
+	/**
+	 * Get the edge at the given position among the edges going to more important nodes.
+	 * @param position The position of the edge.
+	 * @return The index of the edge.
+	 */
+	int getUpwardEdge(int position){
+		return upwardEdges[position];
+	}
+
+	/**
+	 * Get the index of the first edge coming to the node from more important nodes.
+	 * The edges coming to the node i have the positions getDownwardOffset(i) .. getDownwardOffset(i+1)-1.
+	 * @param node The index of the node.
+	 * @return The position of the first edge coming to the node from more important nodes.
+	 */
+	int getDownwardOffset(int node){
+		return downwardOffsets[node];
+	}
+
+	/**
+	 * Get the edge at the given position among the edges coming from more important nodes.
+	 * @param position The position of the edge.
+	 * @return The index of the edge.
+	 */
+	int getDownwardEdge(int position){
+		return downwardEdges[position];
+	}
+
+	/**
+	 * Get the node from which the edge goes.
+	 * @param edge The index of the edge.
+	 * @return The index of the node from which the edge goes.
+	 */
+	int getSource(int edge){
+		return sources[edge];
+	}
+
+	/**
+	 * Get the node to which the edge goes.
+	 * @param edge The index of the edge.
+	 * @return The index of the node to which the edge goes.
+	 */
+	int getTarget(int edge){
+		return targets[edge];
+	}
+
+	/**
+	 * Get the length of the edge.
+	 * @param edge The index of the edge.
+	 * @return The length of the edge.
+	 */
+	double getWeight(int edge){
+		return weights[edge];
+	}
+
+	/**
+	 * Get the link represented by the edge.
+	 * @param edge The index of the edge.
+	 * @return The index of the link, -1 if the edge is a shortcut.
+	 */
+	int getLink(int edge){
+		return links[edge];
+	}
+
+	/**
+	 * Get the first edge of the path replaced by the shortcut.
+	 * @param edge The index of the shortcut.
+	 * @return The index of the first edge of the path.
+	 */
+	int getFirstHalf(int edge){
+		return firstHalves[edge];
+	}
+
+	/**
+	 * Get the second edge of the path replaced by the shortcut.
+	 * @param edge The index of the shortcut.
+	 * @return The index of the second edge of the path.
+	 */
+	int getSecondHalf(int edge){
+		return secondHalves[edge];
+	}
+
+	/**
+	 * Check whether the edge goes to a more important node.
+	 * @param edge The index of the edge.
+	 * @return True if the edge goes to a more important node.
+	 */
+	private boolean isUpward(int edge){
+		return ranks[sources[edge]] < ranks[targets[edge]];
+	}
+
+	/**
+	 * Compute a number identifying the network, used to check that a saved hierarchy
+	 * belongs to the network. The numeric IDs of the nodes and the links differ between
+	 * the runs of the application, so only the identifiers from the file the network
+	 * has been read from are used, together with the coordinates of the nodes and the ends
+	 * and lengths of the links.
+	 * @param network The network to be identified.
+	 * @param ids The reader the network has been read by, null if the identifiers
+	 * 		are not part of the fingerprint.
+	 * @return The fingerprint of the network.
+	 * @throws IllegalArgumentException Thrown if the reader does not know all the nodes
+	 * 		and links of the network.
+	 */
+	private static long getFingerprint(NetworkSnapshot network, NetworkReader ids){
+		long fingerprint = network.getNodeCount();
+		for(int node = 0; node < network.getNodeCount(); node++){
+			if(ids != null){
+				fingerprint = fingerprint * 31 + getId(ids.getId(network.getNode(node)), "node", node).hashCode();
+			}
+			fingerprint = fingerprint * 31 + Double.doubleToLongBits(network.getX(node));
+			fingerprint = fingerprint * 31 + Double.doubleToLongBits(network.getY(node));
+		}
+		for(int link = 0; link < network.getLinkCount(); link++){
+			if(ids != null){
+				fingerprint = fingerprint * 31 + getId(ids.getId(network.getLink(link)), "link", link).hashCode();
+			}
+			fingerprint = fingerprint * 31 + network.getSource(link);
+			fingerprint = fingerprint * 31 + network.getTarget(link);
+			fingerprint = fingerprint * 31 + Double.doubleToLongBits(network.getLength(link));
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Check that the reader knows the identifier of a node or a link.
+	 * @param id The identifier from the reader.
+	 * @param kind The kind of the item, for the error message.
+	 * @param index The index of the item in the network.
+	 * @return The identifier.
+	 * @throws IllegalArgumentException Thrown if the identifier is null.
+	 */
+	private static String getId(String id, String kind, int index){
+		if(id == null){
+			throw new IllegalArgumentException(String.format(
+					"The %s at index %d has not been read by the reader.", kind, index));
+		}
+		return id;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,403 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.Arrays;
+
+/**
+ * Contracts the nodes of a {@link NetworkSnapshot} one by one, adding the shortcuts
+ * that preserve the distances between the remaining nodes, and so creates
+ * a {@link ContractionHierarchy}.
+ * <p>
+ * The next node to be contracted is the one with the lowest edge difference (the number
+ * of the shortcuts its contraction adds minus the number of its edges) plus its level,
+ * which keeps the hierarchy shallow. The priorities of the neighbours are updated after
+ * each contraction, and the priority of a node is checked again before it is contracted.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+class ContractionHierarchyBuilder {
+
+	/**
+	 * The maximum number of the nodes settled by a witness search. Limiting the searches
+	 * may add superfluous shortcuts, but never leaves out a needed one.
+	 */
+	private static final int WITNESS_SEARCH_LIMIT = 500;
+
+	/**
+	 * The maximum number of the nodes settled by a witness search when the shortcuts
+	 * are only counted to estimate the priority of a node.
+	 */
+	private static final int ESTIMATE_SEARCH_LIMIT = 20;
+
+	/**
+	 * The network to be contracted.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The number of the edges created so far.
+	 */
+	private int edgeCount;
+
+	/**
+	 * The nodes from which the edges go.
+	 */
+	private int[] sources;
+
+	/**
+	 * The nodes to which the edges go.
+	 */
+	private int[] targets;
+
+	/**
+	 * The lengths of the edges.
+	 */
+	private double[] weights;
+
+	/**
+	 * The indices of the links represented by the edges, -1 for the shortcuts.
+	 */
+	private int[] links;
+
+	/**
+	 * The first edges of the paths replaced by the shortcuts, -1 for the links.
+	 */
+	private int[] firstHalves;
+
+	/**
+	 * The second edges of the paths replaced by the shortcuts, -1 for the links.
+	 */
+	private int[] secondHalves;
+
+	/**
+	 * The edges going from the nodes.
+	 */
+	private final int[][] outgoingEdges;
+
+	/**
+	 * The numbers of the edges going from the nodes.
+	 */
+	private final int[] outgoingCounts;
+
+	/**
+	 * The edges going to the nodes.
+	 */
+	private final int[][] incomingEdges;
+
+	/**
+	 * The numbers of the edges going to the nodes.
+	 */
+	private final int[] incomingCounts;
+
+	/**
+	 * The levels of the nodes in the hierarchy, one more than the highest level
+	 * of their contracted neighbours.
+	 */
+	private final int[] levels;
+
+	/**
+	 * The distances found by the current witness search.
+	 */
+	private final double[] witnessDistances;
+
+	/**
+	 * The number of the witness search in which the node has been reached.
+	 */
+	private final int[] witnessReached;
+
+	/**
+	 * The number of the current witness search.
+	 */
+	private int witnessSearch;
+
+	/**
+	 * The nodes reached but not settled by the current witness search.
+	 */
+	private final IndexedMinHeap witnessUnvisited;
+
+	/**
+	 * Prepare the contraction of the given network.
+	 * @param network The network to be contracted.
+	 */
+	ContractionHierarchyBuilder(NetworkSnapshot network){
+		this.network = network;
+		int nodeCount = network.getNodeCount();
+		int capacity = Math.max(16, network.getLinkCount() * 2);
+		sources = new int[capacity];
+		targets = new int[capacity];
+		weights = new double[capacity];
+		links = new int[capacity];
+		firstHalves = new int[capacity];
+		secondHalves = new int[capacity];
+		outgoingEdges = new int[nodeCount][];
+		outgoingCounts = new int[nodeCount];
+		incomingEdges = new int[nodeCount][];
+		incomingCounts = new int[nodeCount];
+		for(int i = 0; i < nodeCount; i++){
+			outgoingEdges[i] = new int[network.getFirstLink(i + 1) - network.getFirstLink(i)];
+			incomingEdges[i] = new int[4];
+		}
+		levels = new int[nodeCount];
+		witnessDistances = new double[nodeCount];
+		witnessReached = new int[nodeCount];
+		witnessSearch = 0;
+		witnessUnvisited = new IndexedMinHeap(nodeCount);
+	}
+
+	/**
+	 * Contract all the nodes of the network.
+	 * @return The resulting hierarchy.
+	 */
+	ContractionHierarchy build(){
+		for(int link = 0; link < network.getLinkCount(); link++){
+			int source = network.getSource(link);
+			int target = network.getTarget(link);
+			if(source != target){
+				addOrImproveEdge(source, target, network.getLength(link), link, -1, -1);
+			}
+		}
+
+		int nodeCount = network.getNodeCount();
+		IndexedMinHeap queue = new IndexedMinHeap(nodeCount);
+		for(int node = 0; node < nodeCount; node++){
+			queue.insertOrDecrease(node, getPriority(node));
+		}
+		int[] ranks = new int[nodeCount];
+		int rank = 0;
+		while(!queue.isEmpty()){
+			int node = queue.poll();
+			double priority = getPriority(node);
+			if(!queue.isEmpty() && priority > queue.peekPriority()){
+				queue.insertOrDecrease(node, priority);
+				continue;
+			}
+			contract(node, true);
+			ranks[node] = rank++;
+			detach(node);
+			updateNeighbours(node, queue);
+		}
+
+		return new ContractionHierarchy(network, ranks,
+				Arrays.copyOf(sources, edgeCount), Arrays.copyOf(targets, edgeCount),
+				Arrays.copyOf(weights, edgeCount), Arrays.copyOf(links, edgeCount),
+				Arrays.copyOf(firstHalves, edgeCount), Arrays.copyOf(secondHalves, edgeCount));
+	}
+
+	/**
+	 * Remove the edges of the contracted node from the edges of its neighbours,
+	 * so that the searches do not need to skip them.
+	 * @param node The contracted node.
+	 */
+	private void detach(int node){
+		for(int i = 0; i < incomingCounts[node]; i++){
+			int edge = incomingEdges[node][i];
+			int neighbour = sources[edge];
+			outgoingCounts[neighbour] = remove(outgoingEdges[neighbour], outgoingCounts[neighbour], edge);
+		}
+		for(int i = 0; i < outgoingCounts[node]; i++){
+			int edge = outgoingEdges[node][i];
+			int neighbour = targets[edge];
+			incomingCounts[neighbour] = remove(incomingEdges[neighbour], incomingCounts[neighbour], edge);
+		}
+	}
+
+	/**
+	 * Remove the edge from the list of the edges, replacing it by the last one.
+	 * @param edges The list of the edges.
+	 * @param count The number of the edges in the list.
+	 * @param edge The edge to be removed.
+	 * @return The number of the edges in the list after the removal.
+	 */
+	private static int remove(int[] edges, int count, int edge){
+		for(int i = 0; i < count; i++){
+			if(edges[i] == edge){
+				edges[i] = edges[count - 1];
+				return count - 1;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Update the priorities of the remaining neighbours of the contracted node.
+	 * @param node The contracted node.
+	 * @param queue The nodes to be contracted, ordered by their priorities.
+	 */
+	private void updateNeighbours(int node, IndexedMinHeap queue){
+		for(int i = 0; i < outgoingCounts[node]; i++){
+			int neighbour = targets[outgoingEdges[node][i]];
+			levels[neighbour] = Math.max(levels[neighbour], levels[node] + 1);
+		}
+		for(int i = 0; i < incomingCounts[node]; i++){
+			int neighbour = sources[incomingEdges[node][i]];
+			levels[neighbour] = Math.max(levels[neighbour], levels[node] + 1);
+		}
+		for(int i = 0; i < outgoingCounts[node]; i++){
+			int neighbour = targets[outgoingEdges[node][i]];
+			if(queue.contains(neighbour)){
+				queue.insertOrUpdate(neighbour, getPriority(neighbour));
+			}
+		}
+		for(int i = 0; i < incomingCounts[node]; i++){
+			int neighbour = sources[incomingEdges[node][i]];
+			if(queue.contains(neighbour)){
+				queue.insertOrUpdate(neighbour, getPriority(neighbour));
+			}
+		}
+	}
+
+	/**
+	 * Compute the priority of the node. The lower the priority the sooner the node is contracted.
+	 * @param node The node whose priority is required.
+	 * @return The priority of the node.
+	 */
+	private double getPriority(int node){
+		int degree = outgoingCounts[node] + incomingCounts[node];
+		return contract(node, false) - degree + levels[node];
+	}
+
+	/**
+	 * Find the shortcuts needed to contract the node.
+	 * @param node The node to be contracted.
+	 * @param add If true the shortcuts are added, otherwise they are only counted.
+	 * @return The number of the shortcuts.
+	 */
+	private int contract(int node, boolean add){
+		int shortcutCount = 0;
+		for(int i = 0; i < incomingCounts[node]; i++){
+			int incoming = incomingEdges[node][i];
+			int from = sources[incoming];
+			double maxDistance = -1;
+			for(int j = 0; j < outgoingCounts[node]; j++){
+				int outgoing = outgoingEdges[node][j];
+				int to = targets[outgoing];
+				if(to != from){
+					maxDistance = Math.max(maxDistance, weights[incoming] + weights[outgoing]);
+				}
+			}
+			if(maxDistance < 0){
+				continue;
+			}
+			searchWitnesses(from, node, maxDistance, add ? WITNESS_SEARCH_LIMIT : ESTIMATE_SEARCH_LIMIT);
+			for(int j = 0; j < outgoingCounts[node]; j++){
+				int outgoing = outgoingEdges[node][j];
+				int to = targets[outgoing];
+				if(to == from){
+					continue;
+				}
+				double distance = weights[incoming] + weights[outgoing];
+				if(witnessReached[to] == witnessSearch && witnessDistances[to] <= distance){
+					continue;
+				}
+				shortcutCount++;
+				if(add){
+					addOrImproveEdge(from, to, distance, -1, incoming, outgoing);
+				}
+			}
+		}
+		return shortcutCount;
+	}
+
+	/**
+	 * Search for the paths from the source node avoiding the node being contracted,
+	 * until the distance exceeds the given limit or too many nodes are settled.
+	 * @param source The node to start from.
+	 * @param avoided The node being contracted.
+	 * @param maxDistance The length of the longest path that needs a witness.
+	 * @param limit The maximum number of the nodes to be settled.
+	 */
+	private void searchWitnesses(int source, int avoided, double maxDistance, int limit){
+		if(witnessSearch == Integer.MAX_VALUE){
+			Arrays.fill(witnessReached, 0);
+			witnessSearch = 0;
+		}
+		witnessSearch++;
+		witnessDistances[source] = 0;
+		witnessReached[source] = witnessSearch;
+		witnessUnvisited.insertOrDecrease(source, 0);
+		int settledCount = 0;
+		while(!witnessUnvisited.isEmpty() && witnessUnvisited.peekPriority() <= maxDistance
+				&& settledCount < limit){
+			int current = witnessUnvisited.poll();
+			settledCount++;
+			for(int i = 0; i < outgoingCounts[current]; i++){
+				int edge = outgoingEdges[current][i];
+				int successor = targets[edge];
+				if(successor == avoided){
+					continue;
+				}
+				double distance = witnessDistances[current] + weights[edge];
+				if(witnessReached[successor] != witnessSearch || distance < witnessDistances[successor]){
+					witnessReached[successor] = witnessSearch;
+					witnessDistances[successor] = distance;
+					witnessUnvisited.insertOrDecrease(successor, distance);
+				}
+			}
+		}
+		witnessUnvisited.clear();
+	}
+
+	/**
+	 * Add a new edge, unless there already is an edge between the nodes. If the existing
+	 * edge is longer it is changed to the new one instead. An edge between two nodes
+	 * which are not contracted is not a part of any shortcut, so it can be changed safely.
+	 * @param source The node from which the edge goes.
+	 * @param target The node to which the edge goes.
+	 * @param weight The length of the edge.
+	 * @param link The index of the link represented by the edge, -1 for a shortcut.
+	 * @param firstHalf The first edge of the path replaced by the shortcut, -1 for a link.
+	 * @param secondHalf The second edge of the path replaced by the shortcut, -1 for a link.
+	 */
+	private void addOrImproveEdge(int source, int target, double weight, int link, int firstHalf, int secondHalf){
+		for(int i = 0; i < outgoingCounts[source]; i++){
+			int edge = outgoingEdges[source][i];
+			if(targets[edge] == target){
+				if(weight < weights[edge]){
+					weights[edge] = weight;
+					links[edge] = link;
+					firstHalves[edge] = firstHalf;
+					secondHalves[edge] = secondHalf;
+				}
+				return;
+			}
+		}
+		addEdge(source, target, weight, link, firstHalf, secondHalf);
+	}
+
+	/**
+	 * Add a new edge.
+	 * @param source The node from which the edge goes.
+	 * @param target The node to which the edge goes.
+	 * @param weight The length of the edge.
+	 * @param link The index of the link represented by the edge, -1 for a shortcut.
+	 * @param firstHalf The first edge of the path replaced by the shortcut, -1 for a link.
+	 * @param secondHalf The second edge of the path replaced by the shortcut, -1 for a link.
+	 */
+	private void addEdge(int source, int target, double weight, int link, int firstHalf, int secondHalf){
+		if(edgeCount == sources.length){
+			int capacity = edgeCount * 2;
+			sources = Arrays.copyOf(sources, capacity);
+			targets = Arrays.copyOf(targets, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+			links = Arrays.copyOf(links, capacity);
+			firstHalves = Arrays.copyOf(firstHalves, capacity);
+			secondHalves = Arrays.copyOf(secondHalves, capacity);
+		}
+		int edge = edgeCount++;
+		sources[edge] = source;
+		targets[edge] = target;
+		weights[edge] = weight;
+		links[edge] = link;
+		firstHalves[edge] = firstHalf;
+		secondHalves[edge] = secondHalf;
+
+		if(outgoingCounts[source] == outgoingEdges[source].length){
+			outgoingEdges[source] = Arrays.copyOf(outgoingEdges[source], Math.max(4, outgoingCounts[source] * 2));
+		}
+		outgoingEdges[source][outgoingCounts[source]++] = edge;
+		if(incomingCounts[target] == incomingEdges[target].length){
+			incomingEdges[target] = Arrays.copyOf(incomingEdges[target], Math.max(4, incomingCounts[target] * 2));
+		}
+		incomingEdges[target][incomingCounts[target]++] = edge;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,267 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes shortest paths using a {@link ContractionHierarchy}.
+ * <p>
+ * The query searches from the source along the edges to more important nodes
+ * and from the target against the edges from more important nodes, until neither
+ * search can improve the shortest path found where they meet. The shortcuts on the
+ * path are then replaced by the links they stand for.
+ * </p>
+ * <p>
+ * The paths have the same length as those found by {@link Dijkstra}. If there are
+ * more shortest paths, any of them may be returned. The router is not thread-safe;
+ * use one router per thread. The hierarchy itself can be shared.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public class ContractionHierarchyRouter {
+
+	/**
+	 * The hierarchy to search the paths in.
+	 */
+	private final ContractionHierarchy hierarchy;
+
+	/**
+	 * The distances from the source, valid for the nodes reached by the forward search.
+	 */
+	private final double[] forwardDistances;
+
+	/**
+	 * The distances to the target, valid for the nodes reached by the backward search.
+	 */
+	private final double[] backwardDistances;
+
+	/**
+	 * The edges by which the forward search reached the nodes, -1 for the source.
+	 */
+	private final int[] forwardEdges;
+
+	/**
+	 * The edges by which the backward search reached the nodes, -1 for the target.
+	 */
+	private final int[] backwardEdges;
+
+	/**
+	 * The number of the query in which the forward search reached the node.
+	 */
+	private final int[] forwardReached;
+
+	/**
+	 * The number of the query in which the backward search reached the node.
+	 */
+	private final int[] backwardReached;
+
+	/**
+	 * The number of the current query.
+	 */
+	private int query;
+
+	/**
+	 * The nodes reached but not settled by the forward search.
+	 */
+	private final IndexedMinHeap forwardUnvisited;
+
+	/**
+	 * The nodes reached but not settled by the backward search.
+	 */
+	private final IndexedMinHeap backwardUnvisited;
+
+	/**
+	 * The length of the shortest path found by the last query.
+	 */
+	private double bestDistance;
+
+	/**
+	 * The node where the searches of the shortest path found by the last query meet, -1 if none.
+	 */
+	private int meetingNode;
+
+	/**
+	 * Create a new router for the given hierarchy.
+	 * @param hierarchy The hierarchy to search the paths in.
+	 * @throws IllegalArgumentException Thrown if the hierarchy argument is null.
+	 */
+	public ContractionHierarchyRouter(ContractionHierarchy hierarchy){
+		if(hierarchy == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "hierarchy"));
+		}
+		this.hierarchy = hierarchy;
+		int nodeCount = hierarchy.getNetwork().getNodeCount();
+		forwardDistances = new double[nodeCount];
+		backwardDistances = new double[nodeCount];
+		forwardEdges = new int[nodeCount];
+		backwardEdges = new int[nodeCount];
+		forwardReached = new int[nodeCount];
+		backwardReached = new int[nodeCount];
+		query = 0;
+		forwardUnvisited = new IndexedMinHeap(nodeCount);
+		backwardUnvisited = new IndexedMinHeap(nodeCount);
+	}
+
+	/**
+	 * Compute the shortest path from the source {@link Node} to the target {@link Node}.
+	 * @param source The node to start from.
+	 * @param target The node to finish at.
+	 * @return The list of links which constitutes the path from source to target.
+	 * 		If the path doesn't exist the list is empty.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is null or is not in the network.
+	 */
+	public List<Link> getShortestPath(Node source, Node target){
+		search(getIndex(source, "source"), getIndex(target, "target"));
+		if(meetingNode < 0){
+			return Collections.emptyList();
+		}
+		List<Integer> edges = new ArrayList<>();
+		for(int node = meetingNode; forwardEdges[node] >= 0; node = hierarchy.getSource(forwardEdges[node])){
+			edges.add(forwardEdges[node]);
+		}
+		Collections.reverse(edges);
+		for(int node = meetingNode; backwardEdges[node] >= 0; node = hierarchy.getTarget(backwardEdges[node])){
+			edges.add(backwardEdges[node]);
+		}
+
+		NetworkSnapshot network = hierarchy.getNetwork();
+		List<Link> path = new ArrayList<>();
+		int[] stack = new int[16];
+		for(int edge : edges){
+			int size = 0;
+			stack[size++] = edge;
+			while(size > 0){
+				int current = stack[--size];
+				if(hierarchy.getLink(current) >= 0){
+					path.add(network.getLink(hierarchy.getLink(current)));
+				} else {
+					if(size + 2 > stack.length){
+						stack = Arrays.copyOf(stack, stack.length * 2);
+					}
+					stack[size++] = hierarchy.getSecondHalf(current);
+					stack[size++] = hierarchy.getFirstHalf(current);
+				}
+			}
+		}
+		return path;
+	}
+
+	/**
+	 * Compute the length of the shortest path from the source {@link Node} to the target {@link Node}.
+	 * @param source The node to start from.
+	 * @param target The node to finish at.
+	 * @return The length of the shortest path, +&infin; if the path doesn't exist.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is null or is not in the network.
+	 */
+	public double getDistance(Node source, Node target){
+		search(getIndex(source, "source"), getIndex(target, "target"));
+		return bestDistance;
+	}
+
+	/**
+	 * Get the index of the given node.
+	 * @param node The node whose index is required.
+	 * @param argument The name of the argument, for the error message.
+	 * @return The index of the node.
+	 * @throws IllegalArgumentException Thrown if the node is null or is not in the network.
+	 */
+	private int getIndex(Node node, String argument){
+		if(node == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", argument));
+		}
+		int index = hierarchy.getNetwork().getNodeIndex(node);
+		if(index < 0){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" is not a node of the network.", argument));
+		}
+		return index;
+	}
+
+	/**
+	 * Run the forward and the backward search, alternating the one with the closer
+	 * unsettled node, until none of them can find a shorter path.
+	 * @param source The index of the node to start from.
+	 * @param target The index of the node to finish at.
+	 */
+	private void search(int source, int target){
+		if(query == Integer.MAX_VALUE){
+			Arrays.fill(forwardReached, 0);
+			Arrays.fill(backwardReached, 0);
+			query = 0;
+		}
+		query++;
+		bestDistance = Double.POSITIVE_INFINITY;
+		meetingNode = -1;
+		forwardDistances[source] = 0;
+		forwardEdges[source] = -1;
+		forwardReached[source] = query;
+		forwardUnvisited.insertOrDecrease(source, 0);
+		backwardDistances[target] = 0;
+		backwardEdges[target] = -1;
+		backwardReached[target] = query;
+		backwardUnvisited.insertOrDecrease(target, 0);
+
+		while(true){
+			boolean forward = !forwardUnvisited.isEmpty() && forwardUnvisited.peekPriority() < bestDistance;
+			boolean backward = !backwardUnvisited.isEmpty() && backwardUnvisited.peekPriority() < bestDistance;
+			if(forward && backward){
+				forward = forwardUnvisited.peekPriority() <= backwardUnvisited.peekPriority();
+			} else if(!forward && !backward){
+				break;
+			}
+			if(forward){
+				int current = forwardUnvisited.poll();
+				meet(current);
+				int last = hierarchy.getUpwardOffset(current + 1);
+				for(int i = hierarchy.getUpwardOffset(current); i < last; i++){
+					int edge = hierarchy.getUpwardEdge(i);
+					int successor = hierarchy.getTarget(edge);
+					double distance = forwardDistances[current] + hierarchy.getWeight(edge);
+					if(forwardReached[successor] != query || distance < forwardDistances[successor]){
+						forwardReached[successor] = query;
+						forwardDistances[successor] = distance;
+						forwardEdges[successor] = edge;
+						forwardUnvisited.insertOrDecrease(successor, distance);
+					}
+				}
+			} else {
+				int current = backwardUnvisited.poll();
+				meet(current);
+				int last = hierarchy.getDownwardOffset(current + 1);
+				for(int i = hierarchy.getDownwardOffset(current); i < last; i++){
+					int edge = hierarchy.getDownwardEdge(i);
+					int predecessor = hierarchy.getSource(edge);
+					double distance = backwardDistances[current] + hierarchy.getWeight(edge);
+					if(backwardReached[predecessor] != query || distance < backwardDistances[predecessor]){
+						backwardReached[predecessor] = query;
+						backwardDistances[predecessor] = distance;
+						backwardEdges[predecessor] = edge;
+						backwardUnvisited.insertOrDecrease(predecessor, distance);
+					}
+				}
+			}
+		}
+		forwardUnvisited.clear();
+		backwardUnvisited.clear();
+	}
+
+	/**
+	 * Check whether the path through the given node, reached by both the searches,
+	 * is shorter than the shortest path found so far.
+	 * @param node The index of the node.
+	 */
+	private void meet(int node){
+		if(forwardReached[node] == query && backwardReached[node] == query){
+			double distance = forwardDistances[node] + backwardDistances[node];
+			if(distance < bestDistance){
+				bestDistance = distance;
+				meetingNode = node;
+			}
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,205 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.Arrays;
+
+/**
+ * A binary min-heap of the integers 0 .. capacity-1, each of them with a priority.
+ * The position of every element in the heap is remembered, so the priority of
+ * an element already present can be decreased in O(log n).
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+class IndexedMinHeap {
+
+	/**
+	 * The elements in the heap order.
+	 */
+	private final int[] heap;
+
+	/**
+	 * The priorities of the elements, indexed by the elements.
+	 */
+	private final double[] priorities;
+
+	/**
+	 * The positions of the elements in {@link #heap}, indexed by the elements.
+	 * -1 for the elements that are not present.
+	 */
+	private final int[] positions;
+
+	/**
+	 * The number of the elements in the heap.
+	 */
+	private int size;
+
+	/**
+	 * Create an empty heap for the elements 0 .. capacity-1.
+	 * @param capacity The number of the possible elements.
+	 */
+	public IndexedMinHeap(int capacity){
+		heap = new int[capacity];
+		priorities = new double[capacity];
+		positions = new int[capacity];
+		Arrays.fill(positions, -1);
+		size = 0;
+	}
+
+	/**
+	 * Check whether the heap is empty.
+	 * @return True if the heap has no elements.
+	 */
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/**
+	 * Get the number of the elements in the heap.
+	 * @return The number of the elements in the heap.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Check whether the element is in the heap.
+	 * @param element The element to be checked.
+	 * @return True if the element is in the heap.
+	 */
+	public boolean contains(int element){
+		return positions[element] >= 0;
+	}
+
+	/**
+	 * Insert the element with the given priority, or decrease the priority
+	 * of the element if it is already present with a higher one.
+	 * @param element The element to be inserted.
+	 * @param priority The priority of the element.
+	 * @return True if the heap has changed.
+	 */
+	public boolean insertOrDecrease(int element, double priority){
+		int position = positions[element];
+		if(position < 0){
+			position = size++;
+			heap[position] = element;
+			positions[element] = position;
+		} else if(priority >= priorities[element]){
+			return false;
+		}
+		priorities[element] = priority;
+		siftUp(position);
+		return true;
+	}
+
+	/**
+	 * Insert the element with the given priority, or change the priority
+	 * of the element if it is already present.
+	 * @param element The element to be inserted.
+	 * @param priority The new priority of the element.
+	 */
+	public void insertOrUpdate(int element, double priority){
+		int position = positions[element];
+		if(position < 0){
+			insertOrDecrease(element, priority);
+			return;
+		}
+		double previous = priorities[element];
+		priorities[element] = priority;
+		if(priority < previous){
+			siftUp(position);
+		} else {
+			siftDown(position);
+		}
+	}
+
+	/**
+	 * Get the priority of the element with the lowest priority.
+	 * @return The lowest priority in the heap.
+	 * @throws IllegalStateException Thrown if the heap is empty.
+	 */
+	public double peekPriority(){
+		if(size == 0){
+			throw new IllegalStateException("The heap is empty.");
+		}
+		return priorities[heap[0]];
+	}
+
+	/**
+	 * Remove the element with the lowest priority.
+	 * @return The removed element.
+	 * @throws IllegalStateException Thrown if the heap is empty.
+	 */
+	public int poll(){
+		if(size == 0){
+			throw new IllegalStateException("The heap is empty.");
+		}
+		int top = heap[0];
+		positions[top] = -1;
+		size--;
+		if(size > 0){
+			int last = heap[size];
+			heap[0] = last;
+			positions[last] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	/**
+	 * Remove all the elements. Takes time proportional to the number
+	 * of the elements present, not to the capacity.
+	 */
+	public void clear(){
+		for(int i = 0; i < size; i++){
+			positions[heap[i]] = -1;
+		}
+		size = 0;
+	}
+
+	/**
+	 * Move the element at the given position up until the heap order is restored.
+	 * @param position The position of the element.
+	 */
+	private void siftUp(int position){
+		int element = heap[position];
+		double priority = priorities[element];
+		while(position > 0){
+			int parentPosition = (position - 1) >>> 1;
+			int parent = heap[parentPosition];
+			if(priorities[parent] <= priority){
+				break;
+			}
+			heap[position] = parent;
+			positions[parent] = position;
+			position = parentPosition;
+		}
+		heap[position] = element;
+		positions[element] = position;
+	}
+
+	/**
+	 * Move the element at the given position down until the heap order is restored.
+	 * @param position The position of the element.
+	 */
+	private void siftDown(int position){
+		int element = heap[position];
+		double priority = priorities[element];
+		int half = size >>> 1;
+		while(position < half){
+			int childPosition = 2 * position + 1;
+			int child = heap[childPosition];
+			int rightPosition = childPosition + 1;
+			if(rightPosition < size && priorities[heap[rightPosition]] < priorities[child]){
+				childPosition = rightPosition;
+				child = heap[childPosition];
+			}
+			if(priority <= priorities[child]){
+				break;
+			}
+			heap[position] = child;
+			positions[child] = position;
+			position = childPosition;
+		}
+		heap[position] = element;
+		positions[element] = position;
+	}
+}
\ No newline at end of file
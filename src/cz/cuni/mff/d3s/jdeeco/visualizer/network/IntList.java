@@ -0,0 +1,73 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive integers, used to collect the results of the queries
+ * without boxing them.
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+class IntList {
+
+	/**
+	 * The elements of the list, followed by unused space.
+	 */
+	private int[] elements;
+
+	/**
+	 * The number of the elements in the list.
+	 */
+	private int size;
+
+	/**
+	 * Create an empty list.
+	 */
+	public IntList(){
+		elements = new int[16];
+		size = 0;
+	}
+
+	/**
+	 * Append the element to the end of the list.
+	 * @param element The element to be appended.
+	 */
+	public void add(int element){
+		if(size == elements.length){
+			elements = Arrays.copyOf(elements, 2 * size);
+		}
+		elements[size++] = element;
+	}
+
+	/**
+	 * Get the number of the elements in the list.
+	 * @return The number of the elements in the list.
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Copy the elements of the list to an array.
+	 * @return The elements of the list.
+	 */
+	public int[] toArray(){
+		return Arrays.copyOf(elements, size);
+	}
+
+	/**
+	 * Copy the distinct elements of the list to an array, in the ascending order.
+	 * @return The distinct elements of the list.
+	 */
+	public int[] toSortedDistinctArray(){
+		int[] sorted = toArray();
+		Arrays.sort(sorted);
+		int count = 0;
+		for(int i = 0; i < sorted.length; i++){
+			if(count == 0 || sorted[count - 1] != sorted[i]){
+				sorted[count++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, count);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,294 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+/**
+ * A two-dimensional k-d tree of points, answering the nearest neighbour,
+ * k nearest neighbours and range queries.
+ * <p>
+ * The points are identified by their indices in the arrays of the coordinates the tree
+ * is built from. The tree is balanced, its nodes are stored implicitly in arrays:
+ * the subtree of the positions lo .. hi-1 has its root in the middle position, the points
+ * before it are not greater and the points after it are not less in the splitting
+ * coordinate, which alternates between x and y with the depth.
+ * </p>
+ * <p>
+ * The tree is immutable, so it can be queried from more threads at once.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class KdTree {
+
+	/**
+	 * The indices of the points, in the tree order.
+	 */
+	private final int[] points;
+
+	/**
+	 * The x coordinates of the points, in the tree order.
+	 */
+	private final double[] xs;
+
+	/**
+	 * The y coordinates of the points, in the tree order.
+	 */
+	private final double[] ys;
+
+	/**
+	 * Build the tree of the given points.
+	 * @param xs The x coordinates of the points.
+	 * @param ys The y coordinates of the points.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null,
+	 * 		or if the arrays differ in length.
+	 */
+	public KdTree(double[] xs, double[] ys){
+		if(xs == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "xs"));
+		}
+		if(ys == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "ys"));
+		}
+		if(xs.length != ys.length){
+			throw new IllegalArgumentException(String.format(
+					"The arguments \"%s\" and \"%s\" differ in length.", "xs", "ys"));
+		}
+		this.xs = xs.clone();
+		this.ys = ys.clone();
+		points = new int[xs.length];
+		for(int i = 0; i < points.length; i++){
+			points[i] = i;
+		}
+		build(0, points.length, true);
+	}
+
+	/**
+	 * Get the number of the points in the tree.
+	 * @return The number of the points in the tree.
+	 */
+	public int size(){
+		return points.length;
+	}
+
+	/**
+	 * Find the point nearest to the given location.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @return The index of the nearest point, -1 if the tree is empty.
+	 */
+	public int getNearest(double x, double y){
+		int[] nearest = getNearest(x, y, 1);
+		return (nearest.length == 0) ? -1 : nearest[0];
+	}
+
+	/**
+	 * Find the given number of the points nearest to the given location.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @param count The number of the points to be found.
+	 * @return The indices of the nearest points, the nearest first. Fewer than count
+	 * 		if the tree does not contain enough points.
+	 * @throws IllegalArgumentException Thrown if the count argument is negative.
+	 */
+	public int[] getNearest(double x, double y, int count){
+		if(count < 0){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be negative.", "count"));
+		}
+		NearestItems nearest = new NearestItems(Math.min(count, points.length), false);
+		if(count > 0){
+			searchNearest(0, points.length, true, x, y, nearest);
+		}
+		return nearest.toArray();
+	}
+
+	/**
+	 * Find all the points in the given rectangle, including its borders.
+	 * @param minX The lowest x coordinate of the rectangle.
+	 * @param minY The lowest y coordinate of the rectangle.
+	 * @param maxX The highest x coordinate of the rectangle.
+	 * @param maxY The highest y coordinate of the rectangle.
+	 * @return The indices of the points in the rectangle, in no particular order.
+	 */
+	public int[] getInRange(double minX, double minY, double maxX, double maxY){
+		IntList result = new IntList();
+		searchRange(0, points.length, true, minX, minY, maxX, maxY, result);
+		return result.toArray();
+	}
+
+	/**
+	 * Find all the points within the given distance from the given location.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @param radius The maximal distance of the points.
+	 * @return The indices of the points within the distance, in no particular order.
+	 */
+	public int[] getWithin(double x, double y, double radius){
+		IntList result = new IntList();
+		searchWithin(0, points.length, true, x, y, radius * radius, result);
+		return result.toArray();
+	}
+
+	/**
+	 * Arrange the points at the positions lo .. hi-1 into a subtree.
+	 * @param lo The first position of the subtree.
+	 * @param hi The position after the last one of the subtree.
+	 * @param splitX If true, the root of the subtree splits the points by the x coordinate,
+	 * 		otherwise by the y coordinate.
+	 */
+	private void build(int lo, int hi, boolean splitX){
+		while(hi - lo > 1){
+			int middle = (lo + hi) >>> 1;
+			select(lo, hi, middle, splitX ? xs : ys);
+			build(middle + 1, hi, !splitX);
+			hi = middle;
+			splitX = !splitX;
+		}
+	}
+
+	/**
+	 * Rearrange the points at the positions lo .. hi-1 so that the given position holds
+	 * the point which would be there if they were sorted by the given coordinate,
+	 * the points before it are not greater and the points after it are not less.
+	 * @param lo The first position of the points.
+	 * @param hi The position after the last one of the points.
+	 * @param position The position to be filled.
+	 * @param keys The coordinates the points are compared by.
+	 */
+	private void select(int lo, int hi, int position, double[] keys){
+		hi--;
+		while(hi > lo){
+			double pivot = keys[(lo + hi) >>> 1];
+			int i = lo;
+			int j = hi;
+			while(i <= j){
+				while(keys[i] < pivot){
+					i++;
+				}
+				while(keys[j] > pivot){
+					j--;
+				}
+				if(i <= j){
+					swap(i++, j--);
+				}
+			}
+			if(position <= j){
+				hi = j;
+			} else if(position >= i){
+				lo = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Swap the points at the given positions.
+	 * @param first The position of the first point.
+	 * @param second The position of the second point.
+	 */
+	private void swap(int first, int second){
+		int point = points[first];
+		points[first] = points[second];
+		points[second] = point;
+		double x = xs[first];
+		xs[first] = xs[second];
+		xs[second] = x;
+		double y = ys[first];
+		ys[first] = ys[second];
+		ys[second] = y;
+	}
+
+	/**
+	 * Offer the points of the subtree which may be nearer than the farthest point
+	 * collected so far to the collection.
+	 * @param lo The first position of the subtree.
+	 * @param hi The position after the last one of the subtree.
+	 * @param splitX If true, the root of the subtree splits the points by the x coordinate.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @param nearest The nearest points collected so far.
+	 */
+	private void searchNearest(int lo, int hi, boolean splitX, double x, double y, NearestItems nearest){
+		if(lo >= hi){
+			return;
+		}
+		int middle = (lo + hi) >>> 1;
+		double dx = xs[middle] - x;
+		double dy = ys[middle] - y;
+		nearest.offer(points[middle], dx * dx + dy * dy);
+		double difference = splitX ? -dx : -dy;
+		if(difference < 0){
+			searchNearest(lo, middle, !splitX, x, y, nearest);
+			if(difference * difference < nearest.getBound()){
+				searchNearest(middle + 1, hi, !splitX, x, y, nearest);
+			}
+		} else {
+			searchNearest(middle + 1, hi, !splitX, x, y, nearest);
+			if(difference * difference < nearest.getBound()){
+				searchNearest(lo, middle, !splitX, x, y, nearest);
+			}
+		}
+	}
+
+	/**
+	 * Collect the points of the subtree which lie in the given rectangle.
+	 * @param lo The first position of the subtree.
+	 * @param hi The position after the last one of the subtree.
+	 * @param splitX If true, the root of the subtree splits the points by the x coordinate.
+	 * @param minX The lowest x coordinate of the rectangle.
+	 * @param minY The lowest y coordinate of the rectangle.
+	 * @param maxX The highest x coordinate of the rectangle.
+	 * @param maxY The highest y coordinate of the rectangle.
+	 * @param result The points found so far.
+	 */
+	private void searchRange(int lo, int hi, boolean splitX, double minX, double minY,
+			double maxX, double maxY, IntList result){
+		if(lo >= hi){
+			return;
+		}
+		int middle = (lo + hi) >>> 1;
+		double x = xs[middle];
+		double y = ys[middle];
+		if(x >= minX && x <= maxX && y >= minY && y <= maxY){
+			result.add(points[middle]);
+		}
+		double split = splitX ? x : y;
+		if(split >= (splitX ? minX : minY)){
+			searchRange(lo, middle, !splitX, minX, minY, maxX, maxY, result);
+		}
+		if(split <= (splitX ? maxX : maxY)){
+			searchRange(middle + 1, hi, !splitX, minX, minY, maxX, maxY, result);
+		}
+	}
+
+	/**
+	 * Collect the points of the subtree which lie within the given distance from the location.
+	 * @param lo The first position of the subtree.
+	 * @param hi The position after the last one of the subtree.
+	 * @param splitX If true, the root of the subtree splits the points by the x coordinate.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @param squaredRadius The square of the maximal distance of the points.
+	 * @param result The points found so far.
+	 */
+	private void searchWithin(int lo, int hi, boolean splitX, double x, double y,
+			double squaredRadius, IntList result){
+		if(lo >= hi){
+			return;
+		}
+		int middle = (lo + hi) >>> 1;
+		double dx = xs[middle] - x;
+		double dy = ys[middle] - y;
+		if(dx * dx + dy * dy <= squaredRadius){
+			result.add(points[middle]);
+		}
+		double difference = splitX ? -dx : -dy;
+		if(difference <= 0 || difference * difference <= squaredRadius){
+			searchWithin(lo, middle, !splitX, x, y, squaredRadius, result);
+		}
+		if(difference >= 0 || difference * difference <= squaredRadius){
+			searchWithin(middle + 1, hi, !splitX, x, y, squaredRadius, result);
+		}
+	}
+}
\ No newline at end of file
@@ -479,45 +479,7 @@ public class Link implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		
-		builder.append("<link ")
-			.append("id=\"").append(id).append("\" ")
-			.append("from=\"").append(from.getId()).append("\" ")
-			.append("to=\"").append(to.getId()).append("\" ")
-			.append("length=\"").append(length).append("\" ")
-			.append("freespeed=\"").append(freeSpeed).append("\" ")
-			.append("capacity=\"").append(capacity).append("\" ")
-			.append("permlanes=\"").append(permLanes).append("\" ")
-			// FIXED "1"
-			.append("oneway=\"1\" ");
-		if(!modes.isEmpty()){
-			builder.append("modes=\"");
-			for(String mode : modes){
-				builder.append(mode).append(",");
-			}
-			// replace the last comma with quotes, there is nothing left
-			// to delimit, only to close the list of values
-			builder.replace(builder.length()-1, builder.length(), "\" ");
-		}
-		if(!Double.isNaN(volume)){
-			builder.append("volume=\"").append(volume).append("\" ");
-		}
-		if(origId != null){
-			builder.append("origid=\"").append(origId).append("\" ");
-		}
-		if(ntCategory != null){
-			builder.append("nt_category=\"").append(ntCategory).append("\" ");
-		}
-		if(ntType != null){
-			builder.append("nt_type=\"").append(ntType).append("\" ");
-		}
-		if(type != null){
-			builder.append("type=\"").append(type).append("\" ");
-		}
-		builder.append("/>");
-		
-		return builder.toString();
+		return NetworkWriter.toXml(this);
 	}
 	
 	/* (non-Javadoc)
@@ -0,0 +1,171 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The SAX handler of the Matsim network XML shared by all the models of the network.
+ * <p>
+ * The nodes and the links are reported in a single pass through the document,
+ * with their mandatory attributes already checked and their numeric attributes
+ * parsed to primitive values. The identifiers are reported as they appear
+ * in the document. The subclasses decide what model is built from them.
+ * </p>
+ * <p>
+ * The Matsim DTD requires the nodes to precede the links, so all the nodes
+ * a link refers to have been reported before the link.
+ * </p>
+ *
+ * @see <a href="http://www.matsim.org/files/dtd/network_v1.dtd">Matsim network
+ *      DTD</a>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public abstract class MatsimNetworkHandler extends DefaultHandler {
+
+	/**
+	 * The name of the root element.
+	 */
+	protected static final String NETWORK_ELEMENT = "network";
+
+	/**
+	 * The name of the element containing all the links.
+	 */
+	protected static final String LINKS_ELEMENT = "links";
+
+	/**
+	 * The name of the node element.
+	 */
+	protected static final String NODE_ELEMENT = "node";
+
+	/**
+	 * The name of the link element.
+	 */
+	protected static final String LINK_ELEMENT = "link";
+
+	@Override
+	public void startElement(String uri, String localName, String qName,
+			Attributes attributes) throws SAXException {
+		switch(qName){
+		case NODE_ELEMENT:
+			node(getMandatory(attributes, NODE_ELEMENT, "id"),
+					parseDouble(NODE_ELEMENT, "x", getMandatory(attributes, NODE_ELEMENT, "x")),
+					parseDouble(NODE_ELEMENT, "y", getMandatory(attributes, NODE_ELEMENT, "y")),
+					attributes);
+			break;
+		case LINK_ELEMENT:
+			link(getMandatory(attributes, LINK_ELEMENT, "id"),
+					getMandatory(attributes, LINK_ELEMENT, "from"),
+					getMandatory(attributes, LINK_ELEMENT, "to"),
+					parseDouble(LINK_ELEMENT, "length", getOptional(attributes, "length")),
+					parseDouble(LINK_ELEMENT, "freespeed", getOptional(attributes, "freespeed")),
+					parseDouble(LINK_ELEMENT, "capacity", getOptional(attributes, "capacity")),
+					parseDouble(LINK_ELEMENT, "permlanes", getOptional(attributes, "permlanes")),
+					attributes);
+			break;
+		case LINKS_ELEMENT:
+			links(attributes);
+			break;
+		case NETWORK_ELEMENT:
+			network(attributes);
+			break;
+		default:
+			break;
+		}
+	}
+
+	/**
+	 * Called when the root element is entered. Does nothing by default.
+	 * @param attributes The attributes of the element.
+	 * @throws SAXException Thrown if the attributes are not valid.
+	 */
+	protected void network(Attributes attributes) throws SAXException {
+	}
+
+	/**
+	 * Called when the element containing all the links is entered. Does nothing by default.
+	 * @param attributes The attributes of the element.
+	 * @throws SAXException Thrown if the attributes are not valid.
+	 */
+	protected void links(Attributes attributes) throws SAXException {
+	}
+
+	/**
+	 * Called for every node element.
+	 * @param id The identifier of the node, as it appears in the document.
+	 * @param x The X coordinate of the node.
+	 * @param y The Y coordinate of the node.
+	 * @param attributes All the attributes of the element, for the optional ones.
+	 * @throws SAXException Thrown if the node cannot be added to the model.
+	 */
+	protected abstract void node(String id, double x, double y, Attributes attributes)
+			throws SAXException;
+
+	/**
+	 * Called for every link element.
+	 * @param id The identifier of the link, as it appears in the document.
+	 * @param from The identifier of the node where the link begins.
+	 * @param to The identifier of the node where the link terminates.
+	 * @param length The length of the link, NaN if not specified.
+	 * @param freeSpeed The free speed of the link, NaN if not specified.
+	 * @param capacity The capacity of the link, NaN if not specified.
+	 * @param permLanes The number of lanes of the link, NaN if not specified.
+	 * @param attributes All the attributes of the element, for the optional ones.
+	 * @throws SAXException Thrown if the link cannot be added to the model.
+	 */
+	protected abstract void link(String id, String from, String to, double length,
+			double freeSpeed, double capacity, double permLanes, Attributes attributes)
+			throws SAXException;
+
+	/**
+	 * Get the value of the attribute which has to be present and non-empty.
+	 * @param attributes The attributes of the element.
+	 * @param element The name of the element, for the error message.
+	 * @param name The name of the attribute.
+	 * @return The value of the attribute.
+	 * @throws SAXException Thrown if the attribute is missing or empty.
+	 */
+	protected static String getMandatory(Attributes attributes, String element, String name)
+			throws SAXException {
+		String value = attributes.getValue(name);
+		if(value == null || value.isEmpty()){
+			throw new SAXException(String.format(
+					"The \"%s\" element is missing the \"%s\" attribute.", element, name));
+		}
+		return value;
+	}
+
+	/**
+	 * Get the value of the attribute which need not be present.
+	 * @param attributes The attributes of the element.
+	 * @param name The name of the attribute.
+	 * @return The value of the attribute, null if the attribute is missing or empty.
+	 */
+	protected static String getOptional(Attributes attributes, String name){
+		String value = attributes.getValue(name);
+		return (value == null || value.isEmpty()) ? null : value;
+	}
+
+	/**
+	 * Parse the value of a numeric attribute.
+	 * @param element The name of the element, for the error message.
+	 * @param name The name of the attribute, for the error message.
+	 * @param value The value of the attribute, may be null.
+	 * @return The parsed value, NaN if the value is null or empty.
+	 * @throws SAXException Thrown if the value is not a number.
+	 */
+	protected static double parseDouble(String element, String name, String value)
+			throws SAXException {
+		if(value == null || value.isEmpty()){
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch(NumberFormatException e){
+			throw new SAXException(String.format(
+					"The \"%s\" attribute of the \"%s\" element is not a number: %s",
+					name, element, value));
+		}
+	}
+}
\ No newline at end of file
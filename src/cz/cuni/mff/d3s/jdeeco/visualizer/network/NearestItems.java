@@ -0,0 +1,148 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+/**
+ * Collects the given number of the items nearest to a point. The items found so far
+ * are kept in a binary max-heap ordered by their distances, so the farthest one
+ * can be replaced in O(log k) when a nearer item is offered.
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+class NearestItems {
+
+	/**
+	 * The items in the heap order.
+	 */
+	private final int[] items;
+
+	/**
+	 * The squared distances of the items, in the heap order.
+	 */
+	private final double[] distances;
+
+	/**
+	 * If true, an item may be offered more times and is kept only once, with its lowest distance.
+	 */
+	private final boolean distinct;
+
+	/**
+	 * The number of the items collected.
+	 */
+	private int size;
+
+	/**
+	 * Create an empty collection.
+	 * @param count The number of the items to be collected.
+	 * @param distinct If true, an item may be offered more times
+	 * 		and is kept only once, with its lowest distance.
+	 */
+	public NearestItems(int count, boolean distinct){
+		items = new int[count];
+		distances = new double[count];
+		this.distinct = distinct;
+		size = 0;
+	}
+
+	/**
+	 * Check whether the required number of the items has been collected.
+	 * @return True if the required number of the items has been collected.
+	 */
+	public boolean isFull(){
+		return size == items.length;
+	}
+
+	/**
+	 * Get the squared distance an item has to be nearer than to be collected.
+	 * @return The squared distance of the farthest item if the collection is full, +&infin; otherwise.
+	 */
+	public double getBound(){
+		return (size == items.length) ? distances[0] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Offer the item to the collection.
+	 * @param item The item.
+	 * @param distance The squared distance of the item.
+	 */
+	public void offer(int item, double distance){
+		if(distinct){
+			for(int i = 0; i < size; i++){
+				if(items[i] == item){
+					if(distance < distances[i]){
+						distances[i] = distance;
+						siftDown(i);
+					}
+					return;
+				}
+			}
+		}
+		if(size < items.length){
+			items[size] = item;
+			distances[size] = distance;
+			siftUp(size++);
+		} else if(size > 0 && distance < distances[0]){
+			items[0] = item;
+			distances[0] = distance;
+			siftDown(0);
+		}
+	}
+
+	/**
+	 * Get the collected items, the nearest first. The collection is emptied.
+	 * @return The collected items.
+	 */
+	public int[] toArray(){
+		int[] result = new int[size];
+		while(size > 0){
+			result[size - 1] = items[0];
+			size--;
+			items[0] = items[size];
+			distances[0] = distances[size];
+			siftDown(0);
+		}
+		return result;
+	}
+
+	/**
+	 * Move the item at the given position up until the heap order is restored.
+	 * @param position The position of the item.
+	 */
+	private void siftUp(int position){
+		int item = items[position];
+		double distance = distances[position];
+		while(position > 0){
+			int parent = (position - 1) >>> 1;
+			if(distances[parent] >= distance){
+				break;
+			}
+			items[position] = items[parent];
+			distances[position] = distances[parent];
+			position = parent;
+		}
+		items[position] = item;
+		distances[position] = distance;
+	}
+
+	/**
+	 * Move the item at the given position down until the heap order is restored.
+	 * @param position The position of the item.
+	 */
+	private void siftDown(int position){
+		int item = items[position];
+		double distance = distances[position];
+		int half = size >>> 1;
+		while(position < half){
+			int child = 2 * position + 1;
+			if(child + 1 < size && distances[child + 1] > distances[child]){
+				child++;
+			}
+			if(distance >= distances[child]){
+				break;
+			}
+			items[position] = items[child];
+			distances[position] = distances[child];
+			position = child;
+		}
+		items[position] = item;
+		distances[position] = distance;
+	}
+}
\ No newline at end of file
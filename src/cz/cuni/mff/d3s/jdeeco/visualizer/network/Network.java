@@ -3,8 +3,10 @@ package cz.cuni.mff.d3s.jdeeco.visualizer.network;
 import java.io.Serializable;
 import java.time.Duration;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -37,7 +39,12 @@ public class Network implements Serializable {
 	 * 
 	 * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
 	 */
-	private class Links {
+	private class Links implements Serializable {
+
+		/**
+		 * Generated UID.
+		 */
+		private static final long serialVersionUID = -4519630370586432712L;
 
 		/**
 		 * The set of {@link Link}s.
@@ -92,38 +99,6 @@ public class Network implements Serializable {
 			effectiveCellSize = 7.5;
 			effectiveLaneWidth = 3.75;
 		}
-		
-		/**
-		 * Returns the Matsim XML representation of the links in the network.
-		 */
-		@Override
-		public String toString() {
-			// Get seconds in the capPeriod
-			long capPeriodS = capPeriod.getSeconds();
-			// Extract hours
-			long capPeriodH = capPeriodS / 3600;
-			// Extract remaining minutes
-			long capPeriodM = (capPeriodS % 3600) / 60;
-			// Extract remaining seconds
-			capPeriodS = capPeriodS % 60;
-			
-			StringBuilder builder = new StringBuilder();
-			
-			builder.append("\t<links ")
-				.append("capperiod=\"").append(String.format("%02d:%02d:%02d",
-						capPeriodH, capPeriodM, capPeriodS)).append("\" ")
-				.append("effectivecellsize=\"").append(effectiveCellSize).append("\" ")
-				.append("effectivelanewidth=\"").append(effectiveLaneWidth).append("\" ")
-				.append(">").append('\n');
-			
-			for(Link link : links){
-				builder.append("\t\t").append(link.toString()).append('\n');
-			}
-			
-			builder.append("\t</links>");
-			
-			return builder.toString();
-		}
 	}
 
 	/**
@@ -135,6 +110,18 @@ public class Network implements Serializable {
 	 * The set of links in the network.
 	 */
 	private Links linksWrap;
+	
+	/**
+	 * The links of the network indexed by the node they go from.
+	 * Nodes with no such link are not present.
+	 */
+	private Map<Node, Set<Link>> outgoingLinks;
+	
+	/**
+	 * The links of the network indexed by the node they go to.
+	 * Nodes with no such link are not present.
+	 */
+	private Map<Node, Set<Link>> incomingLinks;
 
 	/**
 	 * It is always a good idea to give a network a descriptive name for better
@@ -173,6 +160,8 @@ public class Network implements Serializable {
 	public Network(){
 		nodes = new HashSet<>();
 		linksWrap = new Links();
+		outgoingLinks = new HashMap<>();
+		incomingLinks = new HashMap<>();
 		name = null;
 		type = null;
 		language = Locale.ENGLISH;
@@ -211,7 +200,9 @@ public class Network implements Serializable {
 		}
 		if(nodes.contains(node)){
 			nodes.remove(node);
-			linksWrap.links.removeAll(getIncidentLinks(node));
+			for(Link link : getIncidentLinks(node)){
+				removeLink(link);
+			}
 			return true;
 		}
 		return false;
@@ -238,12 +229,16 @@ public class Network implements Serializable {
 					"The argument \"%s\" cannot be null.", "node"));
 		}
 		
+		Set<Link> linksFrom = getLinksFrom(node);
+		if(linksFrom.isEmpty()){
+			return Collections.emptySet();
+		}
 		Set<Node> successors = new HashSet<>();
-		for(Link link : getLinksFrom(node)){
+		for(Link link : linksFrom){
 			successors.add(link.getTo());
 		}
 		
-		return successors;
+		return Collections.unmodifiableSet(successors);
 	}
 	
 	/**
@@ -261,6 +256,8 @@ public class Network implements Serializable {
 		
 		if(!linksWrap.links.contains(link)){
 			linksWrap.links.add(link);
+			addToIndex(outgoingLinks, link.getFrom(), link);
+			addToIndex(incomingLinks, link.getTo(), link);
 			return true;
 		}
 		return false;
@@ -281,11 +278,45 @@ public class Network implements Serializable {
 
 		if(linksWrap.links.contains(link)){
 			linksWrap.links.remove(link);
+			removeFromIndex(outgoingLinks, link.getFrom(), link);
+			removeFromIndex(incomingLinks, link.getTo(), link);
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Add the link to the set associated with the given node in the given index.
+	 * @param index The index to be updated.
+	 * @param node The node under which the link is indexed.
+	 * @param link The link to be added.
+	 */
+	private static void addToIndex(Map<Node, Set<Link>> index, Node node, Link link){
+		Set<Link> links = index.get(node);
+		if(links == null){
+			links = new HashSet<>();
+			index.put(node, links);
+		}
+		links.add(link);
+	}
+	
+	/**
+	 * Remove the link from the set associated with the given node in the given index.
+	 * The set is dropped once it becomes empty.
+	 * @param index The index to be updated.
+	 * @param node The node under which the link is indexed.
+	 * @param link The link to be removed.
+	 */
+	private static void removeFromIndex(Map<Node, Set<Link>> index, Node node, Link link){
+		Set<Link> links = index.get(node);
+		if(links != null){
+			links.remove(link);
+			if(links.isEmpty()){
+				index.remove(node);
+			}
+		}
+	}
+	
 	/**
 	 * Return all the links in the graph.
 	 * @return All the links in the graph.
@@ -298,7 +329,8 @@ public class Network implements Serializable {
 	 * Get all the links that are incident with the given node.
 	 * <p>link.getFrom() == node || link.getTo() == node</p>
 	 * @param node The node incident with the required links.
-	 * @return The links that are incidet with the given node.
+	 * @return The links that are incidet with the given node. The returned set
+	 * 		cannot be modified and does not reflect later changes of the graph.
 	 * @throws IllegalArgumentException Thrown if the node argument is null.
 	 */
 	public Set<Link> getIncidentLinks(Node node){
@@ -307,19 +339,22 @@ public class Network implements Serializable {
 					"The argument \"%s\" cannot be null.", "node"));
 		}
 		
-		Set<Link> incidentLinks = new HashSet<>();
-		for(Link link : linksWrap.links){
-			if(link.getFrom().equals(node) || link.getTo().equals(node)){
-				incidentLinks.add(link);
-			}
+		Set<Link> fromLinks = getLinksFrom(node);
+		Set<Link> toLinks = getLinksTo(node);
+		if(fromLinks.isEmpty() && toLinks.isEmpty()){
+			return Collections.emptySet();
 		}
-		return incidentLinks;
+		Set<Link> incidentLinks = new HashSet<>(fromLinks);
+		incidentLinks.addAll(toLinks);
+		return Collections.unmodifiableSet(incidentLinks);
 	}
 	
 	/**
 	 * Get all the links going from the given node.
 	 * @param node The node from which the required links go.
-	 * @return All the links going from the given node.
+	 * @return All the links going from the given node. The returned set
+	 * 		cannot be modified; it is a view of the graph, so it must not be
+	 * 		iterated while the links of the node are being added or removed.
 	 * @throws IllegalArgumentException Thrown if the node argument is null.
 	 */
 	public Set<Link> getLinksFrom(Node node){
@@ -328,19 +363,19 @@ public class Network implements Serializable {
 					"The argument \"%s\" cannot be null.", "node"));
 		}
 		
-		Set<Link> fromLinks = new HashSet<>();
-		for(Link link : linksWrap.links){
-			if(link.getFrom().equals(node)){
-				fromLinks.add(link);
-			}
+		Set<Link> fromLinks = outgoingLinks.get(node);
+		if(fromLinks == null){
+			return Collections.emptySet();
 		}
-		return fromLinks;
+		return Collections.unmodifiableSet(fromLinks);
 	}
 	
 	/**
 	 * Get all the links going to the given node.
 	 * @param node The node to which the required links go.
-	 * @return All the links going to the given node.
+	 * @return All the links going to the given node. The returned set
+	 * 		cannot be modified; it is a view of the graph, so it must not be
+	 * 		iterated while the links of the node are being added or removed.
 	 * @throws IllegalArgumentException Thrown if the node argument is null.
 	 */
 	public Set<Link> getLinksTo(Node node){
@@ -349,13 +384,11 @@ public class Network implements Serializable {
 					"The argument \"%s\" cannot be null.", "node"));
 		}
 		
-		Set<Link> toLinks = new HashSet<>();
-		for(Link link : linksWrap.links){
-			if(link.getTo().equals(node)){
-				toLinks.add(link);
-			}
+		Set<Link> toLinks = incomingLinks.get(node);
+		if(toLinks == null){
+			return Collections.emptySet();
 		}
-		return toLinks;
+		return Collections.unmodifiableSet(toLinks);
 	}
 
 	/**
@@ -509,38 +542,20 @@ public class Network implements Serializable {
 		return linksWrap.effectiveLaneWidth;
 	}
 	
+	/**
+	 * Create an immutable snapshot of the network suitable for analysis.
+	 * @return The snapshot of the current state of the network.
+	 * @see NetworkSnapshot
+	 */
+	public NetworkSnapshot freeze(){
+		return new NetworkSnapshot(this);
+	}
+	
 	/**
 	 * Returns the string Matsim XML representation of the network.
 	 */
 	@Override
 	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		
-		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-		builder.append("<!DOCTYPE network SYSTEM \"http://www.matsim.org/files/dtd/network_v1.dtd\">\n");
-		
-		builder.append("<network ");
-		if(name != null){
-			builder.append("name=\"").append(name).append("\" ");
-		}
-		if(type != null){
-			builder.append("type=\"").append(type).append("\" ");
-		}
-		if(language != null){
-			builder.append("xml:lang=\"").append(language.toLanguageTag()).append("\" ");
-		}
-		builder.append(">\n");
-		
-		builder.append("\t<nodes>\n");
-		for(Node node : nodes){
-			builder.append("\t\t").append(node.toString()).append('\n');
-		}
-		builder.append("\t</nodes>\n");
-		
-		builder.append(linksWrap.toString()).append('\n');
-		
-		builder.append("</network>");
-		
-		return builder.toString();
+		return NetworkWriter.toXml(this);
 	}
 }
@@ -0,0 +1,558 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stores a {@link Network} in a compact binary file and reads it back.
+ * <p>
+ * All the strings of the network, i.e. the identifiers, the modes and the types,
+ * are stored once in a string table and referred to by their indices, -1 standing
+ * for null. The attributes of the nodes and the links follow as columns of primitive
+ * values, so they are read in bulk from a buffer holding the whole file. The links refer
+ * to their end nodes by the positions of the nodes in the file.
+ * </p>
+ * <p>
+ * The file layout (all the numbers big-endian):
+ * </p>
+ * <pre>
+ * int magic, int version
+ * int stringCount, stringCount * (int byteCount, byte[byteCount] utf8)
+ * int name, int type, int language, long capPeriodSeconds,
+ *     double effectiveCellSize, double effectiveLaneWidth
+ * int nodeCount, int[] ids, double[] xs, double[] ys, int[] types, int[] origIds
+ * int linkCount, int[] ids, int[] froms, int[] tos, double[] lengths, double[] freeSpeeds,
+ *     double[] capacities, double[] permLanes, double[] volumes, int[] origIds,
+ *     int[] ntCategories, int[] ntTypes, int[] types, int[linkCount + 1] modeOffsets,
+ *     int[] modes
+ * </pre>
+ * <p>
+ * Like in the Matsim XML, the identifiers of the nodes and the links are strings.
+ * The {@link Node}s and {@link Link}s get their own IDs when read, so the network
+ * is read into a {@link NetworkReader} keeping the identifiers from the file.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class NetworkBinaryFormat {
+
+	/**
+	 * The first bytes of the file.
+	 */
+	private static final int MAGIC = 0x4A444E57;
+
+	/**
+	 * The version of the format of the file.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The extension of the files in this format.
+	 */
+	public static final String EXTENSION = ".jdn";
+
+	/**
+	 * The index standing for a null string.
+	 */
+	private static final int NULL = -1;
+
+	/**
+	 * Not to be instantiated.
+	 */
+	private NetworkBinaryFormat(){
+	}
+
+	/**
+	 * Write the network to the given file. The IDs of the nodes and the links
+	 * are used as their identifiers, like in the Matsim XML written by the {@link NetworkWriter}.
+	 * @param network The network to be written.
+	 * @param file The file the network is written to.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null.
+	 */
+	public static void write(Network network, File file) throws IOException {
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		write(network, null, file);
+	}
+
+	/**
+	 * Write the network held by the reader to the given file, keeping the identifiers
+	 * the nodes and the links have been read with.
+	 * @param reader The reader holding the network to be written.
+	 * @param file The file the network is written to.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null,
+	 * 		or if a node or a link has been added to the network after it was read.
+	 */
+	public static void write(NetworkReader reader, File file) throws IOException {
+		if(reader == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "reader"));
+		}
+		write(reader.getNetwork(), reader, file);
+	}
+
+	/**
+	 * Read the network from the given file.
+	 * @param file The file the network is read from.
+	 * @return The reader holding the network and the identifiers from the file.
+	 * @throws IOException Thrown if the file cannot be read, is corrupted or is larger than 2 GB.
+	 * @throws IllegalArgumentException Thrown if the file argument is null.
+	 */
+	public static NetworkReader read(File file) throws IOException {
+		if(file == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "file"));
+		}
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE){
+				throw new IOException(String.format(
+						"The network file is too large (%d bytes), at most %d bytes can be read.",
+						size, Integer.MAX_VALUE));
+			}
+			buffer = ByteBuffer.allocate((int) size);
+			while(buffer.hasRemaining()){
+				if(channel.read(buffer) < 0){
+					throw new IOException("The network file was truncated while being read.");
+				}
+			}
+		}
+		buffer.flip();
+		try {
+			return read(buffer);
+		} catch(BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e){
+			throw new IOException("The network file is corrupted.", e);
+		}
+	}
+
+	/**
+	 * Write the network to the given file.
+	 * @param network The network to be written.
+	 * @param ids The reader holding the identifiers of the nodes and the links,
+	 * 		null to use their IDs.
+	 * @param file The file the network is written to.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if the file argument is null.
+	 */
+	private static void write(Network network, NetworkReader ids, File file) throws IOException {
+		if(file == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "file"));
+		}
+		// The identifiers are unique, so only the other strings are looked up in the table
+		StringTable strings = new StringTable(network.getNodes().size() + network.getLinks().size());
+		int name = strings.add(network.getName());
+		int type = strings.add(network.getType());
+		int language = strings.add((network.getLanguage() == null) ? null : network.getLanguage().toLanguageTag());
+
+		List<Node> nodes = new ArrayList<>(network.getNodes());
+		Map<Node, Integer> positions = new HashMap<>(2 * nodes.size());
+		int[] nodeIds = new int[nodes.size()];
+		int[] nodeTypes = new int[nodes.size()];
+		int[] nodeOrigIds = new int[nodes.size()];
+		for(int i = 0; i < nodes.size(); i++){
+			Node node = nodes.get(i);
+			positions.put(node, i);
+			nodeIds[i] = strings.append((ids == null) ? Integer.toString(node.getId())
+					: getId(ids.getId(node), "node", node.getId()));
+			nodeTypes[i] = strings.add(node.getType());
+			nodeOrigIds[i] = strings.add(node.getOrigId());
+		}
+
+		// Links whose end nodes are not in the network are left out, as in the snapshot
+		List<Link> links = new ArrayList<>();
+		for(Link link : network.getLinks()){
+			if(positions.containsKey(link.getFrom()) && positions.containsKey(link.getTo())){
+				links.add(link);
+			}
+		}
+		int linkCount = links.size();
+		int[] linkIds = new int[linkCount];
+		int[] linkOrigIds = new int[linkCount];
+		int[] ntCategories = new int[linkCount];
+		int[] ntTypes = new int[linkCount];
+		int[] linkTypes = new int[linkCount];
+		int[] modeOffsets = new int[linkCount + 1];
+		for(int i = 0; i < linkCount; i++){
+			Link link = links.get(i);
+			linkIds[i] = strings.append((ids == null) ? Integer.toString(link.getId())
+					: getId(ids.getId(link), "link", link.getId()));
+			linkOrigIds[i] = strings.add(link.getOrigId());
+			ntCategories[i] = strings.add(link.getNtCategory());
+			ntTypes[i] = strings.add(link.getNtType());
+			linkTypes[i] = strings.add(link.getType());
+			modeOffsets[i + 1] = modeOffsets[i] + link.getModes().size();
+		}
+		int[] modes = new int[modeOffsets[linkCount]];
+		for(int i = 0; i < linkCount; i++){
+			int offset = modeOffsets[i];
+			for(String mode : links.get(i).getModes()){
+				modes[offset++] = strings.add(mode);
+			}
+		}
+
+		long size = 4 + 4 + strings.getSize()
+				+ 4 + 4 + 4 + 8 + 8 + 8
+				+ 4 + nodes.size() * (4L + 8 + 8 + 4 + 4)
+				+ 4 + linkCount * (4L + 4 + 4 + 8 + 8 + 8 + 8 + 8 + 4 + 4 + 4 + 4 + 4) + 4 + 4L * modes.length;
+		if(size > Integer.MAX_VALUE){
+			throw new IOException("The network is too large to be written.");
+		}
+		ByteBuffer buffer = ByteBuffer.allocate((int) size);
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		strings.write(buffer);
+
+		buffer.putInt(name);
+		buffer.putInt(type);
+		buffer.putInt(language);
+		buffer.putLong(network.getCapPeriod().getSeconds());
+		buffer.putDouble(network.getEffectiveCellSize());
+		buffer.putDouble(network.getEffectiveLaneWidth());
+
+		buffer.putInt(nodes.size());
+		putInts(buffer, nodeIds);
+		for(Node node : nodes){
+			buffer.putDouble(node.getX());
+		}
+		for(Node node : nodes){
+			buffer.putDouble(node.getY());
+		}
+		putInts(buffer, nodeTypes);
+		putInts(buffer, nodeOrigIds);
+
+		buffer.putInt(linkCount);
+		putInts(buffer, linkIds);
+		for(Link link : links){
+			buffer.putInt(positions.get(link.getFrom()));
+		}
+		for(Link link : links){
+			buffer.putInt(positions.get(link.getTo()));
+		}
+		for(Link link : links){
+			buffer.putDouble(link.getLength());
+		}
+		for(Link link : links){
+			buffer.putDouble(link.getFreeSpeed());
+		}
+		for(Link link : links){
+			buffer.putDouble(link.getCapacity());
+		}
+		for(Link link : links){
+			buffer.putDouble(link.getPermLanes());
+		}
+		for(Link link : links){
+			buffer.putDouble(link.getVolume());
+		}
+		putInts(buffer, linkOrigIds);
+		putInts(buffer, ntCategories);
+		putInts(buffer, ntTypes);
+		putInts(buffer, linkTypes);
+		putInts(buffer, modeOffsets);
+		putInts(buffer, modes);
+		buffer.flip();
+
+		try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Read the network from the buffer.
+	 * @param buffer The buffer holding the whole file.
+	 * @return The reader holding the network and the identifiers from the file.
+	 * @throws IOException Thrown if the file is not in this format.
+	 * @throws BufferUnderflowException Thrown if the file is truncated.
+	 * @throws IllegalArgumentException Thrown if a value in the file is not valid.
+	 * @throws IndexOutOfBoundsException Thrown if a reference in the file is not valid.
+	 */
+	private static NetworkReader read(ByteBuffer buffer) throws IOException {
+		if(buffer.remaining() < 8 || buffer.getInt() != MAGIC){
+			throw new IOException("The file does not contain a network.");
+		}
+		int version = buffer.getInt();
+		if(version != VERSION){
+			throw new IOException("Unsupported version of the network file: " + version);
+		}
+		String[] strings = StringTable.read(buffer);
+
+		NetworkReader reader = new NetworkReader();
+		Network network = reader.getNetwork();
+		network.setName(getString(strings, buffer.getInt()));
+		network.setType(getString(strings, buffer.getInt()));
+		String language = getString(strings, buffer.getInt());
+		if(language != null){
+			network.setLanguage(Locale.forLanguageTag(language));
+		}
+		network.setCapPeriod(Duration.ofSeconds(buffer.getLong()));
+		network.setEffectiveCellSize(buffer.getDouble());
+		network.setEffectiveLaneWidth(buffer.getDouble());
+
+		int nodeCount = getCount(buffer, 4 + 8 + 8 + 4 + 4);
+		int[] nodeIds = getInts(buffer, nodeCount);
+		double[] xs = getDoubles(buffer, nodeCount);
+		double[] ys = getDoubles(buffer, nodeCount);
+		int[] nodeTypes = getInts(buffer, nodeCount);
+		int[] nodeOrigIds = getInts(buffer, nodeCount);
+		Node[] nodes = new Node[nodeCount];
+		for(int i = 0; i < nodeCount; i++){
+			Node node = new Node(xs[i], ys[i]);
+			node.setType(getString(strings, nodeTypes[i]));
+			node.setOrigId(getString(strings, nodeOrigIds[i]));
+			if(!reader.addNode(getMandatoryString(strings, nodeIds[i]), node)){
+				throw new IOException(String.format("Duplicate node \"%s\".", strings[nodeIds[i]]));
+			}
+			nodes[i] = node;
+		}
+
+		int linkCount = getCount(buffer, 4 + 4 + 4 + 8 + 8 + 8 + 8 + 8 + 4 + 4 + 4 + 4 + 4);
+		int[] linkIds = getInts(buffer, linkCount);
+		int[] froms = getInts(buffer, linkCount);
+		int[] tos = getInts(buffer, linkCount);
+		double[] lengths = getDoubles(buffer, linkCount);
+		double[] freeSpeeds = getDoubles(buffer, linkCount);
+		double[] capacities = getDoubles(buffer, linkCount);
+		double[] permLanes = getDoubles(buffer, linkCount);
+		double[] volumes = getDoubles(buffer, linkCount);
+		int[] linkOrigIds = getInts(buffer, linkCount);
+		int[] ntCategories = getInts(buffer, linkCount);
+		int[] ntTypes = getInts(buffer, linkCount);
+		int[] linkTypes = getInts(buffer, linkCount);
+		int[] modeOffsets = getInts(buffer, linkCount + 1);
+		int[] modes = getInts(buffer, getCount(modeOffsets[linkCount], buffer.remaining() / 4));
+		for(int i = 0; i < linkCount; i++){
+			Link link = new Link(nodes[froms[i]], nodes[tos[i]], lengths[i]);
+			link.setFreeSpeed(freeSpeeds[i]);
+			link.setCapacity(capacities[i]);
+			link.setPermLanes(permLanes[i]);
+			if(!Double.isNaN(volumes[i])){
+				link.setVolume(volumes[i]);
+			}
+			link.setOrigId(getString(strings, linkOrigIds[i]));
+			link.setNtCategory(getString(strings, ntCategories[i]));
+			link.setNtType(getString(strings, ntTypes[i]));
+			link.setType(getString(strings, linkTypes[i]));
+			for(int j = modeOffsets[i]; j < modeOffsets[i + 1]; j++){
+				link.addMode(getMandatoryString(strings, modes[j]));
+			}
+			if(!reader.addLink(getMandatoryString(strings, linkIds[i]), link)){
+				throw new IOException(String.format("Duplicate link \"%s\".", strings[linkIds[i]]));
+			}
+		}
+		return reader;
+	}
+
+	/**
+	 * Check that the node or the link has an identifier.
+	 * @param id The identifier kept by the reader.
+	 * @param kind Either "node" or "link", for the error message.
+	 * @param itemId The ID of the node or the link, for the error message.
+	 * @return The identifier.
+	 * @throws IllegalArgumentException Thrown if the identifier is null.
+	 */
+	private static String getId(String id, String kind, int itemId){
+		if(id == null){
+			throw new IllegalArgumentException(String.format(
+					"The %s with ID %d has not been read by the reader.", kind, itemId));
+		}
+		return id;
+	}
+
+	/**
+	 * Read the number of the items of a section and check that the file is long enough to hold them.
+	 * @param buffer The buffer holding the file.
+	 * @param itemSize The number of bytes taken by one item.
+	 * @return The number of the items.
+	 * @throws IOException Thrown if the number is not valid.
+	 */
+	private static int getCount(ByteBuffer buffer, int itemSize) throws IOException {
+		return getCount(buffer.getInt(), buffer.remaining() / itemSize);
+	}
+
+	/**
+	 * Check the number of the items of a section.
+	 * @param count The number of the items.
+	 * @param maximum The highest valid number of the items.
+	 * @return The number of the items.
+	 * @throws IOException Thrown if the number is not valid.
+	 */
+	private static int getCount(int count, int maximum) throws IOException {
+		if(count < 0 || count > maximum){
+			throw new IOException("The network file is corrupted.");
+		}
+		return count;
+	}
+
+	/**
+	 * Write the array to the buffer.
+	 * @param buffer The buffer to be written to.
+	 * @param values The values to be written.
+	 */
+	private static void putInts(ByteBuffer buffer, int[] values){
+		buffer.asIntBuffer().put(values);
+		buffer.position(buffer.position() + 4 * values.length);
+	}
+
+	/**
+	 * Read an array from the buffer.
+	 * @param buffer The buffer to be read from.
+	 * @param count The number of the values.
+	 * @return The values read.
+	 */
+	private static int[] getInts(ByteBuffer buffer, int count){
+		int[] values = new int[count];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4 * count);
+		return values;
+	}
+
+	/**
+	 * Read an array from the buffer.
+	 * @param buffer The buffer to be read from.
+	 * @param count The number of the values.
+	 * @return The values read.
+	 */
+	private static double[] getDoubles(ByteBuffer buffer, int count){
+		double[] values = new double[count];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + 8 * count);
+		return values;
+	}
+
+	/**
+	 * Get the string from the string table.
+	 * @param strings The string table.
+	 * @param index The index of the string, {@link #NULL} for null.
+	 * @return The string.
+	 * @throws IndexOutOfBoundsException Thrown if the index is not valid.
+	 */
+	private static String getString(String[] strings, int index){
+		return (index == NULL) ? null : strings[index];
+	}
+
+	/**
+	 * Get the string which cannot be null from the string table.
+	 * @param strings The string table.
+	 * @param index The index of the string.
+	 * @return The string.
+	 * @throws IndexOutOfBoundsException Thrown if the index is not valid.
+	 */
+	private static String getMandatoryString(String[] strings, int index){
+		return strings[index];
+	}
+
+	/**
+	 * The distinct strings of a network, each stored once.
+	 */
+	private static class StringTable {
+
+		/**
+		 * The indices of the strings.
+		 */
+		private final Map<String, Integer> indices;
+
+		/**
+		 * The UTF-8 encoded strings, in the order of their indices.
+		 */
+		private final List<byte[]> encoded;
+
+		/**
+		 * The number of bytes taken by the table in the file.
+		 */
+		private long size;
+
+		/**
+		 * Create an empty table.
+		 * @param capacity The expected number of the strings.
+		 */
+		public StringTable(int capacity){
+			indices = new HashMap<>();
+			encoded = new ArrayList<>(capacity);
+			size = 4;
+		}
+
+		/**
+		 * Add the string to the table, unless it is already there.
+		 * @param string The string to be added.
+		 * @return The index of the string, {@link NetworkBinaryFormat#NULL} if it is null.
+		 */
+		public int add(String string){
+			if(string == null){
+				return NULL;
+			}
+			Integer index = indices.get(string);
+			if(index == null){
+				index = append(string);
+				indices.put(string, index);
+			}
+			return index;
+		}
+
+		/**
+		 * Add the string to the table without looking it up, for the strings known to be unique.
+		 * @param string The string to be added.
+		 * @return The index of the string.
+		 */
+		public int append(String string){
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			encoded.add(bytes);
+			size += 4 + bytes.length;
+			return encoded.size() - 1;
+		}
+
+		/**
+		 * Get the number of bytes taken by the table in the file.
+		 * @return The number of bytes taken by the table.
+		 */
+		public long getSize(){
+			return size;
+		}
+
+		/**
+		 * Write the table to the buffer.
+		 * @param buffer The buffer to be written to.
+		 */
+		public void write(ByteBuffer buffer){
+			buffer.putInt(encoded.size());
+			for(byte[] bytes : encoded){
+				buffer.putInt(bytes.length);
+				buffer.put(bytes);
+			}
+		}
+
+		/**
+		 * Read the table from the buffer.
+		 * @param buffer The buffer to be read from.
+		 * @return The strings, in the order of their indices.
+		 * @throws IOException Thrown if the table is corrupted.
+		 */
+		public static String[] read(ByteBuffer buffer) throws IOException {
+			String[] strings = new String[getCount(buffer, 4)];
+			for(int i = 0; i < strings.length; i++){
+				byte[] bytes = new byte[getCount(buffer.getInt(), buffer.remaining())];
+				buffer.get(bytes);
+				strings[i] = new String(bytes, StandardCharsets.UTF_8);
+			}
+			return strings;
+		}
+	}
+}
\ No newline at end of file
@@ -0,0 +1,340 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+/**
+ * Reads a {@link Network} from its Matsim XML representation, as written
+ * by the {@link NetworkWriter}.
+ * <p>
+ * The {@link Node}s and {@link Link}s get their own IDs when created, so the
+ * identifiers used in the document are kept by the reader. They can be
+ * used to look the nodes and links up, and the other way round.
+ * </p>
+ * <p>
+ * The DTD referenced by the document is not loaded, so reading does not
+ * require an access to the Internet.
+ * </p>
+ * <p>
+ * The reader is filled the same way by the {@link NetworkBinaryFormat}, which
+ * reads large networks considerably faster than the XML.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public class NetworkReader extends MatsimNetworkHandler {
+
+	/**
+	 * The size of the buffers used when reading from a file.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The network being read.
+	 */
+	private final Network network;
+
+	/**
+	 * The nodes indexed by the identifiers from the document.
+	 */
+	private final Map<String, Node> nodes;
+
+	/**
+	 * The links indexed by the identifiers from the document.
+	 */
+	private final Map<String, Link> links;
+
+	/**
+	 * The identifiers from the document indexed by the nodes.
+	 */
+	private final Map<Node, String> nodeIds;
+
+	/**
+	 * The identifiers from the document indexed by the links.
+	 */
+	private final Map<Link, String> linkIds;
+
+	/**
+	 * Create a new reader with an empty network. Pass the reader
+	 * to a SAX parser to fill the network.
+	 */
+	public NetworkReader(){
+		network = new Network();
+		nodes = new HashMap<>();
+		links = new HashMap<>();
+		nodeIds = new HashMap<>();
+		linkIds = new HashMap<>();
+	}
+
+	/**
+	 * Read the network from the given file. If the name of the file ends
+	 * with {@link NetworkWriter#GZIP_EXTENSION} the file is decompressed by gzip.
+	 * @param file The file the network is read from.
+	 * @return The reader holding the network and the identifiers from the file.
+	 * @throws IOException Thrown if the file cannot be read.
+	 * @throws SAXException Thrown if the file is not a valid Matsim network.
+	 * @throws IllegalArgumentException Thrown if the file argument is null.
+	 */
+	public static NetworkReader read(File file) throws IOException, SAXException {
+		if(file == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "file"));
+		}
+		try(InputStream input = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)){
+			if(file.getName().endsWith(NetworkWriter.GZIP_EXTENSION)){
+				return read(new GZIPInputStream(input, BUFFER_SIZE));
+			}
+			return read(input);
+		}
+	}
+
+	/**
+	 * Read the network from the given stream. The stream is not closed.
+	 * @param input The stream the network is read from.
+	 * @return The reader holding the network and the identifiers from the stream.
+	 * @throws IOException Thrown if the stream cannot be read.
+	 * @throws SAXException Thrown if the stream does not contain a valid Matsim network.
+	 * @throws IllegalArgumentException Thrown if the input argument is null.
+	 */
+	public static NetworkReader read(InputStream input) throws IOException, SAXException {
+		if(input == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "input"));
+		}
+		NetworkReader reader = new NetworkReader();
+		XMLReader xmlReader;
+		try {
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(false);
+			factory.setValidating(false);
+			factory.setFeature("http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+			xmlReader = factory.newSAXParser().getXMLReader();
+		} catch (ParserConfigurationException e) {
+			throw new SAXException(e);
+		}
+		xmlReader.setContentHandler(reader);
+		xmlReader.parse(new InputSource(input));
+		return reader;
+	}
+
+	/**
+	 * Get the network read.
+	 * @return The network read.
+	 */
+	public Network getNetwork(){
+		return network;
+	}
+
+	/**
+	 * Get the node with the given identifier from the document.
+	 * @param id The identifier of the node in the document.
+	 * @return The node, or null if there is no node with the identifier.
+	 */
+	public Node getNode(String id){
+		return nodes.get(id);
+	}
+
+	/**
+	 * Get the link with the given identifier from the document.
+	 * @param id The identifier of the link in the document.
+	 * @return The link, or null if there is no link with the identifier.
+	 */
+	public Link getLink(String id){
+		return links.get(id);
+	}
+
+	/**
+	 * Get the identifier the node has in the document.
+	 * @param node The node whose identifier is required.
+	 * @return The identifier of the node, or null if the node has not been read.
+	 */
+	public String getId(Node node){
+		return nodeIds.get(node);
+	}
+
+	/**
+	 * Get the identifier the link has in the document.
+	 * @param link The link whose identifier is required.
+	 * @return The identifier of the link, or null if the link has not been read.
+	 */
+	public String getId(Link link){
+		return linkIds.get(link);
+	}
+
+	/**
+	 * Get all the nodes indexed by the identifiers from the document.
+	 * @return The unmodifiable map of the nodes.
+	 */
+	public Map<String, Node> getNodes(){
+		return Collections.unmodifiableMap(nodes);
+	}
+
+	/**
+	 * Get all the links indexed by the identifiers from the document.
+	 * @return The unmodifiable map of the links.
+	 */
+	public Map<String, Link> getLinks(){
+		return Collections.unmodifiableMap(links);
+	}
+
+	@Override
+	protected void network(Attributes attributes) throws SAXException {
+		network.setName(getOptional(attributes, "name"));
+		network.setType(getOptional(attributes, "type"));
+		String language = getOptional(attributes, "xml:lang");
+		if(language != null){
+			network.setLanguage(Locale.forLanguageTag(language));
+		}
+	}
+
+	@Override
+	protected void links(Attributes attributes) throws SAXException {
+		try {
+			String capPeriod = getOptional(attributes, "capperiod");
+			if(capPeriod != null){
+				network.setCapPeriod(parseDuration(capPeriod));
+			}
+			double effectiveCellSize = parseDouble(LINKS_ELEMENT, "effectivecellsize",
+					getOptional(attributes, "effectivecellsize"));
+			if(!Double.isNaN(effectiveCellSize)){
+				network.setEffectiveCellSize(effectiveCellSize);
+			}
+			double effectiveLaneWidth = parseDouble(LINKS_ELEMENT, "effectivelanewidth",
+					getOptional(attributes, "effectivelanewidth"));
+			if(!Double.isNaN(effectiveLaneWidth)){
+				network.setEffectiveLaneWidth(effectiveLaneWidth);
+			}
+		} catch(IllegalArgumentException e){
+			throw new SAXException(String.format("Invalid \"%s\" element: %s",
+					LINKS_ELEMENT, e.getMessage()));
+		}
+	}
+
+	@Override
+	protected void node(String id, double x, double y, Attributes attributes)
+			throws SAXException {
+		if(nodes.containsKey(id)){
+			throw new SAXException(String.format("Duplicate node \"%s\".", id));
+		}
+		Node node = new Node(x, y);
+		node.setType(getOptional(attributes, "type"));
+		node.setOrigId(getOptional(attributes, "origid"));
+		addNode(id, node);
+	}
+
+	@Override
+	protected void link(String id, String from, String to, double length, double freeSpeed,
+			double capacity, double permLanes, Attributes attributes) throws SAXException {
+		if(links.containsKey(id)){
+			throw new SAXException(String.format("Duplicate link \"%s\".", id));
+		}
+		Node fromNode = nodes.get(from);
+		Node toNode = nodes.get(to);
+		if(fromNode == null || toNode == null){
+			throw new SAXException(String.format("The link \"%s\" refers to an unknown node \"%s\".",
+					id, (fromNode == null) ? from : to));
+		}
+		Link link = Double.isNaN(length) ? new Link(fromNode, toNode) : new Link(fromNode, toNode, length);
+		try {
+			if(!Double.isNaN(freeSpeed)){
+				link.setFreeSpeed(freeSpeed);
+			}
+			if(!Double.isNaN(capacity)){
+				link.setCapacity(capacity);
+			}
+			if(!Double.isNaN(permLanes)){
+				link.setPermLanes(permLanes);
+			}
+			String modes = getOptional(attributes, "modes");
+			if(modes != null){
+				for(String mode : modes.split(",")){
+					if(!mode.isEmpty()){
+						link.addMode(mode);
+					}
+				}
+			}
+			double volume = parseDouble(LINK_ELEMENT, "volume", getOptional(attributes, "volume"));
+			if(!Double.isNaN(volume)){
+				link.setVolume(volume);
+			}
+		} catch(IllegalArgumentException e){
+			throw new SAXException(String.format("Invalid link \"%s\": %s", id, e.getMessage()));
+		}
+		link.setOrigId(getOptional(attributes, "origid"));
+		link.setNtCategory(getOptional(attributes, "nt_category"));
+		link.setNtType(getOptional(attributes, "nt_type"));
+		link.setType(getOptional(attributes, "type"));
+		addLink(id, link);
+	}
+
+	/**
+	 * Add the node to the network under the given identifier.
+	 * @param id The identifier of the node in the document.
+	 * @param node The node to be added.
+	 * @return False if there already is a node with the identifier, the node is not added then.
+	 */
+	boolean addNode(String id, Node node){
+		if(nodes.containsKey(id)){
+			return false;
+		}
+		network.addNode(node);
+		nodes.put(id, node);
+		nodeIds.put(node, id);
+		return true;
+	}
+
+	/**
+	 * Add the link to the network under the given identifier.
+	 * @param id The identifier of the link in the document.
+	 * @param link The link to be added.
+	 * @return False if there already is a link with the identifier, the link is not added then.
+	 */
+	boolean addLink(String id, Link link){
+		if(links.containsKey(id)){
+			return false;
+		}
+		network.addLink(link);
+		links.put(id, link);
+		linkIds.put(link, id);
+		return true;
+	}
+
+	/**
+	 * Parse the period in the "hh:mm:ss" format.
+	 * @param value The period to be parsed.
+	 * @return The parsed period.
+	 * @throws SAXException Thrown if the value is not in the required format.
+	 */
+	private static Duration parseDuration(String value) throws SAXException {
+		String[] parts = value.split(":");
+		if(parts.length != 3){
+			throw new SAXException(String.format(
+					"The \"%s\" attribute is not in the hh:mm:ss format: %s", "capperiod", value));
+		}
+		try {
+			return Duration.ofHours(Long.parseLong(parts[0]))
+					.plusMinutes(Long.parseLong(parts[1]))
+					.plusSeconds(Long.parseLong(parts[2]));
+		} catch(NumberFormatException | ArithmeticException e){
+			throw new SAXException(String.format(
+					"The \"%s\" attribute is not in the hh:mm:ss format: %s", "capperiod", value));
+		}
+	}
+}
\ No newline at end of file
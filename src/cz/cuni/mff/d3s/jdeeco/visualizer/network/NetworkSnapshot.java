@@ -0,0 +1,358 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An immutable copy of a {@link Network} stored in the compressed sparse row format.
+ * <p>
+ * The nodes are given the indices 0 .. n-1 in the order of their IDs. The links
+ * are given the indices 0 .. m-1 so that the links going from the node i have
+ * the indices {@link #getFirstLink(int) getFirstLink(i)} .. getFirstLink(i+1)-1.
+ * The attributes of the nodes and the links are kept in primitive arrays indexed
+ * by these indices, which makes the snapshot compact and fast to traverse.
+ * </p>
+ * <p>
+ * The snapshot does not reflect the changes of the network made after it has
+ * been created. Links whose end nodes are not in the network are left out.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class NetworkSnapshot {
+
+	/**
+	 * The nodes, indexed by their indices.
+	 */
+	private final Node[] nodes;
+
+	/**
+	 * The IDs of the nodes, indexed by their indices. Sorted in ascending order.
+	 */
+	private final int[] nodeIds;
+
+	/**
+	 * The x coordinates of the nodes, indexed by their indices.
+	 */
+	private final double[] xs;
+
+	/**
+	 * The y coordinates of the nodes, indexed by their indices.
+	 */
+	private final double[] ys;
+
+	/**
+	 * The links going from the node i have the indices offsets[i] .. offsets[i+1]-1.
+	 */
+	private final int[] offsets;
+
+	/**
+	 * The links, indexed by their indices.
+	 */
+	private final Link[] links;
+
+	/**
+	 * The IDs of the links, sorted in ascending order.
+	 */
+	private final int[] sortedLinkIds;
+
+	/**
+	 * The indices of the links, in the order of {@link #sortedLinkIds}.
+	 */
+	private final int[] linksByIds;
+
+	/**
+	 * The indices of the nodes from which the links go.
+	 */
+	private final int[] sources;
+
+	/**
+	 * The indices of the nodes to which the links go.
+	 */
+	private final int[] targets;
+
+	/**
+	 * The lengths of the links.
+	 */
+	private final double[] lengths;
+
+	/**
+	 * The free speeds of the links.
+	 */
+	private final double[] freeSpeeds;
+
+	/**
+	 * The capacities of the links.
+	 */
+	private final double[] capacities;
+
+	/**
+	 * The spatial index of the snapshot, created when it is needed for the first time.
+	 */
+	private volatile SpatialIndex spatialIndex;
+
+	/**
+	 * Create a snapshot of the given network.
+	 * @param network The network to be copied.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public NetworkSnapshot(Network network){
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		nodes = network.getNodes().toArray(new Node[0]);
+		Arrays.sort(nodes, new Comparator<Node>() {
+			@Override
+			public int compare(Node first, Node second) {
+				return Integer.compare(first.getId(), second.getId());
+			}
+		});
+		int nodeCount = nodes.length;
+		nodeIds = new int[nodeCount];
+		xs = new double[nodeCount];
+		ys = new double[nodeCount];
+		for(int i = 0; i < nodeCount; i++){
+			nodeIds[i] = nodes[i].getId();
+			xs[i] = nodes[i].getX();
+			ys[i] = nodes[i].getY();
+		}
+
+		offsets = new int[nodeCount + 1];
+		List<Link> included = new ArrayList<>(network.getLinks().size());
+		for(int i = 0; i < nodeCount; i++){
+			offsets[i] = included.size();
+			for(Link link : network.getLinksFrom(nodes[i])){
+				if(getNodeIndex(link.getTo()) >= 0){
+					included.add(link);
+				}
+			}
+			Collections.sort(included.subList(offsets[i], included.size()), new Comparator<Link>() {
+				@Override
+				public int compare(Link first, Link second) {
+					return Integer.compare(first.getId(), second.getId());
+				}
+			});
+		}
+		offsets[nodeCount] = included.size();
+
+		int linkCount = included.size();
+		links = included.toArray(new Link[linkCount]);
+		sources = new int[linkCount];
+		targets = new int[linkCount];
+		lengths = new double[linkCount];
+		freeSpeeds = new double[linkCount];
+		capacities = new double[linkCount];
+		long[] idsWithIndices = new long[linkCount];
+		for(int i = 0; i < nodeCount; i++){
+			for(int j = offsets[i]; j < offsets[i + 1]; j++){
+				Link link = links[j];
+				sources[j] = i;
+				targets[j] = getNodeIndex(link.getTo());
+				lengths[j] = link.getLength();
+				freeSpeeds[j] = link.getFreeSpeed();
+				capacities[j] = link.getCapacity();
+				idsWithIndices[j] = ((long) link.getId() << 32) | j;
+			}
+		}
+		Arrays.sort(idsWithIndices);
+		sortedLinkIds = new int[linkCount];
+		linksByIds = new int[linkCount];
+		for(int i = 0; i < linkCount; i++){
+			sortedLinkIds[i] = (int) (idsWithIndices[i] >> 32);
+			linksByIds[i] = (int) idsWithIndices[i];
+		}
+	}
+
+	/**
+	 * Get the number of the nodes.
+	 * @return The number of the nodes.
+	 */
+	public int getNodeCount(){
+		return nodes.length;
+	}
+
+	/**
+	 * Get the number of the links.
+	 * @return The number of the links.
+	 */
+	public int getLinkCount(){
+		return links.length;
+	}
+
+	/**
+	 * Get the node with the given index.
+	 * @param node The index of the node.
+	 * @return The node with the given index.
+	 */
+	public Node getNode(int node){
+		return nodes[node];
+	}
+
+	/**
+	 * Get the index of the node with the given ID.
+	 * @param id The ID of the node.
+	 * @return The index of the node, or -1 if there is no such node.
+	 */
+	public int getNodeIndex(int id){
+		int index = Arrays.binarySearch(nodeIds, id);
+		return (index >= 0) ? index : -1;
+	}
+
+	/**
+	 * Get the index of the given node.
+	 * @param node The node whose index is required.
+	 * @return The index of the node, or -1 if the node is not in the snapshot.
+	 * @throws IllegalArgumentException Thrown if the node argument is null.
+	 */
+	public int getNodeIndex(Node node){
+		if(node == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "node"));
+		}
+		return getNodeIndex(node.getId());
+	}
+
+	/**
+	 * Get the x coordinate of the node with the given index.
+	 * @param node The index of the node.
+	 * @return The x coordinate of the node.
+	 */
+	public double getX(int node){
+		return xs[node];
+	}
+
+	/**
+	 * Get the y coordinate of the node with the given index.
+	 * @param node The index of the node.
+	 * @return The y coordinate of the node.
+	 */
+	public double getY(int node){
+		return ys[node];
+	}
+
+	/**
+	 * Get the index of the first link going from the given node. The links going
+	 * from the node i have the indices getFirstLink(i) .. getFirstLink(i+1)-1.
+	 * @param node The index of the node, 0 .. n. For n the number of the links is returned.
+	 * @return The index of the first link going from the node.
+	 */
+	public int getFirstLink(int node){
+		return offsets[node];
+	}
+
+	/**
+	 * Get the link with the given index.
+	 * @param link The index of the link.
+	 * @return The link with the given index.
+	 */
+	public Link getLink(int link){
+		return links[link];
+	}
+
+	/**
+	 * Get the index of the link with the given ID.
+	 * @param id The ID of the link.
+	 * @return The index of the link, or -1 if there is no such link.
+	 */
+	public int getLinkIndex(int id){
+		int index = Arrays.binarySearch(sortedLinkIds, id);
+		return (index >= 0) ? linksByIds[index] : -1;
+	}
+
+	/**
+	 * Get the index of the given link.
+	 * @param link The link whose index is required.
+	 * @return The index of the link, or -1 if the link is not in the snapshot.
+	 * @throws IllegalArgumentException Thrown if the link argument is null.
+	 */
+	public int getLinkIndex(Link link){
+		if(link == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "link"));
+		}
+		return getLinkIndex(link.getId());
+	}
+
+	/**
+	 * Get the index of the node from which the link goes.
+	 * @param link The index of the link.
+	 * @return The index of the node from which the link goes.
+	 */
+	public int getSource(int link){
+		return sources[link];
+	}
+
+	/**
+	 * Get the index of the node to which the link goes.
+	 * @param link The index of the link.
+	 * @return The index of the node to which the link goes.
+	 */
+	public int getTarget(int link){
+		return targets[link];
+	}
+
+	/**
+	 * Get the length of the link.
+	 * @param link The index of the link.
+	 * @return The length of the link in meters.
+	 */
+	public double getLength(int link){
+		return lengths[link];
+	}
+
+	/**
+	 * Get the free speed of the link.
+	 * @param link The index of the link.
+	 * @return The free speed of the link in meters per second.
+	 */
+	public double getFreeSpeed(int link){
+		return freeSpeeds[link];
+	}
+
+	/**
+	 * Get the capacity of the link.
+	 * @param link The index of the link.
+	 * @return The capacity of the link in vehicles per capacity period.
+	 */
+	public double getCapacity(int link){
+		return capacities[link];
+	}
+
+	/**
+	 * Get the spatial index of the snapshot. The index is built when this method
+	 * is called for the first time, later calls return the same index.
+	 * @return The spatial index of the snapshot.
+	 */
+	public SpatialIndex getSpatialIndex(){
+		SpatialIndex index = spatialIndex;
+		if(index == null){
+			synchronized(this){
+				index = spatialIndex;
+				if(index == null){
+					index = new SpatialIndex(this);
+					spatialIndex = index;
+				}
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * Estimate the number of bytes taken by the arrays of the snapshot, including
+	 * the references to the nodes and the links, but not the nodes and the links themselves.
+	 * Assumes 4 byte references and 16 byte array headers.
+	 * @return The estimated size of the snapshot in bytes.
+	 */
+	public long getFootprint(){
+		long nodeCount = nodes.length;
+		long linkCount = links.length;
+		long header = 16;
+		return 13 * header
+				+ nodeCount * (4 + 4 + 8 + 8 + 4) + 4
+				+ linkCount * (4 + 4 + 4 + 4 + 4 + 8 + 8 + 8);
+	}
+}
\ No newline at end of file
@@ -0,0 +1,464 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the Matsim XML representation of a {@link Network} element by element,
+ * so that no copy of the whole document is held in the memory.
+ * <p>
+ * The output is the same as the one of {@link Network#toString()}, which uses
+ * this writer too. The values of the attributes are escaped, so that the
+ * document is well-formed whatever strings the network contains.
+ * </p>
+ * <p>
+ * The nodes and the links of a {@link Network} are identified by their numeric IDs.
+ * A network read by a {@link NetworkReader} can be written with the identifiers
+ * from the file it has been read from, see {@link #write(NetworkReader)}.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public class NetworkWriter implements Closeable, Flushable {
+
+	/**
+	 * The size of the buffers used when writing to a stream.
+	 */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The extension of the compressed files.
+	 */
+	public static final String GZIP_EXTENSION = ".gz";
+
+	/**
+	 * The writer the XML is written to.
+	 */
+	private final Writer writer;
+
+	/**
+	 * Create a new network writer writing to the given writer.
+	 * The writer should be buffered.
+	 * @param writer The writer the XML is written to.
+	 * @throws IllegalArgumentException Thrown if the writer argument is null.
+	 */
+	public NetworkWriter(Writer writer){
+		if(writer == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "writer"));
+		}
+		this.writer = writer;
+	}
+
+	/**
+	 * Create a new network writer writing to the given stream in UTF-8.
+	 * The stream is closed together with the writer, but not if this constructor throws.
+	 * @param output The stream the XML is written to.
+	 * @param gzip If true the XML is compressed by gzip.
+	 * @throws IOException Thrown if the gzip header cannot be written.
+	 * @throws IllegalArgumentException Thrown if the output argument is null.
+	 */
+	public NetworkWriter(OutputStream output, boolean gzip) throws IOException {
+		this(createWriter(output, gzip));
+	}
+
+	/**
+	 * Write the network to the given file. If the name of the file ends
+	 * with {@link #GZIP_EXTENSION} the file is compressed by gzip.
+	 * @param network The network to be written.
+	 * @param file The file the network is written to.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null.
+	 */
+	public static void write(Network network, File file) throws IOException {
+		if(file == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "file"));
+		}
+		try(FileOutputStream output = new FileOutputStream(file);
+				NetworkWriter networkWriter = new NetworkWriter(output, file.getName().endsWith(GZIP_EXTENSION))){
+			networkWriter.write(network);
+		}
+	}
+
+	/**
+	 * Write the network held by the reader to the given file, keeping the identifiers
+	 * of the nodes and the links read. If the name of the file ends
+	 * with {@link #GZIP_EXTENSION} the file is compressed by gzip.
+	 * @param reader The reader holding the network to be written.
+	 * @param file The file the network is written to.
+	 * @throws IOException Thrown if the file cannot be written.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null,
+	 * 		or if a node or a link has been added to the network after it was read.
+	 */
+	public static void write(NetworkReader reader, File file) throws IOException {
+		if(reader == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "reader"));
+		}
+		if(file == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "file"));
+		}
+		try(FileOutputStream output = new FileOutputStream(file);
+				NetworkWriter networkWriter = new NetworkWriter(output, file.getName().endsWith(GZIP_EXTENSION))){
+			networkWriter.write(reader);
+		}
+	}
+
+	/**
+	 * Write the whole network document.
+	 * @param network The network to be written.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public void write(Network network) throws IOException {
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		writeDocument(network, null);
+	}
+
+	/**
+	 * Write the whole document of the network held by the reader, keeping the identifiers
+	 * of the nodes and the links read.
+	 * @param reader The reader holding the network to be written.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 * @throws IllegalArgumentException Thrown if the reader argument is null,
+	 * 		or if a node or a link has been added to the network after it was read.
+	 */
+	public void write(NetworkReader reader) throws IOException {
+		if(reader == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "reader"));
+		}
+		writeDocument(reader.getNetwork(), reader);
+	}
+
+	/**
+	 * Write the whole network document.
+	 * @param network The network to be written.
+	 * @param ids The reader holding the identifiers of the nodes and the links,
+	 * 		null to use their IDs.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 * @throws IllegalArgumentException Thrown if the reader does not know a node or a link.
+	 */
+	private void writeDocument(Network network, NetworkReader ids) throws IOException {
+		writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		writer.write("<!DOCTYPE network SYSTEM \"http://www.matsim.org/files/dtd/network_v1.dtd\">\n");
+
+		writer.write("<network ");
+		if(network.getName() != null){
+			writeAttribute("name", network.getName());
+		}
+		if(network.getType() != null){
+			writeAttribute("type", network.getType());
+		}
+		if(network.getLanguage() != null){
+			writeAttribute("xml:lang", network.getLanguage().toLanguageTag());
+		}
+		writer.write(">\n");
+
+		writer.write("\t<nodes>\n");
+		for(Node node : network.getNodes()){
+			writer.write("\t\t");
+			writeNode(node, ids);
+			writer.write('\n');
+		}
+		writer.write("\t</nodes>\n");
+
+		writeLinks(network, ids);
+		writer.write('\n');
+
+		writer.write("</network>");
+	}
+
+	/**
+	 * Write the element with the links of the network.
+	 * @param network The network whose links are written.
+	 * @param ids The reader holding the identifiers of the nodes and the links,
+	 * 		null to use their IDs.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 * @throws IllegalArgumentException Thrown if the reader does not know a link or its nodes.
+	 */
+	void writeLinks(Network network, NetworkReader ids) throws IOException {
+		// Get seconds in the capPeriod
+		long capPeriodS = network.getCapPeriod().getSeconds();
+		// Extract hours
+		long capPeriodH = capPeriodS / 3600;
+		// Extract remaining minutes
+		long capPeriodM = (capPeriodS % 3600) / 60;
+		// Extract remaining seconds
+		capPeriodS = capPeriodS % 60;
+
+		writer.write("\t<links ");
+		writeAttribute("capperiod", String.format("%02d:%02d:%02d", capPeriodH, capPeriodM, capPeriodS));
+		writeAttribute("effectivecellsize", network.getEffectiveCellSize());
+		writeAttribute("effectivelanewidth", network.getEffectiveLaneWidth());
+		writer.write(">\n");
+
+		for(Link link : network.getLinks()){
+			writer.write("\t\t");
+			writeLink(link, ids);
+			writer.write('\n');
+		}
+
+		writer.write("\t</links>");
+	}
+
+	/**
+	 * Write the element of the node.
+	 * @param node The node to be written.
+	 * @param ids The reader holding the identifier of the node, null to use its ID.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 * @throws IllegalArgumentException Thrown if the reader does not know the node.
+	 */
+	void writeNode(Node node, NetworkReader ids) throws IOException {
+		writer.write("<node ");
+		writeAttribute("id", getId(node, ids));
+		writeAttribute("x", node.getX());
+		writeAttribute("y", node.getY());
+		if(node.getType() != null){
+			writeAttribute("type", node.getType());
+		}
+		if(node.getOrigId() != null){
+			writeAttribute("origid", node.getOrigId());
+		}
+		writer.write("/>");
+	}
+
+	/**
+	 * Write the element of the link.
+	 * @param link The link to be written.
+	 * @param ids The reader holding the identifiers of the link and its nodes,
+	 * 		null to use their IDs.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 * @throws IllegalArgumentException Thrown if the reader does not know the link or its nodes.
+	 */
+	void writeLink(Link link, NetworkReader ids) throws IOException {
+		writer.write("<link ");
+		writeAttribute("id", getId(link, ids));
+		writeAttribute("from", getId(link.getFrom(), ids));
+		writeAttribute("to", getId(link.getTo(), ids));
+		writeAttribute("length", link.getLength());
+		writeAttribute("freespeed", link.getFreeSpeed());
+		writeAttribute("capacity", link.getCapacity());
+		writeAttribute("permlanes", link.getPermLanes());
+		// FIXED "1"
+		writer.write("oneway=\"1\" ");
+		List<String> modes = link.getModes();
+		if(!modes.isEmpty()){
+			writer.write("modes=\"");
+			for(int i = 0; i < modes.size(); i++){
+				if(i > 0){
+					writer.write(',');
+				}
+				writeEscaped(modes.get(i));
+			}
+			writer.write("\" ");
+		}
+		if(!Double.isNaN(link.getVolume())){
+			writeAttribute("volume", link.getVolume());
+		}
+		if(link.getOrigId() != null){
+			writeAttribute("origid", link.getOrigId());
+		}
+		if(link.getNtCategory() != null){
+			writeAttribute("nt_category", link.getNtCategory());
+		}
+		if(link.getNtType() != null){
+			writeAttribute("nt_type", link.getNtType());
+		}
+		if(link.getType() != null){
+			writeAttribute("type", link.getType());
+		}
+		writer.write("/>");
+	}
+
+	@Override
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+
+	/**
+	 * Get the Matsim XML representation of the network.
+	 * @param network The network to be written.
+	 * @return The XML document.
+	 */
+	static String toXml(Network network){
+		StringWriter output = new StringWriter();
+		try {
+			new NetworkWriter(output).write(network);
+		} catch (IOException e) {
+			// StringWriter does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Get the Matsim XML representation of the node.
+	 * @param node The node to be written.
+	 * @return The XML element.
+	 */
+	static String toXml(Node node){
+		StringWriter output = new StringWriter();
+		try {
+			new NetworkWriter(output).writeNode(node, null);
+		} catch (IOException e) {
+			// StringWriter does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Get the Matsim XML representation of the link.
+	 * @param link The link to be written.
+	 * @return The XML element.
+	 */
+	static String toXml(Link link){
+		StringWriter output = new StringWriter();
+		try {
+			new NetworkWriter(output).writeLink(link, null);
+		} catch (IOException e) {
+			// StringWriter does not throw IOException
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Get the identifier of the node to be written.
+	 * @param node The node whose identifier is required.
+	 * @param ids The reader holding the identifier of the node, null to use its ID.
+	 * @return The identifier of the node.
+	 * @throws IllegalArgumentException Thrown if the reader does not know the node.
+	 */
+	private static String getId(Node node, NetworkReader ids){
+		if(ids == null){
+			return Integer.toString(node.getId());
+		}
+		String id = ids.getId(node);
+		if(id == null){
+			throw new IllegalArgumentException(String.format(
+					"The %s with ID %d has not been read by the reader.", "node", node.getId()));
+		}
+		return id;
+	}
+
+	/**
+	 * Get the identifier of the link to be written.
+	 * @param link The link whose identifier is required.
+	 * @param ids The reader holding the identifier of the link, null to use its ID.
+	 * @return The identifier of the link.
+	 * @throws IllegalArgumentException Thrown if the reader does not know the link.
+	 */
+	private static String getId(Link link, NetworkReader ids){
+		if(ids == null){
+			return Integer.toString(link.getId());
+		}
+		String id = ids.getId(link);
+		if(id == null){
+			throw new IllegalArgumentException(String.format(
+					"The %s with ID %d has not been read by the reader.", "link", link.getId()));
+		}
+		return id;
+	}
+
+	/**
+	 * Write the attribute followed by a space.
+	 * @param name The name of the attribute.
+	 * @param value The value of the attribute.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 */
+	private void writeAttribute(String name, String value) throws IOException {
+		writer.write(name);
+		writer.write("=\"");
+		writeEscaped(value);
+		writer.write("\" ");
+	}
+
+	/**
+	 * Write the attribute followed by a space.
+	 * @param name The name of the attribute.
+	 * @param value The value of the attribute.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 */
+	private void writeAttribute(String name, double value) throws IOException {
+		writer.write(name);
+		writer.write("=\"");
+		writer.write(Double.toString(value));
+		writer.write("\" ");
+	}
+
+	/**
+	 * Write the text, replacing the characters which cannot appear
+	 * in a value of an attribute by the references to them.
+	 * @param text The text to be written.
+	 * @throws IOException Thrown if the XML cannot be written.
+	 */
+	private void writeEscaped(String text) throws IOException {
+		int start = 0;
+		for(int i = 0; i < text.length(); i++){
+			String reference;
+			switch(text.charAt(i)){
+			case '&':
+				reference = "&amp;";
+				break;
+			case '<':
+				reference = "&lt;";
+				break;
+			case '>':
+				reference = "&gt;";
+				break;
+			case '"':
+				reference = "&quot;";
+				break;
+			case '\'':
+				reference = "&apos;";
+				break;
+			default:
+				continue;
+			}
+			writer.write(text, start, i - start);
+			writer.write(reference);
+			start = i + 1;
+		}
+		writer.write(text, start, text.length() - start);
+	}
+
+	/**
+	 * Create a buffered writer writing to the given stream in UTF-8.
+	 * @param output The stream to be written to.
+	 * @param gzip If true the stream is compressed by gzip.
+	 * @return The writer.
+	 * @throws IOException Thrown if the gzip header cannot be written.
+	 * @throws IllegalArgumentException Thrown if the output argument is null.
+	 */
+	private static Writer createWriter(OutputStream output, boolean gzip) throws IOException {
+		if(output == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "output"));
+		}
+		OutputStream stream = gzip ? new GZIPOutputStream(output, BUFFER_SIZE) : output;
+		return new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+	}
+}
\ No newline at end of file
@@ -153,21 +153,7 @@ public class Node implements Serializable {
 	 */
 	@Override
 	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		
-		builder.append("<node ")
-			.append("id=\"").append(id).append("\" ")
-			.append("x=\"").append(x).append("\" ")
-			.append("y=\"").append(y).append("\" ");
-		if(type != null){
-			builder.append("type=\"").append(type).append("\" ");
-		}
-		if(origId != null){
-			builder.append("origid=\"").append(origId).append("\" ");
-		}
-		builder.append("/>");
-		
-		return builder.toString();
+		return NetworkWriter.toXml(this);
 	}
 	
 	public static void resetIdReference(){
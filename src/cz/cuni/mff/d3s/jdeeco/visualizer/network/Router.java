@@ -0,0 +1,374 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes shortest paths between {@link Node}s in a {@link Network}, repeatedly.
+ * <p>
+ * Unlike {@link Dijkstra}, the router searches a {@link NetworkSnapshot}, where the nodes
+ * have dense indices, and each query only touches the nodes it actually reaches. The unvisited
+ * nodes are kept in an {@link IndexedMinHeap}, so decreasing a distance takes O(log n).
+ * The search stops as soon as the target node is settled.
+ * </p>
+ * <p>
+ * Besides Dijkstra's algorithm, the router offers the A* search, which uses the Euclidean
+ * distance to the target as the heuristic. The lengths of the links are not bound to the
+ * coordinates of their nodes, so the heuristic is scaled by the lowest ratio of the length
+ * of a link to the Euclidean distance of its end nodes. The scaled heuristic never
+ * overestimates, so the A* search always gives the shortest paths. If a link is shorter
+ * than the distance of its end nodes, the search is less directed; if a link of zero length
+ * connects two distinct positions, the A* search falls back to Dijkstra's algorithm.
+ * </p>
+ * <p>
+ * The router reflects the network at the time it has been created. It is not thread-safe;
+ * use one router per thread.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public class Router {
+
+	/**
+	 * The network to search the paths in.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The factor of the Euclidean distance used as the heuristic of the A* search.
+	 * Zero if the heuristic cannot be used.
+	 */
+	private final double heuristicScale;
+
+	/**
+	 * The distances from the source of the current query. Valid only for the nodes
+	 * whose {@link #reached} stamp equals to {@link #query}.
+	 */
+	private final double[] distances;
+
+	/**
+	 * The indices of the last links of the shortest paths found so far, -1 for the source.
+	 * Valid only for the nodes whose {@link #reached} stamp equals to {@link #query}.
+	 */
+	private final int[] predecessorLinks;
+
+	/**
+	 * The number of the query in which the node has been reached.
+	 */
+	private final int[] reached;
+
+	/**
+	 * The number of the query in which the node has been settled.
+	 */
+	private final int[] settled;
+
+	/**
+	 * The number of the query in which the node is one of the targets.
+	 */
+	private final int[] targets;
+
+	/**
+	 * The number of the current query.
+	 */
+	private int query;
+
+	/**
+	 * The nodes reached but not settled yet.
+	 */
+	private final IndexedMinHeap unvisited;
+
+	/**
+	 * The number of the nodes settled by the last query.
+	 */
+	private int settledCount;
+
+	/**
+	 * Create a new router for the given network.
+	 * @param graph The network to search the paths in.
+	 * @throws IllegalArgumentException Thrown if the graph argument is null.
+	 */
+	public Router(Network graph){
+		this(graph == null ? null : graph.freeze());
+	}
+
+	/**
+	 * Create a new router for the given snapshot of a network.
+	 * @param network The network to search the paths in.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public Router(NetworkSnapshot network){
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		this.network = network;
+		heuristicScale = getHeuristicScale(network);
+		int nodeCount = network.getNodeCount();
+		distances = new double[nodeCount];
+		predecessorLinks = new int[nodeCount];
+		reached = new int[nodeCount];
+		settled = new int[nodeCount];
+		targets = new int[nodeCount];
+		query = 0;
+		unvisited = new IndexedMinHeap(nodeCount);
+	}
+
+	/**
+	 * Compute the shortest path from the source {@link Node} to the target {@link Node}
+	 * using Dijkstra's algorithm.
+	 * @param source The node to start from.
+	 * @param target The node to finish at.
+	 * @return The list of links which constitutes the path from source to target.
+	 * 		If the path doesn't exist the list is empty.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is null or is not in the network.
+	 */
+	public List<Link> getShortestPath(Node source, Node target){
+		int targetIndex = getIndex(target, "target");
+		search(getIndex(source, "source"), targetIndex, false);
+		return assemblePath(targetIndex);
+	}
+
+	/**
+	 * Compute the shortest path from the source {@link Node} to the target {@link Node}
+	 * using the A* search with the scaled Euclidean distance as the heuristic.
+	 * @param source The node to start from.
+	 * @param target The node to finish at.
+	 * @return The list of links which constitutes the path from source to target.
+	 * 		If the path doesn't exist the list is empty.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is null or is not in the network.
+	 */
+	public List<Link> getShortestPathAStar(Node source, Node target){
+		int targetIndex = getIndex(target, "target");
+		search(getIndex(source, "source"), targetIndex, true);
+		return assemblePath(targetIndex);
+	}
+
+	/**
+	 * Compute the length of the shortest path from the source {@link Node} to the
+	 * target {@link Node} using the A* search.
+	 * @param source The node to start from.
+	 * @param target The node to finish at.
+	 * @return The length of the shortest path, +&infin; if the path doesn't exist.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is null or is not in the network.
+	 */
+	public double getDistance(Node source, Node target){
+		int targetIndex = getIndex(target, "target");
+		search(getIndex(source, "source"), targetIndex, true);
+		return (settled[targetIndex] == query) ? distances[targetIndex] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Get the number of the nodes settled by the last query. Indicates how much
+	 * of the network the query had to explore.
+	 * @return The number of the nodes settled by the last query.
+	 */
+	public int getSettledCount(){
+		return settledCount;
+	}
+
+	/**
+	 * Get the factor of the Euclidean distance to the target used as the heuristic
+	 * of the A* search.
+	 * @return The lowest ratio of the length of a link to the Euclidean distance of its
+	 * 		end nodes, 0 if the A* search is the same as Dijkstra's algorithm.
+	 */
+	public double getHeuristicScale(){
+		return heuristicScale;
+	}
+
+	/**
+	 * Compute the factor of the Euclidean distance which never exceeds the length
+	 * of any link, and thus of any path, between the nodes.
+	 * @param network The network to search the paths in.
+	 * @return The lowest ratio of the length of a link to the Euclidean distance of its
+	 * 		end nodes, 0 if there is no link between two distinct positions.
+	 */
+	private static double getHeuristicScale(NetworkSnapshot network){
+		double scale = Double.POSITIVE_INFINITY;
+		for(int i = 0; i < network.getLinkCount(); i++){
+			int source = network.getSource(i);
+			int target = network.getTarget(i);
+			double dx = network.getX(source) - network.getX(target);
+			double dy = network.getY(source) - network.getY(target);
+			double chord = Math.sqrt(dx * dx + dy * dy);
+			if(chord > 0){
+				scale = Math.min(scale, network.getLength(i) / chord);
+			}
+		}
+		return (scale < Double.POSITIVE_INFINITY) ? scale : 0;
+	}
+
+	/**
+	 * Get the index of the given node.
+	 * @param node The node whose index is required.
+	 * @param argument The name of the argument, for the error message.
+	 * @return The index of the node.
+	 * @throws IllegalArgumentException Thrown if the node is null or is not in the network.
+	 */
+	private int getIndex(Node node, String argument){
+		if(node == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", argument));
+		}
+		int index = network.getNodeIndex(node);
+		if(index < 0){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" is not a node of the network.", argument));
+		}
+		return index;
+	}
+
+	/**
+	 * Search the network from the source node until all the given target nodes are settled
+	 * or there is no more reachable node. The distances and the paths found can be then
+	 * retrieved by {@link #getSearchedDistance(int)} and {@link #getSearchedPath(int)}.
+	 * @param source The index of the node to start from.
+	 * @param targetNodes The indices of the nodes to finish at. May contain duplicates.
+	 * @param start The position of the first target in the targetNodes array.
+	 * @param end The position after the last target in the targetNodes array.
+	 */
+	void searchFrom(int source, int[] targetNodes, int start, int end){
+		startQuery();
+		int remaining = 0;
+		for(int i = start; i < end; i++){
+			if(targets[targetNodes[i]] != query){
+				targets[targetNodes[i]] = query;
+				remaining++;
+			}
+		}
+		if(remaining > 0){
+			search(source, remaining, false, 0, 0);
+		}
+	}
+
+	/**
+	 * Get the distance to the given node found by the last search.
+	 * @param node The index of the node.
+	 * @return The length of the shortest path to the node, +&infin; if the node
+	 * 		has not been settled by the last search.
+	 */
+	double getSearchedDistance(int node){
+		return (settled[node] == query) ? distances[node] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Get the path to the given node found by the last search.
+	 * @param node The index of the node.
+	 * @return The indices of the links which constitute the path, null if the node
+	 * 		has not been settled by the last search.
+	 */
+	int[] getSearchedPath(int node){
+		if(settled[node] != query){
+			return null;
+		}
+		int length = 0;
+		for(int current = node; predecessorLinks[current] >= 0; current = network.getSource(predecessorLinks[current])){
+			length++;
+		}
+		int[] path = new int[length];
+		for(int current = node; predecessorLinks[current] >= 0; current = network.getSource(predecessorLinks[current])){
+			path[--length] = predecessorLinks[current];
+		}
+		return path;
+	}
+
+	/**
+	 * Search the network from the source node until the target node is settled
+	 * or there is no more reachable node.
+	 * @param source The index of the node to start from.
+	 * @param target The index of the node to finish at.
+	 * @param aStar If true, the unvisited nodes are ordered by the distance from the source
+	 * 		plus the scaled Euclidean distance to the target. Otherwise only by the distance from the source.
+	 */
+	private void search(int source, int target, boolean aStar){
+		startQuery();
+		targets[target] = query;
+		search(source, 1, aStar && heuristicScale > 0, network.getX(target), network.getY(target));
+	}
+
+	/**
+	 * Search the network from the source node until the given number of the nodes
+	 * marked as the targets of the current query is settled or there is no more reachable node.
+	 * @param source The index of the node to start from.
+	 * @param remaining The number of the targets.
+	 * @param aStar If true, the unvisited nodes are ordered by the distance from the source
+	 * 		plus the scaled Euclidean distance to the target at the given coordinates.
+	 * 		Otherwise only by the distance from the source.
+	 * @param targetX The x coordinate of the target, used if aStar is true.
+	 * @param targetY The y coordinate of the target, used if aStar is true.
+	 */
+	private void search(int source, int remaining, boolean aStar, double targetX, double targetY){
+		distances[source] = 0;
+		predecessorLinks[source] = -1;
+		reached[source] = query;
+		unvisited.insertOrDecrease(source, 0);
+		while(!unvisited.isEmpty()){
+			int current = unvisited.poll();
+			settled[current] = query;
+			settledCount++;
+			if(targets[current] == query && --remaining == 0){
+				break;
+			}
+			double currentDistance = distances[current];
+			int lastLink = network.getFirstLink(current + 1);
+			for(int i = network.getFirstLink(current); i < lastLink; i++){
+				int successor = network.getTarget(i);
+				if(settled[successor] == query){
+					continue;
+				}
+				double distance = currentDistance + network.getLength(i);
+				if(reached[successor] != query || distance < distances[successor]){
+					reached[successor] = query;
+					distances[successor] = distance;
+					predecessorLinks[successor] = i;
+					double priority = distance;
+					if(aStar){
+						double dx = network.getX(successor) - targetX;
+						double dy = network.getY(successor) - targetY;
+						priority += heuristicScale * Math.sqrt(dx * dx + dy * dy);
+					}
+					unvisited.insertOrDecrease(successor, priority);
+				}
+			}
+		}
+		unvisited.clear();
+	}
+
+	/**
+	 * Begin a new query. The state of the previous query is discarded by changing
+	 * the query number, so only the nodes reached by the new query are initialized.
+	 */
+	private void startQuery(){
+		if(query == Integer.MAX_VALUE){
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			Arrays.fill(targets, 0);
+			query = 0;
+		}
+		query++;
+		settledCount = 0;
+	}
+
+	/**
+	 * Extract the path found by the last query from its end to its beginning.
+	 * @param target The index of the last node on the path.
+	 * @return The list of links which constitutes the path from source to target.
+	 * 		If the path doesn't exist the list is empty.
+	 */
+	private List<Link> assemblePath(int target){
+		if(settled[target] != query){
+			return Collections.emptyList();
+		}
+		List<Link> path = new ArrayList<>();
+		int node = target;
+		while(predecessorLinks[node] >= 0){
+			int link = predecessorLinks[node];
+			path.add(network.getLink(link));
+			node = network.getSource(link);
+		}
+		Collections.reverse(path);
+		return path;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,481 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+/**
+ * A uniform grid of polylines, answering the nearest neighbour, k nearest
+ * neighbours and range queries.
+ * <p>
+ * The polylines are identified by their indices. Each of their segments is stored
+ * in all the cells it crosses, found by walking the rows the segment spans and, in each
+ * of them, only the columns between the points where the segment enters and leaves the row.
+ * A long diagonal segment is therefore stored in about as many cells as its length
+ * in cells, not in all the cells of its bounding box. A query only examines the
+ * segments in the cells near the queried location. The nearest polylines are searched in the
+ * rings of cells around the location until no unexamined cell can contain a nearer one.
+ * The size of the cells is chosen so that there are about as many cells as segments.
+ * </p>
+ * <p>
+ * The grid is immutable, so it can be queried from more threads at once.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class SegmentGrid {
+
+	/**
+	 * The maximal number of the cells along one side of the grid.
+	 */
+	private static final int MAX_CELLS_PER_SIDE = 4096;
+
+	/**
+	 * The number of the polylines.
+	 */
+	private final int polylineCount;
+
+	/**
+	 * The polylines the segments belong to.
+	 */
+	private final int[] polylines;
+
+	/**
+	 * The coordinates of the segments, as x1, y1, x2, y2 quadruples.
+	 */
+	private final double[] segments;
+
+	/**
+	 * The lowest x coordinate covered by the grid.
+	 */
+	private final double minX;
+
+	/**
+	 * The lowest y coordinate covered by the grid.
+	 */
+	private final double minY;
+
+	/**
+	 * The length of the side of a cell.
+	 */
+	private final double cellSize;
+
+	/**
+	 * The number of the cells in a row.
+	 */
+	private final int columns;
+
+	/**
+	 * The number of the rows of cells.
+	 */
+	private final int rows;
+
+	/**
+	 * The position of the first segment of every cell in {@link #cellSegments},
+	 * followed by the length of that array. The cells are stored row by row.
+	 */
+	private final int[] cellOffsets;
+
+	/**
+	 * The indices of the segments in the cells.
+	 */
+	private final int[] cellSegments;
+
+	/**
+	 * Build the grid of the given polylines. The points of the polyline i are stored
+	 * at the positions offsets[i] .. offsets[i+1]-1, as x, y pairs in the coordinates array.
+	 * A polyline of a single point is stored as a segment of zero length, a polyline
+	 * without points is never found.
+	 * @param coordinates The coordinates of the points of all the polylines.
+	 * @param offsets The position of the first point of every polyline,
+	 * 		followed by the number of all the points.
+	 * @throws IllegalArgumentException Thrown if any of the arguments is null,
+	 * 		or if the offsets do not match the coordinates.
+	 */
+	public SegmentGrid(double[] coordinates, int[] offsets){
+		if(coordinates == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "coordinates"));
+		}
+		if(offsets == null || offsets.length == 0){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null or empty.", "offsets"));
+		}
+		polylineCount = offsets.length - 1;
+		if(offsets[0] < 0 || 2L * offsets[polylineCount] > coordinates.length){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" does not match the coordinates.", "offsets"));
+		}
+		int segmentCount = 0;
+		for(int i = 0; i < polylineCount; i++){
+			int pointCount = offsets[i + 1] - offsets[i];
+			if(pointCount < 0){
+				throw new IllegalArgumentException(String.format(
+						"The argument \"%s\" is not ascending.", "offsets"));
+			}
+			segmentCount += (pointCount == 1) ? 1 : Math.max(0, pointCount - 1);
+		}
+
+		polylines = new int[segmentCount];
+		segments = new double[4 * segmentCount];
+		int segment = 0;
+		for(int i = 0; i < polylineCount; i++){
+			int first = offsets[i];
+			int last = offsets[i + 1] - 1;
+			if(first == last){
+				addSegment(segment++, i, coordinates, first, first);
+			}
+			for(int point = first; point < last; point++){
+				addSegment(segment++, i, coordinates, point, point + 1);
+			}
+		}
+
+		double lowX = Double.POSITIVE_INFINITY;
+		double lowY = Double.POSITIVE_INFINITY;
+		double highX = Double.NEGATIVE_INFINITY;
+		double highY = Double.NEGATIVE_INFINITY;
+		for(int i = 0; i < segments.length; i += 2){
+			lowX = Math.min(lowX, segments[i]);
+			lowY = Math.min(lowY, segments[i + 1]);
+			highX = Math.max(highX, segments[i]);
+			highY = Math.max(highY, segments[i + 1]);
+		}
+		if(segmentCount == 0){
+			lowX = lowY = highX = highY = 0;
+		}
+		minX = lowX;
+		minY = lowY;
+		double extent = Math.max(highX - lowX, highY - lowY);
+		int cellsPerSide = (int) Math.min(MAX_CELLS_PER_SIDE, Math.ceil(Math.sqrt(segmentCount)));
+		cellSize = (extent > 0) ? extent / Math.max(1, cellsPerSide) : 1;
+		columns = Math.min(MAX_CELLS_PER_SIDE, (int) ((highX - lowX) / cellSize) + 1);
+		rows = Math.min(MAX_CELLS_PER_SIDE, (int) ((highY - lowY) / cellSize) + 1);
+
+		// Count the segments of every cell first, then put them in place
+		cellOffsets = new int[columns * rows + 1];
+		for(int i = 0; i < segmentCount; i++){
+			addToCells(i, null);
+		}
+		for(int cell = 0; cell < columns * rows; cell++){
+			cellOffsets[cell + 1] += cellOffsets[cell];
+		}
+		cellSegments = new int[cellOffsets[columns * rows]];
+		int[] filled = new int[columns * rows];
+		for(int i = 0; i < segmentCount; i++){
+			addToCells(i, filled);
+		}
+	}
+
+	/**
+	 * Get the number of the polylines in the grid.
+	 * @return The number of the polylines in the grid.
+	 */
+	public int size(){
+		return polylineCount;
+	}
+
+	/**
+	 * Find the polyline nearest to the given location.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @return The index of the nearest polyline, -1 if the grid has no polyline with a point.
+	 */
+	public int getNearest(double x, double y){
+		int[] nearest = getNearest(x, y, 1);
+		return (nearest.length == 0) ? -1 : nearest[0];
+	}
+
+	/**
+	 * Find the given number of the polylines nearest to the given location.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @param count The number of the polylines to be found.
+	 * @return The indices of the nearest polylines, the nearest first. Fewer than count
+	 * 		if the grid does not contain enough polylines.
+	 * @throws IllegalArgumentException Thrown if the count argument is negative.
+	 */
+	public int[] getNearest(double x, double y, int count){
+		if(count < 0){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be negative.", "count"));
+		}
+		NearestItems nearest = new NearestItems(Math.min(count, polylineCount), true);
+		if(count == 0 || polylines.length == 0){
+			return nearest.toArray();
+		}
+		int centerColumn = getColumn(x);
+		int centerRow = getRow(y);
+		for(int ring = 0; ; ring++){
+			int left = centerColumn - ring;
+			int right = centerColumn + ring;
+			int top = centerRow - ring;
+			int bottom = centerRow + ring;
+			for(int row = Math.max(top, 0); row <= Math.min(bottom, rows - 1); row++){
+				boolean wholeRow = (row == top) || (row == bottom);
+				for(int column = Math.max(left, 0); column <= Math.min(right, columns - 1); column++){
+					if(wholeRow || column == left || column == right){
+						offerCell(row * columns + column, x, y, nearest);
+					}
+				}
+			}
+			if(left <= 0 && top <= 0 && right >= columns - 1 && bottom >= rows - 1){
+				break;
+			}
+			// The distance of the location from the cells not examined yet
+			double bound = Double.POSITIVE_INFINITY;
+			if(left > 0){
+				bound = Math.min(bound, x - (minX + left * cellSize));
+			}
+			if(right < columns - 1){
+				bound = Math.min(bound, minX + (right + 1) * cellSize - x);
+			}
+			if(top > 0){
+				bound = Math.min(bound, y - (minY + top * cellSize));
+			}
+			if(bottom < rows - 1){
+				bound = Math.min(bound, minY + (bottom + 1) * cellSize - y);
+			}
+			if(bound > 0 && nearest.isFull() && bound * bound >= nearest.getBound()){
+				break;
+			}
+		}
+		return nearest.toArray();
+	}
+
+	/**
+	 * Find all the polylines which pass through the given rectangle, including its borders.
+	 * @param minX The lowest x coordinate of the rectangle.
+	 * @param minY The lowest y coordinate of the rectangle.
+	 * @param maxX The highest x coordinate of the rectangle.
+	 * @param maxY The highest y coordinate of the rectangle.
+	 * @return The indices of the polylines in the rectangle, in the ascending order.
+	 */
+	public int[] getInRange(double minX, double minY, double maxX, double maxY){
+		IntList result = new IntList();
+		if(minX > maxX || minY > maxY){
+			return result.toArray();
+		}
+		for(int row = getRow(minY); row <= getRow(maxY); row++){
+			for(int column = getColumn(minX); column <= getColumn(maxX); column++){
+				int cell = row * columns + column;
+				for(int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++){
+					int segment = cellSegments[i];
+					if(intersects(segment, minX, minY, maxX, maxY)){
+						result.add(polylines[segment]);
+					}
+				}
+			}
+		}
+		return result.toSortedDistinctArray();
+	}
+
+	/**
+	 * Find all the polylines which pass within the given distance from the given location.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @param radius The maximal distance of the polylines.
+	 * @return The indices of the polylines within the distance, in the ascending order.
+	 */
+	public int[] getWithin(double x, double y, double radius){
+		IntList result = new IntList();
+		if(radius < 0){
+			return result.toArray();
+		}
+		double squaredRadius = radius * radius;
+		for(int row = getRow(y - radius); row <= getRow(y + radius); row++){
+			for(int column = getColumn(x - radius); column <= getColumn(x + radius); column++){
+				int cell = row * columns + column;
+				for(int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++){
+					int segment = cellSegments[i];
+					if(getSquaredDistance(segment, x, y) <= squaredRadius){
+						result.add(polylines[segment]);
+					}
+				}
+			}
+		}
+		return result.toSortedDistinctArray();
+	}
+
+	/**
+	 * Get the distance of the given polyline from the given location.
+	 * @param polyline The index of the polyline.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @return The distance of the nearest point of the polyline from the location,
+	 * 		+&infin; if the polyline has no point.
+	 * @throws IllegalArgumentException Thrown if there is no polyline with the given index.
+	 */
+	public double getDistance(int polyline, double x, double y){
+		if(polyline < 0 || polyline >= polylineCount){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" is not a polyline of the grid.", "polyline"));
+		}
+		double distance = Double.POSITIVE_INFINITY;
+		for(int segment = 0; segment < polylines.length; segment++){
+			if(polylines[segment] == polyline){
+				distance = Math.min(distance, getSquaredDistance(segment, x, y));
+			}
+		}
+		return Math.sqrt(distance);
+	}
+
+	/**
+	 * Store the segment between the given points.
+	 * @param segment The index of the segment.
+	 * @param polyline The polyline the segment belongs to.
+	 * @param coordinates The coordinates of the points.
+	 * @param start The point the segment starts at.
+	 * @param end The point the segment ends at.
+	 */
+	private void addSegment(int segment, int polyline, double[] coordinates, int start, int end){
+		polylines[segment] = polyline;
+		segments[4 * segment] = coordinates[2 * start];
+		segments[4 * segment + 1] = coordinates[2 * start + 1];
+		segments[4 * segment + 2] = coordinates[2 * end];
+		segments[4 * segment + 3] = coordinates[2 * end + 1];
+	}
+
+	/**
+	 * Count the segment in all the cells it crosses, or put it into them. The rows
+	 * the segment spans are walked one by one. In every row only the columns between
+	 * the points where the segment enters and leaves the row are visited, widened by
+	 * a tiny tolerance so that a rounding error never leaves out a crossed cell.
+	 * @param segment The index of the segment.
+	 * @param filled Null to only count the segment in {@link #cellOffsets}, otherwise
+	 * 		the number of the segments already put into every cell.
+	 */
+	private void addToCells(int segment, int[] filled){
+		double x1 = segments[4 * segment];
+		double y1 = segments[4 * segment + 1];
+		double x2 = segments[4 * segment + 2];
+		double y2 = segments[4 * segment + 3];
+		if(y1 > y2){
+			double swap = x1;
+			x1 = x2;
+			x2 = swap;
+			swap = y1;
+			y1 = y2;
+			y2 = swap;
+		}
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double tolerance = cellSize * 1e-9;
+		int leftmost = getColumn(Math.min(x1, x2));
+		int rightmost = getColumn(Math.max(x1, x2));
+		int firstRow = getRow(y1);
+		int lastRow = getRow(y2);
+		for(int row = firstRow; row <= lastRow; row++){
+			double low = (row == firstRow) ? y1 : minY + row * cellSize;
+			double high = (row == lastRow) ? y2 : minY + (row + 1) * cellSize;
+			double enterX = x1;
+			double leaveX = x2;
+			if(dy > 0){
+				enterX = x1 + (low - y1) / dy * dx;
+				leaveX = x1 + (high - y1) / dy * dx;
+			}
+			int left = Math.max(leftmost, getColumn(Math.min(enterX, leaveX) - tolerance));
+			int right = Math.min(rightmost, getColumn(Math.max(enterX, leaveX) + tolerance));
+			for(int column = left; column <= right; column++){
+				int cell = row * columns + column;
+				if(filled == null){
+					cellOffsets[cell + 1]++;
+				} else {
+					cellSegments[cellOffsets[cell] + filled[cell]++] = segment;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Offer the polylines of all the segments in the cell to the collection.
+	 * @param cell The index of the cell.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @param nearest The nearest polylines collected so far.
+	 */
+	private void offerCell(int cell, double x, double y, NearestItems nearest){
+		for(int i = cellOffsets[cell]; i < cellOffsets[cell + 1]; i++){
+			int segment = cellSegments[i];
+			nearest.offer(polylines[segment], getSquaredDistance(segment, x, y));
+		}
+	}
+
+	/**
+	 * Get the column of the cells containing the given x coordinate.
+	 * @param x The x coordinate.
+	 * @return The column, the nearest one if the coordinate is outside of the grid.
+	 */
+	private int getColumn(double x){
+		double column = Math.floor((x - minX) / cellSize);
+		return (int) Math.max(0, Math.min(columns - 1, column));
+	}
+
+	/**
+	 * Get the row of the cells containing the given y coordinate.
+	 * @param y The y coordinate.
+	 * @return The row, the nearest one if the coordinate is outside of the grid.
+	 */
+	private int getRow(double y){
+		double row = Math.floor((y - minY) / cellSize);
+		return (int) Math.max(0, Math.min(rows - 1, row));
+	}
+
+	/**
+	 * Get the squared distance of the segment from the given location.
+	 * @param segment The index of the segment.
+	 * @param x The x coordinate of the location.
+	 * @param y The y coordinate of the location.
+	 * @return The squared distance of the nearest point of the segment from the location.
+	 */
+	private double getSquaredDistance(int segment, double x, double y){
+		double x1 = segments[4 * segment];
+		double y1 = segments[4 * segment + 1];
+		double dx = segments[4 * segment + 2] - x1;
+		double dy = segments[4 * segment + 3] - y1;
+		double squaredLength = dx * dx + dy * dy;
+		double t = 0;
+		if(squaredLength > 0){
+			t = Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / squaredLength));
+		}
+		double px = x1 + t * dx - x;
+		double py = y1 + t * dy - y;
+		return px * px + py * py;
+	}
+
+	/**
+	 * Check whether the segment passes through the given rectangle,
+	 * by clipping it to the rectangle.
+	 * @param segment The index of the segment.
+	 * @param minX The lowest x coordinate of the rectangle.
+	 * @param minY The lowest y coordinate of the rectangle.
+	 * @param maxX The highest x coordinate of the rectangle.
+	 * @param maxY The highest y coordinate of the rectangle.
+	 * @return True if a part of the segment lies in the rectangle.
+	 */
+	private boolean intersects(int segment, double minX, double minY, double maxX, double maxY){
+		double x1 = segments[4 * segment];
+		double y1 = segments[4 * segment + 1];
+		double dx = segments[4 * segment + 2] - x1;
+		double dy = segments[4 * segment + 3] - y1;
+		double[] limits = {0, 1};
+		return clip(-dx, x1 - minX, limits) && clip(dx, maxX - x1, limits)
+				&& clip(-dy, y1 - minY, limits) && clip(dy, maxY - y1, limits);
+	}
+
+	/**
+	 * Clip the parameters of the points of a segment by one border of a rectangle.
+	 * @param denominator The negated change of the distance from the border along the segment.
+	 * @param numerator The distance of the start of the segment from the border,
+	 * 		positive if inside the rectangle.
+	 * @param limits The lowest and the highest parameter of the points inside the rectangle.
+	 * @return False if no point of the segment remains inside the rectangle.
+	 */
+	private static boolean clip(double denominator, double numerator, double[] limits){
+		if(denominator == 0){
+			return numerator >= 0;
+		}
+		double t = numerator / denominator;
+		if(denominator < 0){
+			limits[0] = Math.max(limits[0], t);
+		} else {
+			limits[1] = Math.min(limits[1], t);
+		}
+		return limits[0] <= limits[1];
+	}
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the {@link Node}s and {@link Link}s of a {@link NetworkSnapshot} by their position,
+ * e.g. to snap a position measured by a GPS to the network.
+ * <p>
+ * The nodes are kept in a {@link KdTree}, the links, as the straight segments between
+ * their end nodes, in a {@link SegmentGrid}. Both are built once, when the index is created.
+ * The coordinates are the ones of the nodes of the network.
+ * </p>
+ * <p>
+ * The index is immutable, so it can be queried from more threads at once.
+ * Use {@link NetworkSnapshot#getSpatialIndex()} to share one index per snapshot.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class SpatialIndex {
+
+	/**
+	 * The network the index is built for.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The nodes of the network, identified by their indices in the snapshot.
+	 */
+	private final KdTree nodes;
+
+	/**
+	 * The links of the network, identified by their indices in the snapshot.
+	 */
+	private final SegmentGrid links;
+
+	/**
+	 * Build the index of the given network.
+	 * @param network The network to be indexed.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public SpatialIndex(NetworkSnapshot network){
+		if(network == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "network"));
+		}
+		this.network = network;
+		int nodeCount = network.getNodeCount();
+		double[] xs = new double[nodeCount];
+		double[] ys = new double[nodeCount];
+		for(int i = 0; i < nodeCount; i++){
+			xs[i] = network.getX(i);
+			ys[i] = network.getY(i);
+		}
+		nodes = new KdTree(xs, ys);
+
+		int linkCount = network.getLinkCount();
+		double[] coordinates = new double[4 * linkCount];
+		int[] offsets = new int[linkCount + 1];
+		for(int i = 0; i < linkCount; i++){
+			int source = network.getSource(i);
+			int target = network.getTarget(i);
+			coordinates[4 * i] = xs[source];
+			coordinates[4 * i + 1] = ys[source];
+			coordinates[4 * i + 2] = xs[target];
+			coordinates[4 * i + 3] = ys[target];
+			offsets[i + 1] = 2 * (i + 1);
+		}
+		links = new SegmentGrid(coordinates, offsets);
+	}
+
+	/**
+	 * Find the node nearest to the given position.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @return The nearest node, null if the network has no nodes.
+	 */
+	public Node getNearestNode(double x, double y){
+		int node = nodes.getNearest(x, y);
+		return (node < 0) ? null : network.getNode(node);
+	}
+
+	/**
+	 * Find the given number of the nodes nearest to the given position.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @param count The number of the nodes to be found.
+	 * @return The nearest nodes, the nearest first.
+	 * @throws IllegalArgumentException Thrown if the count argument is negative.
+	 */
+	public List<Node> getNearestNodes(double x, double y, int count){
+		return toNodes(nodes.getNearest(x, y, count));
+	}
+
+	/**
+	 * Find all the nodes in the given rectangle, including its borders.
+	 * @param minX The lowest x coordinate of the rectangle.
+	 * @param minY The lowest y coordinate of the rectangle.
+	 * @param maxX The highest x coordinate of the rectangle.
+	 * @param maxY The highest y coordinate of the rectangle.
+	 * @return The nodes in the rectangle.
+	 */
+	public List<Node> getNodesInRange(double minX, double minY, double maxX, double maxY){
+		return toNodes(nodes.getInRange(minX, minY, maxX, maxY));
+	}
+
+	/**
+	 * Find all the nodes within the given distance from the given position.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @param radius The maximal distance of the nodes.
+	 * @return The nodes within the distance.
+	 */
+	public List<Node> getNodesWithin(double x, double y, double radius){
+		return toNodes(nodes.getWithin(x, y, radius));
+	}
+
+	/**
+	 * Find the link nearest to the given position.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @return The nearest link, null if the network has no links.
+	 */
+	public Link getNearestLink(double x, double y){
+		int link = links.getNearest(x, y);
+		return (link < 0) ? null : network.getLink(link);
+	}
+
+	/**
+	 * Find the given number of the links nearest to the given position.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @param count The number of the links to be found.
+	 * @return The nearest links, the nearest first.
+	 * @throws IllegalArgumentException Thrown if the count argument is negative.
+	 */
+	public List<Link> getNearestLinks(double x, double y, int count){
+		return toLinks(links.getNearest(x, y, count));
+	}
+
+	/**
+	 * Find all the links which pass through the given rectangle, including its borders.
+	 * @param minX The lowest x coordinate of the rectangle.
+	 * @param minY The lowest y coordinate of the rectangle.
+	 * @param maxX The highest x coordinate of the rectangle.
+	 * @param maxY The highest y coordinate of the rectangle.
+	 * @return The links in the rectangle.
+	 */
+	public List<Link> getLinksInRange(double minX, double minY, double maxX, double maxY){
+		return toLinks(links.getInRange(minX, minY, maxX, maxY));
+	}
+
+	/**
+	 * Find all the links which pass within the given distance from the given position.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @param radius The maximal distance of the links.
+	 * @return The links within the distance.
+	 */
+	public List<Link> getLinksWithin(double x, double y, double radius){
+		return toLinks(links.getWithin(x, y, radius));
+	}
+
+	/**
+	 * Get the nodes with the given indices.
+	 * @param indices The indices of the nodes in the snapshot.
+	 * @return The nodes, in the same order.
+	 */
+	private List<Node> toNodes(int[] indices){
+		List<Node> result = new ArrayList<>(indices.length);
+		for(int index : indices){
+			result.add(network.getNode(index));
+		}
+		return result;
+	}
+
+	/**
+	 * Get the links with the given indices.
+	 * @param indices The indices of the links in the snapshot.
+	 * @return The links, in the same order.
+	 */
+	private List<Link> toLinks(int[] indices){
+		List<Link> result = new ArrayList<>(indices.length);
+		for(int index : indices){
+			result.add(network.getLink(index));
+		}
+		return result;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,286 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Computes the fastest paths between {@link Node}s departing at a given time, when the travel
+ * times of the links depend on the time they are entered, as described by {@link TravelTimeProfiles}.
+ * <p>
+ * The router runs Dijkstra's algorithm where the label of a node is the earliest time it can
+ * be reached and a link is evaluated at the time its source node is reached. As the profiles
+ * have the FIFO property, waiting at a node never pays off, so the algorithm gives the fastest
+ * paths. Like the {@link Router}, each query only touches the nodes it actually reaches and
+ * stops as soon as the target node is settled.
+ * </p>
+ * <p>
+ * The router is not thread-safe; use one router per thread. The profiles can be shared.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public class TimeDependentRouter {
+
+	/**
+	 * The network to search the paths in.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The travel times of the links.
+	 */
+	private final TravelTimeProfiles profiles;
+
+	/**
+	 * The earliest arrival times found so far. Valid only for the nodes whose
+	 * {@link #reached} stamp equals to {@link #query}.
+	 */
+	private final double[] arrivals;
+
+	/**
+	 * The indices of the last links of the fastest paths found so far, -1 for the source.
+	 * Valid only for the nodes whose {@link #reached} stamp equals to {@link #query}.
+	 */
+	private final int[] predecessorLinks;
+
+	/**
+	 * The number of the query in which the node has been reached.
+	 */
+	private final int[] reached;
+
+	/**
+	 * The number of the query in which the node has been settled.
+	 */
+	private final int[] settled;
+
+	/**
+	 * The number of the current query.
+	 */
+	private int query;
+
+	/**
+	 * The nodes reached but not settled yet, ordered by the arrival times.
+	 */
+	private final IndexedMinHeap unvisited;
+
+	/**
+	 * The number of the nodes settled by the last query.
+	 */
+	private int settledCount;
+
+	/**
+	 * Create a new router using the given travel times.
+	 * @param profiles The travel times of the links of the network to search the paths in.
+	 * @throws IllegalArgumentException Thrown if the profiles argument is null.
+	 */
+	public TimeDependentRouter(TravelTimeProfiles profiles){
+		if(profiles == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", "profiles"));
+		}
+		this.profiles = profiles;
+		network = profiles.getNetwork();
+		int nodeCount = network.getNodeCount();
+		arrivals = new double[nodeCount];
+		predecessorLinks = new int[nodeCount];
+		reached = new int[nodeCount];
+		settled = new int[nodeCount];
+		query = 0;
+		unvisited = new IndexedMinHeap(nodeCount);
+	}
+
+	/**
+	 * Get the travel times the router uses.
+	 * @return The travel times of the links.
+	 */
+	public TravelTimeProfiles getProfiles(){
+		return profiles;
+	}
+
+	/**
+	 * Compute the fastest path from the source {@link Node} to the target {@link Node}
+	 * departing at the given time.
+	 * @param source The node to start from.
+	 * @param target The node to finish at.
+	 * @param departure The time of the departure from the source, in seconds.
+	 * @return The list of links which constitutes the path from source to target.
+	 * 		If the path doesn't exist the list is empty.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is null or is not in the network,
+	 * 		or if the departure is not finite.
+	 */
+	public List<Link> getFastestPath(Node source, Node target, double departure){
+		int targetIndex = getIndex(target, "target");
+		search(getIndex(source, "source"), targetIndex, departure);
+		if(settled[targetIndex] != query){
+			return Collections.emptyList();
+		}
+		List<Link> path = new ArrayList<>();
+		for(int node = targetIndex; predecessorLinks[node] >= 0; node = network.getSource(predecessorLinks[node])){
+			path.add(network.getLink(predecessorLinks[node]));
+		}
+		Collections.reverse(path);
+		return path;
+	}
+
+	/**
+	 * Compute the fastest path from the source node to the target node departing at the given time.
+	 * @param source The index of the node to start from.
+	 * @param target The index of the node to finish at.
+	 * @param departure The time of the departure from the source, in seconds.
+	 * @return The indices of the links which constitute the path from source to target,
+	 * 		null if the path doesn't exist.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is not in the network,
+	 * 		or if the departure is not finite.
+	 */
+	public int[] getFastestPath(int source, int target, double departure){
+		checkIndex(source, "source");
+		checkIndex(target, "target");
+		search(source, target, departure);
+		if(settled[target] != query){
+			return null;
+		}
+		int length = 0;
+		for(int node = target; predecessorLinks[node] >= 0; node = network.getSource(predecessorLinks[node])){
+			length++;
+		}
+		int[] path = new int[length];
+		for(int node = target; predecessorLinks[node] >= 0; node = network.getSource(predecessorLinks[node])){
+			path[--length] = predecessorLinks[node];
+		}
+		return path;
+	}
+
+	/**
+	 * Compute the earliest time the target {@link Node} can be reached when departing
+	 * from the source {@link Node} at the given time.
+	 * @param source The node to start from.
+	 * @param target The node to finish at.
+	 * @param departure The time of the departure from the source, in seconds.
+	 * @return The time of the arrival to the target in seconds, +&infin; if the path doesn't exist.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is null or is not in the network,
+	 * 		or if the departure is not finite.
+	 */
+	public double getArrivalTime(Node source, Node target, double departure){
+		int targetIndex = getIndex(target, "target");
+		return getArrivalTime(getIndex(source, "source"), targetIndex, departure);
+	}
+
+	/**
+	 * Compute the earliest time the target node can be reached when departing
+	 * from the source node at the given time.
+	 * @param source The index of the node to start from.
+	 * @param target The index of the node to finish at.
+	 * @param departure The time of the departure from the source, in seconds.
+	 * @return The time of the arrival to the target in seconds, +&infin; if the path doesn't exist.
+	 * @throws IllegalArgumentException Thrown if any of the nodes is not in the network,
+	 * 		or if the departure is not finite.
+	 */
+	public double getArrivalTime(int source, int target, double departure){
+		checkIndex(source, "source");
+		checkIndex(target, "target");
+		search(source, target, departure);
+		return (settled[target] == query) ? arrivals[target] : Double.POSITIVE_INFINITY;
+	}
+
+	/**
+	 * Get the number of the nodes settled by the last query. Indicates how much
+	 * of the network the query had to explore.
+	 * @return The number of the nodes settled by the last query.
+	 */
+	public int getSettledCount(){
+		return settledCount;
+	}
+
+	/**
+	 * Get the index of the given node.
+	 * @param node The node whose index is required.
+	 * @param argument The name of the argument, for the error message.
+	 * @return The index of the node.
+	 * @throws IllegalArgumentException Thrown if the node is null or is not in the network.
+	 */
+	private int getIndex(Node node, String argument){
+		if(node == null){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" cannot be null.", argument));
+		}
+		int index = network.getNodeIndex(node);
+		if(index < 0){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" is not a node of the network.", argument));
+		}
+		return index;
+	}
+
+	/**
+	 * Check that the index belongs to a node of the network.
+	 * @param node The index of the node.
+	 * @param argument The name of the argument, for the error message.
+	 * @throws IllegalArgumentException Thrown if the node is not in the network.
+	 */
+	private void checkIndex(int node, String argument){
+		if(node < 0 || node >= network.getNodeCount()){
+			throw new IllegalArgumentException(String.format(
+					"The argument \"%s\" is not a node of the network.", argument));
+		}
+	}
+
+	/**
+	 * Search the network from the source node until the target node is settled
+	 * or there is no more reachable node.
+	 * @param source The index of the node to start from.
+	 * @param target The index of the node to finish at.
+	 * @param departure The time of the departure from the source, in seconds.
+	 * @throws IllegalArgumentException Thrown if the departure is not finite.
+	 */
+	private void search(int source, int target, double departure){
+		if(!Double.isFinite(departure)){
+			throw new IllegalArgumentException(String.format(
+					"The \"%s\" argument is not finite.", "departure"));
+		}
+		startQuery();
+		arrivals[source] = departure;
+		predecessorLinks[source] = -1;
+		reached[source] = query;
+		unvisited.insertOrDecrease(source, departure);
+		while(!unvisited.isEmpty()){
+			int current = unvisited.poll();
+			settled[current] = query;
+			settledCount++;
+			if(current == target){
+				break;
+			}
+			double currentArrival = arrivals[current];
+			int lastLink = network.getFirstLink(current + 1);
+			for(int i = network.getFirstLink(current); i < lastLink; i++){
+				int successor = network.getTarget(i);
+				if(settled[successor] == query){
+					continue;
+				}
+				double arrival = profiles.getArrivalTime(i, currentArrival);
+				if(reached[successor] != query || arrival < arrivals[successor]){
+					reached[successor] = query;
+					arrivals[successor] = arrival;
+					predecessorLinks[successor] = i;
+					unvisited.insertOrDecrease(successor, arrival);
+				}
+			}
+		}
+		unvisited.clear();
+	}
+
+	/**
+	 * Begin a new query. The state of the previous query is discarded by changing
+	 * the query number, so only the nodes reached by the new query are initialized.
+	 */
+	private void startQuery(){
+		if(query == Integer.MAX_VALUE){
+			Arrays.fill(reached, 0);
+			Arrays.fill(settled, 0);
+			query = 0;
+		}
+		query++;
+		settledCount = 0;
+	}
+}
\ No newline at end of file
@@ -0,0 +1,367 @@
+package cz.cuni.mff.d3s.jdeeco.visualizer.network;
+
+import java.util.Arrays;
+
+/**
+ * The travel times of the links of a {@link NetworkSnapshot} depending on the time
+ * the links are entered, learned from the observed traversals of the links.
+ * <p>
+ * The time is divided into buckets of the same width, the first one starting at time 0.
+ * The travel time of a link in a bucket is the mean of the traversals of the link entered
+ * in the bucket. Where nothing has been observed, the link is assumed to be traversed
+ * at its free speed. Between the centers of the buckets the travel time is interpolated
+ * linearly.
+ * </p>
+ * <p>
+ * The travel times are adjusted so that they never decrease faster than the time passes,
+ * which means that entering a link later never gets one to its end sooner (the FIFO property).
+ * A congestion observed in a bucket thus fades out in the following buckets. Thanks to the
+ * FIFO property the {@link TimeDependentRouter} finds the fastest paths by a plain
+ * Dijkstra's algorithm.
+ * </p>
+ * <p>
+ * Only the buckets whose travel time differs from the free-flow time are stored,
+ * in the compressed sparse row format indexed by the links. The profiles are immutable
+ * and can be shared by several threads.
+ * </p>
+ *
+ * @author Dominik Skoda <skoda@d3s.mff.cuni.cz>
+ */
+public final class TravelTimeProfiles {
+
+	/**
+	 * Collects the observed traversals of the links and creates the {@link TravelTimeProfiles}.
+	 */
+	public static final class Builder {
+
+		/**
+		 * The network whose links are observed.
+		 */
+		private final NetworkSnapshot network;
+
+		/**
+		 * The width of the time buckets in seconds.
+		 */
+		private final double bucketWidth;
+
+		/**
+		 * The links traversed, in the order of the observations.
+		 */
+		private int[] links;
+
+		/**
+		 * The buckets the links have been entered in, in the order of the observations.
+		 */
+		private int[] buckets;
+
+		/**
+		 * The observed travel times, in the order of the observations.
+		 */
+		private double[] times;
+
+		/**
+		 * The number of the observations.
+		 */
+		private int count;
+
+		/**
+		 * Create a builder with no observations.
+		 * @param network The network whose links are observed.
+		 * @param bucketWidth The width of the time buckets in seconds.
+		 * @throws IllegalArgumentException Thrown if the network argument is null
+		 * 		or if the bucketWidth argument is not a positive number.
+		 */
+		public Builder(NetworkSnapshot network, double bucketWidth){
+			if(network == null){
+				throw new IllegalArgumentException(String.format(
+						"The argument \"%s\" cannot be null.", "network"));
+			}
+			if(!Double.isFinite(bucketWidth) || bucketWidth <= 0){
+				throw new IllegalArgumentException(String.format(
+						"The \"%s\" argument has to be greater than 0.", "bucketWidth"));
+			}
+			this.network = network;
+			this.bucketWidth = bucketWidth;
+			links = new int[16];
+			buckets = new int[16];
+			times = new double[16];
+			count = 0;
+		}
+
+		/**
+		 * Add an observed traversal of the link.
+		 * @param link The index of the link.
+		 * @param entered The time the link has been entered, in seconds.
+		 * @param left The time the link has been left, in seconds.
+		 * @throws IllegalArgumentException Thrown if the link is not in the network,
+		 * 		if any of the times is not finite or if the link has been left before entered.
+		 */
+		public void addTraversal(int link, double entered, double left){
+			if(link < 0 || link >= network.getLinkCount()){
+				throw new IllegalArgumentException(String.format(
+						"The argument \"%s\" is not a link of the network.", "link"));
+			}
+			if(!Double.isFinite(entered) || !Double.isFinite(left)){
+				throw new IllegalArgumentException("The times of the traversal have to be finite.");
+			}
+			if(left < entered){
+				throw new IllegalArgumentException("The link cannot be left before it is entered.");
+			}
+			double bucket = Math.floor(entered / bucketWidth);
+			if(bucket <= Integer.MIN_VALUE / 2 || bucket >= Integer.MAX_VALUE / 2){
+				throw new IllegalArgumentException("The link has been entered out of the range of the buckets.");
+			}
+			if(count == links.length){
+				links = Arrays.copyOf(links, 2 * count);
+				buckets = Arrays.copyOf(buckets, 2 * count);
+				times = Arrays.copyOf(times, 2 * count);
+			}
+			links[count] = link;
+			buckets[count] = (int) bucket;
+			times[count] = left - entered;
+			count++;
+		}
+
+		/**
+		 * Get the number of the traversals added.
+		 * @return The number of the traversals added.
+		 */
+		public int getTraversalCount(){
+			return count;
+		}
+
+		/**
+		 * Create the profiles from the traversals added so far.
+		 * @return The travel time profiles of the links of the network.
+		 */
+		public TravelTimeProfiles build(){
+			int linkCount = network.getLinkCount();
+			double[] freeFlowTimes = new double[linkCount];
+			for(int i = 0; i < linkCount; i++){
+				freeFlowTimes[i] = network.getLength(i) / network.getFreeSpeed(i);
+			}
+
+			// Sort the observations by the links, then by the buckets
+			int[] observationOffsets = new int[linkCount + 1];
+			for(int i = 0; i < count; i++){
+				observationOffsets[links[i] + 1]++;
+			}
+			for(int i = 0; i < linkCount; i++){
+				observationOffsets[i + 1] += observationOffsets[i];
+			}
+			long[] order = new long[count];
+			int[] next = Arrays.copyOf(observationOffsets, linkCount);
+			for(int i = 0; i < count; i++){
+				order[next[links[i]]++] = ((long) buckets[i] << 32) | i;
+			}
+
+			int[] offsets = new int[linkCount + 1];
+			IntList profileBuckets = new IntList();
+			double[] profileTimes = new double[16];
+			for(int link = 0; link < linkCount; link++){
+				int first = observationOffsets[link];
+				int last = observationOffsets[link + 1];
+				Arrays.sort(order, first, last);
+				double freeFlowTime = freeFlowTimes[link];
+				int bucket = Integer.MIN_VALUE;
+				double time = freeFlowTime;
+				int i = first;
+				while(i < last){
+					int observedBucket = (int) (order[i] >> 32);
+					double sum = 0;
+					int observations = 0;
+					for(; i < last && (int) (order[i] >> 32) == observedBucket; i++){
+						sum += times[(int) order[i]];
+						observations++;
+					}
+					// Fade the congestion of the previous buckets out up to the observed bucket
+					while(bucket != Integer.MIN_VALUE && bucket + 1 < observedBucket
+							&& time - bucketWidth > freeFlowTime){
+						time -= bucketWidth;
+						bucket++;
+						profileTimes = append(profileBuckets, profileTimes, bucket, time);
+					}
+					double previous = (bucket != Integer.MIN_VALUE && bucket + 1 == observedBucket)
+							? time : freeFlowTime;
+					bucket = observedBucket;
+					time = Math.max(sum / observations, previous - bucketWidth);
+					if(time != freeFlowTime){
+						profileTimes = append(profileBuckets, profileTimes, bucket, time);
+					}
+				}
+				while(bucket != Integer.MIN_VALUE && time - bucketWidth > freeFlowTime){
+					time -= bucketWidth;
+					bucket++;
+					profileTimes = append(profileBuckets, profileTimes, bucket, time);
+				}
+				offsets[link + 1] = profileBuckets.size();
+			}
+			return new TravelTimeProfiles(network, bucketWidth, freeFlowTimes, offsets,
+					profileBuckets.toArray(), Arrays.copyOf(profileTimes, profileBuckets.size()));
+		}
+
+		/**
+		 * Append the travel time in the bucket to the profiles being created.
+		 * @param profileBuckets The buckets of the profiles.
+		 * @param profileTimes The travel times of the profiles.
+		 * @param bucket The bucket to be appended.
+		 * @param time The travel time in the bucket.
+		 * @return The array of the travel times, reallocated if it has been full.
+		 */
+		private static double[] append(IntList profileBuckets, double[] profileTimes, int bucket, double time){
+			int size = profileBuckets.size();
+			if(size == profileTimes.length){
+				profileTimes = Arrays.copyOf(profileTimes, 2 * size);
+			}
+			profileTimes[size] = time;
+			profileBuckets.add(bucket);
+			return profileTimes;
+		}
+	}
+
+	/**
+	 * The network whose links are described.
+	 */
+	private final NetworkSnapshot network;
+
+	/**
+	 * The width of the time buckets in seconds.
+	 */
+	private final double bucketWidth;
+
+	/**
+	 * The times needed to traverse the links at their free speeds, indexed by the links.
+	 */
+	private final double[] freeFlowTimes;
+
+	/**
+	 * The stored buckets of the link i are at the positions offsets[i] .. offsets[i+1]-1
+	 * of the {@link #buckets} and {@link #times} arrays.
+	 */
+	private final int[] offsets;
+
+	/**
+	 * The stored buckets, ascending for every link.
+	 */
+	private final int[] buckets;
+
+	/**
+	 * The travel times in the stored buckets.
+	 */
+	private final double[] times;
+
+	/**
+	 * Create the profiles.
+	 * @param network The network whose links are described.
+	 * @param bucketWidth The width of the time buckets in seconds.
+	 * @param freeFlowTimes The times needed to traverse the links at their free speeds.
+	 * @param offsets The positions of the first stored buckets of the links.
+	 * @param buckets The stored buckets.
+	 * @param times The travel times in the stored buckets.
+	 */
+	private TravelTimeProfiles(NetworkSnapshot network, double bucketWidth, double[] freeFlowTimes,
+			int[] offsets, int[] buckets, double[] times){
+		this.network = network;
+		this.bucketWidth = bucketWidth;
+		this.freeFlowTimes = freeFlowTimes;
+		this.offsets = offsets;
+		this.buckets = buckets;
+		this.times = times;
+	}
+
+	/**
+	 * Create the profiles of the links traversed at their free speeds all the time.
+	 * @param network The network whose links are described.
+	 * @return The profiles with no observed traversals.
+	 * @throws IllegalArgumentException Thrown if the network argument is null.
+	 */
+	public static TravelTimeProfiles freeFlow(NetworkSnapshot network){
+		return new Builder(network, 1).build();
+	}
+
+	/**
+	 * Get the network whose links are described.
+	 * @return The network whose links are described.
+	 */
+	public NetworkSnapshot getNetwork(){
+		return network;
+	}
+
+	/**
+	 * Get the width of the time buckets.
+	 * @return The width of the time buckets in seconds.
+	 */
+	public double getBucketWidth(){
+		return bucketWidth;
+	}
+
+	/**
+	 * Get the time needed to traverse the link at its free speed.
+	 * @param link The index of the link.
+	 * @return The free-flow travel time of the link in seconds.
+	 */
+	public double getFreeFlowTime(int link){
+		return freeFlowTimes[link];
+	}
+
+	/**
+	 * Check whether the travel time of the link differs from its free-flow time at any time.
+	 * @param link The index of the link.
+	 * @return True if the link has a profile learned from the observations.
+	 */
+	public boolean isObserved(int link){
+		return offsets[link] < offsets[link + 1];
+	}
+
+	/**
+	 * Get the number of the buckets stored for all the links. Indicates the size of the profiles.
+	 * @return The number of the stored buckets.
+	 */
+	public int getBucketCount(){
+		return buckets.length;
+	}
+
+	/**
+	 * Get the time needed to traverse the link entered at the given time.
+	 * @param link The index of the link.
+	 * @param time The time the link is entered, in seconds.
+	 * @return The travel time of the link in seconds.
+	 */
+	public double getTravelTime(int link, double time){
+		int first = offsets[link];
+		int last = offsets[link + 1];
+		if(first == last){
+			return freeFlowTimes[link];
+		}
+		// The travel time of a bucket applies to its center
+		double position = time / bucketWidth - 0.5;
+		double floor = Math.floor(position);
+		if(floor < Integer.MIN_VALUE || floor >= Integer.MAX_VALUE){
+			return freeFlowTimes[link];
+		}
+		int bucket = (int) floor;
+		int index = Arrays.binarySearch(buckets, first, last, bucket);
+		double before;
+		int after;
+		if(index >= 0){
+			before = times[index];
+			after = index + 1;
+		} else {
+			before = freeFlowTimes[link];
+			after = -index - 1;
+		}
+		double next = (after < last && buckets[after] == bucket + 1) ? times[after] : freeFlowTimes[link];
+		return before + (position - floor) * (next - before);
+	}
+
+	/**
+	 * Get the time the end of the link is reached when the link is entered at the given time.
+	 * Never decreases with the time the link is entered.
+	 * @param link The index of the link.
+	 * @param time The time the link is entered, in seconds.
+	 * @return The time the link is left, in seconds.
+	 */
+	public double getArrivalTime(int link, double time){
+		return time + getTravelTime(link, time);
+	}
+}
\ No newline at end of file
@@ -596,6 +596,11 @@ public class Console implements EventHandler<Event> {
 		engine.put("links", linkPrefs);
 		engine.put("memberships", membershipPrefs);
 		engine.put("general", generalPrefs);
+		engine.put("perf", visualizer.getPerformanceMonitor());
+		engine.put("ensembleStats", (scene == null) ? null : scene.getEnsembleStatistics());
+		engine.put("ensembleGraph", (scene == null) ? null : scene.getEnsembleGraph());
+		engine.put("spatial", (scene == null) ? null : scene.getNetworkIndex());
+		engine.put("routing", (scene == null) ? null : scene.getTravelTimeRouting());
 		try {
 			engine.eval(inputArea.getText());
 		} catch (ScriptException e) {
@@ -1,6 +1,5 @@
 package cz.filipekt.jdcv;
 
-import java.awt.image.RenderedImage;
 import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
@@ -12,15 +11,11 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriter;
-import javax.imageio.stream.FileImageOutputStream;
-
 import cz.cuni.mff.d3s.jdeeco.visualizer.extensions.MapSceneExtensionPoint;
 import cz.filipekt.jdcv.SceneImportHandler.ImageProvider;
 import cz.filipekt.jdcv.SceneImportHandler.ShapeProvider;
@@ -32,6 +27,10 @@ import cz.filipekt.jdcv.corridors.CorridorLoader;
 import cz.filipekt.jdcv.corridors.LinkCorridor;
 import cz.filipekt.jdcv.ensembles.CoordinatorRelation;
 import cz.filipekt.jdcv.ensembles.EnsembleDatabase;
+import cz.filipekt.jdcv.ensembles.EnsembleEdgeRenderer;
+import cz.filipekt.jdcv.ensembles.EnsembleGraph;
+import cz.filipekt.jdcv.ensembles.EnsembleStatistics;
+import cz.filipekt.jdcv.ensembles.MembershipIntervals;
 import cz.filipekt.jdcv.ensembles.MembershipRelation;
 import cz.filipekt.jdcv.events.EnsembleEvent;
 import cz.filipekt.jdcv.events.Event;
@@ -40,23 +39,36 @@ import cz.filipekt.jdcv.geometry.PointTransformer;
 import cz.filipekt.jdcv.gui_logic.InfoPanelSetter;
 import cz.filipekt.jdcv.network.MyLink;
 import cz.filipekt.jdcv.network.MyNode;
+import cz.filipekt.jdcv.network.NetworkIndex;
+import cz.filipekt.jdcv.network.TravelTimeRouting;
 import cz.filipekt.jdcv.plugins.InfoPanel;
 import cz.filipekt.jdcv.prefs.PreferencesBuilder;
+import cz.filipekt.jdcv.recording.FrameOutput;
+import cz.filipekt.jdcv.recording.FrameRecorder;
+import cz.filipekt.jdcv.recording.RecordingFormat;
+import cz.filipekt.jdcv.util.Dialog;
+import cz.filipekt.jdcv.util.WorkerPool;
+import cz.filipekt.jdcv.util.WorkerPool.Job;
+import cz.filipekt.jdcv.util.WorkerPool.ProgressListener;
 import javafx.animation.Animation.Status;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
 import javafx.animation.Timeline;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.value.ChangeListener;
 import javafx.concurrent.Task;
 import javafx.concurrent.WorkerStateEvent;
-import javafx.embed.swing.SwingFXUtils;
 import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.scene.Node;
+import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.ScrollPane;
@@ -167,16 +179,46 @@ public class MapScene {
 		this.recordingDirectory = recordingDirectory;
 	}
 	
+	/**
+	 * The format in which the recorded snapshots are stored
+	 */
+	private RecordingFormat recordingFormat = RecordingFormat.PNG_IMAGES;
+	
+	/**
+	 * @param recordingFormat The format in which the recorded snapshots are stored
+	 * @see {@link MapScene#recordingFormat}
+	 */
+	public void setRecordingFormat(RecordingFormat recordingFormat) {
+		this.recordingFormat = recordingFormat;
+	}
+	
+	/**
+	 * Quality of the JPEG compression of the recorded video, between 0 and 1
+	 */
+	private final float recordingVideoQuality = 0.85f;
+	
 	/**
 	 * If true, the visualization is currently being recorded. If false, it is not.
 	 */
 	private boolean recordingInProgress = false;
 
 	/**
-	 * @param recordingInProgress If true, the visualization will from now be recorded. If false, it will not.
+	 * @param recordingInProgress If true, the visualization will from now be recorded. If false, it will not
+	 * and the already recorded frames are flushed to {@link MapScene#recordingDirectory}.
+	 * If the recording can not be started, the user is notified and the recording stays off.
 	 * @see {@link MapScene#recordingInProgress}
 	 */
 	public void setRecordingInProgress(boolean recordingInProgress) {
+		if (recordingInProgress && !this.recordingInProgress){
+			try {
+				startFrameRecorder();
+			} catch (IOException ex) {
+				Dialog.show(Dialog.Type.ERROR, "The recording could not be started.", ex.getMessage());
+				return;
+			}
+		} else if (!recordingInProgress && this.recordingInProgress){
+			finishFrameRecorder();
+		}
 		this.recordingInProgress = recordingInProgress;
 	}
 
@@ -214,74 +256,65 @@ public class MapScene {
 	}
 	
 	/**
-	 * Flushes the specified number of recorded snapshots (stored in 
-	 * {@link MapScene#recordedFrames}) to disk.
-	 * A new separate thread is used for this purpose. These threads are synchronized,
-	 * i.e. the caller does not have to care about threading.
-	 * @param framesCount Number of screenshots to flush
+	 * Stores the recorded snapshots to disc in the background, or null if
+	 * recording is not in progress
 	 */
-	public void flushRecordedFrames(final int framesCount){
-		if (recordedFrames.size() > 0){
-			showProgress();
-			Task<Void> task = new Task<Void>() {
-				
-				@Override
-				public Void call() {											
-					synchronized(recordedFrames){
-						Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName("png");
-						ImageWriter writer = null;
-						if (it.hasNext()){
-							writer = it.next();
-						}
-						if (writer != null){
-							try {						
-								DateFormat df = new SimpleDateFormat("yyyy-MMM-dd-HH-mm-ss");
-								String datePrefix = df.format(new Date());
-								int i = 0;
-								long limit = Math.min(recordedFrames.size(), framesCount);
-								Iterator<WritableImage> iter = recordedFrames.iterator();
-								while (iter.hasNext() && (i < framesCount)){								
-									WritableImage wi = iter.next();
-									RenderedImage recordedImage = SwingFXUtils.fromFXImage(wi, null);
-									File file = new File(recordingDirectory, datePrefix + "_" + i + ".png");							
-									try (FileImageOutputStream outStream = new FileImageOutputStream(file)){									
-										writer.setOutput(outStream);
-										writer.write(recordedImage);	
-										outStream.flush();
-										updateProgress(i+1, limit);
-									} catch (IOException ex) {									
-									} finally {
-										iter.remove();
-										i++;
-									}
-								}
-							} finally {
-								writer.dispose();
-							}
-						}						
-					}
-					return null;
+	private FrameRecorder frameRecorder;
+	
+	/**
+	 * Reused as the target of the snapshots taken when recording is underway
+	 */
+	private WritableImage recordingImage;
+	
+	/**
+	 * Starts storing the snapshots to {@link MapScene#recordingDirectory},
+	 * in the format given by {@link MapScene#recordingFormat}
+	 * @throws IOException When the output file could not be created
+	 */
+	private void startFrameRecorder() throws IOException {
+		DateFormat df = new SimpleDateFormat("yyyy-MMM-dd-HH-mm-ss");
+		FrameOutput output = recordingFormat.createOutput(recordingDirectory, df.format(new Date()), 
+				1000 / recordingFreqency, recordingVideoQuality);
+		frameRecorder = new FrameRecorder(output);
+	}
+	
+	/**
+	 * Stops accepting new snapshots and waits, in a new separate thread, until the 
+	 * remaining ones are stored to disc. The progress is depicted in a small window.
+	 */
+	private void finishFrameRecorder(){
+		if (frameRecorder == null){
+			return;
+		}
+		final FrameRecorder recorder = frameRecorder;
+		final Task<Void> task = recorder.finish();
+		frameRecorder = null;
+		recordingImage = null;
+		showProgress();
+		EventHandler<WorkerStateEvent> flushWindowCloser = new EventHandler<WorkerStateEvent>() {
+			
+			@Override
+			public void handle(WorkerStateEvent arg0) {
+				if (flushWindow != null){
+					flushWindow.close();
 				}
-			};
-			EventHandler<WorkerStateEvent> flushWindowCloser = new EventHandler<WorkerStateEvent>() {
-				
-				@Override
-				public void handle(WorkerStateEvent arg0) {
-					if (flushWindow != null){
-						flushWindow.close();
-					}
-					if (timeLine.getStatus() == Status.PAUSED){
-						timeLine.play();
-					}
-					controlsBar.setDisable(false);
+				controlsBar.setDisable(false);
+				if (task.getException() != null){
+					Dialog.show(Dialog.Type.ERROR, "The recording could not be saved.", 
+							task.getException().getMessage());
+				} else if (recorder.getDroppedFrames() > 0){
+					Dialog.show(Dialog.Type.INFO, "The recording has been saved.", 
+							recorder.getDroppedFrames() + " frames were skipped, because the encoding fell behind.");
 				}
-			};
-			task.setOnSucceeded(flushWindowCloser);
-			task.setOnFailed(flushWindowCloser);
-			task.setOnCancelled(flushWindowCloser);
-			flushProgress.progressProperty().bind(task.progressProperty());
-			new Thread(task).start();
-		}
+			}
+		};
+		task.setOnSucceeded(flushWindowCloser);
+		task.setOnFailed(flushWindowCloser);
+		task.setOnCancelled(flushWindowCloser);
+		flushProgress.progressProperty().bind(task.progressProperty());
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		thread.start();
 	}
 	 
 	/**
@@ -327,23 +360,12 @@ public class MapScene {
 		});
 	}
 	
-	/**
-	 * Temporary storage for recorded snapshots when recording is underway.
-	 */
-	private final List<WritableImage> recordedFrames = new ArrayList<>();
-	
 	/**
 	 * If true, the {@link KeyFrame} instances produced by {@link MapScene#createRecordingFrames()}
 	 * have already been added to the list of keyframes of {@link MapScene#timeLine}.
 	 */
 	private boolean recordingFramesAdded = false;
 	
-	/**
-	 * When recording is on, every time this number of frames is recorded, 
-	 * they are flushed to the disc.
-	 */
-	private final int recordingFlushInterval = 20;
-	
 	/**
 	 * @return {@link KeyFrame} instances that are later inserted into the {@link MapScene#timeLine} 
 	 * keyframes, to allow possible recording requests.
@@ -352,42 +374,27 @@ public class MapScene {
 		double totalTime = timeLine.getTotalDuration().toMillis();
 		List<KeyFrame> res = new ArrayList<>();
 		long count = (long)Math.floor(totalTime / recordingFreqency);
+		RecordingAction action = new RecordingAction();
 		for (long i = 0; i<count; i++){
 			double time = recordingFreqency * i;
-			Duration timeVal = new Duration(time);
-			KeyFrame frame = new KeyFrame(timeVal, new RecordingAction());
-			res.add(frame);
-			if ((i % recordingFlushInterval) == 0){
-				frame = new KeyFrame(timeVal, new EventHandler<ActionEvent>(){
-
-					@Override
-					public void handle(ActionEvent arg0) {	
-						if (recordingInProgress){
-							timeLine.pause();
-							flushRecordedFrames(recordingFlushInterval);
-						}
-					}
-					
-				});
-				res.add(frame);
-			}
+			res.add(new KeyFrame(new Duration(time), action));
 		}		
 		return res;
 	}
 	
 	/**
 	 * Called whenever the visualization is being recorded and the {@link MapScene#recordingFreqency}
-	 * interval just passed. Saves a current snapshot into {@link MapScene#recordedFrames}.
+	 * interval just passed. Hands a current snapshot to {@link MapScene#frameRecorder}.
+	 * If the background encoders fall behind, the snapshot is dropped, so that the playback 
+	 * is never blocked.
 	 */
 	private class RecordingAction implements EventHandler<ActionEvent>{
 
 		@Override
 		public void handle(ActionEvent event) {
-			if (recordingInProgress){
-				WritableImage image = mapContainer.snapshot(null, null);
-				synchronized(recordedFrames){
-					recordedFrames.add(image);
-				}
+			if (recordingInProgress && (frameRecorder != null)){
+				recordingImage = mapContainer.snapshot(null, recordingImage);
+				frameRecorder.submit(recordingImage);
 			}
 		}
 		
@@ -421,90 +428,100 @@ public class MapScene {
 	
 	/**
 	 * Constructs the visualizations of the map nodes. Makes sure that proper
-	 * magnification and metric is used.
+	 * magnification and metric is used. The nodes are processed in parallel.
+	 * @param listener Notified about the progress, from the worker threads. May be null.
 	 * @return The visualizations of the map nodes mapped to corresponding node 
 	 * element representations.
+	 * @throws IOException Should never happen
 	 */
-	private Map<Shape,MyNode> generateCircles(){
-		Map<Shape,MyNode> res = new HashMap<>();
-		for (MyNode node : nodes.values()){
-			double x = matsimToVisual.transformX(node.getX());
-			double y = matsimToVisual.transformY(node.getY());
-			final Circle circle = new Circle(x, y, nodeRadius, nodeColor);
-			circle.setEffect(new BoxBlur());
-			res.put(circle, node);			
-			final Map<String,String> data = new LinkedHashMap<>();
-			data.put("Node ID", node.getId());
-			data.put("x-coordinate", node.getX() + "");
-			data.put("y-coordinate", node.getY() + "");
-			circle.setOnMouseClicked(new EventHandler<MouseEvent>() {
-
-				@Override
-				public void handle(MouseEvent arg0) {
-					InfoPanel.getInstance().setInfo("Node selected:", data);
-				}
-			});
-			circle.setOnMouseEntered(new EventHandler<MouseEvent>() {
-
-				@Override
-				public void handle(MouseEvent arg0) {
-					circle.setRadius(nodeRadius * 2);
-				}
-			});
-			circle.setOnMouseExited(new EventHandler<MouseEvent>() {
+	private Map<Shape,MyNode> generateCircles(ProgressListener listener) throws IOException{
+		List<MyNode> nodeList = new ArrayList<>(nodes.values());
+		List<Shape> shapes = WorkerPool.map(nodeList, new Job<MyNode,Shape>() {
 
-				@Override
-				public void handle(MouseEvent arg0) {
-					circle.setRadius(nodeRadius);
-				}
-			});
+			@Override
+			public Shape process(MyNode node) {
+				return generateCircle(node);
+			}
+		}, listener);
+		Map<Shape,MyNode> res = new HashMap<>();
+		for (int i = 0; i < nodeList.size(); i++){
+			res.put(shapes.get(i), nodeList.get(i));
 		}
 		return res;
 	}
 	
+	/**
+	 * Constructs the visualization of a single map node.
+	 * @param node The map node
+	 * @return The visualization of the map node
+	 */
+	private Shape generateCircle(MyNode node){
+		double x = matsimToVisual.transformX(node.getX());
+		double y = matsimToVisual.transformY(node.getY());
+		Circle circle = new Circle(x, y, nodeRadius, nodeColor);
+		circle.setEffect(new BoxBlur());
+		return circle;
+	}
+	
 	/**
 	 * Generated the visualization of the nodes according to their background images. 
+	 * The nodes are processed in parallel.
 	 * @see generateCircles()
 	 */
-	private Map<Node, MyNode> generateNodesWithBackgroundImage(ShapeProvider provider, String[] selectedNodes) throws IOException {
-		Map<Node,MyNode> res = new HashMap<>();
-		for (MyNode node : nodes.values()){
-			
-			double x = matsimToVisual.transformX(node.getX());
-			double y = matsimToVisual.transformY(node.getY());
-			Node shape = provider.getNewShape();
-			
-			if (shape != null){
-				shape.setTranslateX(x);
-				shape.setTranslateY(y);
+	private Map<Node, MyNode> generateNodesWithBackgroundImage(final ShapeProvider provider, String[] selectedNodes,
+			ProgressListener listener) throws IOException {
+		List<MyNode> nodeList = new ArrayList<>(nodes.values());
+		List<Node> shapes = WorkerPool.map(nodeList, new Job<MyNode,Node>() {
+
+			@Override
+			public Node process(MyNode node) throws IOException {
+				return generateNodeWithBackgroundImage(node, provider);
 			}
-			res.put(shape, node);		
-			
-			final Map<String,String> data = new LinkedHashMap<>();
-			data.put("Node ID", node.getId());
-			data.put("x-coordinate", node.getX() + "");
-			data.put("y-coordinate", node.getY() + "");
-			
-			shape.setOnMouseEntered(null);
-			shape.setOnMouseExited(null);
-			shape.setOnMouseClicked(new EventHandler<MouseEvent>() {
-				@Override
-				public void handle(MouseEvent arg0) {
-					InfoPanel.getInstance().setInfo("Node selected:", data);
-				}
-			});
+		}, listener);
+		Map<Node,MyNode> res = new HashMap<>();
+		for (int i = 0; i < nodeList.size(); i++){
+			res.put(shapes.get(i), nodeList.get(i));
 		}
 		return res;
 	}
 	
 	/**
-	 * Makes sure that when the user clicks on the visualization of the link,
-	 * detailed info about the link is shown in the info-panel.
-	 * @param link Detailed info about this link will be shown
-	 * @param visual Visualization of the link given in the first parameter
+	 * Generates the visualization of a single node according to its background image.
+	 * @param node The map node
+	 * @param provider Provides the background images of the nodes
+	 * @return The visualization of the map node
+	 * @throws IOException When the image could not be loaded for any reason
+	 */
+	private Node generateNodeWithBackgroundImage(MyNode node, ShapeProvider provider) throws IOException {
+		double x = matsimToVisual.transformX(node.getX());
+		double y = matsimToVisual.transformY(node.getY());
+		Node shape = provider.getNewShape();
+			
+		if (shape != null){
+			shape.setTranslateX(x);
+			shape.setTranslateY(y);
+		}
+		return shape;
+	}
+	
+	/**
+	 * @param node A map node
+	 * @return Detailed info about the node, to be shown in the info-panel
+	 */
+	private Map<String,String> getNodeInfo(MyNode node){
+		Map<String,String> data = new LinkedHashMap<>();
+		data.put("Node ID", node.getId());
+		data.put("x-coordinate", node.getX() + "");
+		data.put("y-coordinate", node.getY() + "");
+		return data;
+	}
+	
+	/**
+	 * @param link A map link
+	 * @return Detailed info about the link, to be shown in the info-panel
 	 */
-	private void connectLinkWithInfoPanel(MyLink link, Node visual){
-		final Map<String,String> data = new LinkedHashMap<>();
+	private Map<String,String> getLinkInfo(MyLink link){
+		Map<String,String> data = new LinkedHashMap<>();
 		data.put("Link ID", link.getId());
 		data.put("From Node", link.getFrom().getId());
 		data.put("From x-coordinate", Double.toString(link.getFrom().getX()));
@@ -512,33 +529,56 @@ public class MapScene {
 		data.put("To Node", link.getTo().getId());
 		data.put("To x-coordinate", Double.toString(link.getTo().getX()));
 		data.put("To y-coordinate", Double.toString(link.getTo().getY()));
-		visual.setOnMouseClicked(new EventHandler<MouseEvent>() {
-
-			@Override
-			public void handle(MouseEvent arg0) {
-				InfoPanel.getInstance().setInfo("Link Selected:", data);
-			}
-		});
+		return data;
+	}
+	
+	/**
+	 * @param relation An ensemble membership relation
+	 * @return Detailed info about the relation, to be shown in the info-panel
+	 */
+	private Map<String,String> getMembershipInfo(MembershipRelation relation){
+		Map<String,String> data = new LinkedHashMap<>();
+		data.put("Ensemble Name", relation.getEnsembleName());
+		data.put("Coordinator ID", relation.getCoordinator());
+		data.put("Member ID", relation.getMember());
+		return data;
 	}
 	
 	/**
-	 * Creates the visualizations of all links. 
+	 * Creates the visualizations of all links. The links are processed in parallel.
+	 * @param listener Notified about the progress, from the worker threads. May be null.
 	 * @return Mapping of link IDs to their corresponding visualizations
+	 * @throws IOException Should never happen
 	 */
-	private Map<String,LinkCorridor> generateLinkCorridors(){
+	private Map<String,LinkCorridor> generateLinkCorridors(ProgressListener listener) throws IOException{
+		List<LinkCorridor> corridors = WorkerPool.map(new ArrayList<>(links.values()), 
+				new Job<MyLink,LinkCorridor>() {
+
+			@Override
+			public LinkCorridor process(MyLink link) {
+				return generateLinkCorridor(link);
+			}
+		}, listener);
 		Map<String,LinkCorridor> res = new HashMap<>();
-		for (MyLink link : links.values()){			
-			Point2D fromPoint = new Point2D(matsimToVisual.transformX(link.getFrom().getX()), 
-					matsimToVisual.transformY(link.getFrom().getY()));
-			Point2D toPoint = new Point2D(matsimToVisual.transformX(link.getTo().getX()), 
-					matsimToVisual.transformY(link.getTo().getY()));
-			CorridorLoader cl = new CorridorLoader(link, fromPoint, toPoint, matsimToVisual);
-			LinkCorridor corridor = cl.build();
-			connectLinkWithInfoPanel(link, corridor.getVisualization());
-			res.put(link.getId(), corridor);
+		for (LinkCorridor corridor : corridors){
+			res.put(corridor.getLinkID(), corridor);
 		}
 		return res;
-	}		
+	}
+	
+	/**
+	 * Creates the visualization of a single link.
+	 * @param link The link to be visualized
+	 * @return The visualization of the link
+	 */
+	private LinkCorridor generateLinkCorridor(MyLink link){
+		Point2D fromPoint = new Point2D(matsimToVisual.transformX(link.getFrom().getX()), 
+				matsimToVisual.transformY(link.getFrom().getY()));
+		Point2D toPoint = new Point2D(matsimToVisual.transformX(link.getTo().getX()), 
+				matsimToVisual.transformY(link.getTo().getY()));
+		CorridorLoader cl = new CorridorLoader(link, fromPoint, toPoint, matsimToVisual);
+		return cl.build();
+	}
 	
 	/**
 	 * Double of the width of the white margin that is added on each side of the map.
@@ -549,12 +589,45 @@ public class MapScene {
 	 * Converter from the coordinates used in the MATSIM simulation map to the coordinates
 	 * used in the visualization, i.e. as used on the screen
 	 */
-	private PointTransformer matsimToVisual;
+	private MatsimToVisualCoordinates matsimToVisual;
 	
 	public PointTransformer getMatsimToVisual() {
 		return matsimToVisual;
 	}
 	
+	/**
+	 * Spatial index of the network nodes and links, built when it is needed for the first time
+	 */
+	private NetworkIndex networkIndex;
+	
+	/**
+	 * @return Spatial index of the network nodes and links, used to find them by their position
+	 * @see {@link MapScene#networkIndex}
+	 */
+	public NetworkIndex getNetworkIndex() {
+		if (networkIndex == null){
+			networkIndex = new NetworkIndex(nodes, links, matsimToVisual);
+		}
+		return networkIndex;
+	}
+	
+	/**
+	 * Routing by the travel times observed in the event log, built when it is needed for the first time
+	 */
+	private TravelTimeRouting travelTimeRouting;
+	
+	/**
+	 * @return Routing by the travel times of the links observed in the event log
+	 * @see {@link MapScene#travelTimeRouting}
+	 */
+	public TravelTimeRouting getTravelTimeRouting() {
+		if (travelTimeRouting == null){
+			travelTimeRouting = new TravelTimeRouting(nodes, links, checkpointDb, 
+					TravelTimeRouting.DEFAULT_BUCKET_WIDTH);
+		}
+		return travelTimeRouting;
+	}
+	
 	/**
 	 * The simulation time at which we start the visualization
 	 */
@@ -643,29 +716,23 @@ public class MapScene {
 	public void updateNodes(ShapeProvider peopleShapeProvider, String[] selectedPeople, ShapeProvider nodesShapeProvider, String[] selectedNodes) throws IOException{
 		timeLine.stop();
 		timeLine.getKeyFrames().clear();
-		mapContainer.getChildren().clear();
-		
-		Map<Node,MyNode> newNodes = generateNodesWithBackgroundImage(nodesShapeProvider,selectedNodes);
+		PhaseProgress progress = new PhaseProgress(null, 3);
+		Map<Node,MyNode> newNodes = generateNodesWithBackgroundImage(nodesShapeProvider, selectedNodes, progress);
 		circles.clear();
 		circles.putAll(newNodes);
-		Map<String,LinkCorridor> newCorridors = generateLinkCorridors();
+		progress.nextPhase();
+		Map<String,LinkCorridor> newCorridors = generateLinkCorridors(progress);
 		linkCorridors.clear();
 		linkCorridors.putAll(newCorridors); 
-		for (LinkCorridor corridor : linkCorridors.values()){
-			mapContainer.getChildren().add(corridor.getVisualization());
-		}
+		progress.nextPhase();
 		if (peopleShapeProvider == null) {
 			peopleShapeProvider = this.peopleShapeProvider;
 		}
-		produceShapes(peopleShapeProvider, selectedPeople);
+		produceShapes(peopleShapeProvider, selectedPeople, progress);
 		addRecordingFrames();
-		setBackground();
-		mapContainer.getChildren().addAll(circles.keySet());
-		List<Node> sortedList = getSortedListofOtherShapes();
-		mapContainer.getChildren().addAll(sortedList);
-		mapContainer.getChildren().addAll(personShapes.values());
-		mapContainer.getChildren().addAll(ensembleShapes.values());
-//		moveShapesToFront();
+		nodesHoverable = false;
+		updatePickingIndex(false);
+		attachShapes();
 	}
 	
 	/**
@@ -678,32 +745,192 @@ public class MapScene {
 	 * @param justMovables If true, only the moveable objects (people,ensembles) will be updated 
 	 * @param selectedPeople People whose visualizations will be updated
 	 * @throws IOException  When a person shape could not be loaded for any reason
+	 * @see {@link MapScene#prepareUpdate(ShapeProvider, boolean, String[], ProgressListener)}
+	 * @see {@link MapScene#attachShapes()}
 	 */
 	public void update(ShapeProvider peopleShapeProvider, boolean justMovables, String[] selectedPeople) throws IOException{
+		prepareUpdate(peopleShapeProvider, justMovables, selectedPeople, null);
+		attachShapes();
+	}
+
+	/**
+	 * Updates the collections of node instances that represent the map elements,
+	 * both mobile (agents, ensemble memberships) and immobile (nodes,links), without
+	 * touching the {@link MapScene#mapContainer}. The geometry of nodes and links and the 
+	 * key frames of people are computed in parallel, using the {@link WorkerPool}.
+	 * When the {@link MapScene#mapContainer} is not shown yet, this method can be called 
+	 * from any thread. The new shapes are then shown by {@link MapScene#attachShapes()}.
+	 * 
+	 * @param peopleShapeProvider Used for generating the visualizations of people
+	 * @param justMovables If true, only the moveable objects (people,ensembles) will be updated 
+	 * @param selectedPeople People whose visualizations will be updated
+	 * @param listener Notified about the progress, from the worker threads. May be null.
+	 * @throws IOException  When a person shape could not be loaded for any reason
+	 */
+	public void prepareUpdate(ShapeProvider peopleShapeProvider, boolean justMovables, 
+			String[] selectedPeople, ProgressListener listener) throws IOException{
 		timeLine.stop();
 		timeLine.getKeyFrames().clear();
-		mapContainer.getChildren().clear();
+		PhaseProgress progress = new PhaseProgress(listener, justMovables ? 1 : 3);
 		if (!justMovables){
-			Map<Shape,MyNode> newCircles = generateCircles();
+			Map<Shape,MyNode> newCircles = generateCircles(progress);
 			circles.clear();
 			circles.putAll(newCircles);
-			Map<String,LinkCorridor> newCorridors = generateLinkCorridors();
+			nodesHoverable = true;
+			progress.nextPhase();
+			Map<String,LinkCorridor> newCorridors = generateLinkCorridors(progress);
 			linkCorridors.clear();
 			linkCorridors.putAll(newCorridors);
-		}
-		for (LinkCorridor corridor : linkCorridors.values()){
-			mapContainer.getChildren().add(corridor.getVisualization());
+			progress.nextPhase();
 		}
 		this.peopleShapeProvider = peopleShapeProvider;
-		produceShapes(peopleShapeProvider, selectedPeople);
+		produceShapes(peopleShapeProvider, selectedPeople, progress);
 		addRecordingFrames();
+		updatePickingIndex(justMovables);
+	}
+
+	/**
+	 * Resolves hover and click on the map elements, so that the individual
+	 * shapes do not need their own mouse handlers
+	 */
+	private PickingIndex pickingIndex;
+
+	/**
+	 * If true, the map nodes are the plain circles generated by {@link MapScene#generateCircle(MyNode)}
+	 * and they are highlighted on mouse hover
+	 */
+	private boolean nodesHoverable = true;
+
+	/**
+	 * Inserts the current visualizations of the map elements into the {@link MapScene#pickingIndex}
+	 * @param justMovables If true, only the moveable objects (people,ensembles) are re-inserted
+	 */
+	private void updatePickingIndex(boolean justMovables){
+		if (!justMovables){
+			pickingIndex.clearStatic();
+			for (LinkCorridor corridor : linkCorridors.values()){
+				pickingIndex.addLink(corridor.getVisualization(), links.get(corridor.getLinkID()), 
+						corridor.getPathPoints());
+			}
+			for (Map.Entry<Node,MyNode> node : circles.entrySet()){
+				pickingIndex.addNode(node.getKey(), node.getValue(), nodesHoverable);
+			}
+		}
+		pickingIndex.setMoving(personShapes, ensembleShapes);
+	}
+
+	/**
+	 * The single mouse handler of the {@link MapScene#mapContainer}. Highlights the map 
+	 * element under the cursor and shows the info about the clicked element in the info-panel.
+	 */
+	private class MapMouseHandler implements EventHandler<MouseEvent> {
+
+		@Override
+		public void handle(MouseEvent event) {
+			if (event.getEventType() == MouseEvent.MOUSE_EXITED){
+				pickingIndex.setHovered(null);
+				return;
+			}
+			PickingIndex.Entry entry = pickingIndex.pick(event.getX(), event.getY(), 
+					timeLine.getCurrentTime().toMillis());
+			if (event.getEventType() == MouseEvent.MOUSE_MOVED){
+				pickingIndex.setHovered(entry);
+			} else if ((event.getEventType() == MouseEvent.MOUSE_CLICKED) && (entry != null)){
+				showInfo(entry, event);
+			}
+		}
+		
+		/**
+		 * Shows detailed info about the given map element in the info-panel
+		 * @param entry The map element
+		 * @param event The click on the map element
+		 */
+		private void showInfo(PickingIndex.Entry entry, MouseEvent event){
+			Object source = entry.getSource();
+			switch (entry.getKind()){
+				case NODE:
+					InfoPanel.getInstance().setInfo("Node selected:", getNodeInfo((MyNode)source));
+					break;
+				case LINK:
+					InfoPanel.getInstance().setInfo("Link Selected:", getLinkInfo((MyLink)source));
+					break;
+				case AGENT:
+					new InfoPanelSetter((String)source, checkpointDb).handle(event);
+					break;
+				case ENSEMBLE:
+					InfoPanel.getInstance().setInfo("Ensemble Membership Selected", 
+							getMembershipInfo((MembershipRelation)source));
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the content of the {@link MapScene#mapContainer} with the shapes prepared by 
+	 * {@link MapScene#prepareUpdate(ShapeProvider, boolean, String[], ProgressListener)}, 
+	 * in a single batch. When the {@link MapScene#mapContainer} is shown, this method
+	 * must be called from the JavaFX application thread.
+	 */
+	public void attachShapes(){
+		List<Node> children = new ArrayList<>();
+		children.addAll(getStaticShapes());
+		if (!staticLayerMode){
+			children.addAll(circles.keySet());
+		}
+		children.addAll(getSortedListofOtherShapes());
+		children.addAll(personShapes.values());
+		if (!ensembleShapes.isEmpty()){
+			children.add(ensembleRenderer.getCanvas());
+		}
+		mapContainer.getChildren().setAll(children);
 		setBackground();
-		mapContainer.getChildren().addAll(circles.keySet());
-		List<Node> sortedList = getSortedListofOtherShapes();
-		mapContainer.getChildren().addAll(sortedList);
-		mapContainer.getChildren().addAll(personShapes.values());
-		mapContainer.getChildren().addAll(ensembleShapes.values());
-//		moveShapesToFront();
+	}
+
+	/**
+	 * Splits the progress of 
+	 * {@link MapScene#prepareUpdate(ShapeProvider, boolean, String[], ProgressListener)}
+	 * into phases of equal weight, each of them reporting its own progress from 0 to 1.
+	 */
+	private static class PhaseProgress implements ProgressListener {
+		
+		/**
+		 * Notified about the overall progress. May be null.
+		 */
+		private final ProgressListener listener;
+		
+		/**
+		 * Total number of phases
+		 */
+		private final int phasesCount;
+		
+		/**
+		 * Number of phases which have already been finished
+		 */
+		private volatile int phasesDone = 0;
+
+		/**
+		 * @param listener Notified about the overall progress. May be null.
+		 * @param phasesCount Total number of phases
+		 */
+		public PhaseProgress(ProgressListener listener, int phasesCount) {
+			this.listener = listener;
+			this.phasesCount = phasesCount;
+		}
+		
+		/**
+		 * Marks the current phase as finished
+		 */
+		public void nextPhase(){
+			phasesDone++;
+			progressChanged(0);
+		}
+
+		@Override
+		public void progressChanged(double progress) {
+			if (listener != null){
+				listener.progressChanged(Math.min(1, (phasesDone + progress) / phasesCount));
+			}
+		}
 	}
 
 	/**
@@ -758,6 +985,14 @@ public class MapScene {
 					style.append(");");
 					mapPane.setStyle(style.toString());
 				}
+			} else if (staticLayerMode){
+				// the background image is rendered into the static layer
+				String style = Visualizer.getBackColorCSSField() + ": " + 
+						Visualizer.getDefaultbackround() + ";";
+				mapPane.setStyle(style);
+				if (backgroundColorPicker != null){
+					backgroundColorPicker.setDisable(true);
+				}
 			} else {
 				String imagePath = background.getImage();
 				Point2D leftTopMatsim = new Point2D(background.getLeftTopX(), background.getLeftTopY());
@@ -816,7 +1051,109 @@ public class MapScene {
 			corridor.getVisualization().setVisible(visible);
 		}
 	}
-	
+
+	/**
+	 * Renders the nodes, links and the background into a pyramid of cached tiles, when
+	 * the {@link MapScene#staticLayerMode} is on.
+	 */
+	private StaticLayerCache staticLayer;
+
+	/**
+	 * If true, the nodes, links and the background are not drawn with every pulse,
+	 * instead they are rendered into cached tiles, once per zoom level.
+	 * Only the moving people and ensemble memberships are drawn live.
+	 */
+	private boolean staticLayerMode = false;
+
+	/**
+	 * @return If true, the nodes, links and the background are drawn from cached tiles
+	 * @see {@link MapScene#staticLayerMode}
+	 */
+	public boolean isStaticLayerMode() {
+		return staticLayerMode;
+	}
+
+	/**
+	 * Switches the static layer mode on or off. The map container is rearranged
+	 * accordingly, the timeline is not affected.
+	 * @param staticLayerMode If true, the nodes, links and the background will from now
+	 * be drawn from cached tiles. If false, they will be drawn as ordinary shapes.
+	 * @see {@link MapScene#staticLayerMode}
+	 */
+	public void setStaticLayerMode(boolean staticLayerMode) {
+		if (this.staticLayerMode == staticLayerMode){
+			return;
+		}
+		this.staticLayerMode = staticLayerMode;
+		List<Node> corridorVisuals = getCorridorVisualizations();
+		if (staticLayerMode){
+			mapContainer.getChildren().removeAll(new HashSet<>(corridorVisuals));
+			mapContainer.getChildren().removeAll(circles.keySet());
+			staticLayer.setContent(corridorVisuals, circles.keySet(), background, matsimToVisual);
+			mapContainer.getChildren().addAll(0, staticLayer.getLayers());
+		} else {
+			mapContainer.getChildren().removeAll(staticLayer.getLayers());
+			staticLayer.clear();
+			mapContainer.getChildren().addAll(0, corridorVisuals);
+			mapContainer.getChildren().addAll(corridorVisuals.size(), circles.keySet());
+		}
+		setBackground();
+	}
+
+	/**
+	 * @param directory Directory to which the map tiles that do not fit into the memory
+	 * are written, when the {@link MapScene#staticLayerMode} is on. If null, such tiles
+	 * are discarded and rendered again when needed.
+	 */
+	public void setTileSpillDirectory(File directory){
+		staticLayer.setSpillDirectory(directory);
+	}
+
+	/**
+	 * Tells the {@link MapScene#staticLayer} which part of the map is currently
+	 * visible in the {@link MapScene#mapPane}, so that only the needed tiles are loaded.
+	 */
+	private void updateStaticLayerViewport(){
+		Bounds viewport = mapPane.getViewportBounds();
+		Bounds content = mapContainer.getBoundsInParent();
+		double hRange = mapPane.getHmax() - mapPane.getHmin();
+		double vRange = mapPane.getVmax() - mapPane.getVmin();
+		double h = (hRange > 0) ? (mapPane.getHvalue() - mapPane.getHmin()) / hRange : 0;
+		double v = (vRange > 0) ? (mapPane.getVvalue() - mapPane.getVmin()) / vRange : 0;
+		double x = content.getMinX() + (Math.max(0, content.getWidth() - viewport.getWidth()) * h);
+		double y = content.getMinY() + (Math.max(0, content.getHeight() - viewport.getHeight()) * v);
+		Bounds visible = new BoundingBox(x, y, viewport.getWidth(), viewport.getHeight());
+		staticLayer.setViewport(mapContainer.parentToLocal(visible));
+	}
+
+	/**
+	 * @return The visualizations of the links, which have to be placed at the bottom of
+	 * the {@link MapScene#mapContainer}. When {@link MapScene#staticLayerMode} is on, 
+	 * the nodes, links and the background are handed over to the {@link MapScene#staticLayer} 
+	 * and its layers are returned instead.
+	 */
+	private List<Node> getStaticShapes(){
+		List<Node> corridorVisuals = getCorridorVisualizations();
+		if (staticLayerMode){
+			staticLayer.setContent(corridorVisuals, circles.keySet(), background, matsimToVisual);
+			return staticLayer.getLayers();
+		} else {
+			staticLayer.clear();
+			return corridorVisuals;
+		}
+	}
+
+	/**
+	 * @return The visualizations of all the links
+	 */
+	private List<Node> getCorridorVisualizations(){
+		List<Node> res = new ArrayList<>();
+		for (LinkCorridor corridor : linkCorridors.values()){
+			res.add(corridor.getVisualization());
+		}
+		return res;
+	}
+
 	/**
 	 * Ensures that the {@link Shape} instances making up the map are drawn in the correct
 	 * background-foreground manner, for example that there is no incorrect overlapping 
@@ -858,6 +1195,19 @@ public class MapScene {
 		mapContainer.getTransforms().clear();
 		Scale scale = new Scale(zoom, zoom, 0, 0);
 		mapContainer.getTransforms().add(scale);
+		staticLayer.setZoom(zoom);
+		ensembleRenderer.setZoom(zoom);
+	}
+	
+	/**
+	 * Moves the visualization to the given point of the time line and makes sure that
+	 * all the shapes are positioned accordingly before the method returns, so that a
+	 * snapshot can be taken right away. The time line should be paused.
+	 * @param time A point of the time line
+	 */
+	public void showFrameAt(Duration time){
+		timeLine.jumpTo(time);
+		ensembleRenderer.redrawNow();
 	}
 	
 	/**
@@ -886,7 +1236,63 @@ public class MapScene {
 	public Pane getMapContainer() {
 		return mapContainer;
 	}
-	
+
+	/**
+	 * @return Number of JavaFX nodes contained (transitively) in {@link MapScene#mapContainer}
+	 */
+	public int getLiveNodeCount(){
+		return countNodes(mapContainer) - 1;
+	}
+
+	/**
+	 * @param node Root of the counted subtree of the scene graph
+	 * @return Number of JavaFX nodes in the subtree, including the root
+	 */
+	private int countNodes(Node node){
+		int res = 1;
+		if (node instanceof Parent){
+			for (Node child : ((Parent)node).getChildrenUnmodifiable()){
+				res += countNodes(child);
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @return Number of key frames in the {@link MapScene#timeLine}, or 0 if it is not running
+	 */
+	public int getActiveKeyFrameCount(){
+		return (timeLine.getStatus() == Status.RUNNING) ? timeLine.getKeyFrames().size() : 0;
+	}
+
+	/**
+	 * @return Number of cars/people whose shapes are currently visible
+	 */
+	public int getVisibleAgentCount(){
+		return countVisible(personShapes.values());
+	}
+
+	/**
+	 * @return Number of ensemble membership edges that are currently visible
+	 */
+	public int getVisibleEnsembleEdgeCount(){
+		return countVisible(ensembleShapes.values());
+	}
+
+	/**
+	 * @param shapes Some of the shapes shown in the scene
+	 * @return How many of the given shapes are visible
+	 */
+	private int countVisible(Collection<Node> shapes){
+		int res = 0;
+		for (Node shape : shapes){
+			if (shape.isVisible()){
+				res++;
+			}
+		}
+		return res;
+	}
+
 	/**
 	 * Scrollable container for {@link MapScene#mapContainer}
 	 */
@@ -943,14 +1349,16 @@ public class MapScene {
 	 * collections containing the visualizations of the map elements
 	 * @param shapeProvider Used for generating the visualizations of people
 	 * @param selectedPeople People whose visualizations will be updated
+	 * @param listener Notified about the progress, from the worker threads. May be null.
 	 * @throws IOException When a person shape could not be loaded for any reason
 	 */
-	private void produceShapes(ShapeProvider shapeProvider, String[] selectedPeople) throws IOException{
+	private void produceShapes(ShapeProvider shapeProvider, String[] selectedPeople, 
+			ProgressListener listener) throws IOException{
 		if (matsimEventsPresent){
-			Collection<KeyFrame> keyFrames = buildFramesForPeople(shapeProvider, selectedPeople);
+			Collection<KeyFrame> keyFrames = buildFramesForPeople(shapeProvider, selectedPeople, listener);
 			timeLine.getKeyFrames().addAll(keyFrames);
 			if (ensembleEventsPresent){
-				Collection<KeyFrame> keyFrames2 = buildFramesForEnsembles();			
+				Collection<KeyFrame> keyFrames2 = buildFramesForEnsembles();
 				timeLine.getKeyFrames().addAll(keyFrames2);
 			}
 			
@@ -966,58 +1374,114 @@ public class MapScene {
 	 * specified by JavaFX {@link Timeline} animation model. The {@link MapScene#personShapes} is 
 	 * filled with the individual nodes that represent the persons. Additionally, 
 	 * {@link MapScene#keyFramesForPeople} is filled with keyframes mapped to the corresponding
-	 * people.  
+	 * people. The people are processed in parallel.
 	 * @param shapeProvider Used for generating the visualizations of people
 	 * @param selectedPeople People whose visualizations will be updated
+	 * @param listener Notified about the progress, from the worker threads. May be null.
 	 * @return {@link KeyFrame} instances describing the movements of people on the map.
 	 * @throws IOException When a person shape could not be loaded for any reason
 	 */
-	private Collection<KeyFrame> buildFramesForPeople(SceneImportHandler.ShapeProvider shapeProvider, 
-			String[] selectedPeople) throws IOException{
+	private Collection<KeyFrame> buildFramesForPeople(final SceneImportHandler.ShapeProvider shapeProvider, 
+			String[] selectedPeople, ProgressListener listener) throws IOException{
 		Collection<KeyFrame> frames = new ArrayList<>();
 		Collection<String> selectedPeopleCol = null;
 		if ((selectedPeople != null) && (selectedPeople.length != 0)){
-			selectedPeopleCol = Arrays.<String>asList(selectedPeople);
+			selectedPeopleCol = new HashSet<>(Arrays.<String>asList(selectedPeople));
 		}
+		List<String> updatedPeople = new ArrayList<>();
 		for (String personID : checkpointDb.getKeys()){
-			if ((selectedPeople == null) || (selectedPeople.length == 0) || 
-					(selectedPeopleCol.contains(personID))){				
-				List<CheckPoint> positionCheckpoints = checkpointDb.getPositionsList(personID);
-				if ((positionCheckpoints != null) && (!positionCheckpoints.isEmpty())){
-					try {
-						Node personShape = buildPersonShape(positionCheckpoints, shapeProvider);
-						personShape.setOnMouseClicked(new InfoPanelSetter(personID, checkpointDb));
-						personShape.setVisible(false);
-						Collection<KeyFrame> personFrames = new ArrayList<>();
-						prepareInitialFrame(personFrames, personShape);
-						for (int i = 0; i < positionCheckpoints.size(); i++){
-							CheckPoint cp = positionCheckpoints.get(i);
-							CheckPoint nextCp;
-							if ((i+1) < positionCheckpoints.size()){
-								nextCp = positionCheckpoints.get(i+1);
-							} else {
-								nextCp = null;
-							}
-							processPositionCheckPoint(cp, nextCp, personFrames, personShape);
-						}
-						List<CheckPoint> otherCheckpoints = checkpointDb.getOthersList(personID);
-						for (CheckPoint cp : otherCheckpoints){
-							processOtherCheckPoint(cp, personFrames, personShape);
-						}
-						personShapes.put(personID, personShape);
-						frames.addAll(personFrames);
-						keyFramesForPeople.put(personID, personFrames);
-					} catch (InitialPositionNotFoundException | IllegalArgumentException ex){
-//						should not happen; prevented by the "if" statement just before the "try" block
-					}
-				}
+			if ((selectedPeopleCol == null) || (selectedPeopleCol.contains(personID))){
+				updatedPeople.add(personID);
 			} else {
 				frames.addAll(keyFramesForPeople.get(personID));
 			}
 		}
+		List<PersonFrames> results = WorkerPool.map(updatedPeople, new Job<String,PersonFrames>() {
+
+			@Override
+			public PersonFrames process(String personID) throws IOException {
+				return buildPersonFrames(personID, shapeProvider);
+			}
+		}, listener);
+		for (int i = 0; i < updatedPeople.size(); i++){
+			PersonFrames result = results.get(i);
+			if (result != null){
+				String personID = updatedPeople.get(i);
+				personShapes.put(personID, result.shape);
+				frames.addAll(result.frames);
+				keyFramesForPeople.put(personID, result.frames);
+			}
+		}
 		return frames;
 	}
 	
+	/**
+	 * The visualization of a single person together with the key frames describing
+	 * the movements of the visualization.
+	 */
+	private static class PersonFrames {
+		
+		/**
+		 * Visualization of the person
+		 */
+		private final Node shape;
+		
+		/**
+		 * Key frames describing the movements of the {@link PersonFrames#shape}
+		 */
+		private final Collection<KeyFrame> frames;
+
+		/**
+		 * @param shape Visualization of the person
+		 * @param frames Key frames describing the movements of the visualization
+		 */
+		public PersonFrames(Node shape, Collection<KeyFrame> frames) {
+			this.shape = shape;
+			this.frames = frames;
+		}
+	}
+	
+	/**
+	 * Creates the visualization of the given person and the key frames describing 
+	 * its movements. Does not modify any of the shared collections, so it can be 
+	 * called for multiple people at once.
+	 * @param personID ID of the person
+	 * @param shapeProvider Used for generating the visualization of the person
+	 * @return The visualization of the person and its key frames, or null if 
+	 * the person has no position checkpoints
+	 * @throws IOException When the person shape could not be loaded for any reason
+	 */
+	private PersonFrames buildPersonFrames(String personID, SceneImportHandler.ShapeProvider shapeProvider) 
+			throws IOException{
+		List<CheckPoint> positionCheckpoints = checkpointDb.getPositionsList(personID);
+		if ((positionCheckpoints != null) && (!positionCheckpoints.isEmpty())){
+			try {
+				Node personShape = buildPersonShape(positionCheckpoints, shapeProvider);
+				personShape.setVisible(false);
+				Collection<KeyFrame> personFrames = new ArrayList<>();
+				prepareInitialFrame(personFrames, personShape);
+				for (int i = 0; i < positionCheckpoints.size(); i++){
+					CheckPoint cp = positionCheckpoints.get(i);
+					CheckPoint nextCp;
+					if ((i+1) < positionCheckpoints.size()){
+						nextCp = positionCheckpoints.get(i+1);
+					} else {
+						nextCp = null;
+					}
+					processPositionCheckPoint(cp, nextCp, personFrames, personShape);
+				}
+				List<CheckPoint> otherCheckpoints = checkpointDb.getOthersList(personID);
+				for (CheckPoint cp : otherCheckpoints){
+					processOtherCheckPoint(cp, personFrames, personShape);
+				}
+				return new PersonFrames(personShape, personFrames);
+			} catch (InitialPositionNotFoundException | IllegalArgumentException ex){
+//				should not happen; prevented by the "if" statement just before the "try" block
+			}
+		}
+		return null;
+	}
+	
 	/**
 	 * Creates the keyframes that describe the initial position and visbility of the
 	 * person visualization given in the second parameter. The keyframes are added
@@ -1197,44 +1661,130 @@ public class MapScene {
 	private final Map<CoordinatorRelation,Paint> ensembleColors = new HashMap<>();
 
 	/**
-	 * Given all the ensemble events, this method creates their graphical representations in the form of 
-	 * JavaFX nodes and prepares the correct movements of these nodes by binding them in the right way
-	 * to the movements of the corresponding coordinators and members.  
-	 * @return These key frames capture the varying visibility of the ensemble membership representations,
-	 * as they disappear whenever the membership condition ceases to hold and vice versa.
+	 * Given all the ensemble membership intervals, this method creates their graphical representations 
+	 * in the form of JavaFX nodes and prepares the correct movements of these nodes by binding them 
+	 * in the right way to the movements of the corresponding coordinators and members.
+	 * The visibility of the nodes is not driven by key frames, instead it is updated from the 
+	 * {@link MapScene#ensembleGraph} whenever the time line moves.
+	 * @return A single empty key frame, placed at the last ensemble event, so that the
+	 * time line is long enough to show all the ensemble memberships
+	 * @see {@link MapScene#ensembleVisibilityUpdater}
 	 */
 	private Collection<KeyFrame> buildFramesForEnsembles(){
-		Collection<KeyFrame> res = new ArrayList<>();
 		EnsembleDatabase edb = new EnsembleDatabase(ensembleColors);
-		for (EnsembleEvent eev : ensembleEvents){
-			double timeVal = convertToVisualizationTime(eev.getTime());
-			Duration time = new Duration(timeVal);
-			final String coord = eev.getCoordinator();
-			Node coordShape = personShapes.get(coord);
-			final String member = eev.getMember();
-			Node memberShape = personShapes.get(member);
-			if ((coordShape != null) && (memberShape != null)){  						
-				Node ensembleShape = edb.getEnsembleShape(eev.getEnsemble(), coord, member, coordShape, memberShape);				
-				KeyValue kv = new KeyValue(ensembleShape.visibleProperty(), eev.getMembership());
-				KeyFrame kf = new KeyFrame(time, kv);
-				res.add(kf);
+		for (MembershipRelation relation : membershipIntervals.getRelations()){
+			Node coordShape = personShapes.get(relation.getCoordinator());
+			Node memberShape = personShapes.get(relation.getMember());
+			if ((coordShape != null) && (memberShape != null)){
+				edb.getEnsembleShape(relation.getEnsembleName(), relation.getCoordinator(), 
+						relation.getMember(), coordShape, memberShape);
 			} else {
 				/*
 				Some of the agents had no corresponding event in the interval of matsim event log which 
 				we loaded so we don't know where the agent is on the map and we move on.
-				*/				 
+				*/
 			}
 		}
 		ensembleShapes.clear();
 		ensembleShapes.putAll(edb.getEnsembleShapes());
-		for (Node line : ensembleShapes.values()){
-			KeyValue kv = new KeyValue(line.visibleProperty(), Boolean.FALSE);
-			KeyFrame kf = new KeyFrame(Duration.ZERO, kv);
-			res.add(kf);
+		edgeShapes = new Node[ensembleGraph.getEdgeCount()];
+		for (Map.Entry<MembershipRelation,Node> entry : ensembleShapes.entrySet()){
+			int edge = ensembleGraph.getEdgeIndex(entry.getKey());
+			if (edge >= 0){
+				edgeShapes[edge] = entry.getValue();
+			}
+			entry.getValue().setVisible(false);
+		}
+		ensembleGraph.reset();
+		ensembleRenderer.setEdges(ensembleShapes, personShapes);
+		Collection<KeyFrame> res = new ArrayList<>();
+		double lastTime = membershipIntervals.getLastEventTime();
+		if (!Double.isInfinite(lastTime)){
+			res.add(new KeyFrame(new Duration(convertToVisualizationTime(lastTime))));
 		}
 		return res;
 	}
 
+	/**
+	 * Draws the visible ensemble membership edges, all of them at once
+	 */
+	private EnsembleEdgeRenderer ensembleRenderer;
+
+	/**
+	 * The ensemble membership relations as intervals of simulation time, 
+	 * or null if no ensemble events are present
+	 */
+	private MembershipIntervals membershipIntervals;
+
+	/**
+	 * @return The ensemble membership relations as intervals of simulation time,
+	 * or null if no ensemble events are present
+	 * @see {@link MapScene#membershipIntervals}
+	 */
+	public MembershipIntervals getMembershipIntervals() {
+		return membershipIntervals;
+	}
+
+	/**
+	 * Into how many buckets the visualized time interval is split in {@link MapScene#ensembleStatistics}
+	 */
+	private final int statisticsBucketCount = 500;
+
+	/**
+	 * Time series describing the ensembles, or null if no ensemble events are present
+	 */
+	private EnsembleStatistics ensembleStatistics;
+
+	/**
+	 * @return Time series describing the ensembles, or null if no ensemble events are present
+	 * @see {@link MapScene#ensembleStatistics}
+	 */
+	public EnsembleStatistics getEnsembleStatistics() {
+		return ensembleStatistics;
+	}
+
+	/**
+	 * The ensemble graph following the time line, or null if no ensemble events are present
+	 */
+	private EnsembleGraph ensembleGraph;
+
+	/**
+	 * @return The ensemble graph following the time line, or null if no ensemble events are present.
+	 * Extensions may register their own {@link EnsembleGraph.Listener} instances to it.
+	 * @see {@link MapScene#ensembleGraph}
+	 */
+	public EnsembleGraph getEnsembleGraph() {
+		return ensembleGraph;
+	}
+
+	/**
+	 * Visualizations of the edges of {@link MapScene#ensembleGraph}, indexed by the edge indices.
+	 * The items are null for the edges that have no visualization.
+	 */
+	private Node[] edgeShapes = new Node[0];
+
+	/**
+	 * Shows the visualizations of the membership relations which start to hold and hides
+	 * those which cease to hold. Only the visualizations of the changed relations are touched,
+	 * so that the visibility set by the user through the preferences is respected.
+	 */
+	private final EnsembleGraph.Listener ensembleVisibilityUpdater = new EnsembleGraph.Listener() {
+
+		@Override
+		public void edgeAdded(int edge, MembershipRelation relation) {
+			if (edgeShapes[edge] != null){
+				edgeShapes[edge].setVisible(true);
+			}
+		}
+
+		@Override
+		public void edgeRemoved(int edge, MembershipRelation relation) {
+			if (edgeShapes[edge] != null){
+				edgeShapes[edge].setVisible(false);
+			}
+		}
+	};
+
 	/**
 	 * The checkpoints (position of people) as encountered when parsing the input XML 
 	 * files. Contains positions of people on the map at specified times.
@@ -1320,6 +1870,22 @@ public class MapScene {
 	 */
 	private double originalMapHeight;
 	
+	/**
+	 * @return Preferred map width at the beginning, before any zooming takes place
+	 * @see {@link MapScene#originalMapWidth}
+	 */
+	public double getOriginalMapWidth() {
+		return originalMapWidth;
+	}
+	
+	/**
+	 * @return Preferred map height at the beginning, before any zooming takes place
+	 * @see {@link MapScene#originalMapHeight}
+	 */
+	public double getOriginalMapHeight() {
+		return originalMapHeight;
+	}
+	
 	/**
 	 * The tool bar containing the various zooming, pausing, forwarding etc. options
 	 */
@@ -1387,11 +1953,42 @@ public class MapScene {
 		this.originalMapWidth = mapWidth;
 		this.originalMapHeight = mapHeight;
 		this.controlsBar = controlsBar;
+		this.staticLayer = new StaticLayerCache(mapWidth, mapHeight);
+		this.pickingIndex = new PickingIndex(mapWidth, mapHeight);
+		this.ensembleRenderer = new EnsembleEdgeRenderer(mapWidth, mapHeight);
+		MapMouseHandler mouseHandler = new MapMouseHandler();
+		mapContainer.addEventHandler(MouseEvent.MOUSE_MOVED, mouseHandler);
+		mapContainer.addEventHandler(MouseEvent.MOUSE_EXITED, mouseHandler);
+		mapContainer.addEventHandler(MouseEvent.MOUSE_CLICKED, mouseHandler);
+		InvalidationListener viewportListener = new InvalidationListener() {
+			
+			@Override
+			public void invalidated(Observable observable) {
+				updateStaticLayerViewport();
+			}
+		};
+		mapPane.viewportBoundsProperty().addListener(viewportListener);
+		mapPane.hvalueProperty().addListener(viewportListener);
+		mapPane.vvalueProperty().addListener(viewportListener);
 		widthFactor = (mapWidth - (constantMargin)) / (maxx - minx);
 		heightFactor = (mapHeight - (constantMargin)) / (maxy - miny);
 		mapContainer.setPrefSize(mapWidth, mapHeight);
 		mapContainer.setId("mapContainer");
 		timeLine.statusProperty().addListener(timeLineStatus);
+		if ((ensembleEvents != null) && !ensembleEvents.isEmpty()){
+			this.membershipIntervals = new MembershipIntervals(ensembleEvents);
+			this.ensembleStatistics = new EnsembleStatistics(membershipIntervals, minTime, maxTime, statisticsBucketCount);
+			this.ensembleGraph = new EnsembleGraph(membershipIntervals);
+			ensembleGraph.addListener(ensembleVisibilityUpdater);
+			timeLine.currentTimeProperty().addListener(new InvalidationListener() {
+				
+				@Override
+				public void invalidated(Observable observable) {
+					ensembleGraph.advanceTo(convertToSimulationTime(timeLine.getCurrentTime().toMillis()));
+					ensembleRenderer.requestRedraw();
+				}
+			});
+		}
 		timeLine.rateProperty().addListener(timeLineRate);
 		matsimToVisual = new MatsimToVisualCoordinates(minx, miny, widthFactor, heightFactor, constantMargin/2);
 		this.matsimEventsPresent = matsimEventsPresent;
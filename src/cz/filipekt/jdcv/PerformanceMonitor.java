@@ -0,0 +1,500 @@
+package cz.filipekt.jdcv;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+import javafx.animation.AnimationTimer;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+
+/**
+ * Measures the performance of the render loop, i.e. the frame rate, the duration of the
+ * pulses, the size of the scene graph of the shown {@link MapScene}, the memory usage and
+ * the garbage collector pauses. The measured values are shown in an overlay placed over
+ * the map, together with a graph of their recent history, and can optionally be appended
+ * to a CSV file. The monitor is also accessible from the scripting console.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class PerformanceMonitor {
+
+	/**
+	 * How often are the measured values sampled, in nanoseconds
+	 */
+	private final long sampleInterval = 500000000L;
+
+	/**
+	 * How many samples are kept in the history, i.e. shown in the graph
+	 */
+	private final int historyLength = 120;
+
+	/**
+	 * Width of the history graph, in pixels
+	 */
+	private final double graphWidth = 240;
+
+	/**
+	 * Height of the history graph, in pixels
+	 */
+	private final double graphHeight = 60;
+
+	/**
+	 * Frame rate that corresponds to the top of the history graph
+	 */
+	private final double graphMaxFps = 60;
+
+	/**
+	 * Pulse duration (in milliseconds) that corresponds to the top of the history graph
+	 */
+	private final double graphMaxPulse = 100;
+
+	/**
+	 * Header line of the CSV log
+	 */
+	private final String csvHeader = "time_ms,fps,pulse_ms,max_pulse_ms,live_nodes,key_frames," +
+			"visible_agents,ensemble_edges,heap_used_bytes,gc_count,gc_pause_ms";
+
+	/**
+	 * The application whose currently shown scene is being measured
+	 */
+	private final Visualizer visualizer;
+
+	/**
+	 * History of the frame rate, used as a ring buffer
+	 */
+	private final double[] fpsHistory = new double[historyLength];
+
+	/**
+	 * History of the mean pulse duration, used as a ring buffer
+	 */
+	private final double[] pulseHistory = new double[historyLength];
+
+	/**
+	 * History of the fraction of the maximal heap size that is used, used as a ring buffer
+	 */
+	private final double[] heapHistory = new double[historyLength];
+
+	/**
+	 * Position in the history buffers where the next sample will be written
+	 */
+	private int historyPosition = 0;
+
+	/**
+	 * Number of valid samples in the history buffers
+	 */
+	private int historySize = 0;
+
+	/**
+	 * Time of the previous pulse, in nanoseconds, or 0 if no pulse has been seen yet
+	 */
+	private long lastPulse = 0;
+
+	/**
+	 * Time when the current sample started, in nanoseconds, or 0 if not started yet
+	 */
+	private long sampleStart = 0;
+
+	/**
+	 * Number of pulses seen in the current sample
+	 */
+	private int pulsesInSample = 0;
+
+	/**
+	 * Sum of the pulse durations in the current sample, in milliseconds
+	 */
+	private double pulseSum = 0;
+
+	/**
+	 * The longest pulse duration in the current sample, in milliseconds
+	 */
+	private double pulseMax = 0;
+
+	/**
+	 * Total time spent in garbage collection at the moment of the previous sample, in milliseconds
+	 */
+	private long lastGcTime = -1;
+
+	/**
+	 * Total number of garbage collections at the moment of the previous sample
+	 */
+	private long lastGcCount = -1;
+
+	private volatile double fps;
+	private volatile double pulseDuration;
+	private volatile double maxPulseDuration;
+	private volatile int liveNodes;
+	private volatile int keyFrames;
+	private volatile int visibleAgents;
+	private volatile int ensembleEdges;
+	private volatile long heapUsed;
+	private volatile long gcCount;
+	private volatile long gcPause;
+
+	/**
+	 * @return Frames per second, measured over the last sample interval
+	 */
+	public double getFps() {
+		return fps;
+	}
+
+	/**
+	 * @return Mean time between two successive pulses, in milliseconds
+	 */
+	public double getPulseDuration() {
+		return pulseDuration;
+	}
+
+	/**
+	 * @return The longest time between two successive pulses in the last sample
+	 * interval, in milliseconds
+	 */
+	public double getMaxPulseDuration() {
+		return maxPulseDuration;
+	}
+
+	/**
+	 * @return Number of JavaFX nodes in the map container of the shown scene
+	 * @see {@link MapScene#getLiveNodeCount()}
+	 */
+	public int getLiveNodes() {
+		return liveNodes;
+	}
+
+	/**
+	 * @return Number of key frames in the time line of the shown scene
+	 * @see {@link MapScene#getActiveKeyFrameCount()}
+	 */
+	public int getKeyFrames() {
+		return keyFrames;
+	}
+
+	/**
+	 * @return Number of visible cars/people in the shown scene
+	 * @see {@link MapScene#getVisibleAgentCount()}
+	 */
+	public int getVisibleAgents() {
+		return visibleAgents;
+	}
+
+	/**
+	 * @return Number of visible ensemble membership edges in the shown scene
+	 * @see {@link MapScene#getVisibleEnsembleEdgeCount()}
+	 */
+	public int getEnsembleEdges() {
+		return ensembleEdges;
+	}
+
+	/**
+	 * @return Used heap memory, in bytes
+	 */
+	public long getHeapUsed() {
+		return heapUsed;
+	}
+
+	/**
+	 * @return Number of garbage collections in the last sample interval
+	 */
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	/**
+	 * @return Time spent in garbage collection in the last sample interval, in milliseconds
+	 */
+	public long getGcPause() {
+		return gcPause;
+	}
+
+	/**
+	 * Called in every pulse, takes the samples
+	 */
+	private final AnimationTimer timer = new AnimationTimer() {
+
+		@Override
+		public void handle(long now) {
+			if (lastPulse > 0){
+				double duration = (now - lastPulse) / 1000000.0;
+				pulseSum += duration;
+				pulseMax = Math.max(pulseMax, duration);
+				pulsesInSample++;
+			}
+			lastPulse = now;
+			if (sampleStart == 0){
+				sampleStart = now;
+			} else if ((now - sampleStart) >= sampleInterval){
+				takeSample(now);
+			}
+		}
+	};
+
+	/**
+	 * Marks whether {@link PerformanceMonitor#timer} is running
+	 */
+	private boolean running = false;
+
+	/**
+	 * The CSV log, or null if no log is being written
+	 */
+	private Writer csvLog;
+
+	/**
+	 * Shows the measured values
+	 */
+	private final Label valuesLabel = new Label();
+
+	/**
+	 * Shows the history of the measured values
+	 */
+	private final Canvas graph = new Canvas(graphWidth, graphHeight);
+
+	/**
+	 * Contains the {@link PerformanceMonitor#valuesLabel} and {@link PerformanceMonitor#graph}
+	 */
+	private final VBox overlay = new VBox();
+
+	/**
+	 * @param visualizer The application whose currently shown scene is being measured
+	 */
+	PerformanceMonitor(Visualizer visualizer) {
+		this.visualizer = visualizer;
+		valuesLabel.setTextFill(Color.WHITE);
+		valuesLabel.setStyle("-fx-font-family: monospace; -fx-font-size: 11px");
+		overlay.getChildren().addAll(valuesLabel, graph);
+		overlay.setSpacing(4);
+		overlay.setPadding(new Insets(6));
+		overlay.setStyle("-fx-background-color: rgba(0, 0, 0, 0.6)");
+		overlay.setMouseTransparent(true);
+		overlay.setMaxSize(Region.USE_PREF_SIZE, Region.USE_PREF_SIZE);
+		overlay.setVisible(false);
+		StackPane.setAlignment(overlay, Pos.TOP_RIGHT);
+		StackPane.setMargin(overlay, new Insets(10, 25, 10, 10));
+		drawGraph();
+	}
+
+	/**
+	 * @return The overlay showing the measured values, to be placed over the map
+	 */
+	Region getOverlay(){
+		return overlay;
+	}
+
+	/**
+	 * Shows or hides the overlay. The measurement runs whenever the overlay is
+	 * shown or the CSV log is being written.
+	 * @param visible If true, the overlay will be shown
+	 */
+	public void setOverlayVisible(boolean visible){
+		overlay.setVisible(visible);
+		updateRunning();
+	}
+
+	/**
+	 * @return True if and only if the overlay is shown
+	 */
+	public boolean isOverlayVisible(){
+		return overlay.isVisible();
+	}
+
+	/**
+	 * Starts appending the samples to the given CSV file. If a log is already
+	 * being written, it is closed first.
+	 * @param path Path to the CSV file. An existing file is overwritten.
+	 * @throws IOException When the file could not be opened
+	 */
+	public void startLog(String path) throws IOException {
+		stopLog();
+		BufferedWriter writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+		writer.write(csvHeader);
+		writer.newLine();
+		csvLog = writer;
+		updateRunning();
+	}
+
+	/**
+	 * Stops writing the CSV log, if any is being written
+	 * @throws IOException When the log could not be closed
+	 */
+	public void stopLog() throws IOException {
+		if (csvLog != null){
+			Writer log = csvLog;
+			csvLog = null;
+			log.close();
+			updateRunning();
+		}
+	}
+
+	/**
+	 * Starts or stops the {@link PerformanceMonitor#timer}, depending on whether
+	 * anybody is interested in the samples
+	 */
+	private void updateRunning(){
+		boolean needed = overlay.isVisible() || (csvLog != null);
+		if (needed && !running){
+			lastPulse = 0;
+			sampleStart = 0;
+			resetSample();
+			timer.start();
+		} else if (!needed && running){
+			timer.stop();
+		}
+		running = needed;
+	}
+
+	/**
+	 * Forgets the pulses seen in the current sample
+	 */
+	private void resetSample(){
+		pulsesInSample = 0;
+		pulseSum = 0;
+		pulseMax = 0;
+	}
+
+	/**
+	 * Computes the measured values from the pulses seen since the previous sample,
+	 * stores them into the history and writes them into the overlay and the log.
+	 * @param now Current time, in nanoseconds
+	 */
+	private void takeSample(long now){
+		fps = pulsesInSample * 1000000000.0 / (now - sampleStart);
+		pulseDuration = (pulsesInSample == 0) ? 0 : pulseSum / pulsesInSample;
+		maxPulseDuration = pulseMax;
+		resetSample();
+		sampleStart = now;
+		MapScene scene = visualizer.getScene();
+		if (scene == null){
+			liveNodes = 0;
+			keyFrames = 0;
+			visibleAgents = 0;
+			ensembleEdges = 0;
+		} else {
+			liveNodes = scene.getLiveNodeCount();
+			keyFrames = scene.getActiveKeyFrameCount();
+			visibleAgents = scene.getVisibleAgentCount();
+			ensembleEdges = scene.getVisibleEnsembleEdgeCount();
+		}
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		heapUsed = memory.getHeapMemoryUsage().getUsed();
+		long heapMax = memory.getHeapMemoryUsage().getMax();
+		sampleGarbageCollection();
+		fpsHistory[historyPosition] = fps;
+		pulseHistory[historyPosition] = pulseDuration;
+		heapHistory[historyPosition] = (heapMax > 0) ? ((double)heapUsed / heapMax) : 0;
+		historyPosition = (historyPosition + 1) % historyLength;
+		historySize = Math.min(historySize + 1, historyLength);
+		if (overlay.isVisible()){
+			valuesLabel.setText(toString());
+			drawGraph();
+		}
+		writeLogLine();
+	}
+
+	/**
+	 * Updates {@link PerformanceMonitor#gcCount} and {@link PerformanceMonitor#gcPause}
+	 * with the garbage collections performed since the previous sample
+	 */
+	private void sampleGarbageCollection(){
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		long totalTime = 0;
+		long totalCount = 0;
+		for (GarbageCollectorMXBean collector : collectors){
+			totalTime += Math.max(0, collector.getCollectionTime());
+			totalCount += Math.max(0, collector.getCollectionCount());
+		}
+		gcPause = (lastGcTime < 0) ? 0 : (totalTime - lastGcTime);
+		gcCount = (lastGcCount < 0) ? 0 : (totalCount - lastGcCount);
+		lastGcTime = totalTime;
+		lastGcCount = totalCount;
+	}
+
+	/**
+	 * Appends the current values to the CSV log, if any is being written
+	 */
+	private void writeLogLine(){
+		if (csvLog == null){
+			return;
+		}
+		String line = String.format(Locale.ROOT, "%d,%.2f,%.3f,%.3f,%d,%d,%d,%d,%d,%d,%d",
+				System.currentTimeMillis(), fps, pulseDuration, maxPulseDuration, liveNodes, keyFrames,
+				visibleAgents, ensembleEdges, heapUsed, gcCount, gcPause);
+		try {
+			csvLog.write(line);
+			csvLog.write(System.lineSeparator());
+			csvLog.flush();
+		} catch (IOException ex){
+			try {
+				stopLog();
+			} catch (IOException ex2){}
+		}
+	}
+
+	/**
+	 * Draws the history of the frame rate (green), pulse duration (red) and
+	 * heap usage (grey) into the {@link PerformanceMonitor#graph}
+	 */
+	private void drawGraph(){
+		GraphicsContext gc = graph.getGraphicsContext2D();
+		gc.clearRect(0, 0, graphWidth, graphHeight);
+		gc.setStroke(Color.gray(1, 0.3));
+		gc.setLineWidth(1);
+		gc.strokeRect(0.5, 0.5, graphWidth - 1, graphHeight - 1);
+		drawHistory(gc, heapHistory, 1, Color.LIGHTGRAY);
+		drawHistory(gc, pulseHistory, graphMaxPulse, Color.TOMATO);
+		drawHistory(gc, fpsHistory, graphMaxFps, Color.LIMEGREEN);
+	}
+
+	/**
+	 * Draws a single history buffer as a line
+	 * @param gc Where the line is drawn
+	 * @param history The history buffer
+	 * @param maxValue The value which corresponds to the top of the graph
+	 * @param color Color of the line
+	 */
+	private void drawHistory(GraphicsContext gc, double[] history, double maxValue, Color color){
+		if (historySize < 2){
+			return;
+		}
+		double step = graphWidth / (historyLength - 1);
+		int first = (historyPosition - historySize + historyLength) % historyLength;
+		gc.setStroke(color);
+		gc.beginPath();
+		for (int i = 0; i < historySize; i++){
+			double value = Math.min(1, history[(first + i) % historyLength] / maxValue);
+			double x = (historyLength - historySize + i) * step;
+			double y = graphHeight - (value * (graphHeight - 2)) - 1;
+			if (i == 0){
+				gc.moveTo(x, y);
+			} else {
+				gc.lineTo(x, y);
+			}
+		}
+		gc.stroke();
+	}
+
+	/**
+	 * @return The current values, in a human readable form
+	 */
+	@Override
+	public String toString() {
+		return String.format(Locale.ROOT,
+				"FPS: %.1f%npulse: %.1f ms (max %.1f ms)%nnodes: %d%nkey frames: %d%n" +
+				"agents: %d%nensemble edges: %d%nheap: %.1f MB%nGC: %d (%d ms)",
+				fps, pulseDuration, maxPulseDuration, liveNodes, keyFrames, visibleAgents,
+				ensembleEdges, heapUsed / (1024.0 * 1024.0), gcCount, gcPause);
+	}
+}
@@ -0,0 +1,550 @@
+package cz.filipekt.jdcv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.scene.Node;
+import javafx.scene.shape.Circle;
+import javafx.scene.shape.Line;
+import javafx.scene.shape.Shape;
+
+/**
+ * Spatial index used to find the map element under the mouse cursor. The map is
+ * covered by a uniform grid, each cell of the grid holding the elements that
+ * (possibly) intersect with it. The nodes and links are inserted once, whereas the
+ * positions of the people and ensemble memberships are re-inserted whenever
+ * they may have moved, but only when a query comes.
+ * The indexed shapes are made mouse transparent, so that JavaFX does not need
+ * to pick them one by one.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+class PickingIndex {
+
+	/**
+	 * Kinds of the indexed elements, in the order in which they are drawn,
+	 * i.e. the later kinds are preferred when picking
+	 */
+	static enum Kind {
+		LINK, NODE, AGENT, ENSEMBLE
+	}
+
+	/**
+	 * A single indexed element
+	 */
+	static class Entry {
+
+		/**
+		 * Kind of the element
+		 */
+		private final Kind kind;
+
+		/**
+		 * The visualization of the element
+		 */
+		private final Node shape;
+
+		/**
+		 * The element itself, i.e. a {@link cz.filipekt.jdcv.network.MyNode},
+		 * {@link cz.filipekt.jdcv.network.MyLink}, a person ID or a
+		 * {@link cz.filipekt.jdcv.ensembles.MembershipRelation}
+		 */
+		private final Object source;
+
+		/**
+		 * The path of a link, as x,y pairs, or null for other kinds of elements
+		 */
+		private final double[] path;
+
+		/**
+		 * If true, the shape is highlighted while the mouse is over it
+		 */
+		private final boolean hoverable;
+
+		/**
+		 * @param kind Kind of the element
+		 * @param shape The visualization of the element
+		 * @param source The element itself
+		 * @param path The path of a link, as x,y pairs, or null for other kinds of elements
+		 * @param hoverable If true, the shape is highlighted while the mouse is over it
+		 */
+		private Entry(Kind kind, Node shape, Object source, double[] path, boolean hoverable) {
+			this.kind = kind;
+			this.shape = shape;
+			this.source = source;
+			this.path = path;
+			this.hoverable = hoverable;
+		}
+
+		/**
+		 * @return Kind of the element
+		 */
+		public Kind getKind() {
+			return kind;
+		}
+
+		/**
+		 * @return The visualization of the element
+		 */
+		public Node getShape() {
+			return shape;
+		}
+
+		/**
+		 * @return The element itself
+		 * @see {@link Entry#source}
+		 */
+		public Object getSource() {
+			return source;
+		}
+	}
+
+	/**
+	 * Cells of the grid, each of them holding a linked list of entry indices.
+	 * The linked lists are stored in primitive arrays.
+	 */
+	private static class Grid {
+
+		/**
+		 * For each cell, position of the first item of its list, or -1
+		 */
+		private final int[] heads;
+
+		/**
+		 * For each item, position of the next item in the same list, or -1
+		 */
+		private int[] next = new int[64];
+
+		/**
+		 * For each item, the index of the entry
+		 */
+		private int[] items = new int[64];
+
+		/**
+		 * Number of the items
+		 */
+		private int size = 0;
+
+		/**
+		 * @param cellsCount Number of cells of the grid
+		 */
+		public Grid(int cellsCount) {
+			heads = new int[cellsCount];
+			Arrays.fill(heads, -1);
+		}
+
+		/**
+		 * Adds an entry index into the list of the given cell
+		 * @param cell Index of the cell
+		 * @param entry Index of the entry
+		 */
+		public void add(int cell, int entry){
+			if (size == items.length){
+				items = Arrays.copyOf(items, size * 2);
+				next = Arrays.copyOf(next, size * 2);
+			}
+			items[size] = entry;
+			next[size] = heads[cell];
+			heads[cell] = size;
+			size++;
+		}
+
+		/**
+		 * Empties all the cells
+		 */
+		public void clear(){
+			Arrays.fill(heads, -1);
+			size = 0;
+		}
+	}
+
+	/**
+	 * Width and height of a single grid cell, in pixels of the unzoomed map
+	 */
+	private final double cellSize = 32;
+
+	/**
+	 * The highlighted lines are this many times wider
+	 */
+	private final double lineHoverFactor = 3;
+
+	/**
+	 * The highlighted circles have this many times bigger radius
+	 */
+	private final double circleHoverFactor = 2;
+
+	/**
+	 * The smallest distance (in pixels of the unzoomed map) within which the
+	 * lines can be picked
+	 */
+	private final double minLineTolerance = 1;
+
+	/**
+	 * Number of grid columns
+	 */
+	private final int columns;
+
+	/**
+	 * Number of grid rows
+	 */
+	private final int rows;
+
+	/**
+	 * Entries for the nodes and links
+	 */
+	private final List<Entry> staticEntries = new ArrayList<>();
+
+	/**
+	 * Grid holding indices into {@link PickingIndex#staticEntries}
+	 */
+	private final Grid staticGrid;
+
+	/**
+	 * Entries for the people and ensemble memberships
+	 */
+	private final List<Entry> movingEntries = new ArrayList<>();
+
+	/**
+	 * Grid holding indices into {@link PickingIndex#movingEntries}
+	 */
+	private final Grid movingGrid;
+
+	/**
+	 * The time at which the positions of the people were inserted into the
+	 * {@link PickingIndex#movingGrid}, or NaN if they need to be inserted
+	 */
+	private double movingGridTime = Double.NaN;
+
+	/**
+	 * The entry which is currently highlighted, or null
+	 */
+	private Entry hovered;
+
+	/**
+	 * Original radius or stroke width of {@link PickingIndex#hovered}
+	 */
+	private double hoveredOriginalSize;
+
+	/**
+	 * @param mapWidth Width of the unzoomed map, in pixels
+	 * @param mapHeight Height of the unzoomed map, in pixels
+	 */
+	PickingIndex(double mapWidth, double mapHeight) {
+		columns = Math.max(1, (int)Math.ceil(mapWidth / cellSize));
+		rows = Math.max(1, (int)Math.ceil(mapHeight / cellSize));
+		staticGrid = new Grid(columns * rows);
+		movingGrid = new Grid(columns * rows);
+	}
+
+	/**
+	 * Removes the nodes and links from the index
+	 */
+	void clearStatic(){
+		setHovered(null);
+		staticEntries.clear();
+		staticGrid.clear();
+	}
+
+	/**
+	 * Adds a map node into the index
+	 * @param shape The visualization of the node
+	 * @param node The node
+	 * @param hoverable If true, the shape is highlighted while the mouse is over it
+	 */
+	void addNode(Node shape, Object node, boolean hoverable){
+		shape.setMouseTransparent(true);
+		Entry entry = new Entry(Kind.NODE, shape, node, null, hoverable);
+		staticEntries.add(entry);
+		double margin = hoverable ? circleHoverFactor : 1;
+		insertBounds(staticGrid, staticEntries.size() - 1, getBounds(shape), margin);
+	}
+
+	/**
+	 * Adds a map link into the index
+	 * @param shape The visualization of the link
+	 * @param link The link
+	 * @param pathPoints The path of the link, in the map coordinates
+	 */
+	void addLink(Node shape, Object link, List<Point2D> pathPoints){
+		shape.setMouseTransparent(true);
+		int index = staticEntries.size();
+		if (shape instanceof Shape){
+			double[] path = new double[pathPoints.size() * 2];
+			for (int i = 0; i < pathPoints.size(); i++){
+				path[2*i] = pathPoints.get(i).getX();
+				path[2*i + 1] = pathPoints.get(i).getY();
+			}
+			staticEntries.add(new Entry(Kind.LINK, shape, link, path, true));
+			double margin = getLineTolerance((Shape)shape) * lineHoverFactor;
+			for (int i = 2; i < path.length; i += 2){
+				insertSegment(staticGrid, index, path[i-2], path[i-1], path[i], path[i+1], margin);
+			}
+		} else {
+			staticEntries.add(new Entry(Kind.LINK, shape, link, null, false));
+			insertBounds(staticGrid, index, shape.getBoundsInParent(), 0);
+		}
+	}
+
+	/**
+	 * Replaces the people and ensemble memberships in the index
+	 * @param people Maps person IDs to their visualizations
+	 * @param ensembles Maps ensemble membership relations to their visualizations
+	 */
+	void setMoving(Map<String,Node> people, Map<?,Node> ensembles){
+		setHovered(null);
+		movingEntries.clear();
+		for (Map.Entry<String,Node> person : people.entrySet()){
+			Node shape = person.getValue();
+			shape.setMouseTransparent(true);
+			movingEntries.add(new Entry(Kind.AGENT, shape, person.getKey(), null, shape instanceof Circle));
+		}
+		for (Map.Entry<?,Node> ensemble : ensembles.entrySet()){
+			Node shape = ensemble.getValue();
+			shape.setMouseTransparent(true);
+			movingEntries.add(new Entry(Kind.ENSEMBLE, shape, ensemble.getKey(), null, true));
+		}
+		movingGridTime = Double.NaN;
+	}
+
+	/**
+	 * Inserts the current positions of the visible people and ensemble memberships
+	 * into the {@link PickingIndex#movingGrid}
+	 */
+	private void rebuildMovingGrid(){
+		movingGrid.clear();
+		for (int i = 0; i < movingEntries.size(); i++){
+			Entry entry = movingEntries.get(i);
+			if (!isShown(entry.shape)){
+				continue;
+			}
+			if ((entry.kind == Kind.ENSEMBLE) && (entry.shape instanceof Line)){
+				Line line = (Line)entry.shape;
+				insertSegment(movingGrid, i, line.getStartX(), line.getStartY(), line.getEndX(),
+						line.getEndY(), getLineTolerance(line) * lineHoverFactor);
+			} else {
+				insertBounds(movingGrid, i, getBounds(entry.shape), entry.hoverable ? circleHoverFactor : 1);
+			}
+		}
+	}
+
+	/**
+	 * Finds the element at the given point
+	 * @param x X-coordinate, in the unzoomed map
+	 * @param y Y-coordinate, in the unzoomed map
+	 * @param time Current time of the visualization. The positions of the people
+	 * are only re-inserted into the grid when this value changes.
+	 * @return The element at the given point, or null if there is none
+	 */
+	Entry pick(double x, double y, double time){
+		if (time != movingGridTime){
+			rebuildMovingGrid();
+			movingGridTime = time;
+		}
+		int col = (int)Math.floor(x / cellSize);
+		int row = (int)Math.floor(y / cellSize);
+		if ((col < 0) || (row < 0) || (col >= columns) || (row >= rows)){
+			return null;
+		}
+		int cell = row * columns + col;
+		Entry best = pickInCell(movingGrid, movingEntries, cell, x, y, null);
+		return pickInCell(staticGrid, staticEntries, cell, x, y, best);
+	}
+
+	/**
+	 * Finds the best hit among the entries in the given cell
+	 * @param grid The searched grid
+	 * @param entries Entries indexed by the grid
+	 * @param cell Index of the cell
+	 * @param x X-coordinate, in the unzoomed map
+	 * @param y Y-coordinate, in the unzoomed map
+	 * @param best The best hit found so far, or null
+	 * @return The best hit, or null if there is none
+	 */
+	private Entry pickInCell(Grid grid, List<Entry> entries, int cell, double x, double y, Entry best){
+		for (int item = grid.heads[cell]; item >= 0; item = grid.next[item]){
+			Entry entry = entries.get(grid.items[item]);
+			if ((best != null) && (best.kind.ordinal() >= entry.kind.ordinal())){
+				continue;
+			}
+			if (isShown(entry.shape) && hits(entry, x, y)){
+				best = entry;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @param entry An indexed element
+	 * @param x X-coordinate, in the unzoomed map
+	 * @param y Y-coordinate, in the unzoomed map
+	 * @return True if and only if the element is drawn over the given point
+	 */
+	private boolean hits(Entry entry, double x, double y){
+		Node shape = entry.shape;
+		if (shape instanceof Circle){
+			Circle circle = (Circle)shape;
+			double dx = x - (circle.getCenterX() + circle.getTranslateX());
+			double dy = y - (circle.getCenterY() + circle.getTranslateY());
+			return (dx*dx + dy*dy) <= (circle.getRadius() * circle.getRadius());
+		} else if (shape instanceof Line){
+			Line line = (Line)shape;
+			return segmentDistance(x, y, line.getStartX(), line.getStartY(), line.getEndX(),
+					line.getEndY()) <= getLineTolerance(line);
+		} else if (entry.path != null){
+			double tolerance = getLineTolerance((Shape)shape);
+			for (int i = 2; i < entry.path.length; i += 2){
+				if (segmentDistance(x, y, entry.path[i-2], entry.path[i-1], entry.path[i],
+						entry.path[i+1]) <= tolerance){
+					return true;
+				}
+			}
+			return false;
+		} else {
+			return shape.getBoundsInParent().contains(x, y);
+		}
+	}
+
+	/**
+	 * Highlights the given entry and restores the previously highlighted one
+	 * @param entry The entry to be highlighted, or null
+	 */
+	void setHovered(Entry entry){
+		if (entry == hovered){
+			return;
+		}
+		if (hovered != null){
+			if (hovered.shape instanceof Circle){
+				((Circle)hovered.shape).setRadius(hoveredOriginalSize);
+			} else {
+				((Shape)hovered.shape).setStrokeWidth(hoveredOriginalSize);
+			}
+			hovered = null;
+		}
+		if ((entry != null) && entry.hoverable){
+			if (entry.shape instanceof Circle){
+				Circle circle = (Circle)entry.shape;
+				hoveredOriginalSize = circle.getRadius();
+				circle.setRadius(hoveredOriginalSize * circleHoverFactor);
+			} else {
+				Shape shape = (Shape)entry.shape;
+				hoveredOriginalSize = shape.getStrokeWidth();
+				shape.setStrokeWidth(hoveredOriginalSize * lineHoverFactor);
+			}
+			hovered = entry;
+		}
+	}
+
+	/**
+	 * @param shape A shape in the map
+	 * @return True if and only if the shape and all of its ancestors are visible
+	 */
+	private boolean isShown(Node shape){
+		for (Node node = shape; node != null; node = node.getParent()){
+			if (!node.isVisible()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param shape A line in the map
+	 * @return Maximal distance from the line at which it is still picked
+	 */
+	private double getLineTolerance(Shape shape){
+		return Math.max(minLineTolerance, shape.getStrokeWidth() / 2);
+	}
+
+	/**
+	 * @param shape A shape in the map
+	 * @return Bounds of the shape in the map coordinates, ignoring the effects
+	 */
+	private Bounds getBounds(Node shape){
+		Bounds local = shape.getLayoutBounds();
+		return shape.localToParent(local);
+	}
+
+	/**
+	 * Inserts an entry into all the cells intersecting the given bounds
+	 * @param grid The grid
+	 * @param entry Index of the entry
+	 * @param bounds Bounds of the entry
+	 * @param factor The bounds are enlarged this many times, around their center
+	 */
+	private void insertBounds(Grid grid, int entry, Bounds bounds, double factor){
+		double marginX = bounds.getWidth() * (factor - 1) / 2;
+		double marginY = bounds.getHeight() * (factor - 1) / 2;
+		int col0 = clamp((int)Math.floor((bounds.getMinX() - marginX) / cellSize), columns);
+		int col1 = clamp((int)Math.floor((bounds.getMaxX() + marginX) / cellSize), columns);
+		int row0 = clamp((int)Math.floor((bounds.getMinY() - marginY) / cellSize), rows);
+		int row1 = clamp((int)Math.floor((bounds.getMaxY() + marginY) / cellSize), rows);
+		for (int row = row0; row <= row1; row++){
+			for (int col = col0; col <= col1; col++){
+				grid.add(row * columns + col, entry);
+			}
+		}
+	}
+
+	/**
+	 * Inserts an entry into all the cells within the given distance from a line segment.
+	 * Only the cells along the segment are visited, column by column.
+	 * @param grid The grid
+	 * @param entry Index of the entry
+	 * @param x1 X-coordinate of the segment start
+	 * @param y1 Y-coordinate of the segment start
+	 * @param x2 X-coordinate of the segment end
+	 * @param y2 Y-coordinate of the segment end
+	 * @param margin The distance from the segment
+	 */
+	private void insertSegment(Grid grid, int entry, double x1, double y1, double x2, double y2, double margin){
+		double minX = Math.min(x1, x2) - margin;
+		double maxX = Math.max(x1, x2) + margin;
+		int col0 = clamp((int)Math.floor(minX / cellSize), columns);
+		int col1 = clamp((int)Math.floor(maxX / cellSize), columns);
+		for (int col = col0; col <= col1; col++){
+			double stripMinX = Math.max(Math.min(x1, x2), col * cellSize - margin);
+			double stripMaxX = Math.min(Math.max(x1, x2), (col + 1) * cellSize + margin);
+			double yA, yB;
+			if ((x1 == x2) || (stripMinX > stripMaxX)){
+				yA = y1;
+				yB = y2;
+			} else {
+				double slope = (y2 - y1) / (x2 - x1);
+				yA = y1 + (stripMinX - x1) * slope;
+				yB = y1 + (stripMaxX - x1) * slope;
+			}
+			int row0 = clamp((int)Math.floor((Math.min(yA, yB) - margin) / cellSize), rows);
+			int row1 = clamp((int)Math.floor((Math.max(yA, yB) + margin) / cellSize), rows);
+			for (int row = row0; row <= row1; row++){
+				grid.add(row * columns + col, entry);
+			}
+		}
+	}
+
+	/**
+	 * @param value A cell coordinate
+	 * @param count Number of cells in the given dimension
+	 * @return The coordinate, clamped into the grid
+	 */
+	private int clamp(int value, int count){
+		return Math.max(0, Math.min(count - 1, value));
+	}
+
+	/**
+	 * @return Distance of the point (x,y) from the segment (x1,y1)-(x2,y2)
+	 */
+	private double segmentDistance(double x, double y, double x1, double y1, double x2, double y2){
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double lengthSquared = dx*dx + dy*dy;
+		double t = (lengthSquared == 0) ? 0 : ((x - x1)*dx + (y - y1)*dy) / lengthSquared;
+		t = Math.max(0, Math.min(1, t));
+		double px = x1 + t*dx - x;
+		double py = y1 + t*dy - y;
+		return Math.sqrt(px*px + py*py);
+	}
+}
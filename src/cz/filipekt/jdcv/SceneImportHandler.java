@@ -35,13 +35,14 @@ import cz.filipekt.jdcv.util.BigFilesSearch.ElementTooLargeException;
 import cz.filipekt.jdcv.util.BigFilesSearch.SelectionTooBigException;
 import cz.filipekt.jdcv.util.Dialog;
 import cz.filipekt.jdcv.util.Resources;
+import cz.filipekt.jdcv.util.WorkerPool.ProgressListener;
 import cz.filipekt.jdcv.xml.BackgroundHandler;
 import cz.filipekt.jdcv.xml.CorridorHandler;
 import cz.filipekt.jdcv.xml.EnsembleHandler;
+import cz.filipekt.jdcv.xml.EnsembleLogParser;
 import cz.filipekt.jdcv.xml.JDEECoEventHandler;
-import cz.filipekt.jdcv.xml.LinkHandler;
 import cz.filipekt.jdcv.xml.MatsimEventHandler;
-import cz.filipekt.jdcv.xml.NodeHandler;
+import cz.filipekt.jdcv.xml.NetworkHandler;
 import cz.filipekt.jdcv.xml.XMLextractor;
 import javafx.animation.Animation.Status;
 import javafx.application.Platform;
@@ -56,7 +57,6 @@ import javafx.scene.control.ProgressIndicator;
 import javafx.scene.control.TextField;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.GridPane;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
@@ -211,6 +211,7 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 	private void openProgressIndicator(){
 		int column = GridPane.getColumnIndex(okButton);
 		int row = GridPane.getRowIndex(okButton);				
+		progIndicator.setProgress(-1);
 		pane.add(progIndicator, column, row);	
 	}
 	
@@ -505,19 +506,17 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 		TextField ensembleField = pathFields.get(2);	
 		Path networkFile = Paths.get(networkField.getText());
 		String networkFileEncoding = charsetBoxes.get(0).getSelectionModel().getSelectedItem();
-		NodeHandler nodeHandler = new NodeHandler();
-		XMLextractor.run(networkFile, networkFileEncoding, nodeHandler);
-		LinkHandler linkHandler = new LinkHandler(nodeHandler.getNodes());
-		XMLextractor.run(networkFile, networkFileEncoding, linkHandler);
-		CorridorHandler corridorHandler = new CorridorHandler(linkHandler.getLinks());
+		NetworkHandler networkHandler = new NetworkHandler();
+		XMLextractor.run(networkFile, networkFileEncoding, networkHandler);
+		CorridorHandler corridorHandler = new CorridorHandler(networkHandler.getLinks());
 		XMLextractor.run(networkFile, networkFileEncoding, corridorHandler);
 		BackgroundHandler backgroundHandler = new BackgroundHandler();
 		XMLextractor.run(networkFile, networkFileEncoding, backgroundHandler);
-		retrieveEventsData(onlyAgents, startAt, endAt, eventField, ensembleField, linkHandler.getLinks());
+		retrieveEventsData(onlyAgents, startAt, endAt, eventField, ensembleField, networkHandler.getLinks());
 		ShapeProvider circleProvider = new CircleProvider(personCircleRadius, personCircleColor);
 		MapSceneBuilder sceneBuilder = new MapSceneBuilder();
-		sceneBuilder.setNodes(nodeHandler.getNodes());
-		sceneBuilder.setLinks(linkHandler.getLinks());
+		sceneBuilder.setNodes(networkHandler.getNodes());
+		sceneBuilder.setLinks(networkHandler.getLinks());
 		sceneBuilder.setMapWidth(visualizer.getMapWidth() * mapScrollMargin);
 		sceneBuilder.setMapHeight(visualizer.getMapHeight() * mapScrollMargin);
 		sceneBuilder.setTimeLineStatus(timeLineStatus);
@@ -537,11 +536,27 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 		sceneBuilder.setOtherEvents(otherEvents);
 		sceneBuilder.setMapSceneExtensions(mapSceneExtensions);
 		final MapScene scene = sceneBuilder.build();
-		scene.update(circleProvider, false, null);
+		if (visualizer.isTileSpillEnabled()){
+			scene.setTileSpillDirectory(networkFile.resolveSibling(networkFile.getFileName() + ".tiles").toFile());
+		}
+		scene.prepareUpdate(circleProvider, false, null, new ProgressListener() {
+			
+			@Override
+			public void progressChanged(final double progress) {
+				Platform.runLater(new Runnable() {
+					
+					@Override
+					public void run() {
+						progIndicator.setProgress(progress);
+					}
+				});
+			}
+		});
 		Platform.runLater(new Runnable() {
 
 			@Override
-			public void run() {			
+			public void run() {	
+				scene.attachShapes();
 				visualizer.setScene(scene, eventsPresent);					
 			}
 		});		
@@ -578,9 +593,7 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 				if (ensembleFilePresent){ 
 					Path ensembleFile = Paths.get(ensembleField.getText());
 					String ensembleFileEncoding = charsetBoxes.get(2).getSelectionModel().getSelectedItem();
-					EnsembleHandler ensembleHandler = new EnsembleHandler(startAt, endAt);
-					XMLextractor.run(ensembleFile, ensembleFileEncoding, ensembleHandler);
-					ensembleEvents = ensembleHandler.getEvents();
+					ensembleEvents = parseEnsembleLog(ensembleFile, ensembleFileEncoding, startAt, endAt);
 					ensembleEventsPresent = !ensembleEvents.isEmpty();
 				} else {
 					ensembleEventsPresent = false;
@@ -594,9 +607,7 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 				
 				Path ensembleFile = Paths.get(eventField.getText());
 				String ensembleFileEncoding = charsetBoxes.get(1).getSelectionModel().getSelectedItem();
-				EnsembleHandler ensembleHandler = new EnsembleHandler(startAt, endAt);
-				XMLextractor.run(ensembleFile, ensembleFileEncoding, ensembleHandler);
-				ensembleEvents = ensembleHandler.getEvents();
+				ensembleEvents = parseEnsembleLog(ensembleFile, ensembleFileEncoding, startAt, endAt);
 				ensembleEventsPresent = !ensembleEvents.isEmpty();
 								
 				JDEECoEventHandler jDEECoEventHandler = new JDEECoEventHandler(links, onlyAgents, startAt, endAt);
@@ -634,6 +645,38 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 		}
 	}
 	
+	/**
+	 * Parses the ensemble events from the given log file. Only the part of the file which
+	 * corresponds to the selected time interval is read, see 
+	 * {@link SceneImportHandler#getEventLogStream(Path, String, Double, Double)}. 
+	 * The log is scanned by {@link EnsembleLogParser} if its encoding allows that, 
+	 * otherwise {@link EnsembleHandler} is used.
+	 * @param ensembleFile The ensemble event log file
+	 * @param encoding Character encoding set used by the ensemble event log file
+	 * @param startAt If not null, only the events starting from this time on are taken into account
+	 * @param endAt If not null, only the events ending before this time are taken into account
+	 * @return The parsed ensemble events
+	 * @throws IOException If it is impossible to read from the ensemble event log file
+	 * @throws SelectionTooBigException If the specified time interval is too large
+	 * @throws ElementTooLargeException If some event element is too large
+	 * @throws ParserConfigurationException Should never happen
+	 * @throws SAXException When there is any problem when parsing the XML document
+	 */
+	private List<EnsembleEvent> parseEnsembleLog(Path ensembleFile, String encoding, Double startAt, Double endAt) 
+			throws IOException, SelectionTooBigException, ElementTooLargeException, 
+			ParserConfigurationException, SAXException{
+		Charset charset = Charset.forName(encoding);
+		try (InputStream stream = getEventLogStream(ensembleFile, encoding, startAt, endAt)){
+			if (EnsembleLogParser.supports(charset)){
+				return new EnsembleLogParser(startAt, endAt).parse(stream, charset);
+			} else {
+				EnsembleHandler ensembleHandler = new EnsembleHandler(startAt, endAt);
+				XMLextractor.run(stream, encoding, ensembleHandler);
+				return ensembleHandler.getEvents();
+			}
+		}
+	}
+	
 	/**
 	 * Radius of the circle representing a person in the visualization
 	 */
@@ -659,8 +702,8 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 	 * i.e. the resulting document may be much smaller than the whole original document.
 	 * For more info about what "most of the elements" means, see {@link BigFilesSearch}
 	 * @see {@link BigFilesSearch#getSectionWellFormed(double, double)} 
-	 * @param eventLog The Matsim event log file
-	 * @param encoding Character encoding set used by the Matsim event log file
+	 * @param eventLog The Matsim, jDEECo or ensemble event log file
+	 * @param encoding Character encoding set used by the event log file
 	 * @param fromTime If not null, specifies the lower bound of the desired time interval. If null,
 	 * no lower bound is given.
 	 * @param toTime If not null, specifies the upper bound of the desired time interval. If null,
@@ -833,22 +876,7 @@ public class SceneImportHandler implements EventHandler<ActionEvent>{
 		 */
 		@Override
 		public Node getNewShape() {
-			final Circle circle = new Circle(0, 0, radius, color);
-			circle.setOnMouseEntered(new EventHandler<MouseEvent>() {
-
-				@Override
-				public void handle(MouseEvent arg0) {
-					circle.setRadius(radius * 2);
-				}
-			});
-			circle.setOnMouseExited(new EventHandler<MouseEvent>() {
-
-				@Override
-				public void handle(MouseEvent arg0) {
-					circle.setRadius(radius);
-				}
-			});
-			return circle;
+			return new Circle(0, 0, radius, color);
 		}
 		
 	}
@@ -0,0 +1,934 @@
+package cz.filipekt.jdcv;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import cz.filipekt.jdcv.corridors.Background;
+import cz.filipekt.jdcv.geometry.PointTransformer;
+import cz.filipekt.jdcv.prefs.LinkPrefs;
+import cz.filipekt.jdcv.prefs.NodePrefs;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.embed.swing.SwingFXUtils;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import javafx.geometry.Point2D;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.WritableImage;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Shape;
+import javafx.scene.transform.Scale;
+
+/**
+ * Renders the static part of the map (nodes, links and the background image) into
+ * a pyramid of bitmap tiles, so that JavaFX does not have to draw all of the static
+ * shapes again with every pulse. Only the moving people and the ensemble memberships
+ * are then drawn live, on top of the tiles.
+ *
+ * <p>
+ * Level L of the pyramid contains the map rendered at the scale 2^L, cut into square
+ * tiles of {@link StaticLayerCache#tileSize} pixels. For any zoom factor, the nearest
+ * finer level is shown, so no single texture ever exceeds the tile size. Only the tiles
+ * inside the visible part of the map are created. The coarse levels are pre-rendered
+ * in small batches, so that the user interface stays responsive. The rendering itself
+ * has to run on the JavaFX application thread, everything else (PNG encoding and
+ * decoding, disk access) runs on background threads.
+ * </p>
+ *
+ * <p>
+ * The tiles are held in an LRU cache. If a spill directory is set, the tiles evicted
+ * from the cache are written there and loaded back lazily when they become visible again.
+ * </p>
+ *
+ * <p>
+ * The original shapes are not placed into the scene graph, the clicks on the nodes and 
+ * links are resolved by the {@link PickingIndex}. The shapes are indexed by their bounds 
+ * in a uniform grid, and each tile is rendered only from the shapes intersecting it, which 
+ * are put into a detached group for the time of the rendering.
+ * Whenever the visibility or the color of any of these shapes changes (e.g. through
+ * {@link NodePrefs} or {@link LinkPrefs}), all of the tiles are discarded and the
+ * visible ones are rendered again.
+ * </p>
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+class StaticLayerCache {
+
+	/**
+	 * Width and height of a single tile, in pixels
+	 */
+	private final int tileSize = 256;
+
+	/**
+	 * The finest level of the pyramid, i.e. the map is never rendered at a
+	 * scale larger than 2^maxLevel.
+	 */
+	private final int maxLevel = 6;
+
+	/**
+	 * The levels 0, 1, ..., prefetchedLevels-1 are pre-rendered completely,
+	 * right after the static shapes are set or changed.
+	 */
+	private final int prefetchedLevels = 2;
+
+	/**
+	 * Maximal number of tiles held in the memory at the same time
+	 */
+	private final int maxCachedTiles = 256;
+
+	/**
+	 * Maximal number of tiles rendered during a single pulse
+	 */
+	private final int tilesPerPulse = 4;
+
+	/**
+	 * Width and height of a single cell of the index of the static shapes, 
+	 * in the coordinates of the map before any zooming takes place
+	 */
+	private final double indexCellSize = 64;
+
+	/**
+	 * Prefix of the names of the files holding the spilled tiles
+	 */
+	private static final String spillFilePrefix = "tile_";
+
+	/**
+	 * Encodes and decodes the spilled tiles. Shared by all the scenes.
+	 */
+	private static final ExecutorService workers = Executors.newFixedThreadPool(2, new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "map-tiles");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Width of the map (in pixels), before any zooming takes place
+	 */
+	private final double mapWidth;
+
+	/**
+	 * Height of the map (in pixels), before any zooming takes place
+	 */
+	private final double mapHeight;
+
+	/**
+	 * The original static shapes, in the order in which they are drawn
+	 */
+	private final List<Node> shapes = new ArrayList<>();
+
+	/**
+	 * Holds the shapes intersecting the tile being rendered. It is never placed
+	 * into the scene graph.
+	 */
+	private final Group renderGroup = new Group();
+
+	/**
+	 * Number of columns of the index of the static shapes
+	 */
+	private int indexCols = 0;
+
+	/**
+	 * Number of rows of the index of the static shapes
+	 */
+	private int indexRows = 0;
+
+	/**
+	 * The shapes intersecting the index cell i are at the positions 
+	 * indexOffsets[i] .. indexOffsets[i+1]-1 of {@link StaticLayerCache#indexShapes}
+	 */
+	private int[] indexOffsets = new int[]{0};
+
+	/**
+	 * Positions of the shapes in {@link StaticLayerCache#shapes}, grouped by the index cells
+	 */
+	private int[] indexShapes = new int[0];
+
+	/**
+	 * Bounds of the shapes, at the same positions as {@link StaticLayerCache#shapes}
+	 */
+	private Bounds[] shapeBounds = new Bounds[0];
+
+	/**
+	 * For each shape, the number of the last query of the index that has returned it
+	 */
+	private int[] shapeStamps = new int[0];
+
+	/**
+	 * Number of the last query of the index
+	 */
+	private int queryStamp = 0;
+
+	/**
+	 * Holds the visualizations of the currently visible tiles
+	 */
+	private final Group tileLayer = new Group();
+
+	/**
+	 * Maps the currently visible tiles to their visualizations
+	 */
+	private final Map<Tile,ImageView> shownTiles = new HashMap<>();
+
+	/**
+	 * The tiles which should currently be visible
+	 */
+	private final Set<Tile> visibleTiles = new HashSet<>();
+
+	/**
+	 * The rendered tiles, held in the least-recently-used order
+	 */
+	private final Map<Tile,WritableImage> images = new LinkedHashMap<Tile,WritableImage>(16, 0.75f, true){
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Tile,WritableImage> eldest) {
+			if (size() > maxCachedTiles){
+				spill(eldest.getKey(), eldest.getValue());
+				return true;
+			} else {
+				return false;
+			}
+		}
+	};
+
+	/**
+	 * The visible tiles waiting to be rendered
+	 */
+	private final Set<Tile> renderQueue = new LinkedHashSet<>();
+
+	/**
+	 * The tiles of the coarse levels waiting to be pre-rendered
+	 */
+	private final Set<Tile> prefetchQueue = new LinkedHashSet<>();
+
+	/**
+	 * The tiles which are being loaded from the {@link StaticLayerCache#spillDirectory}
+	 */
+	private final Set<Tile> loadingTiles = new HashSet<>();
+
+	/**
+	 * The tiles of the current {@link StaticLayerCache#generation} that have been
+	 * written into the {@link StaticLayerCache#spillDirectory}
+	 */
+	private final Set<Tile> spilledTiles = Collections.synchronizedSet(new HashSet<Tile>());
+
+	/**
+	 * Directory to which the tiles evicted from the memory are written.
+	 * If null, the evicted tiles are simply discarded.
+	 */
+	private volatile File spillDirectory;
+
+	/**
+	 * Increased whenever the tiles are discarded, so that the results of the
+	 * background operations started before can be recognized as outdated.
+	 */
+	private volatile int generation = 0;
+
+	/**
+	 * The zoom level that is currently shown
+	 */
+	private double zoom = 1.0;
+
+	/**
+	 * The currently visible part of the map, in the coordinates of the map before
+	 * any zooming takes place
+	 */
+	private Bounds viewport;
+
+	/**
+	 * If true, the static shapes have been provided by
+	 * {@link StaticLayerCache#setContent(Collection, Collection, Background, PointTransformer)}
+	 * and the layer is being shown.
+	 */
+	private boolean active = false;
+
+	/**
+	 * If true, the tiles will be discarded during the next pulse. Used to merge
+	 * many invalidations (e.g. hiding all of the nodes) into a single one.
+	 */
+	private boolean resetPending = false;
+
+	/**
+	 * If true, the rendering of the queued tiles has already been scheduled
+	 */
+	private boolean renderPending = false;
+
+	/**
+	 * The properties of the static shapes that are watched for changes
+	 */
+	private final List<Observable> observed = new ArrayList<>();
+
+	/**
+	 * Discards the tiles whenever any of the {@link StaticLayerCache#observed}
+	 * properties changes.
+	 */
+	private final InvalidationListener invalidator = new InvalidationListener() {
+
+		@Override
+		public void invalidated(Observable observable) {
+			invalidate();
+		}
+	};
+
+	/**
+	 * @param mapWidth Width of the map (in pixels), before any zooming takes place
+	 * @param mapHeight Height of the map (in pixels), before any zooming takes place
+	 */
+	StaticLayerCache(double mapWidth, double mapHeight) {
+		this.mapWidth = mapWidth;
+		this.mapHeight = mapHeight;
+		this.viewport = new BoundingBox(0, 0, mapWidth, mapHeight);
+		tileLayer.setMouseTransparent(true);
+	}
+
+	/**
+	 * @param spillDirectory Directory to which the tiles evicted from the memory are written.
+	 * If null, the evicted tiles are simply discarded.
+	 * @see {@link StaticLayerCache#spillDirectory}
+	 */
+	void setSpillDirectory(File spillDirectory){
+		this.spillDirectory = spillDirectory;
+		spilledTiles.clear();
+		if (spillDirectory != null){
+			deleteSpilledTiles(spillDirectory, spillFilePrefix);
+		}
+	}
+
+	/**
+	 * Replaces the static shapes that the tiles are rendered from.
+	 * @param links Visualizations of the links
+	 * @param nodes Visualizations of the nodes
+	 * @param background The background of the map, may be null
+	 * @param transformer Converts the coordinates of the background into the visualization coordinates
+	 */
+	void setContent(Collection<? extends Node> links, Collection<? extends Node> nodes,
+			Background background, PointTransformer transformer){
+		clear();
+		ImageView backgroundView = createBackgroundView(background, transformer);
+		if (backgroundView != null){
+			shapes.add(backgroundView);
+		}
+		shapes.addAll(links);
+		shapes.addAll(nodes);
+		for (Node node : shapes){
+			observe(node);
+		}
+		active = true;
+		reset();
+	}
+
+	/**
+	 * Releases the static shapes and the tiles
+	 */
+	void clear(){
+		for (Observable property : observed){
+			property.removeListener(invalidator);
+		}
+		observed.clear();
+		shapes.clear();
+		renderGroup.getChildren().clear();
+		active = false;
+		discardTiles();
+	}
+
+	/**
+	 * @return The nodes which have to be placed into the map container,
+	 * below the moving shapes.
+	 */
+	List<Node> getLayers(){
+		return Collections.<Node>singletonList(tileLayer);
+	}
+
+	/**
+	 * Shows the tiles for the given zoom level, rendering them first if needed.
+	 * @param zoom The new zoom level
+	 */
+	void setZoom(double zoom){
+		this.zoom = zoom;
+		updateVisibleTiles();
+	}
+
+	/**
+	 * Shows the tiles covering the given part of the map, rendering them first if needed.
+	 * @param viewport The currently visible part of the map, in the coordinates of the
+	 * map before any zooming takes place
+	 */
+	void setViewport(Bounds viewport){
+		this.viewport = viewport;
+		updateVisibleTiles();
+	}
+
+	/**
+	 * Discards all of the tiles during the next pulse. The visible ones
+	 * are then rendered again.
+	 */
+	void invalidate(){
+		if (active && !resetPending){
+			resetPending = true;
+			Platform.runLater(new Runnable() {
+
+				@Override
+				public void run() {
+					resetPending = false;
+					if (active){
+						reset();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Discards all of the tiles and starts rendering them again,
+	 * beginning with the visible ones.
+	 */
+	private void reset(){
+		discardTiles();
+		buildIndex();
+		for (int level = 0; level < prefetchedLevels; level++){
+			int[] counts = getTileCounts(level);
+			for (int row = 0; row < counts[1]; row++){
+				for (int col = 0; col < counts[0]; col++){
+					prefetchQueue.add(new Tile(level, col, row));
+				}
+			}
+		}
+		updateVisibleTiles();
+		scheduleRendering();
+	}
+
+	/**
+	 * Discards all of the rendered, queued and spilled tiles. The visualizations of the
+	 * visible tiles are kept until the new versions are rendered.
+	 */
+	private void discardTiles(){
+		int oldGeneration = generation;
+		generation++;
+		images.clear();
+		renderQueue.clear();
+		prefetchQueue.clear();
+		loadingTiles.clear();
+		spilledTiles.clear();
+		if (!active){
+			tileLayer.getChildren().clear();
+			shownTiles.clear();
+			visibleTiles.clear();
+		}
+		File directory = spillDirectory;
+		if (directory != null){
+			deleteSpilledTiles(directory, spillFilePrefix + oldGeneration + "_");
+		}
+	}
+
+	/**
+	 * Inserts each of the static shapes into the cells of the index intersecting its bounds.
+	 * Called whenever the tiles are discarded, so that the index reflects the current shapes.
+	 */
+	private void buildIndex(){
+		indexCols = Math.max(1, (int)Math.ceil(mapWidth / indexCellSize));
+		indexRows = Math.max(1, (int)Math.ceil(mapHeight / indexCellSize));
+		int count = shapes.size();
+		shapeBounds = new Bounds[count];
+		shapeStamps = new int[count];
+		queryStamp = 0;
+		int[][] ranges = new int[count][];
+		indexOffsets = new int[indexCols * indexRows + 1];
+		for (int i = 0; i < count; i++){
+			shapeBounds[i] = shapes.get(i).getBoundsInParent();
+			int[] range = getCellRange(shapeBounds[i].getMinX(), shapeBounds[i].getMinY(), 
+					shapeBounds[i].getMaxX(), shapeBounds[i].getMaxY());
+			ranges[i] = range;
+			for (int row = range[1]; row <= range[3]; row++){
+				for (int col = range[0]; col <= range[2]; col++){
+					indexOffsets[(row * indexCols) + col + 1]++;
+				}
+			}
+		}
+		for (int cell = 0; cell < indexCols * indexRows; cell++){
+			indexOffsets[cell + 1] += indexOffsets[cell];
+		}
+		indexShapes = new int[indexOffsets[indexCols * indexRows]];
+		int[] positions = Arrays.copyOf(indexOffsets, indexCols * indexRows);
+		for (int i = 0; i < count; i++){
+			int[] range = ranges[i];
+			for (int row = range[1]; row <= range[3]; row++){
+				for (int col = range[0]; col <= range[2]; col++){
+					indexShapes[positions[(row * indexCols) + col]++] = i;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param minX Left border of a rectangle, in the coordinates of the unzoomed map
+	 * @param minY Top border of a rectangle, in the coordinates of the unzoomed map
+	 * @param maxX Right border of a rectangle, in the coordinates of the unzoomed map
+	 * @param maxY Bottom border of a rectangle, in the coordinates of the unzoomed map
+	 * @return The first column, first row, last column and last row of the index cells 
+	 * intersecting the rectangle. The rectangles outside of the map fall into the border cells.
+	 */
+	private int[] getCellRange(double minX, double minY, double maxX, double maxY){
+		return new int[]{getCell(minX, indexCols), getCell(minY, indexRows), 
+				getCell(maxX, indexCols), getCell(maxY, indexRows)};
+	}
+
+	/**
+	 * @param coordinate A coordinate in the unzoomed map
+	 * @param cells Number of the index cells in the direction of the coordinate
+	 * @return The index cell containing the coordinate, clamped to the map
+	 */
+	private int getCell(double coordinate, int cells){
+		double cell = Math.floor(coordinate / indexCellSize);
+		if (!(cell >= 0)){
+			return 0;
+		}
+		return (int)Math.min(cells - 1, cell);
+	}
+
+	/**
+	 * @param minX Left border of a rectangle, in the coordinates of the unzoomed map
+	 * @param minY Top border of a rectangle, in the coordinates of the unzoomed map
+	 * @param maxX Right border of a rectangle, in the coordinates of the unzoomed map
+	 * @param maxY Bottom border of a rectangle, in the coordinates of the unzoomed map
+	 * @return The static shapes whose bounds intersect the rectangle, in the order 
+	 * in which they are drawn
+	 */
+	private List<Node> getShapes(double minX, double minY, double maxX, double maxY){
+		if (queryStamp == Integer.MAX_VALUE){
+			Arrays.fill(shapeStamps, 0);
+			queryStamp = 0;
+		}
+		queryStamp++;
+		int[] range = getCellRange(minX, minY, maxX, maxY);
+		int[] found = new int[16];
+		int count = 0;
+		for (int row = range[1]; row <= range[3]; row++){
+			for (int col = range[0]; col <= range[2]; col++){
+				int cell = (row * indexCols) + col;
+				for (int i = indexOffsets[cell]; i < indexOffsets[cell + 1]; i++){
+					int shape = indexShapes[i];
+					if (shapeStamps[shape] == queryStamp){
+						continue;
+					}
+					shapeStamps[shape] = queryStamp;
+					Bounds bounds = shapeBounds[shape];
+					if ((bounds.getMaxX() >= minX) && (bounds.getMinX() <= maxX) 
+							&& (bounds.getMaxY() >= minY) && (bounds.getMinY() <= maxY)){
+						if (count == found.length){
+							found = Arrays.copyOf(found, 2 * count);
+						}
+						found[count++] = shape;
+					}
+				}
+			}
+		}
+		Arrays.sort(found, 0, count);
+		List<Node> res = new ArrayList<>(count);
+		for (int i = 0; i < count; i++){
+			res.add(shapes.get(found[i]));
+		}
+		return res;
+	}
+
+	/**
+	 * Makes sure that the visibility and color changes of the given shape
+	 * invalidate the tiles.
+	 * @param node A static shape
+	 */
+	private void observe(Node node){
+		List<Observable> properties = new ArrayList<>();
+		properties.add(node.visibleProperty());
+		if (node instanceof Shape){
+			Shape shape = (Shape)node;
+			properties.add(shape.fillProperty());
+			properties.add(shape.strokeProperty());
+		}
+		for (Observable property : properties){
+			property.addListener(invalidator);
+		}
+		observed.addAll(properties);
+	}
+
+	/**
+	 * @param zoom A zoom factor
+	 * @return The level of the pyramid used to show the map at the given zoom factor
+	 */
+	private int getLevel(double zoom){
+		int level = (int)Math.ceil(Math.log(zoom) / Math.log(2) - 1e-9);
+		return Math.max(0, Math.min(maxLevel, level));
+	}
+
+	/**
+	 * @param level A level of the pyramid
+	 * @return The number of columns and rows of tiles in the given level
+	 */
+	private int[] getTileCounts(int level){
+		double scale = Math.pow(2, level);
+		int cols = (int)Math.ceil(mapWidth * scale / tileSize);
+		int rows = (int)Math.ceil(mapHeight * scale / tileSize);
+		return new int[]{cols, rows};
+	}
+
+	/**
+	 * Makes sure that exactly the tiles covering the {@link StaticLayerCache#viewport}
+	 * at the current zoom level are shown. The missing tiles are requested.
+	 */
+	private void updateVisibleTiles(){
+		if (!active || (viewport == null)){
+			return;
+		}
+		int level = getLevel(zoom);
+		double extent = tileSize / Math.pow(2, level);
+		int[] counts = getTileCounts(level);
+		int minCol = Math.max(0, (int)Math.floor(viewport.getMinX() / extent));
+		int maxCol = Math.min(counts[0] - 1, (int)Math.floor(viewport.getMaxX() / extent));
+		int minRow = Math.max(0, (int)Math.floor(viewport.getMinY() / extent));
+		int maxRow = Math.min(counts[1] - 1, (int)Math.floor(viewport.getMaxY() / extent));
+		visibleTiles.clear();
+		for (int row = minRow; row <= maxRow; row++){
+			for (int col = minCol; col <= maxCol; col++){
+				Tile tile = new Tile(level, col, row);
+				visibleTiles.add(tile);
+				WritableImage image = images.get(tile);
+				if (image == null){
+					request(tile);
+				} else {
+					show(tile, image);
+				}
+			}
+		}
+		Iterator<Map.Entry<Tile,ImageView>> it = shownTiles.entrySet().iterator();
+		while (it.hasNext()){
+			Map.Entry<Tile,ImageView> entry = it.next();
+			if (!visibleTiles.contains(entry.getKey())){
+				tileLayer.getChildren().remove(entry.getValue());
+				it.remove();
+			}
+		}
+		Iterator<Tile> queued = renderQueue.iterator();
+		while (queued.hasNext()){
+			if (!visibleTiles.contains(queued.next())){
+				queued.remove();
+			}
+		}
+	}
+
+	/**
+	 * Makes sure that the given tile will be shown as soon as possible. It is either
+	 * loaded from the {@link StaticLayerCache#spillDirectory} or rendered.
+	 * @param tile The requested tile
+	 */
+	private void request(Tile tile){
+		if (loadingTiles.contains(tile) || renderQueue.contains(tile)){
+			return;
+		}
+		File directory = spillDirectory;
+		if ((directory != null) && spilledTiles.contains(tile)){
+			load(tile, directory);
+		} else {
+			renderQueue.add(tile);
+			scheduleRendering();
+		}
+	}
+
+	/**
+	 * Makes sure that the queued tiles will be rendered, a few of them in each pulse.
+	 */
+	private void scheduleRendering(){
+		if (renderPending){
+			return;
+		}
+		renderPending = true;
+		Platform.runLater(new Runnable() {
+
+			@Override
+			public void run() {
+				renderPending = false;
+				if (!active){
+					return;
+				}
+				int rendered = 0;
+				while ((rendered < tilesPerPulse) && !(renderQueue.isEmpty() && prefetchQueue.isEmpty())){
+					Set<Tile> queue = renderQueue.isEmpty() ? prefetchQueue : renderQueue;
+					Iterator<Tile> it = queue.iterator();
+					Tile tile = it.next();
+					it.remove();
+					if (images.containsKey(tile)){
+						continue;
+					}
+					WritableImage image = render(tile);
+					images.put(tile, image);
+					if (visibleTiles.contains(tile)){
+						show(tile, image);
+					}
+					rendered++;
+				}
+				if (!(renderQueue.isEmpty() && prefetchQueue.isEmpty())){
+					scheduleRendering();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Shows the given tile in the {@link StaticLayerCache#tileLayer}
+	 * @param tile The tile to be shown
+	 * @param image The rendered tile
+	 */
+	private void show(Tile tile, Image image){
+		ImageView view = shownTiles.get(tile);
+		if (view == null){
+			double scale = Math.pow(2, tile.level);
+			double extent = tileSize / scale;
+			view = new ImageView();
+			view.setX(tile.col * extent);
+			view.setY(tile.row * extent);
+			view.setFitWidth(image.getWidth() / scale);
+			view.setFitHeight(image.getHeight() / scale);
+			view.setPreserveRatio(false);
+			view.setSmooth(false);
+			tileLayer.getChildren().add(view);
+			shownTiles.put(tile, view);
+		}
+		view.setImage(image);
+	}
+
+	/**
+	 * Renders the static shapes intersecting the given tile into the tile. The shapes
+	 * are rendered from the detached {@link StaticLayerCache#renderGroup}, so the scene 
+	 * graph is not touched.
+	 * @param tile The tile to be rendered
+	 * @return The rendered tile
+	 */
+	private WritableImage render(Tile tile){
+		double scale = Math.pow(2, tile.level);
+		double x = tile.col * (double)tileSize;
+		double y = tile.row * (double)tileSize;
+		double width = Math.min(tileSize, Math.ceil(mapWidth * scale) - x);
+		double height = Math.min(tileSize, Math.ceil(mapHeight * scale) - y);
+		SnapshotParameters params = new SnapshotParameters();
+		params.setFill(Color.TRANSPARENT);
+		params.setTransform(new Scale(scale, scale));
+		params.setViewport(new Rectangle2D(x, y, width, height));
+		renderGroup.getChildren().setAll(getShapes(x / scale, y / scale, 
+				(x + width) / scale, (y + height) / scale));
+		try {
+			return renderGroup.snapshot(params, null);
+		} finally {
+			renderGroup.getChildren().clear();
+		}
+	}
+
+	/**
+	 * Writes the given tile, which is being evicted from the memory, into the
+	 * {@link StaticLayerCache#spillDirectory}. Runs on a background thread.
+	 * @param tile The evicted tile
+	 * @param image The rendered tile
+	 */
+	private void spill(final Tile tile, final WritableImage image){
+		final File directory = spillDirectory;
+		if ((directory == null) || spilledTiles.contains(tile)){
+			return;
+		}
+		final int tileGeneration = generation;
+		workers.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				if (tileGeneration != generation){
+					return;
+				}
+				BufferedImage bufferedImage = SwingFXUtils.fromFXImage(image, null);
+				File file = new File(directory, tile.getFileName(tileGeneration));
+				try {
+					directory.mkdirs();
+					if (ImageIO.write(bufferedImage, "png", file) && (tileGeneration == generation)){
+						spilledTiles.add(tile);
+					}
+				} catch (IOException ex) {}
+			}
+		});
+	}
+
+	/**
+	 * Loads the given tile from the {@link StaticLayerCache#spillDirectory} on a background
+	 * thread and shows it. If the loading fails, the tile is rendered again.
+	 * @param tile The tile to be loaded
+	 * @param directory The directory containing the spilled tiles
+	 */
+	private void load(final Tile tile, final File directory){
+		loadingTiles.add(tile);
+		final int tileGeneration = generation;
+		workers.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				WritableImage image = null;
+				try {
+					BufferedImage bufferedImage = ImageIO.read(new File(directory, tile.getFileName(tileGeneration)));
+					if (bufferedImage != null){
+						image = SwingFXUtils.toFXImage(bufferedImage, null);
+					}
+				} catch (IOException ex) {}
+				final WritableImage result = image;
+				Platform.runLater(new Runnable() {
+
+					@Override
+					public void run() {
+						if ((tileGeneration != generation) || !loadingTiles.remove(tile)){
+							return;
+						}
+						if (result == null){
+							spilledTiles.remove(tile);
+							if (visibleTiles.contains(tile)){
+								renderQueue.add(tile);
+								scheduleRendering();
+							}
+						} else {
+							images.put(tile, result);
+							if (visibleTiles.contains(tile)){
+								show(tile, result);
+							}
+						}
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Deletes the spilled tiles whose file names start with the given prefix.
+	 * Runs on a background thread.
+	 * @param directory The directory containing the spilled tiles
+	 * @param prefix Prefix of the names of the files to be deleted
+	 */
+	private static void deleteSpilledTiles(final File directory, final String prefix){
+		workers.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				File[] files = directory.listFiles();
+				if (files != null){
+					for (File file : files){
+						if (file.getName().startsWith(prefix) && file.getName().endsWith(".png")){
+							file.delete();
+						}
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 * Creates the visualization of the background image, so that it can be
+	 * rendered into the tiles together with the nodes and links.
+	 * @param background The background of the map, may be null
+	 * @param transformer Converts the coordinates of the background into the visualization coordinates
+	 * @return The visualization of the background image, or null if there is no background image
+	 */
+	private ImageView createBackgroundView(Background background, PointTransformer transformer){
+		if ((background == null) || (background.getImage() == null)){
+			return null;
+		}
+		Image image;
+		try {
+			image = new Image(background.getImage());
+		} catch (IllegalArgumentException ex){
+			return null;
+		}
+		Point2D leftTop = transformer.transform(new Point2D(background.getLeftTopX(),
+				background.getLeftTopY()));
+		Point2D rightBottom = transformer.transform(new Point2D(background.getRightBottomX(),
+				background.getRightBottomY()));
+		ImageView res = new ImageView(image);
+		res.setX(leftTop.getX());
+		res.setY(leftTop.getY());
+		res.setFitWidth(rightBottom.getX() - leftTop.getX());
+		res.setFitHeight(rightBottom.getY() - leftTop.getY());
+		res.setPreserveRatio(false);
+		res.setMouseTransparent(true);
+		return res;
+	}
+
+	/**
+	 * Identifies a single tile of the pyramid
+	 */
+	private static class Tile {
+
+		/**
+		 * Level of the pyramid, the tile is rendered at the scale 2^level
+		 */
+		private final int level;
+
+		/**
+		 * Column of the tile inside its level
+		 */
+		private final int col;
+
+		/**
+		 * Row of the tile inside its level
+		 */
+		private final int row;
+
+		/**
+		 * @param level Level of the pyramid, the tile is rendered at the scale 2^level
+		 * @param col Column of the tile inside its level
+		 * @param row Row of the tile inside its level
+		 */
+		public Tile(int level, int col, int row) {
+			this.level = level;
+			this.col = col;
+			this.row = row;
+		}
+
+		/**
+		 * @param generation The generation of the tiles
+		 * @return Name of the file holding the spilled tile
+		 */
+		public String getFileName(int generation){
+			return spillFilePrefix + generation + "_" + level + "_" + col + "_" + row + ".png";
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Tile)){
+				return false;
+			}
+			Tile other = (Tile)obj;
+			return (level == other.level) && (col == other.col) && (row == other.row);
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * ((31 * level) + col)) + row;
+		}
+	}
+}
@@ -18,11 +18,13 @@ import cz.filipekt.jdcv.gui_logic.BackgroundColorHandler;
 import cz.filipekt.jdcv.gui_logic.CloseSceneHandler;
 import cz.filipekt.jdcv.gui_logic.ConfigFileLoader;
 import cz.filipekt.jdcv.gui_logic.ControlsBarItemHandler;
+import cz.filipekt.jdcv.gui_logic.DeltaConversionHandler;
 import cz.filipekt.jdcv.gui_logic.FileChooserButton;
 import cz.filipekt.jdcv.gui_logic.GraphicsPanelHandler;
 import cz.filipekt.jdcv.gui_logic.ImportSceneHandler;
 import cz.filipekt.jdcv.gui_logic.JumpToActionEventHandler;
 import cz.filipekt.jdcv.gui_logic.JumpToEventHandler;
+import cz.filipekt.jdcv.gui_logic.OfflineExportHandler;
 import cz.filipekt.jdcv.gui_logic.PlayButtonHandler;
 import cz.filipekt.jdcv.gui_logic.PluginsPanelHandler;
 import cz.filipekt.jdcv.gui_logic.RecordingHandler;
@@ -34,10 +36,12 @@ import cz.filipekt.jdcv.gui_logic.TimeLineRateListener;
 import cz.filipekt.jdcv.gui_logic.TimeLineStatusHandler;
 import cz.filipekt.jdcv.gui_logic.ZoomingHandler;
 import cz.filipekt.jdcv.measuring.MeasureInputProcessing;
+import cz.filipekt.jdcv.plugins.EnsembleStatsPanel;
 import cz.filipekt.jdcv.plugins.InfoPanel;
 import cz.filipekt.jdcv.plugins.Plugin;
 import cz.filipekt.jdcv.plugins.PluginWithPreferences;
 import cz.filipekt.jdcv.prefs.GlobalPrefs;
+import cz.filipekt.jdcv.recording.RecordingFormat;
 import cz.filipekt.jdcv.util.CharsetNames;
 import cz.filipekt.jdcv.util.GUIUtils;
 import cz.filipekt.jdcv.util.Resources;
@@ -62,9 +66,12 @@ import javafx.scene.control.Label;
 import javafx.scene.control.Menu;
 import javafx.scene.control.MenuBar;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.RadioMenuItem;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.Slider;
 import javafx.scene.control.TextField;
+import javafx.scene.control.Toggle;
+import javafx.scene.control.ToggleGroup;
 import javafx.scene.control.ToolBar;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
@@ -138,6 +145,7 @@ public class Visualizer extends Application {
 		}
 		this.scene = newScene;
 		providePreferencesToPlugins();
+		EnsembleStatsPanel.getInstance().setStatistics((newScene == null) ? null : newScene.getEnsembleStatistics());
 	}
 	
 	/**
@@ -153,7 +161,7 @@ public class Visualizer extends Application {
 		mapScrollPane.setPrefHeight(mapHeight);
 		mapScrollPane.setPrefWidth(mapWidth);
 		mapPane.getChildren().clear();
-		mapPane.getChildren().add(mapScrollPane);											
+		mapPane.getChildren().addAll(mapScrollPane, performanceMonitor.getOverlay());
 		graphicsColumn.setDisable(false);
 		switchablePanel.setDisable(false);
 		if (matsimEventsPresent){
@@ -297,6 +305,54 @@ public class Visualizer extends Application {
 	 */
 	private final MenuItem closeThisSceneItem = new MenuItem("Close This Scene");
 
+	/**
+	 * An item in the "Options" menu; when checked, the map tiles that do not fit into 
+	 * the memory are written next to the network file of the imported scenes
+	 */
+	private final CheckMenuItem tileSpillItem = new CheckMenuItem("Spill Map Tiles to Disk");
+	
+	/**
+	 * @return If true, the map tiles that do not fit into the memory should be written 
+	 * next to the network file of the imported scenes
+	 * @see {@link Visualizer#tileSpillItem}
+	 */
+	public boolean isTileSpillEnabled(){
+		return tileSpillItem.isSelected();
+	}
+
+	/**
+	 * A submenu of the "Options" menu, where the format of the recorded visualization is chosen
+	 */
+	private final Menu recordingFormatMenu = new Menu("Recording Format");
+	
+	/**
+	 * Holds the items of {@link Visualizer#recordingFormatMenu}, each of them
+	 * carrying its {@link RecordingFormat} as the user data
+	 */
+	private final ToggleGroup recordingFormatGroup = new ToggleGroup();
+	
+	/**
+	 * @return The format in which the recorded visualization should be stored
+	 * @see {@link Visualizer#recordingFormatMenu}
+	 */
+	public RecordingFormat getRecordingFormat(){
+		Toggle selected = recordingFormatGroup.getSelectedToggle();
+		return (selected == null) ? RecordingFormat.PNG_IMAGES : (RecordingFormat)selected.getUserData();
+	}
+
+	/**
+	 * Measures the performance of the render loop and shows the results over the map
+	 */
+	private final PerformanceMonitor performanceMonitor = new PerformanceMonitor(this);
+
+	/**
+	 * @return Measures the performance of the render loop and shows the results over the map
+	 * @see {@link Visualizer#performanceMonitor}
+	 */
+	public PerformanceMonitor getPerformanceMonitor(){
+		return performanceMonitor;
+	}
+
 	/**
 	 * Constructs the main menu bar of the application.
 	 */
@@ -310,7 +366,16 @@ public class Visualizer extends Application {
 		Menu optionsMenu = new Menu("Options");
 		MenuItem scriptingWindow = new MenuItem("Open Console");
 		scriptingWindow.setOnAction(scriptingWindowButton);
-		optionsMenu.getItems().addAll(scriptingWindow);
+		for (RecordingFormat format : RecordingFormat.values()){
+			RadioMenuItem formatItem = new RadioMenuItem(format.toString());
+			formatItem.setUserData(format);
+			formatItem.setToggleGroup(recordingFormatGroup);
+			formatItem.setSelected(format == RecordingFormat.PNG_IMAGES);
+			recordingFormatMenu.getItems().add(formatItem);
+		}
+		MenuItem convertChangesItem = new MenuItem("Convert Recorded Changes");
+		convertChangesItem.setOnAction(new DeltaConversionHandler(this));
+		optionsMenu.getItems().addAll(scriptingWindow, tileSpillItem, recordingFormatMenu, convertChangesItem);
 		Menu viewMenu = new Menu("View");
 		CheckMenuItem controlsPanel = new CheckMenuItem("Controls Panel");
 		controlsPanel.setSelected(true);
@@ -321,7 +386,16 @@ public class Visualizer extends Application {
 		CheckMenuItem pluginPanel = new CheckMenuItem("Plugins Panel");
 		pluginPanel.setSelected(true);
 		pluginPanel.setOnAction(new PluginsPanelHandler(pluginPanel, this));
-		viewMenu.getItems().addAll(controlsPanel, graphicsPanel, pluginPanel);
+		final CheckMenuItem performanceOverlay = new CheckMenuItem("Performance Overlay");
+		performanceOverlay.setSelected(false);
+		performanceOverlay.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				performanceMonitor.setOverlayVisible(performanceOverlay.isSelected());
+			}
+		});
+		viewMenu.getItems().addAll(controlsPanel, graphicsPanel, pluginPanel, performanceOverlay);
 		menuBar.getMenus().addAll(fileMenu, optionsMenu, viewMenu);
 	}
 	
@@ -875,6 +949,18 @@ public class Visualizer extends Application {
 			}
 		});
 		graphicsColumn.getChildren().add(showLinksBox);
+		final CheckBox staticLayerBox = new CheckBox("Cache static map");
+		staticLayerBox.setSelected(false);
+		staticLayerBox.setOnAction(new EventHandler<ActionEvent>() {
+			
+			@Override
+			public void handle(ActionEvent arg0) {
+				if (scene != null){
+					scene.setStaticLayerMode(staticLayerBox.isSelected());
+				}
+			}
+		});
+		graphicsColumn.getChildren().add(staticLayerBox);
 		Label backColorLabel = new Label("Background color:");
 		graphicsColumn.getChildren().add(backColorLabel);
 		ColorPicker backColor = new ColorPicker(Color.web(defaultBackround));
@@ -891,6 +977,10 @@ public class Visualizer extends Application {
 		recordingHandler = new RecordingHandler(recordButton, recordStartImage, recordStopImage, this); 
 		recordButton.setOnMouseClicked(recordingHandler);
 		graphicsColumn.getChildren().add(recordButton);
+		ImageView exportImage = Resources.getImageView("fast-forward.png", playIconSize);
+		Button exportButton = new Button("Export Video", exportImage);
+		exportButton.setOnMouseClicked(new OfflineExportHandler(this));
+		graphicsColumn.getChildren().add(exportButton);
 		for (Node node : graphicsColumn.getChildren()){
 			VBox.setMargin(node, new Insets(graphicsItemsMargin, 0, graphicsItemsMargin, 
 					2 * graphicsItemsMargin));
@@ -903,6 +993,7 @@ public class Visualizer extends Application {
 			public void run() {
 				showNodesBox.setSelected(true);
 				showLinksBox.setSelected(true);
+				staticLayerBox.setSelected(false);
 			}
 		};
 	}
@@ -991,7 +1082,8 @@ public class Visualizer extends Application {
 	
 	/**
 	 * Loads plugins from the plugins directory. In addition, it also loads
-	 * the plugin {@link InfoPanel}, which does not have to be loaded from a jar
+	 * the plugins {@link InfoPanel} and {@link EnsembleStatsPanel}, which do not
+	 * have to be loaded from a jar
 	 */
 	private void loadPlugins(){
 		ServiceLoader<Plugin> loader = ServiceLoader.load(Plugin.class);
@@ -999,6 +1091,7 @@ public class Visualizer extends Application {
 			plugins.add(plugin);
 		}
 		plugins.add(InfoPanel.getInstance());
+		plugins.add(EnsembleStatsPanel.getInstance());
 	}
 	
 	/**
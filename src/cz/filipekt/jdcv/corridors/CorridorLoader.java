@@ -11,12 +11,10 @@ import cz.filipekt.jdcv.geometry.PointTransformer;
 import cz.filipekt.jdcv.geometry.PointUtils;
 import cz.filipekt.jdcv.network.MyLink;
 import cz.filipekt.jdcv.network.MyLinkImg;
-import javafx.event.EventHandler;
 import javafx.geometry.Point2D;
 import javafx.scene.Node;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.scene.shape.Line;
@@ -167,27 +165,13 @@ public class CorridorLoader {
 	
 	/**
 	 * Given a (polygonal) line representation of the link, this method
-	 * makes sure that is it decorated well. It sets the proper stroke,
-	 * and behavior on mouse enter/exit.
+	 * makes sure that is it decorated well. It sets the proper stroke.
+	 * The behavior on mouse enter/exit is provided by the picking index of the scene.
 	 * @param line The line which will be decorated
 	 */
-	private void decorateLinkLine(final Shape line){
+	private void decorateLinkLine(Shape line){
 		line.setStroke(linkDefaultColor);
 		line.setStrokeWidth(linkWidth);
-		line.setOnMouseEntered(new EventHandler<MouseEvent>() {
-
-			@Override
-			public void handle(MouseEvent arg0) {
-				line.setStrokeWidth(linkWidth * 3);
-			}
-		});
-		line.setOnMouseExited(new EventHandler<MouseEvent>() {
-
-			@Override
-			public void handle(MouseEvent arg0) {
-				line.setStrokeWidth(linkWidth);
-			}
-		});
 	}
 	
 	/**
@@ -322,4 +306,4 @@ public class CorridorLoader {
 	public LinkCorridor build(){
 		return builtCorridor;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
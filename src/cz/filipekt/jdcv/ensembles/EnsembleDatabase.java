@@ -1,16 +1,12 @@
 package cz.filipekt.jdcv.ensembles;
 
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.Map;
 
-import javafx.event.EventHandler;
 import javafx.scene.Node;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Paint;
 import javafx.scene.shape.Line;
-import cz.filipekt.jdcv.plugins.InfoPanel;
 
 /**
  * Stores the shapes representing the ensemble membership relation.
@@ -85,7 +81,9 @@ public class EnsembleDatabase {
 	
 	/**
 	 * Given the ensemble name and IDs of coordinator and member, this method
-	 * gives a geometric shape visualizing this relationship.
+	 * gives a geometric shape visualizing this relationship. The shape is not bound 
+	 * to the positions of the coordinator and member, it holds the style of the edge
+	 * drawn by the {@link EnsembleEdgeRenderer}.
 	 * @param ensembleName Name of an ensemble
 	 * @param coordinator ID of an coordinator
 	 * @param member ID of a member
@@ -98,42 +96,17 @@ public class EnsembleDatabase {
 			Node coordinatorNode, Node memberNode){
 		MembershipRelation t = new MembershipRelation(ensembleName, coordinator, member);
 		if (!shapeMappings.containsKey(t) && (memberNode!=null)){
-			final Line line = new Line();
+			Line line = new Line();
 			line.setVisible(false);
-			line.startXProperty().bind(coordinatorNode.translateXProperty());
-			line.startYProperty().bind(coordinatorNode.translateYProperty());
-			line.endXProperty().bind(memberNode.translateXProperty());
-			line.endYProperty().bind(memberNode.translateYProperty());
+			line.setStartX(coordinatorNode.getTranslateX());
+			line.setStartY(coordinatorNode.getTranslateY());
+			line.setEndX(memberNode.getTranslateX());
+			line.setEndY(memberNode.getTranslateY());
 			Paint color = getColor(ensembleName, coordinator);
 			line.setStroke(color);
 			line.setStrokeWidth(ensembleLineWidth);
-			final Map<String,String> data = new LinkedHashMap<>();
-			data.put("Ensemble Name", ensembleName);
-			data.put("Coordinator ID", coordinator);
-			data.put("Member ID", member);
-			line.setOnMouseEntered(new EventHandler<MouseEvent>() {
-
-				@Override
-				public void handle(MouseEvent arg0) {
-					line.setStrokeWidth(ensembleLineWidth * 3);
-				}
-			});
-			line.setOnMouseExited(new EventHandler<MouseEvent>() {
-
-				@Override
-				public void handle(MouseEvent arg0) {
-					line.setStrokeWidth(ensembleLineWidth);
-				}
-			});
-			line.setOnMouseClicked(new EventHandler<MouseEvent>() {
-
-				@Override
-				public void handle(MouseEvent arg0) {
-					InfoPanel.getInstance().setInfo("Ensemble Membership Selected", data);
-				}
-			});
 			shapeMappings.put(t, line);
 		}
 		return shapeMappings.get(t);
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
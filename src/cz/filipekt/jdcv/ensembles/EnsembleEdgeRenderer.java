@@ -0,0 +1,331 @@
+package cz.filipekt.jdcv.ensembles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Paint;
+import javafx.scene.shape.Line;
+import javafx.scene.shape.StrokeLineCap;
+import javafx.scene.transform.Scale;
+
+/**
+ * Draws all the visible ensemble membership edges into a single {@link Canvas}, in one
+ * pass per frame. The positions of coordinators and members are read directly from
+ * their visualizations, so no property bindings are needed.
+ * The {@link Line} instances created by {@link EnsembleDatabase} are not placed into the
+ * scene graph, they only hold the style of the edges (color, width, visibility), so that
+ * the preferences objects can keep working with them. The renderer also keeps their
+ * end points up to date, for the visible edges.
+ * The edges sharing the same color and width are stroked together, as a single path.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class EnsembleEdgeRenderer {
+
+	/**
+	 * The canvas is never larger than this, in pixels, in either dimension
+	 */
+	private final double maxCanvasSize = 4096;
+
+	/**
+	 * Width of the unzoomed map, in pixels
+	 */
+	private final double mapWidth;
+
+	/**
+	 * Height of the unzoomed map, in pixels
+	 */
+	private final double mapHeight;
+
+	/**
+	 * The edges are drawn here
+	 */
+	private final Canvas canvas = new Canvas();
+
+	/**
+	 * Scales the {@link EnsembleEdgeRenderer#canvas} back to the unzoomed map coordinates
+	 */
+	private final Scale canvasScale = new Scale(1, 1, 0, 0);
+
+	/**
+	 * Ratio between the canvas pixels and the unzoomed map pixels
+	 */
+	private double resolution = 0;
+
+	/**
+	 * The style holders of the edges, grouped by the stroke
+	 */
+	private Line[] lines = new Line[0];
+
+	/**
+	 * Visualizations of the coordinators, at the same positions as {@link EnsembleEdgeRenderer#lines}
+	 */
+	private Node[] coordinators = new Node[0];
+
+	/**
+	 * Visualizations of the members, at the same positions as {@link EnsembleEdgeRenderer#lines}
+	 */
+	private Node[] members = new Node[0];
+
+	/**
+	 * For each group of edges sharing the same stroke, position of its first edge
+	 * in {@link EnsembleEdgeRenderer#lines}. The last item equals the number of edges.
+	 */
+	private int[] groupStarts = new int[]{0};
+
+	/**
+	 * If true, the edges need to be regrouped before drawing,
+	 * because the stroke of some of them has changed
+	 */
+	private boolean regroupNeeded = false;
+
+	/**
+	 * Marks whether the edges need to be drawn again, i.e. whether the 
+	 * {@link EnsembleEdgeRenderer#timer} has been started or is about to be started
+	 */
+	private volatile boolean redrawScheduled = false;
+
+	/**
+	 * Called when the stroke of any of the edges changes
+	 */
+	private final InvalidationListener strokeListener = new InvalidationListener() {
+
+		@Override
+		public void invalidated(Observable observable) {
+			regroupNeeded = true;
+			requestRedraw();
+		}
+	};
+
+	/**
+	 * Called when the visibility of any of the edges changes
+	 */
+	private final InvalidationListener visibilityListener = new InvalidationListener() {
+
+		@Override
+		public void invalidated(Observable observable) {
+			requestRedraw();
+		}
+	};
+
+	/**
+	 * Draws the edges in the next pulse, then stops itself
+	 */
+	private final AnimationTimer timer = new AnimationTimer() {
+
+		@Override
+		public void handle(long now) {
+			stop();
+			redrawScheduled = false;
+			draw();
+		}
+	};
+
+	/**
+	 * Starts the {@link EnsembleEdgeRenderer#timer} on the JavaFX application thread, 
+	 * unless the edges have been drawn in the meantime
+	 */
+	private final Runnable timerStarter = new Runnable() {
+		
+		@Override
+		public void run() {
+			if (redrawScheduled){
+				timer.start();
+			}
+		}
+	};
+
+	/**
+	 * May be called outside of the JavaFX application thread, as long as the canvas 
+	 * has not been placed into a displayed scene yet.
+	 * @param mapWidth Width of the unzoomed map, in pixels
+	 * @param mapHeight Height of the unzoomed map, in pixels
+	 */
+	public EnsembleEdgeRenderer(double mapWidth, double mapHeight) {
+		this.mapWidth = mapWidth;
+		this.mapHeight = mapHeight;
+		canvas.setMouseTransparent(true);
+		canvas.getTransforms().add(canvasScale);
+		setZoom(1);
+	}
+
+	/**
+	 * @return The node on which the edges are drawn, to be placed into the map
+	 */
+	public Node getCanvas(){
+		return canvas;
+	}
+
+	/**
+	 * Sets the edges to be drawn
+	 * @param edges Maps the membership relations to the {@link Line} instances holding the style
+	 * of their edges, as created by {@link EnsembleDatabase}
+	 * @param agents Maps the person IDs to their visualizations
+	 */
+	public void setEdges(Map<MembershipRelation,Node> edges, Map<String,Node> agents){
+		for (Line line : lines){
+			line.strokeProperty().removeListener(strokeListener);
+			line.strokeWidthProperty().removeListener(strokeListener);
+			line.visibleProperty().removeListener(visibilityListener);
+		}
+		List<Line> newLines = new ArrayList<>();
+		List<Node> newCoordinators = new ArrayList<>();
+		List<Node> newMembers = new ArrayList<>();
+		for (Map.Entry<MembershipRelation,Node> edge : edges.entrySet()){
+			Node coordinator = agents.get(edge.getKey().getCoordinator());
+			Node member = agents.get(edge.getKey().getMember());
+			if ((coordinator != null) && (member != null) && (edge.getValue() instanceof Line)){
+				Line line = (Line)edge.getValue();
+				line.strokeProperty().addListener(strokeListener);
+				line.strokeWidthProperty().addListener(strokeListener);
+				line.visibleProperty().addListener(visibilityListener);
+				newLines.add(line);
+				newCoordinators.add(coordinator);
+				newMembers.add(member);
+			}
+		}
+		lines = newLines.toArray(new Line[newLines.size()]);
+		coordinators = newCoordinators.toArray(new Node[newCoordinators.size()]);
+		members = newMembers.toArray(new Node[newMembers.size()]);
+		regroupNeeded = true;
+		requestRedraw();
+	}
+
+	/**
+	 * Adapts the resolution of the canvas to the zoom of the map
+	 * @param zoom The zoom of the map
+	 */
+	public void setZoom(double zoom){
+		double newResolution = Math.min(zoom, maxCanvasSize / Math.max(mapWidth, mapHeight));
+		if (newResolution != resolution){
+			resolution = newResolution;
+			canvas.setWidth(Math.ceil(mapWidth * resolution));
+			canvas.setHeight(Math.ceil(mapHeight * resolution));
+			canvasScale.setX(1 / resolution);
+			canvasScale.setY(1 / resolution);
+			requestRedraw();
+		}
+	}
+
+	/**
+	 * Makes sure that the edges are drawn again in the next pulse. To be called
+	 * whenever the coordinators or members may have moved. When called outside of 
+	 * the JavaFX application thread, e.g. while the scene is being imported, the 
+	 * renderer is only marked dirty and the drawing is scheduled on that thread.
+	 */
+	public void requestRedraw(){
+		if (!redrawScheduled){
+			redrawScheduled = true;
+			if (Platform.isFxApplicationThread()){
+				timer.start();
+			} else {
+				Platform.runLater(timerStarter);
+			}
+		}
+	}
+
+	/**
+	 * Draws the edges immediately, instead of waiting for the next pulse. To be called
+	 * before a snapshot of the map is taken outside of the regular playback.
+	 */
+	public void redrawNow(){
+		if (redrawScheduled){
+			timer.stop();
+			redrawScheduled = false;
+		}
+		draw();
+	}
+
+	/**
+	 * Sorts the edges so that those sharing the same stroke color and width are adjacent
+	 */
+	private void regroup(){
+		Map<List<Object>,List<Integer>> groups = new HashMap<>();
+		List<List<Integer>> order = new ArrayList<>();
+		for (int i = 0; i < lines.length; i++){
+			List<Object> key = Arrays.<Object>asList(lines[i].getStroke(), lines[i].getStrokeWidth());
+			List<Integer> group = groups.get(key);
+			if (group == null){
+				group = new ArrayList<>();
+				groups.put(key, group);
+				order.add(group);
+			}
+			group.add(i);
+		}
+		Line[] sortedLines = new Line[lines.length];
+		Node[] sortedCoordinators = new Node[lines.length];
+		Node[] sortedMembers = new Node[lines.length];
+		groupStarts = new int[order.size() + 1];
+		int position = 0;
+		for (int g = 0; g < order.size(); g++){
+			groupStarts[g] = position;
+			for (int i : order.get(g)){
+				sortedLines[position] = lines[i];
+				sortedCoordinators[position] = coordinators[i];
+				sortedMembers[position] = members[i];
+				position++;
+			}
+		}
+		groupStarts[order.size()] = position;
+		lines = sortedLines;
+		coordinators = sortedCoordinators;
+		members = sortedMembers;
+		regroupNeeded = false;
+	}
+
+	/**
+	 * Draws all the visible edges, one stroke per group of edges sharing the same style
+	 */
+	private void draw(){
+		if (regroupNeeded){
+			regroup();
+		}
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		gc.setTransform(1, 0, 0, 1, 0, 0);
+		gc.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+		gc.setTransform(resolution, 0, 0, resolution, 0, 0);
+		gc.setLineCap(StrokeLineCap.BUTT);
+		for (int g = 0; g < groupStarts.length - 1; g++){
+			boolean empty = true;
+			for (int i = groupStarts[g]; i < groupStarts[g+1]; i++){
+				Line line = lines[i];
+				if (!line.isVisible()){
+					continue;
+				}
+				double startX = coordinators[i].getTranslateX();
+				double startY = coordinators[i].getTranslateY();
+				double endX = members[i].getTranslateX();
+				double endY = members[i].getTranslateY();
+				line.setStartX(startX);
+				line.setStartY(startY);
+				line.setEndX(endX);
+				line.setEndY(endY);
+				if (empty){
+					Paint stroke = line.getStroke();
+					if (stroke == null){
+						break;
+					}
+					gc.setStroke(stroke);
+					gc.setLineWidth(line.getStrokeWidth());
+					gc.beginPath();
+					empty = false;
+				}
+				gc.moveTo(startX, startY);
+				gc.lineTo(endX, endY);
+			}
+			if (!empty){
+				gc.stroke();
+			}
+		}
+	}
+}
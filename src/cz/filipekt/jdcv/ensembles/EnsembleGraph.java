@@ -0,0 +1,331 @@
+package cz.filipekt.jdcv.ensembles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The ensemble graph, i.e. the membership relations holding at the current point of an advancing
+ * simulation clock. The relations are the edges of the graph, numbered from zero.
+ * The graph is driven by a sorted sequence of toggles, each of them adding or removing a single edge.
+ * When the clock moves, in either direction, only the toggles between the previous and the new time
+ * are processed and the registered {@link EnsembleGraph.Listener} instances are told about the edges
+ * which have been added or removed in between. No sets of edges are created on the way.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class EnsembleGraph {
+
+	/**
+	 * Receives the changes of the ensemble graph
+	 */
+	public static interface Listener {
+
+		/**
+		 * Called when an edge has been added to the graph
+		 * @param edge Index of the edge
+		 * @param relation The membership relation represented by the edge
+		 */
+		void edgeAdded(int edge, MembershipRelation relation);
+
+		/**
+		 * Called when an edge has been removed from the graph
+		 * @param edge Index of the edge
+		 * @param relation The membership relation represented by the edge
+		 */
+		void edgeRemoved(int edge, MembershipRelation relation);
+	}
+
+	/**
+	 * The membership relations, indexed by the edge indices
+	 */
+	private final MembershipRelation[] edges;
+
+	/**
+	 * Maps the membership relations to the edge indices
+	 */
+	private final Map<MembershipRelation,Integer> edgeIndices = new HashMap<>();
+
+	/**
+	 * Times of the toggles, in ascending order
+	 */
+	private final double[] toggleTimes;
+
+	/**
+	 * For each toggle, index of the toggled edge
+	 */
+	private final int[] toggleEdges;
+
+	/**
+	 * For each toggle, marks whether the edge is added (true) or removed (false)
+	 */
+	private final boolean[] toggleAdditions;
+
+	/**
+	 * For each edge, marks whether it is present in the graph
+	 */
+	private final boolean[] active;
+
+	/**
+	 * Number of the edges present in the graph
+	 */
+	private int activeCount = 0;
+
+	/**
+	 * Number of the toggles that have been applied. The applied toggles
+	 * are always the first ones in {@link EnsembleGraph#toggleTimes}.
+	 */
+	private int cursor = 0;
+
+	/**
+	 * The current time of the clock
+	 */
+	private double time = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Edges toggled during the current call to {@link EnsembleGraph#advanceTo(double)}
+	 */
+	private final int[] touched;
+
+	/**
+	 * Number of the valid items in {@link EnsembleGraph#touched}
+	 */
+	private int touchedCount = 0;
+
+	/**
+	 * For each edge, marks whether it is contained in {@link EnsembleGraph#touched}
+	 */
+	private final boolean[] touchedFlags;
+
+	/**
+	 * For each edge contained in {@link EnsembleGraph#touched}, marks whether
+	 * it was present in the graph before the current call to {@link EnsembleGraph#advanceTo(double)}
+	 */
+	private final boolean[] activeBefore;
+
+	/**
+	 * Receive the changes of the graph
+	 */
+	private final List<Listener> listeners = new ArrayList<>();
+
+	/**
+	 * @param intervals The ensemble membership relations as intervals of simulation time.
+	 * The edge indices follow the order of {@link MembershipIntervals#getRelations()}.
+	 */
+	public EnsembleGraph(MembershipIntervals intervals) {
+		edges = intervals.getRelations().toArray(new MembershipRelation[0]);
+		int toggleCount = 0;
+		for (int i = 0; i < edges.length; i++){
+			edgeIndices.put(edges[i], i);
+			for (int j = 0; j < intervals.getIntervalCount(edges[i]); j++){
+				toggleCount += Double.isInfinite(intervals.getEnd(edges[i], j)) ? 1 : 2;
+			}
+		}
+		final double[] times = new double[toggleCount];
+		final int[] toggled = new int[toggleCount];
+		final boolean[] additions = new boolean[toggleCount];
+		int index = 0;
+		for (int i = 0; i < edges.length; i++){
+			for (int j = 0; j < intervals.getIntervalCount(edges[i]); j++){
+				times[index] = intervals.getStart(edges[i], j);
+				toggled[index] = i;
+				additions[index] = true;
+				index++;
+				double end = intervals.getEnd(edges[i], j);
+				if (!Double.isInfinite(end)){
+					times[index] = end;
+					toggled[index] = i;
+					additions[index] = false;
+					index++;
+				}
+			}
+		}
+		Integer[] order = new Integer[toggleCount];
+		for (int i = 0; i < toggleCount; i++){
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer o1, Integer o2) {
+				int res = Double.compare(times[o1], times[o2]);
+				if (res == 0){
+					res = Boolean.compare(additions[o1], additions[o2]);
+				}
+				return res;
+			}
+		});
+		toggleTimes = new double[toggleCount];
+		toggleEdges = new int[toggleCount];
+		toggleAdditions = new boolean[toggleCount];
+		for (int i = 0; i < toggleCount; i++){
+			toggleTimes[i] = times[order[i]];
+			toggleEdges[i] = toggled[order[i]];
+			toggleAdditions[i] = additions[order[i]];
+		}
+		active = new boolean[edges.length];
+		touched = new int[edges.length];
+		touchedFlags = new boolean[edges.length];
+		activeBefore = new boolean[edges.length];
+	}
+
+	/**
+	 * @param listener Will receive the changes of the graph
+	 */
+	public void addListener(Listener listener){
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener Will no longer receive the changes of the graph
+	 */
+	public void removeListener(Listener listener){
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Moves the clock to the given time, in either direction. The registered listeners
+	 * are told about the edges whose presence in the graph differs between the previous
+	 * and the new time. An edge that appears and disappears in between is not reported.
+	 * @param newTime The new time of the clock
+	 */
+	public void advanceTo(double newTime){
+		if (Double.isNaN(newTime)){
+			return;
+		}
+		if (newTime >= time){
+			while ((cursor < toggleTimes.length) && (toggleTimes[cursor] <= newTime)){
+				toggle(toggleEdges[cursor], toggleAdditions[cursor]);
+				cursor++;
+			}
+		} else {
+			while ((cursor > 0) && (toggleTimes[cursor - 1] > newTime)){
+				cursor--;
+				toggle(toggleEdges[cursor], !toggleAdditions[cursor]);
+			}
+		}
+		time = newTime;
+		for (int i = 0; i < touchedCount; i++){
+			int edge = touched[i];
+			touchedFlags[edge] = false;
+			if (active[edge] != activeBefore[edge]){
+				for (int j = 0; j < listeners.size(); j++){
+					if (active[edge]){
+						listeners.get(j).edgeAdded(edge, edges[edge]);
+					} else {
+						listeners.get(j).edgeRemoved(edge, edges[edge]);
+					}
+				}
+			}
+		}
+		touchedCount = 0;
+	}
+
+	/**
+	 * Adds or removes the edge, remembering its original presence in the graph
+	 * @param edge Index of the edge
+	 * @param add If true, the edge is added, otherwise it is removed
+	 */
+	private void toggle(int edge, boolean add){
+		if (!touchedFlags[edge]){
+			touchedFlags[edge] = true;
+			activeBefore[edge] = active[edge];
+			touched[touchedCount++] = edge;
+		}
+		if (active[edge] != add){
+			active[edge] = add;
+			activeCount += add ? 1 : -1;
+		}
+	}
+
+	/**
+	 * Moves the clock back before the first toggle, so that the graph is empty.
+	 * The listeners are not notified.
+	 */
+	public void reset(){
+		Arrays.fill(active, false);
+		activeCount = 0;
+		cursor = 0;
+		time = Double.NEGATIVE_INFINITY;
+	}
+
+	/**
+	 * @return The current time of the clock
+	 */
+	public double getTime() {
+		return time;
+	}
+
+	/**
+	 * @return Number of the edges, i.e. of all the membership relations
+	 */
+	public int getEdgeCount(){
+		return edges.length;
+	}
+
+	/**
+	 * @param edge Index of an edge
+	 * @return The membership relation represented by the edge
+	 */
+	public MembershipRelation getEdge(int edge){
+		return edges[edge];
+	}
+
+	/**
+	 * @param relation A membership relation
+	 * @return Index of the edge representing the relation, or -1 if there is no such edge
+	 */
+	public int getEdgeIndex(MembershipRelation relation){
+		Integer res = edgeIndices.get(relation);
+		return (res == null) ? -1 : res;
+	}
+
+	/**
+	 * @param edge Index of an edge
+	 * @return True if and only if the edge is present in the graph at the current time
+	 */
+	public boolean isActive(int edge){
+		return active[edge];
+	}
+
+	/**
+	 * @return Number of the edges present in the graph at the current time
+	 */
+	public int getActiveCount() {
+		return activeCount;
+	}
+
+	/**
+	 * @return Number of the toggles, i.e. of the additions and removals of edges
+	 */
+	public int getToggleCount(){
+		return toggleTimes.length;
+	}
+
+	/**
+	 * @param toggle Index of a toggle. The toggles are sorted by time.
+	 * @return The time of the toggle
+	 */
+	public double getToggleTime(int toggle){
+		return toggleTimes[toggle];
+	}
+
+	/**
+	 * @param toggle Index of a toggle. The toggles are sorted by time.
+	 * @return Index of the edge added or removed by the toggle
+	 */
+	public int getToggleEdge(int toggle){
+		return toggleEdges[toggle];
+	}
+
+	/**
+	 * @param toggle Index of a toggle. The toggles are sorted by time.
+	 * @return True if the toggle adds the edge, false if it removes it
+	 */
+	public boolean isToggleAddition(int toggle){
+		return toggleAdditions[toggle];
+	}
+}
@@ -0,0 +1,379 @@
+package cz.filipekt.jdcv.ensembles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Time series describing the ensembles, precomputed when the scene is imported.
+ * The simulation time is split into buckets of equal width. For each ensemble type,
+ * and for all the types combined, the following is stored for each bucket, in primitive arrays:
+ * the number of active membership relations and the number of active ensembles
+ * (coordinators having at least one member) at the start of the bucket, and the number of
+ * members joining and leaving the ensembles within the bucket.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class EnsembleStatistics {
+
+	/**
+	 * The time series of a single ensemble type
+	 */
+	private static class Series {
+
+		/**
+		 * Number of active membership relations at the start of each bucket
+		 */
+		private final int[] memberships;
+
+		/**
+		 * Number of active ensembles at the start of each bucket
+		 */
+		private final int[] ensembles;
+
+		/**
+		 * Number of members joining the ensembles within each bucket
+		 */
+		private final int[] joins;
+
+		/**
+		 * Number of members leaving the ensembles within each bucket
+		 */
+		private final int[] leaves;
+
+		/**
+		 * @param bucketCount Number of the buckets
+		 */
+		private Series(int bucketCount){
+			memberships = new int[bucketCount + 1];
+			ensembles = new int[bucketCount + 1];
+			joins = new int[bucketCount];
+			leaves = new int[bucketCount];
+		}
+	}
+
+	/**
+	 * Start of the first bucket, in simulation time
+	 */
+	private final double from;
+
+	/**
+	 * Width of each bucket, in simulation time
+	 */
+	private final double bucketWidth;
+
+	/**
+	 * Number of the buckets
+	 */
+	private final int bucketCount;
+
+	/**
+	 * Maps each ensemble type to its time series
+	 */
+	private final Map<String,Series> series = new LinkedHashMap<>();
+
+	/**
+	 * The time series of all the ensemble types combined
+	 */
+	private final Series total;
+
+	/**
+	 * @param intervals The ensemble membership relations as intervals of simulation time
+	 * @param from Start of the examined period of the simulation time
+	 * @param to End of the examined period of the simulation time
+	 * @param bucketCount Into how many buckets the examined period is split
+	 */
+	public EnsembleStatistics(MembershipIntervals intervals, double from, double to, int bucketCount) {
+		if (bucketCount < 1){
+			throw new IllegalArgumentException("There must be at least one bucket.");
+		}
+		this.from = from;
+		this.bucketCount = bucketCount;
+		double width = (to - from) / bucketCount;
+		this.bucketWidth = (width > 0) ? width : 1;
+		this.total = new Series(bucketCount);
+		Map<CoordinatorRelation,List<double[]>> coordinatorIntervals = new HashMap<>();
+		for (MembershipRelation relation : intervals.getRelations()){
+			Series ensembleSeries = getOrCreateSeries(relation.getEnsembleName());
+			CoordinatorRelation coordinator = new CoordinatorRelation(relation.getEnsembleName(),
+					relation.getCoordinator());
+			List<double[]> coordinatorList = coordinatorIntervals.get(coordinator);
+			if (coordinatorList == null){
+				coordinatorList = new ArrayList<>();
+				coordinatorIntervals.put(coordinator, coordinatorList);
+			}
+			for (int i = 0; i < intervals.getIntervalCount(relation); i++){
+				double start = intervals.getStart(relation, i);
+				double end = intervals.getEnd(relation, i);
+				addInterval(ensembleSeries.memberships, ensembleSeries.joins, ensembleSeries.leaves, start, end);
+				addInterval(total.memberships, total.joins, total.leaves, start, end);
+				coordinatorList.add(new double[]{start, end});
+			}
+		}
+		for (Map.Entry<CoordinatorRelation,List<double[]>> entry : coordinatorIntervals.entrySet()){
+			Series ensembleSeries = series.get(entry.getKey().getEnsembleName());
+			List<double[]> list = entry.getValue();
+			Collections.sort(list, new Comparator<double[]>() {
+
+				@Override
+				public int compare(double[] o1, double[] o2) {
+					return Double.compare(o1[0], o2[0]);
+				}
+			});
+			int i = 0;
+			while (i < list.size()){
+				double start = list.get(i)[0];
+				double end = list.get(i)[1];
+				i++;
+				while ((i < list.size()) && (list.get(i)[0] <= end)){
+					end = Math.max(end, list.get(i)[1]);
+					i++;
+				}
+				addInterval(ensembleSeries.ensembles, null, null, start, end);
+				addInterval(total.ensembles, null, null, start, end);
+			}
+		}
+		for (Series s : series.values()){
+			integrate(s);
+		}
+		integrate(total);
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type
+	 * @return The time series of the ensemble type, created if not present yet
+	 */
+	private Series getOrCreateSeries(String ensembleName){
+		Series res = series.get(ensembleName);
+		if (res == null){
+			res = new Series(bucketCount);
+			series.put(ensembleName, res);
+		}
+		return res;
+	}
+
+	/**
+	 * Records the interval [start, end) into the given arrays. The active counts are
+	 * recorded as differences, see {@link EnsembleStatistics#integrate(Series)}.
+	 * @param active The differences of the active counts
+	 * @param joins Numbers of intervals starting in each bucket, or null
+	 * @param leaves Numbers of intervals ending in each bucket, or null
+	 * @param start Start of the interval
+	 * @param end End of the interval, possibly positive infinity
+	 */
+	private void addInterval(int[] active, int[] joins, int[] leaves, double start, double end){
+		active[firstBucketStartingAtOrAfter(start)]++;
+		active[firstBucketStartingAtOrAfter(end)]--;
+		int startBucket = getBucketIndex(start);
+		if ((joins != null) && (startBucket >= 0)){
+			joins[startBucket]++;
+		}
+		int endBucket = getBucketIndex(end);
+		if ((leaves != null) && (endBucket >= 0)){
+			leaves[endBucket]++;
+		}
+	}
+
+	/**
+	 * @return Index of the first bucket which starts at or after the given time,
+	 * or {@link EnsembleStatistics#bucketCount} if there is no such bucket
+	 */
+	private int firstBucketStartingAtOrAfter(double time){
+		double index = Math.ceil((time - from) / bucketWidth);
+		if (index <= 0){
+			return 0;
+		} else if (index >= bucketCount){
+			return bucketCount;
+		} else {
+			return (int)index;
+		}
+	}
+
+	/**
+	 * Turns the differences of the active counts into the active counts
+	 */
+	private void integrate(Series s){
+		for (int i = 1; i < bucketCount; i++){
+			s.memberships[i] += s.memberships[i-1];
+			s.ensembles[i] += s.ensembles[i-1];
+		}
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @return The time series of the ensemble type
+	 */
+	private Series getSeries(String ensembleName){
+		if (ensembleName == null){
+			return total;
+		}
+		Series res = series.get(ensembleName);
+		if (res == null){
+			throw new IllegalArgumentException("Unknown ensemble type: " + ensembleName);
+		}
+		return res;
+	}
+
+	/**
+	 * @return Names of all the ensemble types, in the order of their first appearance
+	 */
+	public List<String> getEnsembleNames(){
+		return Collections.unmodifiableList(new ArrayList<>(series.keySet()));
+	}
+
+	/**
+	 * @return Number of the buckets
+	 */
+	public int getBucketCount() {
+		return bucketCount;
+	}
+
+	/**
+	 * @return Width of each bucket, in simulation time
+	 */
+	public double getBucketWidth() {
+		return bucketWidth;
+	}
+
+	/**
+	 * @param bucket Index of a bucket
+	 * @return Start of the bucket, in simulation time
+	 */
+	public double getBucketStart(int bucket){
+		return from + (bucket * bucketWidth);
+	}
+
+	/**
+	 * @param time A point in the simulation time
+	 * @return Index of the bucket containing the given time, or -1 if it lies outside of all the buckets
+	 */
+	public int getBucketIndex(double time){
+		double index = Math.floor((time - from) / bucketWidth);
+		if ((index < 0) || (index >= bucketCount)){
+			return -1;
+		} else {
+			return (int)index;
+		}
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @param bucket Index of a bucket
+	 * @return Number of the active membership relations at the start of the bucket
+	 */
+	public int getActiveMemberships(String ensembleName, int bucket){
+		return getSeries(ensembleName).memberships[bucket];
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @param bucket Index of a bucket
+	 * @return Number of the active ensembles, i.e. coordinators having at least
+	 * one member, at the start of the bucket
+	 */
+	public int getActiveEnsembles(String ensembleName, int bucket){
+		return getSeries(ensembleName).ensembles[bucket];
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @param bucket Index of a bucket
+	 * @return Average number of members per active ensemble at the start of the bucket
+	 */
+	public double getMembersPerCoordinator(String ensembleName, int bucket){
+		Series s = getSeries(ensembleName);
+		if (s.ensembles[bucket] == 0){
+			return 0;
+		} else {
+			return s.memberships[bucket] / (double)s.ensembles[bucket];
+		}
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @param bucket Index of a bucket
+	 * @return Number of members joining the ensembles within the bucket
+	 */
+	public int getJoins(String ensembleName, int bucket){
+		return getSeries(ensembleName).joins[bucket];
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @param bucket Index of a bucket
+	 * @return Number of members leaving the ensembles within the bucket
+	 */
+	public int getLeaves(String ensembleName, int bucket){
+		return getSeries(ensembleName).leaves[bucket];
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @return Copy of the numbers of the active membership relations, one item per bucket
+	 */
+	public int[] getActiveMembershipsSeries(String ensembleName){
+		return Arrays.copyOf(getSeries(ensembleName).memberships, bucketCount);
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @return Copy of the numbers of the active ensembles, one item per bucket
+	 */
+	public int[] getActiveEnsemblesSeries(String ensembleName){
+		return Arrays.copyOf(getSeries(ensembleName).ensembles, bucketCount);
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @return Copy of the numbers of the joining members, one item per bucket
+	 */
+	public int[] getJoinsSeries(String ensembleName){
+		return getSeries(ensembleName).joins.clone();
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @return Copy of the numbers of the leaving members, one item per bucket
+	 */
+	public int[] getLeavesSeries(String ensembleName){
+		return getSeries(ensembleName).leaves.clone();
+	}
+
+	/**
+	 * @param ensembleName Name of an ensemble type, or null for all the types combined
+	 * @return The largest value among all the time series of the ensemble type
+	 */
+	public int getMaxValue(String ensembleName){
+		Series s = getSeries(ensembleName);
+		int res = 0;
+		for (int i = 0; i < bucketCount; i++){
+			res = Math.max(res, Math.max(Math.max(s.memberships[i], s.ensembles[i]),
+					Math.max(s.joins[i], s.leaves[i])));
+		}
+		return res;
+	}
+
+	/**
+	 * @return Summary of the ensemble types and their peak numbers of active memberships
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Buckets: ").append(bucketCount).append(" x ").append(bucketWidth).append("\n");
+		for (String name : series.keySet()){
+			int peak = 0;
+			int joins = 0;
+			for (int i = 0; i < bucketCount; i++){
+				peak = Math.max(peak, series.get(name).memberships[i]);
+				joins += series.get(name).joins[i];
+			}
+			sb.append(name).append(": peak memberships=").append(peak).append(", joins=").append(joins).append("\n");
+		}
+		return sb.toString();
+	}
+}
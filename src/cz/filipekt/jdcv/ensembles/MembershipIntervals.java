@@ -0,0 +1,229 @@
+package cz.filipekt.jdcv.ensembles;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import cz.filipekt.jdcv.events.EnsembleEvent;
+
+/**
+ * Holds the ensemble membership relations as intervals of simulation time.
+ * For each membership relation, the intervals [join, leave) in which the relation
+ * holds are stored in sorted primitive arrays, so that the question whether the
+ * relation holds at a given time is answered in O(log n).
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class MembershipIntervals {
+
+	/**
+	 * The intervals of a single membership relation. They are disjoint and sorted.
+	 */
+	private static class Intervals {
+
+		/**
+		 * Times at which the relation starts to hold
+		 */
+		private double[] starts = new double[4];
+
+		/**
+		 * Times at which the relation ceases to hold.
+		 * If it holds until the end of the simulation, the value is positive infinity.
+		 */
+		private double[] ends = new double[4];
+
+		/**
+		 * Number of the intervals
+		 */
+		private int size = 0;
+
+		/**
+		 * Start of the interval which has not been closed yet, or NaN
+		 */
+		private double openStart = Double.NaN;
+
+		/**
+		 * Appends the interval [start, end) after the existing intervals
+		 */
+		private void add(double start, double end){
+			if (size == starts.length){
+				starts = Arrays.copyOf(starts, size * 2);
+				ends = Arrays.copyOf(ends, size * 2);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+		}
+
+		/**
+		 * @param time A point in the simulation time
+		 * @return Index of the last interval starting at or before the given time, or -1
+		 */
+		private int find(double time){
+			int low = 0;
+			int high = size - 1;
+			while (low <= high){
+				int mid = (low + high) >>> 1;
+				if (starts[mid] <= time){
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			return high;
+		}
+	}
+
+	/**
+	 * Maps each membership relation to the intervals in which it holds
+	 */
+	private final Map<MembershipRelation,Intervals> intervals = new LinkedHashMap<>();
+
+	/**
+	 * The time of the last ensemble event
+	 */
+	private double lastEventTime = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * @param events The ensemble events as parsed from the ensemble event log file.
+	 * The order of events with equal times is preserved.
+	 */
+	public MembershipIntervals(List<EnsembleEvent> events) {
+		List<EnsembleEvent> sorted = new ArrayList<>(events);
+		Collections.sort(sorted, new Comparator<EnsembleEvent>() {
+
+			@Override
+			public int compare(EnsembleEvent e1, EnsembleEvent e2) {
+				return Double.compare(e1.getTime(), e2.getTime());
+			}
+		});
+		for (EnsembleEvent event : sorted){
+			MembershipRelation relation = new MembershipRelation(event.getEnsemble(),
+					event.getCoordinator(), event.getMember());
+			Intervals relationIntervals = intervals.get(relation);
+			if (relationIntervals == null){
+				relationIntervals = new Intervals();
+				intervals.put(relation, relationIntervals);
+			}
+			double time = event.getTime();
+			boolean open = !Double.isNaN(relationIntervals.openStart);
+			if (event.getMembership() && !open){
+				relationIntervals.openStart = time;
+			} else if (!event.getMembership() && open){
+				if (time > relationIntervals.openStart){
+					relationIntervals.add(relationIntervals.openStart, time);
+				}
+				relationIntervals.openStart = Double.NaN;
+			}
+			lastEventTime = Math.max(lastEventTime, time);
+		}
+		for (Intervals relationIntervals : intervals.values()){
+			if (!Double.isNaN(relationIntervals.openStart)){
+				relationIntervals.add(relationIntervals.openStart, Double.POSITIVE_INFINITY);
+				relationIntervals.openStart = Double.NaN;
+			}
+		}
+	}
+
+	/**
+	 * @return All the membership relations that appear in the ensemble events,
+	 * in the order of their first appearance
+	 */
+	public Set<MembershipRelation> getRelations(){
+		return Collections.unmodifiableSet(intervals.keySet());
+	}
+
+	/**
+	 * @return The time of the last ensemble event, or negative infinity if there are no events
+	 */
+	public double getLastEventTime() {
+		return lastEventTime;
+	}
+
+	/**
+	 * @param relation A membership relation
+	 * @param time A point in the simulation time
+	 * @return True if and only if the relation holds at the given time
+	 */
+	public boolean isActive(MembershipRelation relation, double time){
+		Intervals relationIntervals = intervals.get(relation);
+		if (relationIntervals == null){
+			return false;
+		}
+		int index = relationIntervals.find(time);
+		return (index >= 0) && (time < relationIntervals.ends[index]);
+	}
+
+	/**
+	 * @param time A point in the simulation time
+	 * @return The membership relations which hold at the given time
+	 */
+	public List<MembershipRelation> getActiveAt(double time){
+		List<MembershipRelation> res = new ArrayList<>();
+		for (Map.Entry<MembershipRelation,Intervals> entry : intervals.entrySet()){
+			Intervals relationIntervals = entry.getValue();
+			int index = relationIntervals.find(time);
+			if ((index >= 0) && (time < relationIntervals.ends[index])){
+				res.add(entry.getKey());
+			}
+		}
+		return res;
+	}
+
+	/**
+	 * @param relation A membership relation
+	 * @return Number of the intervals in which the relation holds
+	 */
+	public int getIntervalCount(MembershipRelation relation){
+		Intervals relationIntervals = intervals.get(relation);
+		return (relationIntervals == null) ? 0 : relationIntervals.size;
+	}
+
+	/**
+	 * @param relation A membership relation
+	 * @param index Index of the interval, see {@link MembershipIntervals#getIntervalCount(MembershipRelation)}
+	 * @return The time at which the relation starts to hold
+	 */
+	public double getStart(MembershipRelation relation, int index){
+		return intervals.get(relation).starts[index];
+	}
+
+	/**
+	 * @param relation A membership relation
+	 * @param index Index of the interval, see {@link MembershipIntervals#getIntervalCount(MembershipRelation)}
+	 * @return The time at which the relation ceases to hold, or positive infinity
+	 */
+	public double getEnd(MembershipRelation relation, int index){
+		return intervals.get(relation).ends[index];
+	}
+
+	/**
+	 * @param relation A membership relation
+	 * @param from Start of the examined period of the simulation time
+	 * @param to End of the examined period of the simulation time
+	 * @return For how long the relation holds within the examined period
+	 */
+	public double getDuration(MembershipRelation relation, double from, double to){
+		Intervals relationIntervals = intervals.get(relation);
+		if (relationIntervals == null){
+			return 0;
+		}
+		double res = 0;
+		for (int i = Math.max(0, relationIntervals.find(from)); i < relationIntervals.size; i++){
+			double start = Math.max(from, relationIntervals.starts[i]);
+			double end = Math.min(to, relationIntervals.ends[i]);
+			if (relationIntervals.starts[i] >= to){
+				break;
+			}
+			if (end > start){
+				res += end - start;
+			}
+		}
+		return res;
+	}
+}
@@ -78,4 +78,26 @@ public class MatsimToVisualCoordinates extends PointTransformer {
 		y += margin;
 		return y;
 	}
+	
+	/**
+	 * @param x An x-coordinate used in the map visualization, before zooming
+	 * @return The x-coordinate converted back to the value used in the MATSIM map
+	 */
+	public double inverseX(double x) {
+		x -= margin;
+		x /= widthFactor;
+		x += minx;
+		return x;
+	}
+	
+	/**
+	 * @param y A y-coordinate used in the map visualization, before zooming
+	 * @return The y-coordinate converted back to the value used in the MATSIM map
+	 */
+	public double inverseY(double y) {
+		y -= margin;
+		y /= heightFactor;
+		y += miny;
+		return y;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,190 @@
+package cz.filipekt.jdcv.gui_logic;
+
+import java.io.File;
+
+import javafx.collections.FXCollections;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.ActionEvent;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
+import javafx.stage.FileChooser.ExtensionFilter;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import javafx.stage.WindowEvent;
+import cz.filipekt.jdcv.Visualizer;
+import cz.filipekt.jdcv.recording.DeltaConversion;
+import cz.filipekt.jdcv.recording.DeltaFrameOutput;
+import cz.filipekt.jdcv.recording.RecordingFormat;
+import cz.filipekt.jdcv.util.Dialog;
+
+/**
+ * Listener for the {@link Event} that user clicks the "convert recorded changes" menu item.
+ * Asks for a file recorded in the {@link RecordingFormat#CHANGED_TILES} format, the target
+ * format and the target directory, then converts the file using {@link DeltaConversion}.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class DeltaConversionHandler implements EventHandler<Event>{
+
+	/**
+	 * Context in which this handler is called
+	 */
+	private final Visualizer visualizer;
+
+	/**
+	 * Quality of the JPEG compression offered by default
+	 */
+	private final String defaultQuality = "0.85";
+
+	/**
+	 * @param visualizer Context in which this handler is called
+	 */
+	public DeltaConversionHandler(Visualizer visualizer) {
+		this.visualizer = visualizer;
+	}
+
+	/**
+	 * Called whenever the user clicks the "convert recorded changes" menu item.
+	 * Asks for the file to be converted, then shows the window where the target format is specified.
+	 */
+	@Override
+	public void handle(Event arg0) {
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle("Select the recorded changes");
+		fileChooser.getExtensionFilters().add(new ExtensionFilter("Recorded changes", 
+				"*." + DeltaFrameOutput.extension));
+		final File source = fileChooser.showOpenDialog(visualizer.getStage());
+		if (source == null){
+			return;
+		}
+		final Stage settingsWindow = new Stage();
+		settingsWindow.initOwner(visualizer.getStage());
+		settingsWindow.initModality(Modality.WINDOW_MODAL);
+		settingsWindow.setTitle("Convert Recorded Changes");
+		final ChoiceBox<RecordingFormat> formatBox = new ChoiceBox<>(FXCollections.observableArrayList(
+				RecordingFormat.PNG_IMAGES, RecordingFormat.MJPEG_VIDEO));
+		formatBox.setValue(RecordingFormat.MJPEG_VIDEO);
+		final TextField qualityField = new TextField(defaultQuality);
+		qualityField.disableProperty().bind(formatBox.valueProperty().isNotEqualTo(RecordingFormat.MJPEG_VIDEO));
+		Button convertButton = new Button("Convert");
+		convertButton.setDefaultButton(true);
+		convertButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				float quality;
+				try {
+					quality = Float.parseFloat(qualityField.getText());
+				} catch (NumberFormatException ex) {
+					Dialog.show(Dialog.Type.ERROR, "The quality must be a number.");
+					return;
+				}
+				if ((quality < 0) || (quality > 1)){
+					Dialog.show(Dialog.Type.ERROR, "The quality must be between 0 and 1.");
+					return;
+				}
+				DirectoryChooser dirChooser = new DirectoryChooser();
+				dirChooser.setTitle("Select a folder");
+				File dir = dirChooser.showDialog(settingsWindow);
+				if (dir != null){
+					settingsWindow.close();
+					String name = source.getName();
+					int dot = name.lastIndexOf('.');
+					if (dot > 0){
+						name = name.substring(0, dot);
+					}
+					convert(new DeltaConversion(source, formatBox.getValue(), dir, name, quality), dir);
+				}
+			}
+		});
+		Button cancelButton = new Button("Cancel");
+		cancelButton.setCancelButton(true);
+		cancelButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				settingsWindow.close();
+			}
+		});
+		GridPane grid = new GridPane();
+		grid.setHgap(10);
+		grid.setVgap(10);
+		grid.setPadding(new Insets(10));
+		grid.add(new Label("Format:"), 0, 0);
+		grid.add(formatBox, 1, 0);
+		grid.add(new Label("Quality (0 - 1):"), 0, 1);
+		grid.add(qualityField, 1, 1);
+		HBox buttons = new HBox(10, convertButton, cancelButton);
+		grid.add(buttons, 1, 2);
+		settingsWindow.setScene(new Scene(grid));
+		settingsWindow.show();
+	}
+
+	/**
+	 * Runs the conversion in a new separate thread, depicting the progress in a small
+	 * window which also allows to cancel the conversion
+	 * @param conversion The conversion to be run
+	 * @param dir Directory to which the result is stored
+	 */
+	private void convert(final DeltaConversion conversion, final File dir){
+		final ProgressBar progressBar = new ProgressBar();
+		progressBar.setPrefWidth(200);
+		progressBar.progressProperty().bind(conversion.progressProperty());
+		final Stage progressWindow = new Stage();
+		progressWindow.initOwner(visualizer.getStage());
+		progressWindow.initModality(Modality.WINDOW_MODAL);
+		progressWindow.initStyle(StageStyle.UTILITY);
+		progressWindow.setTitle("Converting");
+		progressWindow.setOnCloseRequest(new EventHandler<WindowEvent>() {
+
+			@Override
+			public void handle(WindowEvent event) {
+				event.consume();
+			}
+		});
+		final Button cancelButton = new Button("Cancel");
+		cancelButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				cancelButton.setDisable(true);
+				conversion.cancel();
+			}
+		});
+		HBox pane = new HBox(10, progressBar, cancelButton);
+		pane.setPadding(new Insets(10));
+		progressWindow.setScene(new Scene(pane));
+		progressWindow.show();
+		EventHandler<WorkerStateEvent> windowCloser = new EventHandler<WorkerStateEvent>() {
+
+			@Override
+			public void handle(WorkerStateEvent event) {
+				progressWindow.close();
+				if (conversion.getException() != null){
+					Dialog.show(Dialog.Type.ERROR, "The recorded changes could not be converted.",
+							conversion.getException().getMessage());
+				} else if (!conversion.isCancelled()){
+					Dialog.show(Dialog.Type.SUCCESS, "The frames have been saved to", dir.getAbsolutePath());
+				}
+			}
+		};
+		conversion.setOnSucceeded(windowCloser);
+		conversion.setOnFailed(windowCloser);
+		conversion.setOnCancelled(windowCloser);
+		Thread thread = new Thread(conversion);
+		thread.setDaemon(true);
+		thread.start();
+	}
+}
@@ -0,0 +1,232 @@
+package cz.filipekt.jdcv.gui_logic;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.ActionEvent;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.StageStyle;
+import javafx.stage.WindowEvent;
+import cz.filipekt.jdcv.MapScene;
+import cz.filipekt.jdcv.Visualizer;
+import cz.filipekt.jdcv.recording.FrameOutput;
+import cz.filipekt.jdcv.recording.FrameRecorder;
+import cz.filipekt.jdcv.recording.OfflineRenderer;
+import cz.filipekt.jdcv.recording.RecordingFormat;
+import cz.filipekt.jdcv.util.Dialog;
+
+/**
+ * Listener for the {@link Event} that user clicks the "export video" button.
+ * Asks for the frame rate, the resolution, the output format and the target directory, then renders
+ * the whole visualization frame by frame using {@link OfflineRenderer}.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class OfflineExportHandler implements EventHandler<Event>{
+
+	/**
+	 * Context in which this handler is called
+	 */
+	private final Visualizer visualizer;
+
+	/**
+	 * Frame rate offered by default
+	 */
+	private final String defaultFramesPerSecond = "25";
+
+	/**
+	 * Quality of the JPEG compression offered by default
+	 */
+	private final String defaultQuality = "0.85";
+
+
+	/**
+	 * @param visualizer Context in which this handler is called
+	 */
+	public OfflineExportHandler(Visualizer visualizer) {
+		this.visualizer = visualizer;
+	}
+
+	/**
+	 * Called whenever the user clicks the "export video" button.
+	 * Shows the window where the export parameters are specified. The time line is left
+	 * as it is, the {@link OfflineRenderer} pauses it only when the rendering starts
+	 * and resumes it afterwards if it has been running.
+	 */
+	@Override
+	public void handle(Event arg0) {
+		final MapScene scene = visualizer.getScene();
+		if ((scene == null) || scene.isRecordingInProgress()){
+			return;
+		}
+		final Stage settingsWindow = new Stage();
+		settingsWindow.initOwner(visualizer.getStage());
+		settingsWindow.initModality(Modality.WINDOW_MODAL);
+		settingsWindow.setTitle("Export Video");
+		final TextField fpsField = new TextField(defaultFramesPerSecond);
+		final TextField widthField = new TextField(Long.toString(
+				Math.round(scene.getOriginalMapWidth() * scene.getZoom())));
+		final ChoiceBox<RecordingFormat> formatBox = new ChoiceBox<>(
+				FXCollections.observableArrayList(RecordingFormat.values()));
+		formatBox.setValue(RecordingFormat.PNG_IMAGES);
+		final TextField qualityField = new TextField(defaultQuality);
+		qualityField.disableProperty().bind(formatBox.valueProperty().isNotEqualTo(RecordingFormat.MJPEG_VIDEO));
+		Button exportButton = new Button("Export");
+		exportButton.setDefaultButton(true);
+		exportButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				double fps;
+				int width;
+				float quality;
+				try {
+					fps = Double.parseDouble(fpsField.getText());
+					width = Integer.parseInt(widthField.getText());
+					quality = Float.parseFloat(qualityField.getText());
+				} catch (NumberFormatException ex) {
+					Dialog.show(Dialog.Type.ERROR, "The frame rate, the width and the quality must be numbers.");
+					return;
+				}
+				if ((fps <= 0) || (width <= 0)){
+					Dialog.show(Dialog.Type.ERROR, "The frame rate and the width must be positive.");
+					return;
+				}
+				if ((quality < 0) || (quality > 1)){
+					Dialog.show(Dialog.Type.ERROR, "The quality must be between 0 and 1.");
+					return;
+				}
+				DirectoryChooser dirChooser = new DirectoryChooser();
+				dirChooser.setTitle("Select a folder");
+				File dir = dirChooser.showDialog(settingsWindow);
+				if (dir != null){
+					DateFormat df = new SimpleDateFormat("yyyy-MMM-dd-HH-mm-ss");
+					FrameOutput output;
+					try {
+						output = formatBox.getValue().createOutput(dir, df.format(new Date()), fps, quality);
+					} catch (IOException ex) {
+						Dialog.show(Dialog.Type.ERROR, "The output file could not be created.", ex.getMessage());
+						return;
+					}
+					settingsWindow.close();
+					export(scene, dir, output, fps, width);
+				}
+			}
+		});
+		Button cancelButton = new Button("Cancel");
+		cancelButton.setCancelButton(true);
+		cancelButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				settingsWindow.close();
+			}
+		});
+		GridPane grid = new GridPane();
+		grid.setHgap(10);
+		grid.setVgap(10);
+		grid.setPadding(new Insets(10));
+		grid.add(new Label("Frames per second:"), 0, 0);
+		grid.add(fpsField, 1, 0);
+		grid.add(new Label("Width (pixels):"), 0, 1);
+		grid.add(widthField, 1, 1);
+		grid.add(new Label("Format:"), 0, 2);
+		grid.add(formatBox, 1, 2);
+		grid.add(new Label("Quality (0 - 1):"), 0, 3);
+		grid.add(qualityField, 1, 3);
+		HBox buttons = new HBox(10, exportButton, cancelButton);
+		grid.add(buttons, 1, 4);
+		settingsWindow.setScene(new Scene(grid));
+		settingsWindow.show();
+	}
+
+	/**
+	 * Renders the frames of the given scene into the given directory, depicting the progress
+	 * in a small window which also allows to cancel the export
+	 * @param scene The scene to be exported
+	 * @param dir Directory to which the frames will be stored
+	 * @param output Receives the encoded frames
+	 * @param fps Number of the frames per one second of the time line
+	 * @param width Width of the frames, in pixels
+	 */
+	private void export(MapScene scene, final File dir, FrameOutput output, double fps, int width){
+		final FrameRecorder recorder = new FrameRecorder(output);
+		final OfflineRenderer renderer = new OfflineRenderer(scene, recorder, fps, width);
+		final ProgressBar progressBar = new ProgressBar();
+		progressBar.setPrefWidth(200);
+		progressBar.progressProperty().bind(renderer.progressProperty());
+		final Stage progressWindow = new Stage();
+		progressWindow.initOwner(visualizer.getStage());
+		progressWindow.initModality(Modality.WINDOW_MODAL);
+		progressWindow.initStyle(StageStyle.UTILITY);
+		progressWindow.setTitle("Exporting " + renderer.getFrameCount() + " frames");
+		progressWindow.setOnCloseRequest(new EventHandler<WindowEvent>() {
+
+			@Override
+			public void handle(WindowEvent event) {
+				event.consume();
+			}
+		});
+		final Button cancelButton = new Button("Cancel");
+		cancelButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				cancelButton.setDisable(true);
+				renderer.cancel();
+			}
+		});
+		HBox pane = new HBox(10, progressBar, cancelButton);
+		pane.setPadding(new Insets(10));
+		progressWindow.setScene(new Scene(pane));
+		progressWindow.show();
+		renderer.start(new Runnable() {
+
+			@Override
+			public void run() {
+				cancelButton.setDisable(true);
+				final Task<Void> task = recorder.finish();
+				progressBar.progressProperty().unbind();
+				progressBar.progressProperty().bind(task.progressProperty());
+				EventHandler<WorkerStateEvent> windowCloser = new EventHandler<WorkerStateEvent>() {
+
+					@Override
+					public void handle(WorkerStateEvent event) {
+						progressWindow.close();
+						if (task.getException() == null){
+							Dialog.show(Dialog.Type.SUCCESS, "The frames have been saved to",
+									dir.getAbsolutePath());
+						} else {
+							Dialog.show(Dialog.Type.ERROR, "The frames could not be saved.",
+									task.getException().getMessage());
+						}
+					}
+				};
+				task.setOnSucceeded(windowCloser);
+				task.setOnFailed(windowCloser);
+				Thread thread = new Thread(task);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		});
+	}
+}
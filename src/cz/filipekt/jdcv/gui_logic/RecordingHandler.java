@@ -84,7 +84,6 @@ public class RecordingHandler implements EventHandler<Event>{
 	public void stopRecording(MapScene scene){
 		if ((scene != null) && (scene.isRecordingInProgress())){			
 			scene.setRecordingInProgress(false);
-			scene.flushRecordedFrames(Integer.MAX_VALUE);
 			recordButton.setText("Record");
 			recordButton.setGraphic(recordStartImage);			
 		}
@@ -108,13 +107,16 @@ public class RecordingHandler implements EventHandler<Event>{
 			File dir = dirChooser.showDialog(stage);
 			if (dir != null){
 				scene.setRecordingDirectory(dir);
+				scene.setRecordingFormat(visualizer.getRecordingFormat());
 				scene.setRecordingInProgress(true);
-				recordButton.setText("Stop");
-				recordButton.setGraphic(recordStopImage);
-				if (scene.getZoom() != 1.0){
-					scene.setZoom(1);
-					Dialog.show(Type.INFO, "The zoom has been restored.", 
-							"Recording only allowed when zoom is not in effect.");
+				if (scene.isRecordingInProgress()){
+					recordButton.setText("Stop");
+					recordButton.setGraphic(recordStopImage);
+					if (scene.getZoom() != 1.0){
+						scene.setZoom(1);
+						Dialog.show(Type.INFO, "The zoom has been restored.", 
+								"Recording only allowed when zoom is not in effect.");
+					}
 				}
 			}
 			if (paused){
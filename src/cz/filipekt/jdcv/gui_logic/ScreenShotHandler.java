@@ -1,38 +1,52 @@
 package cz.filipekt.jdcv.gui_logic;
 
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 
 import javafx.animation.Animation.Status;
 import javafx.animation.Timeline;
-import javafx.embed.swing.SwingFXUtils;
+import javafx.event.ActionEvent;
 import javafx.event.Event;
 import javafx.event.EventHandler;
-import javafx.scene.image.WritableImage;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
 import javafx.stage.FileChooser;
 import javafx.stage.FileChooser.ExtensionFilter;
+import javafx.stage.Modality;
 import javafx.stage.Stage;
-
-import javax.imageio.ImageIO;
-
+import javafx.stage.StageStyle;
+import javafx.stage.WindowEvent;
 import cz.filipekt.jdcv.MapScene;
 import cz.filipekt.jdcv.Visualizer;
+import cz.filipekt.jdcv.recording.TiledSnapshot;
 import cz.filipekt.jdcv.util.Dialog;
 
 /**
  * Listener for the {@link Event} that user clicks the "screenshot" button.
  * Makes sure that the screenshot is made and saved correctly.
- * 
+ * The user chooses the scale of the screenshot, which is then rendered in tiles
+ * by {@link TiledSnapshot}, so that it may be much larger than the screen.
+ *
  * @author Tomas Filipek <tom.filipek@seznam.cz>
  */
 public class ScreenShotHandler implements EventHandler<Event>{
-	
+
 	/**
 	 * Context in which this handler is called
 	 */
 	private final Visualizer visualizer;
 
+	/**
+	 * Scale offered by default, i.e. the original size of the map
+	 */
+	private final String defaultScale = "1";
+
 	/**
 	 * @param visualizer Context in which this handler is called
 	 */
@@ -42,41 +56,166 @@ public class ScreenShotHandler implements EventHandler<Event>{
 
 	/**
 	 * Called whenever the user clicks the "screenshot" button.
-	 * Makes sure that the screenshot is made and saved correctly.
+	 * Shows the window where the scale of the screenshot is specified.
 	 */
 	@Override
 	public void handle(Event arg0) {
-		MapScene scene = visualizer.getScene();		
+		final MapScene scene = visualizer.getScene();
 		if (scene != null){
-			Timeline timeLine = scene.getTimeLine();
-			boolean paused = false;
-			if (timeLine.getStatus() == Status.RUNNING){
+			final Timeline timeLine = scene.getTimeLine();
+			final boolean paused = timeLine.getStatus() == Status.RUNNING;
+			if (paused){
 				timeLine.pause();
-				paused = true;
 			}
-			WritableImage image = scene.getSnap();
-			FileChooser fileChooser = new FileChooser();
-			fileChooser.setTitle("Specify a PNG file");
-			FileChooser.ExtensionFilter filter = new ExtensionFilter("Just PNG files", "png");
-			fileChooser.getExtensionFilters().add(filter);
-			Stage stage = visualizer.getStage();
-			File file = fileChooser.showSaveDialog(stage);
-			if (file != null){
-				BufferedImage bim = SwingFXUtils.fromFXImage(image, null);
-				boolean success = false;
-				try {
-					success = ImageIO.write(bim, "png", file);															
-				} catch (IOException ex) {}
-				if (success){
-					Dialog.show(Dialog.Type.SUCCESS, "The snapshot has been saved to", 
+			final Stage settingsWindow = new Stage();
+			settingsWindow.initOwner(visualizer.getStage());
+			settingsWindow.initModality(Modality.WINDOW_MODAL);
+			settingsWindow.setTitle("Snapshot");
+			final TextField scaleField = new TextField(defaultScale);
+			final Label sizeLabel = new Label();
+			updateSizeLabel(scene, scaleField.getText(), sizeLabel);
+			scaleField.setOnKeyReleased(new EventHandler<Event>() {
+
+				@Override
+				public void handle(Event event) {
+					updateSizeLabel(scene, scaleField.getText(), sizeLabel);
+				}
+			});
+			Button saveButton = new Button("Save");
+			saveButton.setDefaultButton(true);
+			saveButton.setOnAction(new EventHandler<ActionEvent>() {
+
+				@Override
+				public void handle(ActionEvent event) {
+					TiledSnapshot snapshot;
+					try {
+						snapshot = new TiledSnapshot(scene, Double.parseDouble(scaleField.getText()));
+					} catch (NumberFormatException ex) {
+						Dialog.show(Dialog.Type.ERROR, "The scale must be a number.");
+						return;
+					} catch (IllegalArgumentException ex) {
+						Dialog.show(Dialog.Type.ERROR, ex.getMessage());
+						return;
+					}
+					FileChooser fileChooser = new FileChooser();
+					fileChooser.setTitle("Specify a PNG file");
+					FileChooser.ExtensionFilter filter = new ExtensionFilter("Just PNG files", "png");
+					fileChooser.getExtensionFilters().add(filter);
+					File file = fileChooser.showSaveDialog(settingsWindow);
+					if (file != null){
+						settingsWindow.close();
+						save(snapshot, file, timeLine, paused);
+					}
+				}
+			});
+			Button cancelButton = new Button("Cancel");
+			cancelButton.setCancelButton(true);
+			cancelButton.setOnAction(new EventHandler<ActionEvent>() {
+
+				@Override
+				public void handle(ActionEvent event) {
+					settingsWindow.close();
+					if (paused){
+						timeLine.play();
+					}
+				}
+			});
+			GridPane grid = new GridPane();
+			grid.setHgap(10);
+			grid.setVgap(10);
+			grid.setPadding(new Insets(10));
+			grid.add(new Label("Scale:"), 0, 0);
+			grid.add(scaleField, 1, 0);
+			grid.add(sizeLabel, 1, 1);
+			HBox buttons = new HBox(10, saveButton, cancelButton);
+			grid.add(buttons, 1, 2);
+			settingsWindow.setScene(new Scene(grid));
+			settingsWindow.show();
+		}
+	}
+
+	/**
+	 * Shows the size of the resulting image in the given label
+	 * @param scene The scene whose map is captured
+	 * @param scaleText The scale, as entered by the user
+	 * @param sizeLabel The size is shown in this label
+	 */
+	private void updateSizeLabel(MapScene scene, String scaleText, Label sizeLabel){
+		try {
+			double scale = Double.parseDouble(scaleText);
+			sizeLabel.setText(Math.round(scene.getOriginalMapWidth() * scale) + " x " +
+					Math.round(scene.getOriginalMapHeight() * scale) + " pixels");
+		} catch (NumberFormatException ex) {
+			sizeLabel.setText("");
+		}
+	}
+
+	/**
+	 * Renders the snapshot into the given file, depicting the progress in a small
+	 * window which also allows to cancel the rendering
+	 * @param snapshot Renders the snapshot
+	 * @param file The resulting PNG file
+	 * @param timeLine The time line of the captured scene
+	 * @param paused If true, the time line is played again when the snapshot is saved
+	 */
+	private void save(final TiledSnapshot snapshot, final File file, final Timeline timeLine,
+			final boolean paused){
+		final ProgressBar progressBar = new ProgressBar();
+		progressBar.setPrefWidth(200);
+		progressBar.progressProperty().bind(snapshot.progressProperty());
+		final Stage progressWindow = new Stage();
+		progressWindow.initOwner(visualizer.getStage());
+		progressWindow.initModality(Modality.WINDOW_MODAL);
+		progressWindow.initStyle(StageStyle.UTILITY);
+		progressWindow.setTitle("Saving " + snapshot.getWidth() + " x " + snapshot.getHeight() + " pixels");
+		progressWindow.setOnCloseRequest(new EventHandler<WindowEvent>() {
+
+			@Override
+			public void handle(WindowEvent event) {
+				event.consume();
+			}
+		});
+		final Button cancelButton = new Button("Cancel");
+		cancelButton.setOnAction(new EventHandler<ActionEvent>() {
+
+			@Override
+			public void handle(ActionEvent event) {
+				cancelButton.setDisable(true);
+				snapshot.cancel();
+			}
+		});
+		HBox pane = new HBox(10, progressBar, cancelButton);
+		pane.setPadding(new Insets(10));
+		progressWindow.setScene(new Scene(pane));
+		Runnable onFinished = new Runnable() {
+
+			@Override
+			public void run() {
+				progressWindow.close();
+				if (paused){
+					timeLine.play();
+				}
+				if (snapshot.isCancelled()){
+					return;
+				}
+				if (snapshot.getError() == null){
+					Dialog.show(Dialog.Type.SUCCESS, "The snapshot has been saved to",
 							file.getAbsoluteFile().toString());
 				} else {
-					Dialog.show(Dialog.Type.ERROR, "The snapshot could not be saved.");
+					Dialog.show(Dialog.Type.ERROR, "The snapshot could not be saved.",
+							snapshot.getError().getMessage());
 				}
 			}
+		};
+		try {
+			snapshot.start(file, onFinished);
+		} catch (IOException ex) {
+			Dialog.show(Dialog.Type.ERROR, "The snapshot could not be saved.", ex.getMessage());
 			if (paused){
 				timeLine.play();
 			}
+			return;
 		}
+		progressWindow.show();
 	}
-}
\ No newline at end of file
+}
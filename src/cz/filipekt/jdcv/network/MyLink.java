@@ -1,6 +1,5 @@
 package cz.filipekt.jdcv.network;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
@@ -35,9 +34,9 @@ public class MyLink {
 	/**
 	 * Defines the real length of the link.  It must be (of course) at least as long 
 	 * as the Euclidean distance between the from and to nodes.
-	 * Contains unsigned double values, thus the {@link BigDecimal} type.
+	 * {@link Double#NaN} if the length has not been specified.
 	 */
-	private final BigDecimal length;
+	private final double length;
 	
 	/**
 	 * The allowed maximum speed of the link
@@ -90,7 +89,7 @@ public class MyLink {
 	 * @param numberOfLanes The number of lanes of this link
 	 * @param modes List of transportation modes that are allowed on this link
 	 */
-	public MyLink(String id, MyNode from, MyNode to, BigDecimal length, double freespeed, 
+	public MyLink(String id, MyNode from, MyNode to, double length, double freespeed, 
 			double capacity, double numberOfLanes, String... modes) {
 		super();
 		this.id = id;
@@ -158,7 +157,7 @@ public class MyLink {
 	 * @return The real length of the link.
 	 * @see {@link MyLink#length}
 	 */
-	public BigDecimal getLength() {
+	public double getLength() {
 		return length;
 	}
 
@@ -1,6 +1,5 @@
 package cz.filipekt.jdcv.network;
 
-import java.math.BigDecimal;
 
 /**
  * Builder for {@link MyLink}.
@@ -27,9 +26,9 @@ public class MyLinkBuilder {
 	/**
 	 * Defines the real length of the link.  It must be (of course) at least as long 
 	 * as the Euclidean distance between the from and to nodes.
-	 * Contains unsigned double values, thus the {@link BigDecimal} type.
+	 * {@link Double#NaN} if the length has not been specified.
 	 */
-	private BigDecimal length;
+	private double length = Double.NaN;
 	
 	/**
 	 * The allowed maximum speed of the link
@@ -75,7 +74,7 @@ public class MyLinkBuilder {
 	/**
 	 * Setter for {@link MyLinkBuilder#length}
 	 */
-	public void setLength(BigDecimal length) {
+	public void setLength(double length) {
 		this.length = length;
 	}
 	
@@ -0,0 +1,268 @@
+package cz.filipekt.jdcv.network;
+
+import java.util.Map;
+
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.KdTree;
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.SegmentGrid;
+import cz.filipekt.jdcv.geometry.MatsimToVisualCoordinates;
+import javafx.geometry.Point2D;
+
+/**
+ * Spatial index of the network nodes and links, used to find them by their position,
+ * e.g. to snap a clicked point or a raw GPS position to the network.
+ * The nodes are kept in a {@link KdTree}, the links in a {@link SegmentGrid}.
+ * A link is indexed along the path of its corridor if the path is given in the 
+ * coordinates of the visualization output, otherwise as the straight line between its nodes.
+ * All the coordinates are the ones used in the MATSIM map, unless stated otherwise.
+ * The index is built when it is queried for the first time, so creating it is cheap.
+ * 
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class NetworkIndex {
+	
+	/**
+	 * The network nodes. Keys = node IDs, values = {@link MyNode} node representations.
+	 */
+	private final Map<String,MyNode> nodes;
+	
+	/**
+	 * The network links. Keys = link IDs, values = {@link MyLink} link representations.
+	 */
+	private final Map<String,MyLink> links;
+	
+	/**
+	 * IDs of the indexed nodes, in the order in which they are indexed. 
+	 * Null until the index is built.
+	 */
+	private String[] nodeIds;
+	
+	/**
+	 * IDs of the indexed links, in the order in which they are indexed.
+	 * Null until the index is built.
+	 */
+	private String[] linkIds;
+	
+	/**
+	 * The indexed nodes. Null until the index is built.
+	 */
+	private KdTree nodeTree;
+	
+	/**
+	 * The indexed links. Null until the index is built.
+	 */
+	private SegmentGrid linkGrid;
+	
+	/**
+	 * Converter between the coordinates used in the MATSIM map and the coordinates 
+	 * used in the visualization, or null if the visualization coordinates are unknown
+	 */
+	private final MatsimToVisualCoordinates matsimToVisual;
+
+	/**
+	 * @param nodes The network nodes. Keys = node IDs, values = {@link MyNode} node representations.
+	 * @param links The network links. Keys = link IDs, values = {@link MyLink} link representations.
+	 * @param matsimToVisual Converter between the coordinates used in the MATSIM map and the coordinates 
+	 * used in the visualization. If null, the links are always indexed as straight lines and
+	 * the queries in the visualization coordinates are not available.
+	 */
+	public NetworkIndex(Map<String,MyNode> nodes, Map<String,MyLink> links, 
+			MatsimToVisualCoordinates matsimToVisual) {
+		this.nodes = nodes;
+		this.links = links;
+		this.matsimToVisual = matsimToVisual;
+	}
+	
+	/**
+	 * Builds the index, unless it has already been built.
+	 */
+	private void build(){
+		if (nodeTree != null){
+			return;
+		}
+		String[] nodeIds = new String[nodes.size()];
+		double[] xs = new double[nodeIds.length];
+		double[] ys = new double[nodeIds.length];
+		int i = 0;
+		for (MyNode node : nodes.values()){
+			nodeIds[i] = node.getId();
+			xs[i] = node.getX();
+			ys[i] = node.getY();
+			i++;
+		}
+		KdTree nodeTree = new KdTree(xs, ys);
+		
+		String[] linkIds = new String[links.size()];
+		int pointsCount = 0;
+		for (MyLink link : links.values()){
+			pointsCount += isIndexedByPath(link) ? link.getPathPoints().size() : 2;
+		}
+		double[] coordinates = new double[2 * pointsCount];
+		int[] offsets = new int[linkIds.length + 1];
+		int point = 0;
+		i = 0;
+		for (MyLink link : links.values()){
+			linkIds[i] = link.getId();
+			if (isIndexedByPath(link)){
+				for (Point2D pathPoint : link.getPathPoints()){
+					coordinates[2 * point] = matsimToVisual.inverseX(pathPoint.getX());
+					coordinates[2 * point + 1] = matsimToVisual.inverseY(pathPoint.getY());
+					point++;
+				}
+			} else {
+				coordinates[2 * point] = link.getFrom().getX();
+				coordinates[2 * point + 1] = link.getFrom().getY();
+				coordinates[2 * point + 2] = link.getTo().getX();
+				coordinates[2 * point + 3] = link.getTo().getY();
+				point += 2;
+			}
+			i++;
+			offsets[i] = point;
+		}
+		this.nodeIds = nodeIds;
+		this.linkIds = linkIds;
+		this.linkGrid = new SegmentGrid(coordinates, offsets);
+		this.nodeTree = nodeTree;
+	}
+	
+	/**
+	 * @param link A network link
+	 * @return True if the link is indexed along the path of its corridor
+	 */
+	private boolean isIndexedByPath(MyLink link){
+		return (matsimToVisual != null) && link.isPathAbsolute() && !link.getPathPoints().isEmpty();
+	}
+	
+	/**
+	 * @param x The x-coordinate of a position
+	 * @param y The y-coordinate of a position
+	 * @return ID of the node nearest to the position, or null if there are no nodes
+	 */
+	public String getNearestNode(double x, double y){
+		build();
+		int node = nodeTree.getNearest(x, y);
+		return (node < 0) ? null : nodeIds[node];
+	}
+	
+	/**
+	 * @param x The x-coordinate of a position
+	 * @param y The y-coordinate of a position
+	 * @param count Number of the nodes to be found
+	 * @return IDs of the given number of the nodes nearest to the position, the nearest first
+	 */
+	public String[] getNearestNodes(double x, double y, int count){
+		build();
+		return toIds(nodeTree.getNearest(x, y, count), nodeIds);
+	}
+	
+	/**
+	 * @param minX The lowest x-coordinate of a rectangle
+	 * @param minY The lowest y-coordinate of a rectangle
+	 * @param maxX The highest x-coordinate of a rectangle
+	 * @param maxY The highest y-coordinate of a rectangle
+	 * @return IDs of the nodes in the rectangle, including its borders
+	 */
+	public String[] getNodesInRange(double minX, double minY, double maxX, double maxY){
+		build();
+		return toIds(nodeTree.getInRange(minX, minY, maxX, maxY), nodeIds);
+	}
+	
+	/**
+	 * @param x The x-coordinate of a position
+	 * @param y The y-coordinate of a position
+	 * @param radius The maximal distance from the position
+	 * @return IDs of the nodes within the distance from the position
+	 */
+	public String[] getNodesWithin(double x, double y, double radius){
+		build();
+		return toIds(nodeTree.getWithin(x, y, radius), nodeIds);
+	}
+	
+	/**
+	 * @param x The x-coordinate of a position
+	 * @param y The y-coordinate of a position
+	 * @return ID of the link nearest to the position, or null if there are no links
+	 */
+	public String getNearestLink(double x, double y){
+		build();
+		int link = linkGrid.getNearest(x, y);
+		return (link < 0) ? null : linkIds[link];
+	}
+	
+	/**
+	 * @param x The x-coordinate of a position
+	 * @param y The y-coordinate of a position
+	 * @param count Number of the links to be found
+	 * @return IDs of the given number of the links nearest to the position, the nearest first
+	 */
+	public String[] getNearestLinks(double x, double y, int count){
+		build();
+		return toIds(linkGrid.getNearest(x, y, count), linkIds);
+	}
+	
+	/**
+	 * @param minX The lowest x-coordinate of a rectangle
+	 * @param minY The lowest y-coordinate of a rectangle
+	 * @param maxX The highest x-coordinate of a rectangle
+	 * @param maxY The highest y-coordinate of a rectangle
+	 * @return IDs of the links passing through the rectangle, including its borders
+	 */
+	public String[] getLinksInRange(double minX, double minY, double maxX, double maxY){
+		build();
+		return toIds(linkGrid.getInRange(minX, minY, maxX, maxY), linkIds);
+	}
+	
+	/**
+	 * @param x The x-coordinate of a position
+	 * @param y The y-coordinate of a position
+	 * @param radius The maximal distance from the position
+	 * @return IDs of the links passing within the distance from the position
+	 */
+	public String[] getLinksWithin(double x, double y, double radius){
+		build();
+		return toIds(linkGrid.getWithin(x, y, radius), linkIds);
+	}
+	
+	/**
+	 * @param x The x-coordinate of a point in the visualization, before zooming
+	 * @param y The y-coordinate of a point in the visualization, before zooming
+	 * @return ID of the node nearest to the point, or null if there are no nodes
+	 * @throws IllegalStateException When the visualization coordinates are unknown
+	 */
+	public String getNearestNodeOnScreen(double x, double y){
+		checkVisualCoordinates();
+		return getNearestNode(matsimToVisual.inverseX(x), matsimToVisual.inverseY(y));
+	}
+	
+	/**
+	 * @param x The x-coordinate of a point in the visualization, before zooming
+	 * @param y The y-coordinate of a point in the visualization, before zooming
+	 * @return ID of the link nearest to the point, or null if there are no links
+	 * @throws IllegalStateException When the visualization coordinates are unknown
+	 */
+	public String getNearestLinkOnScreen(double x, double y){
+		checkVisualCoordinates();
+		return getNearestLink(matsimToVisual.inverseX(x), matsimToVisual.inverseY(y));
+	}
+	
+	/**
+	 * @throws IllegalStateException When the visualization coordinates are unknown
+	 */
+	private void checkVisualCoordinates(){
+		if (matsimToVisual == null){
+			throw new IllegalStateException("The coordinates of the visualization are not known.");
+		}
+	}
+	
+	/**
+	 * @param indices Indices of the indexed elements
+	 * @param ids IDs of all the indexed elements
+	 * @return IDs of the elements with the given indices
+	 */
+	private static String[] toIds(int[] indices, String[] ids){
+		String[] res = new String[indices.length];
+		for (int i = 0; i < indices.length; i++){
+			res[i] = ids[indices[i]];
+		}
+		return res;
+	}
+}
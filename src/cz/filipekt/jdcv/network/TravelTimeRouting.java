@@ -0,0 +1,277 @@
+package cz.filipekt.jdcv.network;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.Link;
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.Network;
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.NetworkSnapshot;
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.Node;
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.TimeDependentRouter;
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.TravelTimeProfiles;
+import cz.filipekt.jdcv.checkpoints.CheckPoint;
+import cz.filipekt.jdcv.checkpoints.CheckPointDatabase;
+
+/**
+ * Finds the fastest paths through the network for a given departure time, using the travel
+ * times of the links observed in the loaded event log. Each pair of the {@link CheckPoint.Type#LINK_ENTERED}
+ * and {@link CheckPoint.Type#LINK_LEFT} checkpoints of a person on the same link is one observed
+ * traversal of the link. The traversals are averaged in {@link TravelTimeProfiles} over the time
+ * buckets of the given width, the links not traversed in a bucket are assumed to be passed at
+ * their free speed. The queries are answered by the {@link TimeDependentRouter}.
+ * The times are in seconds, as in the event log. The profiles and the router are built when
+ * they are queried for the first time, so creating an instance is cheap. Not thread-safe.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class TravelTimeRouting {
+
+	/**
+	 * The default width of the time buckets, in seconds
+	 */
+	public static final double DEFAULT_BUCKET_WIDTH = 300;
+
+	/**
+	 * The network nodes. Keys = node IDs, values = {@link MyNode} node representations.
+	 */
+	private final Map<String,MyNode> nodes;
+
+	/**
+	 * The network links. Keys = link IDs, values = {@link MyLink} link representations.
+	 */
+	private final Map<String,MyLink> links;
+
+	/**
+	 * The checkpoints from the event log, or null if there are none
+	 */
+	private final CheckPointDatabase checkpoints;
+
+	/**
+	 * The width of the time buckets, in seconds
+	 */
+	private final double bucketWidth;
+
+	/**
+	 * Keys = node IDs, values = indices of the nodes in {@link TravelTimeRouting#network}
+	 */
+	private final Map<String,Integer> nodeIndices = new HashMap<>();
+
+	/**
+	 * Keys = link IDs, values = indices of the links in {@link TravelTimeRouting#network}
+	 */
+	private final Map<String,Integer> linkIndices = new HashMap<>();
+
+	/**
+	 * IDs of the links, indexed by the indices of the links in {@link TravelTimeRouting#network}.
+	 * Null until the router is built.
+	 */
+	private String[] linkIds;
+
+	/**
+	 * The network in which the paths are searched. Null until the router is built.
+	 */
+	private NetworkSnapshot network;
+
+	/**
+	 * The travel times of the links. Null until the router is built.
+	 */
+	private TravelTimeProfiles profiles;
+
+	/**
+	 * Searches for the fastest paths. Null until the router is built.
+	 */
+	private TimeDependentRouter router;
+
+	/**
+	 * Number of the observed traversals of the links
+	 */
+	private int traversalCount;
+
+	/**
+	 * @param nodes The network nodes. Keys = node IDs, values = {@link MyNode} node representations.
+	 * @param links The network links. Keys = link IDs, values = {@link MyLink} link representations.
+	 * @param checkpoints The checkpoints from the event log, or null if there are none.
+	 * @param bucketWidth The width of the time buckets, in seconds
+	 * @throws IllegalArgumentException When the bucket width is not a positive number
+	 */
+	public TravelTimeRouting(Map<String,MyNode> nodes, Map<String,MyLink> links,
+			CheckPointDatabase checkpoints, double bucketWidth) {
+		if (!(bucketWidth > 0) || Double.isInfinite(bucketWidth)){
+			throw new IllegalArgumentException("The bucket width has to be a positive number: " + bucketWidth);
+		}
+		this.nodes = nodes;
+		this.links = links;
+		this.checkpoints = checkpoints;
+		this.bucketWidth = bucketWidth;
+	}
+
+	/**
+	 * Builds the travel time profiles and the router, unless they have already been built.
+	 */
+	private void build(){
+		if (router != null){
+			return;
+		}
+		Network graph = new Network();
+		Map<String,Node> graphNodes = new HashMap<>();
+		for (MyNode node : nodes.values()){
+			Node graphNode = new Node(node.getX(), node.getY());
+			graph.addNode(graphNode);
+			graphNodes.put(node.getId(), graphNode);
+		}
+		Map<String,Link> graphLinks = new HashMap<>();
+		for (MyLink link : links.values()){
+			Node from = graphNodes.get(link.getFrom().getId());
+			Node to = graphNodes.get(link.getTo().getId());
+			double length = link.getLength();
+			Link graphLink = Double.isNaN(length) ? new Link(from, to) : new Link(from, to, length);
+			double freespeed = link.getFreespeed();
+			if ((freespeed > 0) && !Double.isInfinite(freespeed)){
+				graphLink.setFreeSpeed(freespeed);
+			}
+			graph.addLink(graphLink);
+			graphLinks.put(link.getId(), graphLink);
+		}
+		NetworkSnapshot network = graph.freeze();
+		for (Map.Entry<String,Node> entry : graphNodes.entrySet()){
+			nodeIndices.put(entry.getKey(), network.getNodeIndex(entry.getValue()));
+		}
+		String[] linkIds = new String[network.getLinkCount()];
+		for (Map.Entry<String,Link> entry : graphLinks.entrySet()){
+			int index = network.getLinkIndex(entry.getValue());
+			linkIndices.put(entry.getKey(), index);
+			linkIds[index] = entry.getKey();
+		}
+
+		TravelTimeProfiles.Builder builder = new TravelTimeProfiles.Builder(network, bucketWidth);
+		if (checkpoints != null){
+			for (String person : checkpoints.getKeys()){
+				addTraversals(builder, checkpoints.getPositionsList(person));
+			}
+		}
+		TravelTimeProfiles profiles = builder.build();
+		this.network = network;
+		this.linkIds = linkIds;
+		this.traversalCount = builder.getTraversalCount();
+		this.profiles = profiles;
+		this.router = new TimeDependentRouter(profiles);
+	}
+
+	/**
+	 * Adds the link traversals of a single person to the builder of the travel time profiles.
+	 * @param builder The builder of the travel time profiles
+	 * @param positions The checkpoints defining the positions of the person, in the order of time
+	 */
+	private void addTraversals(TravelTimeProfiles.Builder builder, List<CheckPoint> positions){
+		CheckPoint entered = null;
+		for (CheckPoint cp : positions){
+			if (cp.getType() == CheckPoint.Type.LINK_ENTERED){
+				entered = cp;
+			} else {
+				if ((entered != null) && entered.getLinkID().equals(cp.getLinkID())
+						&& (cp.getTime() >= entered.getTime())){
+					Integer link = linkIndices.get(cp.getLinkID());
+					if (link != null){
+						builder.addTraversal(link, entered.getTime(), cp.getTime());
+					}
+				}
+				entered = null;
+			}
+		}
+	}
+
+	/**
+	 * @return Number of the observed traversals of the links
+	 */
+	public int getTraversalCount() {
+		build();
+		return traversalCount;
+	}
+
+	/**
+	 * @return The width of the time buckets, in seconds
+	 */
+	public double getBucketWidth() {
+		return bucketWidth;
+	}
+
+	/**
+	 * @param link ID of a link
+	 * @param time The time the link is entered
+	 * @return The expected time needed to traverse the link
+	 * @throws IllegalArgumentException When there is no link with the given ID
+	 */
+	public double getTravelTime(String link, double time){
+		build();
+		return profiles.getTravelTime(getLinkIndex(link), time);
+	}
+
+	/**
+	 * @param link ID of a link
+	 * @return The time needed to traverse the link at its free speed
+	 * @throws IllegalArgumentException When there is no link with the given ID
+	 */
+	public double getFreeFlowTime(String link){
+		build();
+		return profiles.getFreeFlowTime(getLinkIndex(link));
+	}
+
+	/**
+	 * @param from ID of the node to start from
+	 * @param to ID of the node to finish at
+	 * @param departure The time of the departure
+	 * @return The earliest time of the arrival, or {@link Double#POSITIVE_INFINITY} if there is no path
+	 * @throws IllegalArgumentException When there is no node with any of the given IDs
+	 */
+	public double getArrivalTime(String from, String to, double departure){
+		build();
+		return router.getArrivalTime(getNodeIndex(from), getNodeIndex(to), departure);
+	}
+
+	/**
+	 * @param from ID of the node to start from
+	 * @param to ID of the node to finish at
+	 * @param departure The time of the departure
+	 * @return IDs of the links of the fastest path, empty if there is no path
+	 * @throws IllegalArgumentException When there is no node with any of the given IDs
+	 */
+	public String[] getFastestPath(String from, String to, double departure){
+		build();
+		int[] path = router.getFastestPath(getNodeIndex(from), getNodeIndex(to), departure);
+		if (path == null){
+			return new String[0];
+		}
+		String[] res = new String[path.length];
+		for (int i = 0; i < path.length; i++){
+			res[i] = linkIds[path[i]];
+		}
+		return res;
+	}
+
+	/**
+	 * @param id ID of a node
+	 * @return Index of the node in {@link TravelTimeRouting#network}
+	 * @throws IllegalArgumentException When there is no node with the given ID
+	 */
+	private int getNodeIndex(String id){
+		Integer index = nodeIndices.get(id);
+		if (index == null){
+			throw new IllegalArgumentException("No node with the ID: " + id);
+		}
+		return index;
+	}
+
+	/**
+	 * @param id ID of a link
+	 * @return Index of the link in {@link TravelTimeRouting#network}
+	 * @throws IllegalArgumentException When there is no link with the given ID
+	 */
+	private int getLinkIndex(String id){
+		Integer index = linkIndices.get(id);
+		if (index == null){
+			throw new IllegalArgumentException("No link with the ID: " + id);
+		}
+		return index;
+	}
+}
@@ -0,0 +1,290 @@
+package cz.filipekt.jdcv.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.Label;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.VBox;
+import javafx.scene.paint.Color;
+import cz.filipekt.jdcv.ensembles.EnsembleStatistics;
+import cz.filipekt.jdcv.util.Resources;
+
+/**
+ * The side panel showing the precomputed ensemble statistics of the current scene as a chart.
+ * The chart is drawn directly from the time series held by {@link EnsembleStatistics},
+ * so the ensemble events are never scanned again.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class EnsembleStatsPanel implements Plugin {
+
+	/**
+	 * Short name of the panel
+	 */
+	private final String pluginName = "Ensembles";
+
+	/**
+	 * @return Short name of the panel
+	 */
+	@Override
+	public String getName() {
+		return pluginName;
+	}
+
+	/**
+	 * @return The thumbnail shown right next to the panel title in the panel-switching button
+	 * @throws IOException If the image couldn't be found. This should never happen unless the
+	 * application resources directory has been messed with
+	 */
+	@Override
+	public InputStream getThumbnail() throws IOException {
+		return Resources.getResourceInputStream("chart.png");
+	}
+
+	/**
+	 * @return The panel containing the chart and its controls
+	 */
+	@Override
+	public Node getPanel() {
+		return pane;
+	}
+
+	/**
+	 * Item of {@link EnsembleStatsPanel#typeBox} standing for all the ensemble types combined
+	 */
+	private final String allTypes = "(all ensemble types)";
+
+	/**
+	 * Width of the chart, in pixels
+	 */
+	private final double chartWidth = 280;
+
+	/**
+	 * Height of the chart, in pixels
+	 */
+	private final double chartHeight = 220;
+
+	/**
+	 * Space left for the axis labels, in pixels
+	 */
+	private final double chartMargin = 20;
+
+	/**
+	 * Color of the active memberships series
+	 */
+	private final Color membershipsColor = Color.STEELBLUE;
+
+	/**
+	 * Color of the active ensembles series
+	 */
+	private final Color ensemblesColor = Color.SEAGREEN;
+
+	/**
+	 * Color of the joins series
+	 */
+	private final Color joinsColor = Color.DARKORANGE;
+
+	/**
+	 * Color of the leaves series
+	 */
+	private final Color leavesColor = Color.FIREBRICK;
+
+	/**
+	 * The statistics being viewed, or null if there are none
+	 */
+	private EnsembleStatistics statistics;
+
+	/**
+	 * Allows to select the ensemble type whose statistics are viewed
+	 */
+	private final ComboBox<String> typeBox = new ComboBox<>();
+
+	/**
+	 * The chart is drawn here
+	 */
+	private final Canvas chart = new Canvas(chartWidth, chartHeight);
+
+	/**
+	 * Shows the values in the bucket under the mouse cursor
+	 */
+	private final Label valuesLabel = new Label();
+
+	/**
+	 * Contains all the components of the panel
+	 */
+	private final VBox pane = new VBox(5);
+
+	/**
+	 * This is a singleton class, so uncontrolled instantiation is forbidden
+	 */
+	private EnsembleStatsPanel() {
+		typeBox.setMaxWidth(Double.MAX_VALUE);
+		valuesLabel.setWrapText(true);
+		typeBox.valueProperty().addListener(new ChangeListener<String>() {
+
+			@Override
+			public void changed(ObservableValue<? extends String> observable, String oldValue, String newValue) {
+				valuesLabel.setText("");
+				drawChart();
+			}
+		});
+		chart.setOnMouseMoved(new EventHandler<MouseEvent>() {
+
+			@Override
+			public void handle(MouseEvent event) {
+				showValuesAt(event.getX());
+			}
+		});
+		pane.getChildren().addAll(typeBox, chart, createLegendItem("Active memberships", membershipsColor),
+				createLegendItem("Active ensembles", ensemblesColor), createLegendItem("Joins", joinsColor),
+				createLegendItem("Leaves", leavesColor), valuesLabel);
+		pane.setPadding(new Insets(5));
+		drawChart();
+	}
+
+	/**
+	 * The singleton instance of this class
+	 */
+	private static final EnsembleStatsPanel INSTANCE = new EnsembleStatsPanel();
+
+	/**
+	 * @return The singleton instance of this class
+	 */
+	public static EnsembleStatsPanel getInstance(){
+		return INSTANCE;
+	}
+
+	/**
+	 * @param text Description of a time series
+	 * @param color Color of the time series
+	 * @return Legend item for the time series
+	 */
+	private Label createLegendItem(String text, Color color){
+		Label res = new Label(text);
+		res.setTextFill(color);
+		return res;
+	}
+
+	/**
+	 * Sets the statistics to be viewed
+	 * @param statistics The statistics of the current scene, or null if there are none
+	 */
+	public void setStatistics(EnsembleStatistics statistics){
+		this.statistics = statistics;
+		typeBox.getItems().clear();
+		if (statistics != null){
+			typeBox.getItems().add(allTypes);
+			typeBox.getItems().addAll(statistics.getEnsembleNames());
+			typeBox.getSelectionModel().selectFirst();
+		}
+		valuesLabel.setText("");
+		drawChart();
+	}
+
+	/**
+	 * @return Name of the selected ensemble type, or null if all the types are selected
+	 */
+	private String getSelectedType(){
+		String selected = typeBox.getValue();
+		return allTypes.equals(selected) ? null : selected;
+	}
+
+	/**
+	 * Draws the time series of the selected ensemble type into the {@link EnsembleStatsPanel#chart}
+	 */
+	private void drawChart(){
+		GraphicsContext gc = chart.getGraphicsContext2D();
+		gc.clearRect(0, 0, chartWidth, chartHeight);
+		if ((statistics == null) || (typeBox.getValue() == null)){
+			gc.setFill(Color.GRAY);
+			gc.fillText("No ensemble events loaded.", chartMargin, chartHeight / 2);
+			return;
+		}
+		String type = getSelectedType();
+		int max = Math.max(1, statistics.getMaxValue(type));
+		int buckets = statistics.getBucketCount();
+		gc.setStroke(Color.GRAY);
+		gc.setLineWidth(1);
+		gc.strokeLine(chartMargin, 0, chartMargin, chartHeight - chartMargin);
+		gc.strokeLine(chartMargin, chartHeight - chartMargin, chartWidth, chartHeight - chartMargin);
+		gc.setFill(Color.GRAY);
+		gc.fillText(Integer.toString(max), 0, 12);
+		gc.fillText(String.format("%.0f", statistics.getBucketStart(0)), chartMargin, chartHeight - 5);
+		String end = String.format("%.0f", statistics.getBucketStart(buckets));
+		gc.fillText(end, chartWidth - (7 * end.length()), chartHeight - 5);
+		double plotWidth = chartWidth - chartMargin;
+		double plotHeight = chartHeight - chartMargin;
+		double[] xs = new double[buckets];
+		double[] ys = new double[buckets];
+		for (int i = 0; i < buckets; i++){
+			xs[i] = chartMargin + ((i + 0.5) * plotWidth / buckets);
+		}
+		for (int series = 0; series < 4; series++){
+			for (int i = 0; i < buckets; i++){
+				int value;
+				switch (series){
+					case 0:
+						value = statistics.getActiveMemberships(type, i);
+						break;
+					case 1:
+						value = statistics.getActiveEnsembles(type, i);
+						break;
+					case 2:
+						value = statistics.getJoins(type, i);
+						break;
+					default:
+						value = statistics.getLeaves(type, i);
+						break;
+				}
+				ys[i] = plotHeight - (value * plotHeight / max);
+			}
+			gc.setStroke(getSeriesColor(series));
+			gc.strokePolyline(xs, ys, buckets);
+		}
+	}
+
+	/**
+	 * @param series Index of a time series, in the order of the legend items
+	 * @return Color of the time series
+	 */
+	private Color getSeriesColor(int series){
+		switch (series){
+			case 0:
+				return membershipsColor;
+			case 1:
+				return ensemblesColor;
+			case 2:
+				return joinsColor;
+			default:
+				return leavesColor;
+		}
+	}
+
+	/**
+	 * Shows the values in the bucket at the given position of the chart in {@link EnsembleStatsPanel#valuesLabel}
+	 * @param x Horizontal position in the {@link EnsembleStatsPanel#chart}
+	 */
+	private void showValuesAt(double x){
+		if ((statistics == null) || (typeBox.getValue() == null) || (x < chartMargin)){
+			return;
+		}
+		String type = getSelectedType();
+		int bucket = (int)((x - chartMargin) * statistics.getBucketCount() / (chartWidth - chartMargin));
+		bucket = Math.min(bucket, statistics.getBucketCount() - 1);
+		valuesLabel.setText(String.format("Time %.1f: %d memberships, %d ensembles (%.2f members each), "
+				+ "%d joins, %d leaves", statistics.getBucketStart(bucket),
+				statistics.getActiveMemberships(type, bucket), statistics.getActiveEnsembles(type, bucket),
+				statistics.getMembersPerCoordinator(type, bucket), statistics.getJoins(type, bucket),
+				statistics.getLeaves(type, bucket)));
+	}
+
+}
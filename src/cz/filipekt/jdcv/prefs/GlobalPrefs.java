@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.Writer;
 
 import cz.filipekt.jdcv.MapScene;
+import cz.filipekt.jdcv.network.NetworkIndex;
 
 /**
  * Provides the option to change some of the global preferences of the
@@ -105,6 +106,13 @@ public class GlobalPrefs {
 		}
 	}
 	
+	/**
+	 * @return Spatial index of the network nodes and links, or null if no simulation scene has been specified
+	 */
+	public NetworkIndex getNetworkIndex() {
+		return (scene == null) ? null : scene.getNetworkIndex();
+	}
+	
 	/**
 	 * Logs the specified text, using {@link GlobalPrefs#outputWriter}
 	 * @param text The text to be logged
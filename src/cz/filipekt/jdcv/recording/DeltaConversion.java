@@ -0,0 +1,77 @@
+package cz.filipekt.jdcv.recording;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+
+import javafx.concurrent.Task;
+
+/**
+ * Converts the changes recorded by {@link DeltaFrameOutput} into full frames,
+ * storing them into an output of another {@link RecordingFormat}.
+ * The frames are reconstructed one after another, so only one of them is held in the memory.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class DeltaConversion extends Task<Void> {
+
+	/**
+	 * The file with the recorded changes
+	 */
+	private final File source;
+
+	/**
+	 * Format of the result of the conversion
+	 */
+	private final RecordingFormat target;
+
+	/**
+	 * Directory to which the result is stored
+	 */
+	private final File directory;
+
+	/**
+	 * Name of the resulting file, without the extension, or the prefix of the resulting files
+	 */
+	private final String name;
+
+	/**
+	 * Quality of the lossy compression, between 0 and 1, if the target format uses one
+	 */
+	private final float quality;
+
+	/**
+	 * @param source The file with the recorded changes
+	 * @param target Format of the result of the conversion
+	 * @param directory Directory to which the result is stored
+	 * @param name Name of the resulting file, without the extension, or the prefix of the resulting files
+	 * @param quality Quality of the lossy compression, between 0 and 1, if the target format uses one
+	 */
+	public DeltaConversion(File source, RecordingFormat target, File directory, String name, float quality) {
+		this.source = source;
+		this.target = target;
+		this.directory = directory;
+		this.name = name;
+		this.quality = quality;
+	}
+
+	@Override
+	protected Void call() throws Exception {
+		long total = source.length();
+		try (DeltaFrameReader reader = new DeltaFrameReader(source);
+				FrameOutput output = target.createOutput(directory, name, reader.getFramesPerSecond(), quality)){
+			int width = reader.getWidth();
+			int height = reader.getHeight();
+			if ((width == 0) || (height == 0)){
+				return null;
+			}
+			BufferedImage image = new BufferedImage(width, height, output.getImageType());
+			int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+			while (!isCancelled() && reader.readFrame(pixels)){
+				output.write(reader.getFramesRead() - 1, output.encode(image), width, height);
+				updateProgress(reader.getBytesRead(), total);
+			}
+		}
+		return null;
+	}
+}
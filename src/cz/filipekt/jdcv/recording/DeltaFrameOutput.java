@@ -0,0 +1,328 @@
+package cz.filipekt.jdcv.recording;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Stores the frames into a single file, keeping only the parts of each frame that
+ * changed since the previous frame. Each frame is divided into square tiles; a tile
+ * is stored only if any of its pixels differs from the previous frame, so the first
+ * frame is stored whole. The stored tiles are compressed separately. The file can be
+ * read by {@link DeltaFrameReader} and converted to a video or images by {@link DeltaConversion}.
+ * <p>
+ * The file starts with a header: the {@link DeltaFrameOutput#magic} bytes, the format
+ * version, the width and the height of the frames, the size of the tiles (all of them
+ * 32-bit integers) and the frame rate (a 64-bit float). Each frame follows as the number
+ * of its stored tiles, and for each of the tiles its index (counting the tiles row by row),
+ * the size of its data and the data itself: the RGB bytes of the pixels of the tile,
+ * row by row, compressed by the deflate algorithm. All the numbers are big endian.
+ * <p>
+ * The frames are compared to the previous ones and compressed by the parallel encoders of
+ * the {@link FrameRecorder}, see {@link FrameOutput#isDeltaEncoded()}, so that only the
+ * ordered writing of the records is sequential.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class DeltaFrameOutput implements FrameOutput {
+
+	/**
+	 * The bytes present at the beginning of each file of this format
+	 */
+	static final byte[] magic = "JDCVDELT".getBytes(StandardCharsets.US_ASCII);
+
+	/**
+	 * Version of the format written by this class
+	 */
+	static final int version = 1;
+
+	/**
+	 * The usual file name extension of this format
+	 */
+	public static final String extension = "delta";
+
+	/**
+	 * Size of the side of a tile, in pixels
+	 */
+	private final int tileSize = 32;
+
+	/**
+	 * The file is written through this stream
+	 */
+	private final DataOutputStream output;
+
+	/**
+	 * Number of the frames per second of the video
+	 */
+	private final double framesPerSecond;
+
+	/**
+	 * The buffers used by a single encoder thread
+	 */
+	private class Encoder {
+
+		/**
+		 * Compresses the stored tiles
+		 */
+		private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+		/**
+		 * Holds the RGB bytes of a tile before compression
+		 */
+		private final byte[] tileBytes = new byte[tileSize * tileSize * 3];
+
+		/**
+		 * Holds the compressed data of a tile
+		 */
+		private byte[] compressedBytes = new byte[tileSize * tileSize * 4];
+
+		/**
+		 * Indices of the tiles of the frame being encoded which changed since the previous frame
+		 */
+		private int[] changedTiles = new int[0];
+	}
+
+	/**
+	 * Each encoder thread keeps its own buffers
+	 */
+	private final ThreadLocal<Encoder> encoders = new ThreadLocal<>();
+
+	/**
+	 * All the buffers created by {@link DeltaFrameOutput#encoders}, so that their deflaters
+	 * can be released when the file is closed
+	 */
+	private final List<Encoder> createdEncoders = new ArrayList<>();
+
+	/**
+	 * Width of the frames, in pixels, given by the first frame
+	 */
+	private int width = -1;
+
+	/**
+	 * Height of the frames, in pixels, given by the first frame
+	 */
+	private int height = -1;
+
+	/**
+	 * Number of the frames written so far
+	 */
+	private int frameCount = 0;
+
+	/**
+	 * @param file The created file. If it exists, it is overwritten.
+	 * @param framesPerSecond Number of the frames per second of the video
+	 * @throws IOException When the file could not be created
+	 */
+	public DeltaFrameOutput(File file, double framesPerSecond) throws IOException {
+		if (framesPerSecond <= 0){
+			throw new IllegalArgumentException("The frame rate must be positive.");
+		}
+		this.framesPerSecond = framesPerSecond;
+		this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+	}
+
+	/**
+	 * The transparency is not stored
+	 */
+	@Override
+	public int getImageType() {
+		return BufferedImage.TYPE_INT_RGB;
+	}
+
+	/**
+	 * The frames are compared to the previous ones when they are encoded
+	 */
+	@Override
+	public boolean isDeltaEncoded() {
+		return true;
+	}
+
+	/**
+	 * Encodes all the tiles of the image, as if it were the first frame
+	 */
+	@Override
+	public byte[] encode(BufferedImage image) throws IOException {
+		return encode(image, null);
+	}
+
+	/**
+	 * Compresses the tiles of the image that differ from the previous frame. The result
+	 * is the whole record of the frame, as stored in the file.
+	 */
+	@Override
+	public byte[] encode(BufferedImage image, int[] previous) throws IOException {
+		int[] pixels = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		int frameWidth = image.getWidth();
+		int frameHeight = image.getHeight();
+		if ((previous != null) && (previous.length < frameWidth * frameHeight)){
+			previous = null;
+		}
+		Encoder encoder = getEncoder();
+		int columns = (frameWidth + tileSize - 1) / tileSize;
+		int tiles = columns * ((frameHeight + tileSize - 1) / tileSize);
+		if (encoder.changedTiles.length < tiles){
+			encoder.changedTiles = new int[tiles];
+		}
+		int changedCount = 0;
+		for (int tile = 0; tile < tiles; tile++){
+			if ((previous == null) || tileChanged(pixels, previous, frameWidth, frameHeight,
+					tile % columns, tile / columns)){
+				encoder.changedTiles[changedCount++] = tile;
+			}
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeInt(changedCount);
+		for (int i = 0; i < changedCount; i++){
+			int tile = encoder.changedTiles[i];
+			int length = compressTile(encoder, pixels, frameWidth, frameHeight, tile % columns, tile / columns);
+			record.writeInt(tile);
+			record.writeInt(length);
+			record.write(encoder.compressedBytes, 0, length);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Only stores the record of the frame, as it has been compared and compressed by the encoders
+	 */
+	@Override
+	public void write(int index, byte[] data, int width, int height) throws IOException {
+		if (this.width < 0){
+			this.width = width;
+			this.height = height;
+			writeHeader();
+		} else if ((this.width != width) || (this.height != height)){
+			throw new IOException("All the frames must have the same size.");
+		}
+		output.write(data);
+		frameCount++;
+	}
+
+	/**
+	 * @return The buffers of the current thread, created when needed
+	 */
+	private Encoder getEncoder(){
+		Encoder encoder = encoders.get();
+		if (encoder == null){
+			encoder = new Encoder();
+			encoders.set(encoder);
+			synchronized (createdEncoders){
+				createdEncoders.add(encoder);
+			}
+		}
+		return encoder;
+	}
+
+	/**
+	 * @param current The pixels of the frame being encoded
+	 * @param previous The pixels of the previous frame
+	 * @param width Width of the frames, in pixels
+	 * @param height Height of the frames, in pixels
+	 * @param column Column of the tile
+	 * @param row Row of the tile
+	 * @return True if any pixel of the tile differs between the current and the previous frame
+	 */
+	private boolean tileChanged(int[] current, int[] previous, int width, int height, int column, int row){
+		int x = column * tileSize;
+		int w = Math.min(tileSize, width - x);
+		int bottom = Math.min(height, (row + 1) * tileSize);
+		for (int y = row * tileSize; y < bottom; y++){
+			int start = (y * width) + x;
+			for (int i = start; i < start + w; i++){
+				if (((current[i] ^ previous[i]) & 0xFFFFFF) != 0){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Compresses the pixels of the given tile into the compressed bytes of the encoder
+	 * @param encoder The buffers of the current thread
+	 * @param pixels The pixels of the frame
+	 * @param width Width of the frame, in pixels
+	 * @param height Height of the frame, in pixels
+	 * @param column Column of the tile
+	 * @param row Row of the tile
+	 * @return Size of the compressed data, in bytes
+	 */
+	private int compressTile(Encoder encoder, int[] pixels, int width, int height, int column, int row){
+		int x = column * tileSize;
+		int w = Math.min(tileSize, width - x);
+		int bottom = Math.min(height, (row + 1) * tileSize);
+		byte[] tileBytes = encoder.tileBytes;
+		int pos = 0;
+		for (int y = row * tileSize; y < bottom; y++){
+			int start = (y * width) + x;
+			for (int i = start; i < start + w; i++){
+				int pixel = pixels[i];
+				tileBytes[pos++] = (byte)(pixel >> 16);
+				tileBytes[pos++] = (byte)(pixel >> 8);
+				tileBytes[pos++] = (byte)pixel;
+			}
+		}
+		Deflater deflater = encoder.deflater;
+		deflater.reset();
+		deflater.setInput(tileBytes, 0, pos);
+		deflater.finish();
+		int length = 0;
+		while (!deflater.finished()){
+			if (length == encoder.compressedBytes.length){
+				encoder.compressedBytes = Arrays.copyOf(encoder.compressedBytes, length * 2);
+			}
+			length += deflater.deflate(encoder.compressedBytes, length, encoder.compressedBytes.length - length);
+		}
+		return length;
+	}
+
+	/**
+	 * Writes the header of the file
+	 */
+	private void writeHeader() throws IOException {
+		output.write(magic);
+		output.writeInt(version);
+		output.writeInt(Math.max(width, 0));
+		output.writeInt(Math.max(height, 0));
+		output.writeInt(tileSize);
+		output.writeDouble(framesPerSecond);
+	}
+
+	/**
+	 * Completes the file. If no frame has been written, only the header is stored.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if (width < 0){
+				writeHeader();
+			}
+		} finally {
+			synchronized (createdEncoders){
+				for (Encoder encoder : createdEncoders){
+					encoder.deflater.end();
+				}
+				createdEncoders.clear();
+			}
+			output.close();
+		}
+	}
+
+	/**
+	 * @return Number of the frames written so far
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+}
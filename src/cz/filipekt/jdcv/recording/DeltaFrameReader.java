@@ -0,0 +1,228 @@
+package cz.filipekt.jdcv.recording;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the frames stored by {@link DeltaFrameOutput}, one after another.
+ * Each frame is reconstructed by applying its stored tiles to the previous frame.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class DeltaFrameReader implements Closeable {
+
+	/**
+	 * The file is read through this stream
+	 */
+	private final DataInputStream input;
+
+	/**
+	 * Width of the frames, in pixels
+	 */
+	private final int width;
+
+	/**
+	 * Height of the frames, in pixels
+	 */
+	private final int height;
+
+	/**
+	 * Size of the side of a tile, in pixels
+	 */
+	private final int tileSize;
+
+	/**
+	 * Number of the tiles in a row
+	 */
+	private final int columns;
+
+	/**
+	 * Number of the tiles in a frame
+	 */
+	private final int tileCount;
+
+	/**
+	 * Number of the frames per second of the video
+	 */
+	private final double framesPerSecond;
+
+	/**
+	 * Decompresses the stored tiles
+	 */
+	private final Inflater inflater = new Inflater();
+
+	/**
+	 * Holds the compressed data of a tile
+	 */
+	private byte[] compressedBytes = new byte[0];
+
+	/**
+	 * Holds the RGB bytes of a tile after decompression
+	 */
+	private final byte[] tileBytes;
+
+	/**
+	 * Number of the bytes read from the file so far
+	 */
+	private long bytesRead = 0;
+
+	/**
+	 * Number of the frames read so far
+	 */
+	private int framesRead = 0;
+
+	/**
+	 * @param file The file stored by {@link DeltaFrameOutput}
+	 * @throws IOException When the file could not be read or is not of the expected format
+	 */
+	public DeltaFrameReader(File file) throws IOException {
+		input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+		try {
+			byte[] start = new byte[DeltaFrameOutput.magic.length];
+			input.readFully(start);
+			if (!Arrays.equals(start, DeltaFrameOutput.magic)){
+				throw new IOException("The file does not contain recorded changes.");
+			}
+			int fileVersion = input.readInt();
+			if (fileVersion != DeltaFrameOutput.version){
+				throw new IOException("Unsupported version of the recorded changes: " + fileVersion);
+			}
+			width = input.readInt();
+			height = input.readInt();
+			tileSize = input.readInt();
+			framesPerSecond = input.readDouble();
+			if ((width < 0) || (height < 0) || (tileSize <= 0) || ((long)width * height > Integer.MAX_VALUE)){
+				throw new IOException("The header of the recorded changes is corrupted.");
+			}
+		} catch (IOException ex) {
+			input.close();
+			throw ex;
+		}
+		bytesRead = DeltaFrameOutput.magic.length + 24;
+		columns = (width + tileSize - 1) / tileSize;
+		tileCount = columns * ((height + tileSize - 1) / tileSize);
+		tileBytes = new byte[tileSize * tileSize * 3];
+	}
+
+	/**
+	 * @return Width of the frames, in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return Height of the frames, in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return Number of the frames per second of the video
+	 */
+	public double getFramesPerSecond() {
+		return framesPerSecond;
+	}
+
+	/**
+	 * @return Number of the bytes read from the file so far
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return Number of the frames read so far
+	 */
+	public int getFramesRead() {
+		return framesRead;
+	}
+
+	/**
+	 * Reads the next frame. Only the changed tiles are overwritten, so the array must
+	 * hold the previous frame returned by this method, or anything before the first frame.
+	 * @param pixels The pixels of the frame, as opaque ARGB values, row by row.
+	 * Its length must be at least width * height.
+	 * @return False if there are no more frames, true otherwise
+	 * @throws IOException When the file could not be read or is corrupted
+	 */
+	public boolean readFrame(int[] pixels) throws IOException {
+		int changedCount;
+		try {
+			changedCount = input.readInt();
+		} catch (EOFException ex) {
+			return false;
+		}
+		if ((changedCount < 0) || (changedCount > tileCount)){
+			throw new IOException("The recorded changes are corrupted.");
+		}
+		bytesRead += 4;
+		for (int i = 0; i < changedCount; i++){
+			int tile = input.readInt();
+			int length = input.readInt();
+			if ((tile < 0) || (tile >= tileCount) || (length < 0)){
+				throw new IOException("The recorded changes are corrupted.");
+			}
+			if (compressedBytes.length < length){
+				compressedBytes = new byte[length];
+			}
+			input.readFully(compressedBytes, 0, length);
+			bytesRead += 8 + length;
+			applyTile(tile, length, pixels);
+		}
+		framesRead++;
+		return true;
+	}
+
+	/**
+	 * Decompresses the given tile into the frame
+	 * @param tile Index of the tile, counting the tiles row by row
+	 * @param length Size of the compressed data of the tile, in bytes
+	 * @param pixels The pixels of the frame
+	 */
+	private void applyTile(int tile, int length, int[] pixels) throws IOException {
+		int x = (tile % columns) * tileSize;
+		int top = (tile / columns) * tileSize;
+		int w = Math.min(tileSize, width - x);
+		int bottom = Math.min(height, top + tileSize);
+		int expected = w * (bottom - top) * 3;
+		inflater.reset();
+		inflater.setInput(compressedBytes, 0, length);
+		try {
+			int done = 0;
+			while (done < expected){
+				int n = inflater.inflate(tileBytes, done, expected - done);
+				if ((n == 0) && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())){
+					throw new IOException("The recorded changes are corrupted.");
+				}
+				done += n;
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("The recorded changes are corrupted.", ex);
+		}
+		int pos = 0;
+		for (int y = top; y < bottom; y++){
+			int start = (y * width) + x;
+			for (int i = start; i < start + w; i++){
+				pixels[i] = 0xFF000000 | ((tileBytes[pos] & 0xFF) << 16) |
+						((tileBytes[pos + 1] & 0xFF) << 8) | (tileBytes[pos + 2] & 0xFF);
+				pos += 3;
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		inflater.end();
+		input.close();
+	}
+}
@@ -0,0 +1,61 @@
+package cz.filipekt.jdcv.recording;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the frames recorded by {@link FrameRecorder}. The frames are encoded
+ * in parallel, then written in the order in which they have been recorded.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public interface FrameOutput extends Closeable {
+
+	/**
+	 * @return Type of the images passed to {@link FrameOutput#encode(BufferedImage)},
+	 * one of the TYPE_INT_* constants of {@link BufferedImage}
+	 */
+	int getImageType();
+
+	/**
+	 * Encodes a single frame. Called from multiple threads at once.
+	 * @param image The frame to be encoded. It is reused once this method returns.
+	 * @return The encoded frame
+	 * @throws IOException When the frame could not be encoded
+	 */
+	byte[] encode(BufferedImage image) throws IOException;
+
+	/**
+	 * @return True if the frames are encoded relative to the previous frames, i.e. if
+	 * {@link FrameOutput#encode(BufferedImage, int[])} is to be used instead of
+	 * {@link FrameOutput#encode(BufferedImage)}. False by default.
+	 */
+	default boolean isDeltaEncoded(){
+		return false;
+	}
+
+	/**
+	 * Encodes a single frame, relative to the frame written just before it. Called from multiple
+	 * threads at once, only if {@link FrameOutput#isDeltaEncoded()} returns true.
+	 * By default the previous frame is ignored.
+	 * @param image The frame to be encoded. It is reused once this method returns.
+	 * @param previous The pixels of the frame that will be written just before this one,
+	 * in the ARGB format, row by row. Null if this frame will be written first.
+	 * @return The encoded frame
+	 * @throws IOException When the frame could not be encoded
+	 */
+	default byte[] encode(BufferedImage image, int[] previous) throws IOException {
+		return encode(image);
+	}
+
+	/**
+	 * Writes a single encoded frame. Called from one thread at a time, in the order of the frames.
+	 * @param index Sequence number of the frame, starting from zero
+	 * @param data The frame, as returned by {@link FrameOutput#encode(BufferedImage)}
+	 * @param width Width of the frame, in pixels
+	 * @param height Height of the frame, in pixels
+	 * @throws IOException When the frame could not be written
+	 */
+	void write(int index, byte[] data, int width, int height) throws IOException;
+}
@@ -0,0 +1,365 @@
+package cz.filipekt.jdcv.recording;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javafx.concurrent.Task;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelFormat;
+
+/**
+ * Stores the recorded frames of the visualization into a {@link FrameOutput}, without interrupting
+ * the playback. The snapshots are copied into a bounded pool of pixel buffers on the JavaFX application
+ * thread and encoded by a pool of background threads. The encoded frames are then written in their
+ * original order. A buffer is released once its frame has been written and, if the output
+ * compares each frame to the previous one, once the following frame has been encoded. When all the buffers are
+ * in use, {@link FrameRecorder#submit(Image)} drops the frame instead of blocking the JavaFX application
+ * thread, so the memory used by the recording stays bounded. The callers that must not lose any frame
+ * check {@link FrameRecorder#hasFreeBuffer()} first and try again later.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class FrameRecorder {
+
+	/**
+	 * A recorded frame waiting to be encoded
+	 */
+	private static class Frame {
+
+		/**
+		 * The pixels of the frame, in the ARGB format
+		 */
+		private int[] pixels = new int[0];
+
+		/**
+		 * Width of the frame, in pixels
+		 */
+		private int width;
+
+		/**
+		 * Height of the frame, in pixels
+		 */
+		private int height;
+
+		/**
+		 * Sequence number of the frame, starting from zero
+		 */
+		private int index;
+
+		/**
+		 * The encoded frame, or null if it has not been encoded or could not be encoded
+		 */
+		private byte[] encoded;
+
+		/**
+		 * The frame submitted just before this one, kept until this frame has been compared
+		 * to it, or null. Used only by the delta encoded outputs.
+		 */
+		private Frame previous;
+
+		/**
+		 * Number of the tasks that still need the pixels of the frame. The buffer is released
+		 * when the number drops to zero.
+		 */
+		private final AtomicInteger uses = new AtomicInteger();
+	}
+
+	/**
+	 * Number of the background encoder threads
+	 */
+	private final int encodersCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+	/**
+	 * Number of the pixel buffers, i.e. the maximal number of frames waiting to be encoded
+	 */
+	private final int buffersCount = encodersCount * 2 + 2;
+
+	/**
+	 * The pixel buffers which are not in use
+	 */
+	private final BlockingQueue<Frame> freeFrames = new ArrayBlockingQueue<>(buffersCount);
+
+	/**
+	 * Destination of the frames
+	 */
+	private final FrameOutput output;
+
+	/**
+	 * Marks whether each frame is encoded relative to the previous frame, see {@link FrameOutput#isDeltaEncoded()}
+	 */
+	private final boolean deltaEncoded;
+
+	/**
+	 * The frame submitted last, kept for the comparison with the next frame, or null.
+	 * Used only on the JavaFX application thread.
+	 */
+	private Frame lastSubmitted;
+
+	/**
+	 * The encoded frames waiting for the preceding frames to be written, indexed by their sequence numbers
+	 */
+	private final Map<Integer,Frame> encodedFrames = new HashMap<>();
+
+	/**
+	 * Sequence number of the next frame to be written
+	 */
+	private int nextToWrite = 0;
+
+	/**
+	 * The background encoder threads
+	 */
+	private final ExecutorService encoders = Executors.newFixedThreadPool(encodersCount, new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "recording-encoder");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Each encoder thread keeps its own image, into which the pixels are copied before encoding
+	 */
+	private final ThreadLocal<BufferedImage> encoderImages = new ThreadLocal<>();
+
+	/**
+	 * Number of the frames submitted so far
+	 */
+	private volatile int submitted = 0;
+
+	/**
+	 * Number of the frames stored to the disc so far
+	 */
+	private final AtomicInteger written = new AtomicInteger();
+
+	/**
+	 * Number of the frames dropped because all the pixel buffers were in use
+	 */
+	private volatile int dropped = 0;
+
+	/**
+	 * The first problem encountered when storing the frames, or null
+	 */
+	private volatile IOException error;
+
+	/**
+	 * @param output Destination of the frames. It is closed when all the frames have been written.
+	 */
+	public FrameRecorder(FrameOutput output) {
+		this.output = output;
+		this.deltaEncoded = output.isDeltaEncoded();
+		for (int i = 0; i < buffersCount; i++){
+			freeFrames.add(new Frame());
+		}
+	}
+
+	/**
+	 * Copies the given snapshot into a pixel buffer and hands it to the encoders.
+	 * The snapshot may be reused by the caller as soon as this method returns.
+	 * If all the pixel buffers are in use, the snapshot is dropped and counted
+	 * in {@link FrameRecorder#getDroppedFrames()}. Never blocks.
+	 * @param snapshot A snapshot of the visualization
+	 * @return True if the snapshot has been accepted, false if it has been dropped
+	 */
+	public boolean submit(Image snapshot) {
+		final Frame frame = freeFrames.poll();
+		if (frame == null){
+			dropped++;
+			return false;
+		}
+		int width = (int)snapshot.getWidth();
+		int height = (int)snapshot.getHeight();
+		if (frame.pixels.length < width * height){
+			frame.pixels = new int[width * height];
+		}
+		frame.width = width;
+		frame.height = height;
+		frame.index = submitted++;
+		snapshot.getPixelReader().getPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(),
+				frame.pixels, 0, width);
+		if (deltaEncoded){
+			frame.uses.set(2);
+			frame.previous = lastSubmitted;
+			lastSubmitted = frame;
+		} else {
+			frame.uses.set(1);
+		}
+		encoders.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					frame.encoded = encode(frame);
+				} catch (IOException ex) {
+					reportError(ex);
+				} finally {
+					writeInOrder(frame);
+				}
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * @return True if a pixel buffer is free, i.e. if the next snapshot submitted 
+	 * from the JavaFX application thread will be accepted
+	 */
+	public boolean hasFreeBuffer(){
+		return !freeFrames.isEmpty();
+	}
+
+	/**
+	 * Encodes the given frame. A delta encoded frame is compared to the previous frame,
+	 * whose buffer is released afterwards. Called from the encoder threads.
+	 * @param frame The frame to be encoded
+	 * @return The encoded frame
+	 * @throws IOException When the frame could not be encoded
+	 */
+	private byte[] encode(Frame frame) throws IOException {
+		BufferedImage image = encoderImages.get();
+		if ((image == null) || (image.getWidth() != frame.width) || (image.getHeight() != frame.height)){
+			image = new BufferedImage(frame.width, frame.height, output.getImageType());
+			encoderImages.set(image);
+		}
+		int[] data = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(frame.pixels, 0, data, 0, frame.width * frame.height);
+		if (!deltaEncoded){
+			return output.encode(image);
+		}
+		Frame previous = frame.previous;
+		frame.previous = null;
+		try {
+			boolean sameSize = (previous != null) && (previous.width == frame.width) && (previous.height == frame.height);
+			return output.encode(image, sameSize ? previous.pixels : null);
+		} finally {
+			if (previous != null){
+				release(previous);
+			}
+		}
+	}
+
+	/**
+	 * Marks that one of the tasks needing the pixels of the frame has finished.
+	 * When none of them is left, the pixel buffer is released.
+	 * @param frame A frame submitted earlier
+	 */
+	private void release(Frame frame){
+		if (frame.uses.decrementAndGet() == 0){
+			freeFrames.add(frame);
+		}
+	}
+
+	/**
+	 * Writes the given frame and all the following frames that are waiting for it, then
+	 * releases their pixel buffers. If the frame is preceded by a frame which has not
+	 * been written yet, it is only put aside. Called from the encoder threads.
+	 * @param frame A frame which has just been encoded
+	 */
+	private void writeInOrder(Frame frame){
+		synchronized (encodedFrames){
+			encodedFrames.put(frame.index, frame);
+			Frame next;
+			while ((next = encodedFrames.remove(nextToWrite)) != null){
+				if ((next.encoded != null) && (error == null)){
+					try {
+						output.write(next.index, next.encoded, next.width, next.height);
+						written.incrementAndGet();
+					} catch (IOException ex) {
+						reportError(ex);
+					}
+				}
+				next.encoded = null;
+				nextToWrite++;
+				release(next);
+			}
+		}
+	}
+
+	/**
+	 * Remembers the problem, unless some problem has already been encountered
+	 * @param ex A problem encountered when storing the frames
+	 */
+	private void reportError(IOException ex){
+		if (error == null){
+			error = ex;
+		}
+	}
+
+	/**
+	 * No more frames are accepted after this call. The returned task waits until all the
+	 * submitted frames have been stored, reporting the progress. It is not started by this method.
+	 * @return Task waiting for the remaining frames to be stored
+	 */
+	public Task<Void> finish(){
+		if (lastSubmitted != null){
+			release(lastSubmitted);
+			lastSubmitted = null;
+		}
+		encoders.shutdown();
+		return new Task<Void>() {
+
+			@Override
+			protected Void call() throws Exception {
+				while (!encoders.awaitTermination(100, TimeUnit.MILLISECONDS)){
+					updateProgress(written.get(), submitted);
+				}
+				try {
+					output.close();
+				} catch (IOException ex) {
+					reportError(ex);
+				}
+				updateProgress(submitted, submitted);
+				if (error != null){
+					throw error;
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * @return Number of the frames submitted so far
+	 */
+	public int getSubmittedFrames() {
+		return submitted;
+	}
+
+	/**
+	 * @return Number of the frames dropped because the encoders had fallen behind
+	 */
+	public int getDroppedFrames() {
+		return dropped;
+	}
+
+	/**
+	 * @return Number of the frames stored to the disc so far
+	 */
+	public int getWrittenFrames() {
+		return written.get();
+	}
+
+	/**
+	 * @return Number of the frames waiting to be encoded
+	 */
+	public int getPendingFrames() {
+		return buffersCount - freeFrames.size();
+	}
+
+	/**
+	 * @return The first problem encountered when storing the frames, or null
+	 */
+	public IOException getError() {
+		return error;
+	}
+}
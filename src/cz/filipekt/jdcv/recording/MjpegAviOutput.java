@@ -0,0 +1,325 @@
+package cz.filipekt.jdcv.recording;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Stores the frames into a single AVI file, as a Motion JPEG video stream.
+ * The frames are encoded as JPEG images and appended to the file sequentially,
+ * one write call per frame. The headers and the index are completed when the file is closed.
+ * The whole file must be smaller than 4 GB.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class MjpegAviOutput implements FrameOutput {
+
+	/**
+	 * Size of the part of the file preceding the first frame, in bytes
+	 */
+	private final int headerSize = 224;
+
+	/**
+	 * Position of the "movi" list type in the file. The frame offsets in the index are relative to it.
+	 */
+	private final int moviPosition = 220;
+
+	/**
+	 * Maximal size of the file, given by the 32-bit sizes in the AVI headers
+	 */
+	private final long maxFileSize = 0xFFFFFFFFL;
+
+	/**
+	 * The file is written through this channel
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Number of the frames per second of the video
+	 */
+	private final double framesPerSecond;
+
+	/**
+	 * Quality of the JPEG compression, between 0 and 1
+	 */
+	private final float quality;
+
+	/**
+	 * Each encoder thread keeps its own JPEG writer
+	 */
+	private final ThreadLocal<ImageWriter> writers = new ThreadLocal<>();
+
+	/**
+	 * All the writers created by {@link MjpegAviOutput#writers}, so that they can be
+	 * disposed of when the file is closed
+	 */
+	private final List<ImageWriter> createdWriters = new ArrayList<>();
+
+	/**
+	 * Width of the video, in pixels, given by the first frame
+	 */
+	private int width = -1;
+
+	/**
+	 * Height of the video, in pixels, given by the first frame
+	 */
+	private int height = -1;
+
+	/**
+	 * Number of the frames written so far
+	 */
+	private int frameCount = 0;
+
+	/**
+	 * Position of each written frame chunk, relative to {@link MjpegAviOutput#moviPosition}
+	 */
+	private int[] frameOffsets = new int[1024];
+
+	/**
+	 * Size of each written frame, in bytes
+	 */
+	private int[] frameSizes = new int[1024];
+
+	/**
+	 * Size of the largest written frame, in bytes
+	 */
+	private int maxFrameSize = 0;
+
+	/**
+	 * Position in the file at which the next frame will be written
+	 */
+	private long position = headerSize;
+
+	/**
+	 * Holds the header of the chunk of a frame
+	 */
+	private final ByteBuffer chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Holds the padding of the chunk of a frame
+	 */
+	private final ByteBuffer chunkPadding = ByteBuffer.allocate(1);
+
+	/**
+	 * @param file The created AVI file. If it exists, it is overwritten.
+	 * @param framesPerSecond Number of the frames per second of the video
+	 * @param quality Quality of the JPEG compression, between 0 (smallest files) and 1 (best quality)
+	 * @throws IOException When the file could not be created
+	 */
+	public MjpegAviOutput(File file, double framesPerSecond, float quality) throws IOException {
+		if ((framesPerSecond <= 0) || (quality < 0) || (quality > 1)){
+			throw new IllegalArgumentException("The frame rate must be positive, the quality between 0 and 1.");
+		}
+		this.framesPerSecond = framesPerSecond;
+		this.quality = quality;
+		this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * JPEG does not store transparency, so the frames are passed without it
+	 */
+	@Override
+	public int getImageType() {
+		return BufferedImage.TYPE_INT_RGB;
+	}
+
+	@Override
+	public byte[] encode(BufferedImage image) throws IOException {
+		ImageWriter writer = writers.get();
+		if (writer == null){
+			Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName("jpeg");
+			if (!it.hasNext()){
+				throw new IOException("No JPEG writer is available.");
+			}
+			writer = it.next();
+			writers.set(writer);
+			synchronized (createdWriters){
+				createdWriters.add(writer);
+			}
+		}
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(quality);
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		try (ImageOutputStream output = ImageIO.createImageOutputStream(stream)){
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(image, null, null), param);
+		} finally {
+			writer.setOutput(null);
+		}
+		return stream.toByteArray();
+	}
+
+	@Override
+	public void write(int index, byte[] data, int width, int height) throws IOException {
+		if (this.width < 0){
+			this.width = width;
+			this.height = height;
+		} else if ((this.width != width) || (this.height != height)){
+			throw new IOException("All the frames of the video must have the same size.");
+		}
+		int padding = data.length % 2;
+		if (position + 8 + data.length + padding + (16L * (frameCount + 1)) + 8 > maxFileSize){
+			throw new IOException("The video is too large for the AVI format.");
+		}
+		if (frameCount == frameOffsets.length){
+			frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+			frameSizes = Arrays.copyOf(frameSizes, frameCount * 2);
+		}
+		frameOffsets[frameCount] = (int)(position - moviPosition);
+		frameSizes[frameCount] = data.length;
+		frameCount++;
+		maxFrameSize = Math.max(maxFrameSize, data.length);
+		chunkHeader.clear();
+		putFourCC(chunkHeader, "00dc");
+		chunkHeader.putInt(data.length);
+		chunkHeader.flip();
+		chunkPadding.clear();
+		chunkPadding.limit(padding);
+		ByteBuffer[] buffers = new ByteBuffer[]{chunkHeader, ByteBuffer.wrap(data), chunkPadding};
+		long length = 8 + data.length + padding;
+		channel.position(position);
+		long done = 0;
+		while (done < length){
+			done += channel.write(buffers);
+		}
+		position += length;
+	}
+
+	/**
+	 * Writes the index after the last frame and the headers at the beginning of the file,
+	 * then closes the file. The JPEG writers of the encoder threads are disposed of.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			ByteBuffer index = ByteBuffer.allocate(8 + (16 * frameCount)).order(ByteOrder.LITTLE_ENDIAN);
+			putFourCC(index, "idx1");
+			index.putInt(16 * frameCount);
+			for (int i = 0; i < frameCount; i++){
+				putFourCC(index, "00dc");
+				index.putInt(0x10);
+				index.putInt(frameOffsets[i]);
+				index.putInt(frameSizes[i]);
+			}
+			index.flip();
+			writeFully(index, position);
+			long fileSize = position + index.limit();
+			writeFully(createHeader(fileSize), 0);
+		} finally {
+			synchronized (createdWriters){
+				for (ImageWriter writer : createdWriters){
+					writer.dispose();
+				}
+				createdWriters.clear();
+			}
+			channel.close();
+		}
+	}
+
+	/**
+	 * @param fileSize Size of the whole file, in bytes
+	 * @return The part of the file preceding the first frame
+	 */
+	private ByteBuffer createHeader(long fileSize){
+		int w = Math.max(width, 0);
+		int h = Math.max(height, 0);
+		int rateScale = 1000;
+		int rate = (int)Math.round(framesPerSecond * rateScale);
+		ByteBuffer res = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		putFourCC(res, "RIFF");
+		res.putInt((int)(fileSize - 8));
+		putFourCC(res, "AVI ");
+		putFourCC(res, "LIST");
+		res.putInt(192);
+		putFourCC(res, "hdrl");
+		putFourCC(res, "avih");
+		res.putInt(56);
+		res.putInt((int)Math.round(1000000 / framesPerSecond));
+		res.putInt((int)Math.min(Integer.MAX_VALUE, Math.round(maxFrameSize * framesPerSecond)));
+		res.putInt(0);
+		res.putInt(0x10);
+		res.putInt(frameCount);
+		res.putInt(0);
+		res.putInt(1);
+		res.putInt(maxFrameSize + 8);
+		res.putInt(w);
+		res.putInt(h);
+		res.putInt(0).putInt(0).putInt(0).putInt(0);
+		putFourCC(res, "LIST");
+		res.putInt(116);
+		putFourCC(res, "strl");
+		putFourCC(res, "strh");
+		res.putInt(56);
+		putFourCC(res, "vids");
+		putFourCC(res, "MJPG");
+		res.putInt(0);
+		res.putShort((short)0);
+		res.putShort((short)0);
+		res.putInt(0);
+		res.putInt(rateScale);
+		res.putInt(rate);
+		res.putInt(0);
+		res.putInt(frameCount);
+		res.putInt(maxFrameSize + 8);
+		res.putInt(-1);
+		res.putInt(0);
+		res.putShort((short)0).putShort((short)0).putShort((short)w).putShort((short)h);
+		putFourCC(res, "strf");
+		res.putInt(40);
+		res.putInt(40);
+		res.putInt(w);
+		res.putInt(h);
+		res.putShort((short)1);
+		res.putShort((short)24);
+		putFourCC(res, "MJPG");
+		res.putInt(w * h * 3);
+		res.putInt(0).putInt(0).putInt(0).putInt(0);
+		putFourCC(res, "LIST");
+		res.putInt((int)(position - moviPosition));
+		putFourCC(res, "movi");
+		res.flip();
+		return res;
+	}
+
+	/**
+	 * Writes the whole buffer at the given position of the file
+	 */
+	private void writeFully(ByteBuffer buffer, long at) throws IOException {
+		long pos = at;
+		while (buffer.hasRemaining()){
+			pos += channel.write(buffer, pos);
+		}
+	}
+
+	/**
+	 * Puts the four-character code into the buffer
+	 */
+	private static void putFourCC(ByteBuffer buffer, String code){
+		buffer.put(code.getBytes(StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return Number of the frames written so far
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+}
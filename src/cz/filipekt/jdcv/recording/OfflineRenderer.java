@@ -0,0 +1,206 @@
+package cz.filipekt.jdcv.recording;
+
+import javafx.animation.AnimationTimer;
+import javafx.animation.Animation.Status;
+import javafx.animation.Timeline;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.Scale;
+import javafx.util.Duration;
+import cz.filipekt.jdcv.MapScene;
+
+/**
+ * Renders the whole visualization frame by frame, independently of the {@link Timeline} playback.
+ * The time line is paused and moved in fixed steps given by the chosen frame rate, all the shapes
+ * are positioned for each step and a snapshot of the map is handed to a {@link FrameRecorder}.
+ * The frames are produced as fast as the machine allows, none of them is dropped, and the
+ * output does not depend on the load of the machine.
+ * The frames are rendered on the JavaFX application thread, a few of them in each pulse,
+ * so that the application stays responsive. When the encoders of the recorder fall behind,
+ * the rendering is deferred to the following pulses until a pixel buffer is released.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class OfflineRenderer {
+
+	/**
+	 * The scene being rendered
+	 */
+	private final MapScene scene;
+
+	/**
+	 * Receives the rendered frames
+	 */
+	private final FrameRecorder recorder;
+
+	/**
+	 * Distance of two consecutive frames on the time line, in milliseconds
+	 */
+	private final double frameStep;
+
+	/**
+	 * Number of the frames to be rendered
+	 */
+	private final int frameCount;
+
+	/**
+	 * Parameters of the snapshots, scaling the map to the chosen resolution
+	 */
+	private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+
+	/**
+	 * Reused as the target of the snapshots
+	 */
+	private WritableImage image;
+
+	/**
+	 * Index of the next frame to be rendered
+	 */
+	private int nextFrame = 0;
+
+	/**
+	 * The fraction of the frames which have been rendered
+	 */
+	private final ReadOnlyDoubleWrapper progress = new ReadOnlyDoubleWrapper(0);
+
+	/**
+	 * Called when all the frames have been rendered or the rendering has been cancelled
+	 */
+	private Runnable onFinished;
+
+	/**
+	 * Position of the time line before the rendering started
+	 */
+	private Duration originalTime;
+
+	/**
+	 * Marks whether the time line was running before the rendering started
+	 */
+	private boolean wasRunning;
+
+	/**
+	 * Marks whether the static layer mode was on before the rendering started
+	 */
+	private boolean wasStaticLayerMode;
+
+	/**
+	 * In each pulse, frames are rendered for at most this long, in nanoseconds
+	 */
+	private final long pulseBudget = 30L * 1000L * 1000L;
+
+	/**
+	 * Renders the frames, a few of them in each pulse
+	 */
+	private final AnimationTimer timer = new AnimationTimer() {
+
+		@Override
+		public void handle(long now) {
+			long start = System.nanoTime();
+			while ((nextFrame < frameCount) && ((System.nanoTime() - start) < pulseBudget)
+					&& recorder.hasFreeBuffer()){
+				if (!renderFrame(nextFrame)){
+					break;
+				}
+				nextFrame++;
+			}
+			progress.set(nextFrame / (double)frameCount);
+			if (nextFrame >= frameCount){
+				finish();
+			}
+		}
+	};
+
+	/**
+	 * @param scene The scene to be rendered
+	 * @param recorder Receives the rendered frames
+	 * @param framesPerSecond Number of the frames per one second of the time line
+	 * @param width Width of the frames, in pixels. The height follows the proportions of the map.
+	 * All the frames have the same size, even if some shapes stick out of the map.
+	 */
+	public OfflineRenderer(MapScene scene, FrameRecorder recorder, double framesPerSecond, int width) {
+		if ((framesPerSecond <= 0) || (width <= 0)){
+			throw new IllegalArgumentException("The frame rate and the width must be positive.");
+		}
+		this.scene = scene;
+		this.recorder = recorder;
+		this.frameStep = 1000 / framesPerSecond;
+		double totalTime = scene.getTimeLine().getTotalDuration().toMillis();
+		this.frameCount = (int)Math.floor(totalTime / frameStep) + 1;
+		double mapWidth = scene.getOriginalMapWidth() * scene.getZoom();
+		double mapHeight = scene.getOriginalMapHeight() * scene.getZoom();
+		double scale = width / mapWidth;
+		snapshotParameters.setTransform(new Scale(scale, scale));
+		snapshotParameters.setViewport(new Rectangle2D(0, 0, width, Math.round(mapHeight * scale)));
+	}
+
+	/**
+	 * @return Number of the frames to be rendered
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * @return The fraction of the frames which have been rendered
+	 */
+	public ReadOnlyDoubleProperty progressProperty(){
+		return progress.getReadOnlyProperty();
+	}
+
+	/**
+	 * Starts the rendering. The time line is paused for the whole time, and the static
+	 * layer mode is switched off, so that the map is never drawn from incomplete tiles.
+	 * @param onFinished Called when all the frames have been rendered or the rendering
+	 * has been cancelled. May be null.
+	 */
+	public void start(Runnable onFinished){
+		this.onFinished = onFinished;
+		Timeline timeLine = scene.getTimeLine();
+		wasRunning = timeLine.getStatus() == Status.RUNNING;
+		timeLine.pause();
+		originalTime = timeLine.getCurrentTime();
+		wasStaticLayerMode = scene.isStaticLayerMode();
+		scene.setStaticLayerMode(false);
+		nextFrame = 0;
+		timer.start();
+	}
+
+	/**
+	 * Stops the rendering before all the frames have been rendered
+	 */
+	public void cancel(){
+		finish();
+	}
+
+	/**
+	 * Positions all the shapes for the given frame and hands its snapshot to the {@link OfflineRenderer#recorder}
+	 * @param frame Index of the frame
+	 * @return True if the recorder has accepted the frame, false if it has to be rendered again later
+	 */
+	private boolean renderFrame(int frame) {
+		scene.showFrameAt(new Duration(frame * frameStep));
+		image = scene.getMapContainer().snapshot(snapshotParameters, image);
+		return recorder.submit(image);
+	}
+
+	/**
+	 * Restores the original state of the scene
+	 */
+	private void finish(){
+		timer.stop();
+		scene.setStaticLayerMode(wasStaticLayerMode);
+		scene.showFrameAt(originalTime);
+		if (wasRunning){
+			scene.getTimeLine().play();
+		}
+		image = null;
+		if (onFinished != null){
+			Runnable callback = onFinished;
+			onFinished = null;
+			callback.run();
+		}
+	}
+}
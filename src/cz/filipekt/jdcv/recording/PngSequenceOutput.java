@@ -0,0 +1,63 @@
+package cz.filipekt.jdcv.recording;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Stores each frame into a separate PNG file
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class PngSequenceOutput implements FrameOutput {
+
+	/**
+	 * Directory to which the frames are stored
+	 */
+	private final File directory;
+
+	/**
+	 * Each file name starts with this prefix, followed by the sequence number of the frame
+	 */
+	private final String namePrefix;
+
+	/**
+	 * @param directory Directory to which the frames are stored
+	 * @param namePrefix Each file name starts with this prefix, followed by the sequence number of the frame
+	 */
+	public PngSequenceOutput(File directory, String namePrefix) {
+		this.directory = directory;
+		this.namePrefix = namePrefix;
+	}
+
+	@Override
+	public int getImageType() {
+		return BufferedImage.TYPE_INT_ARGB;
+	}
+
+	@Override
+	public byte[] encode(BufferedImage image) throws IOException {
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		if (!ImageIO.write(image, "png", stream)){
+			throw new IOException("No PNG writer is available.");
+		}
+		return stream.toByteArray();
+	}
+
+	@Override
+	public void write(int index, byte[] data, int width, int height) throws IOException {
+		File file = new File(directory, String.format("%s_%06d.png", namePrefix, index));
+		Files.write(file.toPath(), data);
+	}
+
+	/**
+	 * Nothing to be done, each frame is stored in a file of its own
+	 */
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,67 @@
+package cz.filipekt.jdcv.recording;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The formats in which the recorded frames can be stored
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public enum RecordingFormat {
+
+	/**
+	 * Each frame is stored as a separate PNG image, see {@link PngSequenceOutput}
+	 */
+	PNG_IMAGES("PNG images"),
+
+	/**
+	 * All the frames are stored into a single MJPEG video file, see {@link MjpegAviOutput}
+	 */
+	MJPEG_VIDEO("MJPEG video (AVI)"),
+
+	/**
+	 * Only the tiles that changed since the previous frame are stored, see {@link DeltaFrameOutput}.
+	 * The file can later be converted to one of the other formats using {@link DeltaConversion}.
+	 */
+	CHANGED_TILES("Changed tiles only");
+
+	/**
+	 * Name of the format, as shown to the user
+	 */
+	private final String description;
+
+	/**
+	 * @param description Name of the format, as shown to the user
+	 */
+	private RecordingFormat(String description) {
+		this.description = description;
+	}
+
+	/**
+	 * Creates the output storing the frames in this format
+	 * @param directory Directory to which the frames are stored
+	 * @param name Name of the created file, without the extension, or the prefix of the created files
+	 * @param framesPerSecond Number of the frames per second of the video
+	 * @param quality Quality of the lossy compression, between 0 and 1, if the format uses one
+	 * @return The output storing the frames in this format
+	 * @throws IOException When the output file could not be created
+	 */
+	public FrameOutput createOutput(File directory, String name, double framesPerSecond, float quality)
+			throws IOException {
+		switch (this){
+			case MJPEG_VIDEO:
+				return new MjpegAviOutput(new File(directory, name + ".avi"), framesPerSecond, quality);
+			case CHANGED_TILES:
+				return new DeltaFrameOutput(new File(directory, name + "." + DeltaFrameOutput.extension),
+						framesPerSecond);
+			default:
+				return new PngSequenceOutput(directory, name);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
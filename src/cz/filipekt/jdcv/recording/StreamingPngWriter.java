@@ -0,0 +1,257 @@
+package cz.filipekt.jdcv.recording;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image row by row, so that the whole image never has to be held in the memory.
+ * The rows are given as ARGB pixels, they are stored as 8-bit RGB without transparency,
+ * filtered with the "Sub" filter and compressed into a sequence of IDAT chunks.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class StreamingPngWriter implements Closeable {
+
+	/**
+	 * The signature present at the beginning of each PNG file
+	 */
+	private final byte[] signature = new byte[]{(byte)137, 80, 78, 71, 13, 10, 26, 10};
+
+	/**
+	 * Maximal size of the data of an IDAT chunk, in bytes
+	 */
+	private final int chunkSize = 64 * 1024;
+
+	/**
+	 * Number of the bytes per pixel in the stored image
+	 */
+	private final int bytesPerPixel = 3;
+
+	/**
+	 * The PNG file is written into this stream
+	 */
+	private final DataOutputStream output;
+
+	/**
+	 * Width of the image, in pixels
+	 */
+	private final int width;
+
+	/**
+	 * Height of the image, in pixels
+	 */
+	private final int height;
+
+	/**
+	 * Compresses the filtered rows
+	 */
+	private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+	/**
+	 * The filtered rows are written into this stream, which fills the IDAT chunks
+	 */
+	private final DeflaterOutputStream compressed;
+
+	/**
+	 * Holds the current row, filtered, preceded by the filter type
+	 */
+	private final byte[] row;
+
+	/**
+	 * Number of the rows written so far
+	 */
+	private int rowsWritten = 0;
+
+	/**
+	 * Marks whether the file has already been closed
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Collects the compressed data and writes it as a sequence of IDAT chunks
+	 */
+	private class ChunkStream extends OutputStream {
+
+		/**
+		 * Data of the chunk being filled
+		 */
+		private final byte[] buffer = new byte[chunkSize];
+
+		/**
+		 * Number of the bytes of {@link ChunkStream#buffer} in use
+		 */
+		private int count = 0;
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length){
+				flushChunk();
+			}
+			buffer[count++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0){
+				if (count == buffer.length){
+					flushChunk();
+				}
+				int n = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		/**
+		 * Writes the collected data as an IDAT chunk, unless there is none
+		 */
+		private void flushChunk() throws IOException {
+			if (count > 0){
+				writeChunk("IDAT", buffer, count);
+				count = 0;
+			}
+		}
+
+		/**
+		 * Writes the remaining data, the underlying stream stays open
+		 */
+		@Override
+		public void close() throws IOException {
+			flushChunk();
+		}
+	}
+
+	/**
+	 * The remaining compressed data is written into this stream when the file is being closed
+	 */
+	private final ChunkStream chunks = new ChunkStream();
+
+	/**
+	 * @param file The created PNG file. If it exists, it is overwritten.
+	 * @param width Width of the image, in pixels
+	 * @param height Height of the image, in pixels
+	 * @throws IOException When the file could not be created
+	 */
+	public StreamingPngWriter(File file, int width, int height) throws IOException {
+		if ((width <= 0) || (height <= 0)){
+			throw new IllegalArgumentException("The width and the height must be positive.");
+		}
+		if ((long)width * bytesPerPixel + 1 > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("The image is too wide.");
+		}
+		this.width = width;
+		this.height = height;
+		this.row = new byte[width * bytesPerPixel + 1];
+		this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), chunkSize));
+		this.compressed = new DeflaterOutputStream(chunks, deflater, chunkSize);
+		output.write(signature);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8;
+		header[9] = 2;
+		writeChunk("IHDR", header, header.length);
+	}
+
+	/**
+	 * Appends the given rows to the image
+	 * @param pixels The rows, as ARGB pixels. The transparency is ignored.
+	 * @param offset Position of the first pixel of the first row in the array
+	 * @param scanlineStride Distance of the beginnings of two consecutive rows in the array
+	 * @param rows Number of the rows to be appended
+	 * @throws IOException When the rows could not be written
+	 */
+	public void writeRows(int[] pixels, int offset, int scanlineStride, int rows) throws IOException {
+		if (rowsWritten + rows > height){
+			throw new IllegalStateException("The image has only " + height + " rows.");
+		}
+		for (int r = 0; r < rows; r++){
+			int start = offset + (r * scanlineStride);
+			int prevR = 0, prevG = 0, prevB = 0;
+			row[0] = 1;
+			int pos = 1;
+			for (int x = 0; x < width; x++){
+				int pixel = pixels[start + x];
+				int red = (pixel >> 16) & 0xFF;
+				int green = (pixel >> 8) & 0xFF;
+				int blue = pixel & 0xFF;
+				row[pos++] = (byte)(red - prevR);
+				row[pos++] = (byte)(green - prevG);
+				row[pos++] = (byte)(blue - prevB);
+				prevR = red;
+				prevG = green;
+				prevB = blue;
+			}
+			compressed.write(row);
+		}
+		rowsWritten += rows;
+	}
+
+	/**
+	 * @return Number of the rows written so far
+	 */
+	public int getRowsWritten() {
+		return rowsWritten;
+	}
+
+	/**
+	 * Completes the image and closes the file
+	 * @throws IOException When not all the rows have been written, or the file could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed){
+			return;
+		}
+		closed = true;
+		try {
+			compressed.finish();
+			chunks.close();
+			writeChunk("IEND", new byte[0], 0);
+		} finally {
+			deflater.end();
+			output.close();
+		}
+		if (rowsWritten < height){
+			throw new IOException("Only " + rowsWritten + " of " + height + " rows have been written.");
+		}
+	}
+
+	/**
+	 * Writes a chunk of the given type, followed by its checksum
+	 * @param type Type of the chunk
+	 * @param data Holds the data of the chunk
+	 * @param length Size of the data of the chunk, in bytes
+	 */
+	private void writeChunk(String type, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+		output.writeInt(length);
+		output.write(typeBytes);
+		output.write(data, 0, length);
+		output.writeInt((int)crc.getValue());
+	}
+
+	/**
+	 * Stores the value into the array, in the big endian order
+	 */
+	private static void putInt(byte[] array, int at, int value){
+		array[at] = (byte)(value >>> 24);
+		array[at + 1] = (byte)(value >>> 16);
+		array[at + 2] = (byte)(value >>> 8);
+		array[at + 3] = (byte)value;
+	}
+}
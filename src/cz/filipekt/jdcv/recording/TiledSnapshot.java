@@ -0,0 +1,335 @@
+package cz.filipekt.jdcv.recording;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.geometry.Rectangle2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.transform.Scale;
+import cz.filipekt.jdcv.MapScene;
+
+/**
+ * Stores an image of the map at an arbitrary scale into a PNG file.
+ * The map is rendered in square tiles, each of them small enough to fit into a texture,
+ * and all of them are snapshot into the same {@link WritableImage}. The tiles of one row
+ * form a band, which is handed to a background thread that appends it to the PNG file.
+ * Only two bands exist at a time, so the whole image never has to be held in the memory.
+ * The tiles are rendered on the JavaFX application thread, a few of them in each pulse,
+ * so that the application stays responsive.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class TiledSnapshot {
+
+	/**
+	 * Size of the side of a tile, in pixels
+	 */
+	private final int tileSize = 512;
+
+	/**
+	 * In each pulse, tiles are rendered for at most this long, in nanoseconds
+	 */
+	private final long pulseBudget = 30L * 1000L * 1000L;
+
+	/**
+	 * The scene whose map is rendered
+	 */
+	private final MapScene scene;
+
+	/**
+	 * Width of the resulting image, in pixels
+	 */
+	private final int width;
+
+	/**
+	 * Height of the resulting image, in pixels
+	 */
+	private final int height;
+
+	/**
+	 * Number of the tiles in a row
+	 */
+	private final int columns;
+
+	/**
+	 * Number of the rows of tiles
+	 */
+	private final int rows;
+
+	/**
+	 * Parameters of the snapshots; the viewport is moved to each tile in turn
+	 */
+	private final SnapshotParameters snapshotParameters = new SnapshotParameters();
+
+	/**
+	 * Reused as the target of the snapshots of the tiles
+	 */
+	private WritableImage tileImage;
+
+	/**
+	 * The bands which are not in use
+	 */
+	private final BlockingQueue<int[]> freeBands = new ArrayBlockingQueue<>(2);
+
+	/**
+	 * The band being filled with the rendered tiles
+	 */
+	private int[] band;
+
+	/**
+	 * Index of the next tile to be rendered, counting the tiles row by row
+	 */
+	private int nextTile = 0;
+
+	/**
+	 * Appends the completed bands to the PNG file
+	 */
+	private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "snapshot-writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * Writes the PNG file, or null if the rendering has not started yet
+	 */
+	private StreamingPngWriter png;
+
+	/**
+	 * The resulting PNG file
+	 */
+	private File file;
+
+	/**
+	 * The fraction of the tiles which have been rendered
+	 */
+	private final ReadOnlyDoubleWrapper progress = new ReadOnlyDoubleWrapper(0);
+
+	/**
+	 * Called on the JavaFX application thread when the file has been completed or the rendering cancelled
+	 */
+	private Runnable onFinished;
+
+	/**
+	 * Marks whether the rendering has been cancelled
+	 */
+	private boolean cancelled = false;
+
+	/**
+	 * Marks whether the rendering has already finished or been cancelled
+	 */
+	private boolean finished = false;
+
+	/**
+	 * Marks whether the static layer mode was on before the rendering started
+	 */
+	private boolean wasStaticLayerMode;
+
+	/**
+	 * The first problem encountered when writing the file, or null
+	 */
+	private volatile IOException error;
+
+	/**
+	 * Renders the tiles, a few of them in each pulse
+	 */
+	private final AnimationTimer timer = new AnimationTimer() {
+
+		@Override
+		public void handle(long now) {
+			long start = System.nanoTime();
+			int tileCount = columns * rows;
+			while ((nextTile < tileCount) && ((System.nanoTime() - start) < pulseBudget)){
+				try {
+					renderTile(nextTile);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					cancel();
+					return;
+				}
+				nextTile++;
+			}
+			progress.set(nextTile / (double)tileCount);
+			if (nextTile >= tileCount){
+				finish();
+			}
+		}
+	};
+
+	/**
+	 * @param scene The scene whose map is rendered
+	 * @param scale The map is rendered this many times larger than its original size
+	 */
+	public TiledSnapshot(MapScene scene, double scale) {
+		if (scale <= 0){
+			throw new IllegalArgumentException("The scale must be positive.");
+		}
+		this.scene = scene;
+		long w = Math.round(scene.getOriginalMapWidth() * scale);
+		long h = Math.round(scene.getOriginalMapHeight() * scale);
+		if ((w <= 0) || (h <= 0) || (w * tileSize > Integer.MAX_VALUE) || (h > Integer.MAX_VALUE)){
+			throw new IllegalArgumentException("The resulting image would be too large or empty.");
+		}
+		this.width = (int)w;
+		this.height = (int)h;
+		this.columns = (width + tileSize - 1) / tileSize;
+		this.rows = (height + tileSize - 1) / tileSize;
+		double relativeScale = scale / scene.getZoom();
+		snapshotParameters.setTransform(new Scale(relativeScale, relativeScale));
+	}
+
+	/**
+	 * @return Width of the resulting image, in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return Height of the resulting image, in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return The fraction of the tiles which have been rendered
+	 */
+	public ReadOnlyDoubleProperty progressProperty(){
+		return progress.getReadOnlyProperty();
+	}
+
+	/**
+	 * @return True if the rendering has been cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return The first problem encountered when writing the file, or null
+	 */
+	public IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Starts the rendering. The time line should be paused. The static layer mode is
+	 * switched off for the whole time, so that the map is drawn from the shapes themselves.
+	 * @param file The resulting PNG file. If it exists, it is overwritten.
+	 * @param onFinished Called on the JavaFX application thread when the file has been
+	 * completed or the rendering cancelled. May be null.
+	 * @throws IOException When the file could not be created
+	 */
+	public void start(File file, Runnable onFinished) throws IOException {
+		this.file = file;
+		this.onFinished = onFinished;
+		png = new StreamingPngWriter(file, width, height);
+		freeBands.add(new int[width * tileSize]);
+		freeBands.add(new int[width * tileSize]);
+		band = freeBands.poll();
+		wasStaticLayerMode = scene.isStaticLayerMode();
+		scene.setStaticLayerMode(false);
+		nextTile = 0;
+		timer.start();
+	}
+
+	/**
+	 * Stops the rendering before all the tiles have been rendered; the incomplete file is deleted
+	 */
+	public void cancel(){
+		cancelled = true;
+		finish();
+	}
+
+	/**
+	 * Snapshots the given tile into the {@link TiledSnapshot#band}. When the band is
+	 * completed, it is handed to the {@link TiledSnapshot#writer}.
+	 * @param tile Index of the tile, counting the tiles row by row
+	 * @throws InterruptedException When interrupted while waiting for a free band
+	 */
+	private void renderTile(int tile) throws InterruptedException {
+		int column = tile % columns;
+		int row = tile / columns;
+		int x = column * tileSize;
+		int y = row * tileSize;
+		int w = Math.min(tileSize, width - x);
+		int h = Math.min(tileSize, height - y);
+		snapshotParameters.setViewport(new Rectangle2D(x, y, w, h));
+		tileImage = scene.getMapContainer().snapshot(snapshotParameters, tileImage);
+		tileImage.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), band, x, width);
+		if (column == columns - 1){
+			final int[] completed = band;
+			final int bandHeight = h;
+			writer.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						if (error == null){
+							png.writeRows(completed, 0, width, bandHeight);
+						}
+					} catch (IOException ex) {
+						error = ex;
+					} finally {
+						freeBands.add(completed);
+					}
+				}
+			});
+			band = (row == rows - 1) ? null : freeBands.take();
+		}
+	}
+
+	/**
+	 * Restores the original state of the scene and lets the {@link TiledSnapshot#writer}
+	 * complete the file, or delete it if the rendering has been cancelled
+	 */
+	private void finish(){
+		if ((png == null) || finished){
+			return;
+		}
+		finished = true;
+		timer.stop();
+		scene.setStaticLayerMode(wasStaticLayerMode);
+		tileImage = null;
+		band = null;
+		final boolean deleteFile = cancelled;
+		writer.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					png.close();
+				} catch (IOException ex) {
+					if (!deleteFile && (error == null)){
+						error = ex;
+					}
+				}
+				if (deleteFile){
+					file.delete();
+				}
+				final Runnable callback = onFinished;
+				onFinished = null;
+				if (callback != null){
+					Platform.runLater(callback);
+				}
+			}
+		});
+		writer.shutdown();
+	}
+}
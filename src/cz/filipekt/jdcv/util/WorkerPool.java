@@ -0,0 +1,173 @@
+package cz.filipekt.jdcv.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of worker threads, used to prepare the scene data in parallel,
+ * outside of the JavaFX application thread.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class WorkerPool {
+
+	/**
+	 * Processes a single item of the input
+	 *
+	 * @param <T> Type of the input items
+	 * @param <R> Type of the results
+	 */
+	public static interface Job<T,R> {
+
+		/**
+		 * @param item The item to be processed
+		 * @return The result of processing of the item
+		 * @throws IOException When the item could not be processed because
+		 * of a problem with reading the resources
+		 */
+		R process(T item) throws IOException;
+	}
+
+	/**
+	 * Notified about the progress of a long running operation
+	 */
+	public static interface ProgressListener {
+
+		/**
+		 * @param progress The fraction of the work which has been done, between 0 and 1
+		 */
+		void progressChanged(double progress);
+	}
+
+	/**
+	 * Number of worker threads
+	 */
+	private static final int threadsCount = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Into how many chunks is the input split, per worker thread
+	 */
+	private static final int chunksPerThread = 4;
+
+	/**
+	 * Marks the worker threads, so that a nested call to
+	 * {@link WorkerPool#map(List, Job, ProgressListener)} does not wait for itself.
+	 */
+	private static final ThreadLocal<Boolean> isWorker = new ThreadLocal<Boolean>(){
+
+		@Override
+		protected Boolean initialValue() {
+			return Boolean.FALSE;
+		}
+	};
+
+	/**
+	 * The worker threads
+	 */
+	private static final ExecutorService executor = Executors.newFixedThreadPool(threadsCount, new ThreadFactory() {
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					isWorker.set(Boolean.TRUE);
+					r.run();
+				}
+			}, "scene-worker");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * This class only contains static methods, so its instantiation is forbidden
+	 */
+	private WorkerPool(){}
+
+	/**
+	 * Processes the given items in parallel, using the worker threads. Blocks until
+	 * all of the items have been processed.
+	 * @param items The items to be processed
+	 * @param job Processes a single item. Must be safe to be called from multiple threads at once.
+	 * @param listener Notified about the progress, from the worker threads, one call at a time.
+	 * The reported progress never decreases. May be null.
+	 * @return The results of processing of the items, in the same order as the items
+	 * @throws IOException When any of the items could not be processed
+	 */
+	public static <T,R> List<R> map(final List<T> items, final Job<T,R> job,
+			final ProgressListener listener) throws IOException {
+		final int size = items.size();
+		if ((size == 0) || isWorker.get()){
+			List<R> res = new ArrayList<>(size);
+			for (T item : items){
+				res.add(job.process(item));
+			}
+			return res;
+		}
+		int chunkSize = Math.max(1, (size + (threadsCount * chunksPerThread) - 1) / (threadsCount * chunksPerThread));
+		final AtomicInteger processed = new AtomicInteger();
+		final AtomicInteger reported = new AtomicInteger();
+		List<Future<List<R>>> futures = new ArrayList<>();
+		for (int start = 0; start < size; start += chunkSize){
+			final List<T> chunk = items.subList(start, Math.min(size, start + chunkSize));
+			futures.add(executor.submit(new Callable<List<R>>() {
+
+				@Override
+				public List<R> call() throws IOException {
+					List<R> res = new ArrayList<>(chunk.size());
+					for (T item : chunk){
+						res.add(job.process(item));
+					}
+					processed.addAndGet(chunk.size());
+					if (listener != null){
+						synchronized (reported){
+							int done = processed.get();
+							if (done > reported.get()){
+								reported.set(done);
+								listener.progressChanged((double)done / size);
+							}
+						}
+					}
+					return res;
+				}
+			}));
+		}
+		List<R> res = new ArrayList<>(size);
+		try {
+			for (Future<List<R>> future : futures){
+				res.addAll(future.get());
+			}
+		} catch (InterruptedException ex){
+			for (Future<List<R>> future : futures){
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new IOException(ex);
+		} catch (ExecutionException ex){
+			for (Future<List<R>> future : futures){
+				future.cancel(true);
+			}
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException){
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException){
+				throw (RuntimeException)cause;
+			} else if (cause instanceof Error){
+				throw (Error)cause;
+			} else {
+				throw new IOException(cause);
+			}
+		}
+		return res;
+	}
+}
@@ -0,0 +1,544 @@
+package cz.filipekt.jdcv.xml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.xml.sax.SAXException;
+
+import cz.cuni.mff.d3s.deeco.runtimelog.EnsembleLogRecord;
+import cz.filipekt.jdcv.events.EnsembleEvent;
+import cz.filipekt.jdcv.exceptions.InvalidAttributeValueException;
+import cz.filipekt.jdcv.exceptions.TooManyEvents;
+
+/**
+ * Streaming parser of the ensemble event log, a faster alternative to {@link EnsembleHandler}.
+ * The log is scanned as raw bytes. The "event" elements of other types than
+ * {@link EnsembleLogRecord} and those outside of the selected time interval are skipped
+ * without creating any strings. The identifiers of the agents and ensembles are shared
+ * among the created events.
+ * Works with the character encodings in which the XML markup is encoded as ASCII,
+ * such as UTF-8 or ISO-8859-*, see {@link EnsembleLogParser#supports(Charset)}.
+ *
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class EnsembleLogParser {
+
+	/**
+	 * Name of the event element
+	 */
+	private final String eventName = "event";
+
+	/**
+	 * Beginning of the event element
+	 */
+	private final byte[] eventStart = ascii("<event");
+
+	/**
+	 * End of the event element
+	 */
+	private final byte[] eventEnd = ascii("</event>");
+
+	/**
+	 * Name of the type attribute of the event element
+	 */
+	private final byte[] typeName = ascii("eventType");
+
+	/**
+	 * Expected value of the type attribute of the event element. Events of
+	 * different types are skipped.
+	 */
+	private final byte[] expectedTypeValue = ascii(EnsembleLogRecord.class.getCanonicalName());
+
+	/**
+	 * Name of the time attribute of the event element
+	 */
+	private final byte[] timeName = ascii("time");
+
+	/**
+	 * Name of the coordinator sub-element of the event element
+	 */
+	private final String coordinatorName = "coordinatorID";
+
+	/**
+	 * Name of the member sub-element of the event element
+	 */
+	private final String memberName = "memberID";
+
+	/**
+	 * Name of the ensemble sub-element of the event element
+	 */
+	private final String ensembleName = "ensembleName";
+
+	/**
+	 * Name of the membership sub-element of the event element
+	 */
+	private final String membershipName = "membership";
+
+	/**
+	 * Size of the chunks in which the input is read
+	 */
+	private final int chunkSize = 64 * 1024;
+
+	/**
+	 * Maximal allowed number of event elements in the selection
+	 */
+	private final long countLimit = 600_000L;
+
+	/**
+	 * Only events starting from this time on are taken into account.
+	 * If null, no such constraint is applied.
+	 */
+	private final Double startAt;
+
+	/**
+	 * Only the events ending before this time are taken into account.
+	 * If null, no such constraint is applied.
+	 */
+	private final Double endAt;
+
+	/**
+	 * Holds the bytes which have been read but not parsed yet
+	 */
+	private byte[] buffer = new byte[chunkSize];
+
+	/**
+	 * Position of the first unparsed byte in {@link EnsembleLogParser#buffer}
+	 */
+	private int position = 0;
+
+	/**
+	 * Number of valid bytes in {@link EnsembleLogParser#buffer}
+	 */
+	private int limit = 0;
+
+	/**
+	 * Character encoding of the parsed log
+	 */
+	private Charset charset;
+
+	/**
+	 * Makes sure that equal identifiers are represented by a single string instance
+	 */
+	private final Map<String,String> identifiers = new HashMap<>();
+
+	/**
+	 * Storage for the parsed event elements
+	 */
+	private final List<EnsembleEvent> events = new ArrayList<>();
+
+	/**
+	 * Number of event elements encountered
+	 */
+	private long count = 0;
+
+	/**
+	 * @param startAt Only events starting from this time on are taken into account.
+	 * If null, no such constraint is applied.
+	 * @param endAt Only the events ending before this time are taken into account.
+	 * If null, no such constraint is applied.
+	 */
+	public EnsembleLogParser(Double startAt, Double endAt) {
+		this.startAt = startAt;
+		this.endAt = endAt;
+	}
+
+	/**
+	 * @param charset A character encoding
+	 * @return True if and only if the logs in the given encoding can be parsed by this class
+	 */
+	public static boolean supports(Charset charset){
+		String sample = "<event time=\"1.5\"></event>";
+		return Arrays.equals(sample.getBytes(StandardCharsets.US_ASCII), sample.getBytes(charset));
+	}
+
+	/**
+	 * @param text A text containing only ASCII characters
+	 * @return The text encoded in ASCII
+	 */
+	private static byte[] ascii(String text){
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Parses the ensemble event log
+	 * @param stream The ensemble event log. It is not closed by this method.
+	 * @param charset Character encoding of the log. Must be supported, see
+	 * {@link EnsembleLogParser#supports(Charset)}.
+	 * @return The ensemble events, in the order in which they appear in the log
+	 * @throws IOException When the log could not be read
+	 * @throws SAXException When some of the ensemble events is malformed
+	 */
+	public List<EnsembleEvent> parse(InputStream stream, Charset charset) throws IOException, SAXException {
+		this.charset = charset;
+		while (true){
+			int start = indexOf(eventStart, position);
+			if (start < 0){
+				position = Math.max(position, limit - eventStart.length + 1);
+				if (!fill(stream)){
+					return events;
+				}
+				continue;
+			}
+			position = start;
+			int elementEnd = findElementEnd();
+			if (elementEnd == incompleteElement){
+				if (!fill(stream)){
+					return events;
+				}
+			} else if (elementEnd == notEventElement){
+				position = start + eventStart.length;
+			} else {
+				parseEvent(start + eventStart.length, tagEnd, elementEnd);
+				position = elementEnd;
+			}
+		}
+	}
+
+	/**
+	 * Returned by {@link EnsembleLogParser#findElementEnd()} when the element does not
+	 * fit into the {@link EnsembleLogParser#buffer}
+	 */
+	private final int incompleteElement = -1;
+
+	/**
+	 * Returned by {@link EnsembleLogParser#findElementEnd()} when the element at
+	 * {@link EnsembleLogParser#position} is not an event element
+	 */
+	private final int notEventElement = -2;
+
+	/**
+	 * Position of the '>' character which ends the start tag of the element
+	 * last examined by {@link EnsembleLogParser#findElementEnd()}
+	 */
+	private int tagEnd;
+
+	/**
+	 * Finds the end of the element which starts at {@link EnsembleLogParser#position}
+	 * @return Position of the first byte after the element, or one of 
+	 * {@link EnsembleLogParser#incompleteElement}, {@link EnsembleLogParser#notEventElement}
+	 */
+	private int findElementEnd(){
+		int afterName = position + eventStart.length;
+		if (afterName >= limit){
+			return incompleteElement;
+		}
+		byte next = buffer[afterName];
+		if (!isWhitespace(next) && (next != '>') && (next != '/')){
+			return notEventElement;
+		}
+		tagEnd = indexOf((byte)'>', afterName);
+		if (tagEnd < 0){
+			return incompleteElement;
+		}
+		if (buffer[tagEnd - 1] == '/'){
+			return tagEnd + 1;
+		}
+		int closing = indexOf(eventEnd, tagEnd);
+		if (closing < 0){
+			return incompleteElement;
+		}
+		return closing + eventEnd.length;
+	}
+
+	/**
+	 * Parses a single event element, which is fully contained in the {@link EnsembleLogParser#buffer}
+	 * @param attributesStart Position of the first byte after the element name
+	 * @param tagEnd Position of the '>' character which ends the start tag
+	 * @param elementEnd Position of the first byte after the element
+	 * @throws SAXException When the ensemble event is malformed
+	 */
+	private void parseEvent(int attributesStart, int tagEnd, int elementEnd) throws SAXException {
+		count += 1;
+		if (count > countLimit) {
+			String message = "The selection contains too many <event> elements. "
+					+ "Please specify a selection of the log file which contains at most " + countLimit
+					+ " elements.";
+			throw new SAXException(new TooManyEvents(message));
+		}
+		int typeValue = findAttribute(typeName, attributesStart, tagEnd);
+		if ((typeValue < 0) || !matches(expectedTypeValue, typeValue) ||
+				(buffer[typeValue + expectedTypeValue.length] != buffer[typeValue - 1])){
+			return;
+		}
+		int timeValue = findAttribute(timeName, attributesStart, tagEnd);
+		if (timeValue < 0){
+			Utils.ensureNonNullAndNonEmptyAttr(eventName, "time", null);
+		}
+		double time;
+		try {
+			time = parseDouble(timeValue, indexOf(buffer[timeValue - 1], timeValue));
+		} catch (NumberFormatException ex) {
+			throw new SAXException(new InvalidAttributeValueException(
+					"Time attribute of the ensemble event must be in the \"double precision\" format."));
+		}
+		if ((startAt != null) && (startAt > time)) {
+			return;
+		}
+		if ((endAt != null) && (endAt < time)) {
+			return;
+		}
+		EnsembleEvent event = new EnsembleEvent(time);
+		int index = tagEnd + 1;
+		while (index < elementEnd){
+			int open = indexOf((byte)'<', index);
+			if ((open < 0) || (open >= elementEnd)){
+				break;
+			}
+			int nameEnd = open + 1;
+			while ((nameEnd < elementEnd) && !isWhitespace(buffer[nameEnd]) &&
+					(buffer[nameEnd] != '>') && (buffer[nameEnd] != '/')){
+				nameEnd++;
+			}
+			int close = indexOf((byte)'>', nameEnd);
+			int textEnd = indexOf((byte)'<', close + 1);
+			if ((buffer[open + 1] != '/') && (buffer[close - 1] != '/') && (textEnd > close)){
+				setProperty(event, new String(buffer, open + 1, nameEnd - open - 1, charset),
+						close + 1, textEnd);
+			}
+			index = close + 1;
+		}
+		events.add(event);
+	}
+
+	/**
+	 * Sets the property of the event corresponding to the given sub-element
+	 * @param event The event being parsed
+	 * @param name Name of the sub-element
+	 * @param textStart Position of the first byte of the sub-element text
+	 * @param textEnd Position of the first byte after the sub-element text
+	 * @throws SAXException When the value of the sub-element is invalid
+	 */
+	private void setProperty(EnsembleEvent event, String name, int textStart, int textEnd) throws SAXException {
+		switch (name){
+			case coordinatorName:
+				event.setCoordinator(getIdentifier(name, textStart, textEnd));
+				break;
+			case memberName:
+				event.setMember(getIdentifier(name, textStart, textEnd));
+				break;
+			case ensembleName:
+				event.setEnsemble(getIdentifier(name, textStart, textEnd));
+				break;
+			case membershipName:
+				String val = getText(textStart, textEnd);
+				Utils.ensureNonNullAndNonEmptyAttr(eventName, membershipName, val);
+				switch (val) {
+					case "true":
+						event.setMembership(true);
+						break;
+					case "false":
+						event.setMembership(false);
+						break;
+					default:
+						throw new SAXException(new InvalidAttributeValueException(
+								"Membership attribute in the ensemble event element has only two allowed values: true, false."));
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * @param name Name of the sub-element holding the identifier
+	 * @param textStart Position of the first byte of the identifier
+	 * @param textEnd Position of the first byte after the identifier
+	 * @return The identifier, shared with the other events
+	 * @throws SAXException When the identifier is empty
+	 */
+	private String getIdentifier(String name, int textStart, int textEnd) throws SAXException {
+		String val = getText(textStart, textEnd);
+		Utils.ensureNonNullAndNonEmptyAttr(eventName, name, val);
+		String shared = identifiers.get(val);
+		if (shared == null){
+			identifiers.put(val, val);
+			shared = val;
+		}
+		return shared;
+	}
+
+	/**
+	 * @param textStart Position of the first byte of the text
+	 * @param textEnd Position of the first byte after the text
+	 * @return The decoded text, with the predefined XML entities replaced
+	 */
+	private String getText(int textStart, int textEnd){
+		String text = new String(buffer, textStart, textEnd - textStart, charset);
+		if (text.indexOf('&') >= 0){
+			text = text.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"")
+					.replace("&apos;", "'").replace("&amp;", "&");
+		}
+		return text;
+	}
+
+	/**
+	 * Finds the value of the given attribute in a start tag
+	 * @param name Name of the attribute
+	 * @param from Position where the attributes start
+	 * @param to Position of the end of the start tag
+	 * @return Position of the first byte of the attribute value, or -1 if the attribute is missing
+	 */
+	private int findAttribute(byte[] name, int from, int to){
+		int index = from;
+		while (index < to){
+			while ((index < to) && isWhitespace(buffer[index])){
+				index++;
+			}
+			int nameStart = index;
+			while ((index < to) && (buffer[index] != '=') && !isWhitespace(buffer[index])){
+				index++;
+			}
+			int nameEnd = index;
+			while ((index < to) && (buffer[index] != '"') && (buffer[index] != '\'')){
+				index++;
+			}
+			if (index >= to){
+				return -1;
+			}
+			byte quote = buffer[index];
+			int valueStart = index + 1;
+			int valueEnd = indexOf(quote, valueStart);
+			if ((valueEnd < 0) || (valueEnd > to)){
+				return -1;
+			}
+			if (((nameEnd - nameStart) == name.length) && matches(name, nameStart)){
+				return valueStart;
+			}
+			index = valueEnd + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return True if and only if the {@link EnsembleLogParser#buffer} contains the
+	 * given bytes at the given position
+	 */
+	private boolean matches(byte[] pattern, int at){
+		if ((at + pattern.length) > limit){
+			return false;
+		}
+		for (int i = 0; i < pattern.length; i++){
+			if (buffer[at + i] != pattern[i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a decimal number from the {@link EnsembleLogParser#buffer}.
+	 * Plain numbers are parsed without creating a string.
+	 * @param from Position of the first byte of the number
+	 * @param to Position of the first byte after the number
+	 * @return The parsed number
+	 * @throws NumberFormatException When the bytes do not form a number
+	 */
+	private double parseDouble(int from, int to){
+		int index = from;
+		boolean negative = false;
+		if ((index < to) && ((buffer[index] == '-') || (buffer[index] == '+'))){
+			negative = buffer[index] == '-';
+			index++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for (; index < to; index++){
+			byte b = buffer[index];
+			if ((b >= '0') && (b <= '9')){
+				mantissa = mantissa * 10 + (b - '0');
+				digits++;
+				if (fraction){
+					scale++;
+				}
+			} else if ((b == '.') && !fraction){
+				fraction = true;
+			} else {
+				digits = -1;
+				break;
+			}
+		}
+		if ((digits <= 0) || (digits > maxExactDigits)){
+			return Double.parseDouble(new String(buffer, from, to - from, StandardCharsets.US_ASCII));
+		}
+		double res = mantissa / powersOfTen[scale];
+		return negative ? -res : res;
+	}
+
+	/**
+	 * Numbers with at most this many digits are parsed by {@link EnsembleLogParser#parseDouble(int, int)}
+	 * directly, as both the digits and the scale are exactly representable in a double
+	 */
+	private final int maxExactDigits = 15;
+
+	/**
+	 * Powers of ten, from 10^0 to 10^{@link EnsembleLogParser#maxExactDigits}
+	 */
+	private final double[] powersOfTen = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+			1e10, 1e11, 1e12, 1e13, 1e14, 1e15};
+
+	/**
+	 * @return Position of the first occurrence of the given byte at or after the given
+	 * position in {@link EnsembleLogParser#buffer}, or -1
+	 */
+	private int indexOf(byte value, int from){
+		for (int i = from; i < limit; i++){
+			if (buffer[i] == value){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return Position of the first occurrence of the given bytes at or after the given
+	 * position in {@link EnsembleLogParser#buffer}, or -1
+	 */
+	private int indexOf(byte[] pattern, int from){
+		int last = limit - pattern.length;
+		for (int i = from; i <= last; i++){
+			if (buffer[i] == pattern[0] && matches(pattern, i)){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return True if and only if the given byte is an XML white space character
+	 */
+	private boolean isWhitespace(byte b){
+		return (b == ' ') || (b == '\t') || (b == '\n') || (b == '\r');
+	}
+
+	/**
+	 * Reads the next chunk of the input into the {@link EnsembleLogParser#buffer}.
+	 * The bytes before {@link EnsembleLogParser#position} are discarded first, and
+	 * the rest is moved to the beginning of the buffer.
+	 * @return False if the end of the input has been reached
+	 */
+	private boolean fill(InputStream stream) throws IOException {
+		if (position > 0){
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length){
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+		int read = stream.read(buffer, limit, buffer.length - limit);
+		if (read < 0){
+			return false;
+		}
+		limit += read;
+		return true;
+	}
+}
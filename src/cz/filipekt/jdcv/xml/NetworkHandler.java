@@ -0,0 +1,102 @@
+package cz.filipekt.jdcv.xml;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+
+import cz.cuni.mff.d3s.jdeeco.visualizer.network.MatsimNetworkHandler;
+import cz.filipekt.jdcv.exceptions.NodeNotFoundException;
+import cz.filipekt.jdcv.network.MyLink;
+import cz.filipekt.jdcv.network.MyLinkBuilder;
+import cz.filipekt.jdcv.network.MyNode;
+
+/**
+ * SAX handler used to parse the XML file containing the network(map) description.
+ * Collects the "node" and the "link" elements in a single pass through the file.
+ * The attributes are parsed by {@link MatsimNetworkHandler}, which is shared with
+ * the jDEECo network model.
+ * 
+ * @author Tomas Filipek <tom.filipek@seznam.cz>
+ */
+public class NetworkHandler extends MatsimNetworkHandler {
+	
+	/**
+	 * Name of the link attribute containing the comma-separated list of 
+	 * transportation modes that are allowed on this link.
+	 */
+	private final String modesName = "modes";
+	
+	/**
+	 * Contains the {@link MyNode} representations of the encountered "node" elements.
+	 */
+	private final Map<String,MyNode> nodes = new HashMap<>();
+	
+	/**
+	 * Contains the {@link MyLink} representations of the encountered "link" elements.
+	 */
+	private final Map<String,MyLink> links = new HashMap<>();
+
+	/**
+	 * @return the {@link MyNode} representations of the encountered "node" elements.
+	 * @see {@link NetworkHandler#nodes}
+	 */
+	public Map<String, MyNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return The {@link MyLink} representations of the encountered "link" elements.
+	 * @see {@link NetworkHandler#links}
+	 */
+	public Map<String, MyLink> getLinks() {
+		return links;
+	}
+
+	/**
+	 * Creates a {@link MyNode} representation of the "node" element 
+	 * and places it in the {@link NetworkHandler#nodes} map.
+	 */
+	@Override
+	protected void node(String id, double x, double y, Attributes attributes) throws SAXException {
+		nodes.put(id, new MyNode(id, x, y));
+	}
+
+	/**
+	 * Creates a {@link MyLink} representation of the "link" element 
+	 * and places it in the {@link NetworkHandler#links} map.
+	 * The "node" elements the link refers to have already been collected.
+	 * @throws SAXException When the link refers to a node that has not been encountered.
+	 */
+	@Override
+	protected void link(String id, String from, String to, double length, double freeSpeed, 
+			double capacity, double permLanes, Attributes attributes) throws SAXException {
+		MyNode fromNode = nodes.get(from);
+		MyNode toNode = nodes.get(to);
+		if ((fromNode==null) || (toNode==null)){
+			throw new SAXException(new NodeNotFoundException());
+		}
+		MyLinkBuilder linkBuilder = new MyLinkBuilder();
+		linkBuilder.setId(id);
+		linkBuilder.setFrom(fromNode);
+		linkBuilder.setTo(toNode);
+		linkBuilder.setLength(length);
+		if (!Double.isNaN(freeSpeed)){
+			linkBuilder.setFreespeed(freeSpeed);
+		}
+		if (!Double.isNaN(capacity)){
+			linkBuilder.setCapacity(capacity);
+		}
+		if (!Double.isNaN(permLanes)){
+			linkBuilder.setNumberOfLanes(permLanes);
+		}
+		String modes = getOptional(attributes, modesName);
+		if (modes != null){
+			linkBuilder.setAllowedModes(modes.split(","));
+		}
+		MyLink link = linkBuilder.build();
+		links.put(link.getId(), link);
+	}
+	
+}
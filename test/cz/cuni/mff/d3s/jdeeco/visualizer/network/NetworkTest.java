@@ -1,12 +1,31 @@
 package cz.cuni.mff.d3s.jdeeco.visualizer.network;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -65,6 +84,1204 @@ public class NetworkTest {
 		assertTrue(validateWithDTD(pathToCreatedFile));
 	}
 
+	@Test
+	public void testAdjacencyIndex() {
+		network = new Network();
+		int width = 6;
+		int height = 4;
+
+		Node.resetIdReference();
+		createAndAttachNodes(width, height);
+		createAndAttachLinks(width, height);
+		assertAdjacencyConsistent();
+
+		Node corner = getNode(0);
+		assertEquals(3, network.getLinksFrom(corner).size());
+		assertEquals(0, network.getLinksTo(corner).size());
+		assertEquals(3, network.getSuccessors(corner).size());
+	}
+
+	@Test
+	public void testAdjacencyIndexAfterRemoval() {
+		network = new Network();
+		int width = 6;
+		int height = 4;
+
+		Node.resetIdReference();
+		createAndAttachNodes(width, height);
+		createAndAttachLinks(width, height);
+
+		Node removed = getNode(9);
+		Set<Link> incident = new HashSet<>(network.getIncidentLinks(removed));
+		assertFalse(incident.isEmpty());
+		assertTrue(network.removeNode(removed));
+		for (Link link : incident) {
+			assertFalse(network.getLinks().contains(link));
+		}
+		assertTrue(network.getIncidentLinks(removed).isEmpty());
+
+		Link someLink = network.getLinksFrom(getNode(0)).iterator().next();
+		assertTrue(network.removeLink(someLink));
+		assertFalse(network.removeLink(someLink));
+		assertAdjacencyConsistent();
+
+		assertTrue(network.addLink(someLink));
+		assertAdjacencyConsistent();
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testLinksFromIsUnmodifiable() {
+		network = new Network();
+
+		Node.resetIdReference();
+		createAndAttachNodes(2, 2);
+		createAndAttachLinks(2, 2);
+
+		Node node = getNode(0);
+		network.getLinksFrom(node).add(new Link(node, getNode(3)));
+	}
+
+	@Test
+	public void testRouterMatchesDijkstra() {
+		network = new Network();
+		Node[] grid = createRandomGrid(network, 12, 9, 42);
+		Router router = new Router(network);
+		Random random = new Random(7);
+
+		for (int i = 0; i < 200; i++) {
+			Node source = grid[random.nextInt(grid.length)];
+			Node target = grid[random.nextInt(grid.length)];
+			double expected = getPathLength(Dijkstra.getShortestPath(network, source, target));
+			List<Link> dijkstraPath = router.getShortestPath(source, target);
+			List<Link> aStarPath = router.getShortestPathAStar(source, target);
+			assertPathConnects(dijkstraPath, source, target);
+			assertPathConnects(aStarPath, source, target);
+			assertEquals(expected, getPathLength(dijkstraPath), 1e-9);
+			assertEquals(expected, getPathLength(aStarPath), 1e-9);
+			assertEquals(expected, router.getDistance(source, target), 1e-9);
+		}
+	}
+
+	@Test
+	public void testRouterWithoutPath() {
+		network = new Network();
+
+		Node.resetIdReference();
+		createAndAttachNodes(3, 3);
+		createAndAttachLinks(3, 3);
+		Node isolated = new Node(10, 10);
+		network.addNode(isolated);
+		Router router = new Router(network);
+
+		Node corner = getNode(0);
+		assertTrue(router.getShortestPath(corner, isolated).isEmpty());
+		assertTrue(router.getShortestPathAStar(corner, isolated).isEmpty());
+		assertEquals(Double.POSITIVE_INFINITY, router.getDistance(corner, isolated), 0);
+		// the links of the square network lead away from the corner only
+		assertTrue(router.getShortestPath(getNode(8), corner).isEmpty());
+		assertTrue(router.getShortestPath(corner, corner).isEmpty());
+		assertEquals(0, router.getDistance(corner, corner), 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRouterRejectsUnknownNode() {
+		network = new Network();
+
+		Node.resetIdReference();
+		createAndAttachNodes(2, 2);
+		Router router = new Router(network);
+		router.getShortestPath(getNode(0), new Node(5, 5));
+	}
+
+	@Test
+	public void testRouterWithLinkShorterThanDistance() {
+		network = new Network();
+		Node[] grid = createRandomGrid(network, 8, 8, 11);
+		// a shortcut across the whole grid, much shorter than the distance of its end nodes
+		Node first = grid[0];
+		Node last = grid[grid.length - 1];
+		double dx = first.getX() - last.getX();
+		double dy = first.getY() - last.getY();
+		double chord = Math.sqrt(dx * dx + dy * dy);
+		network.addLink(new Link(first, last, chord / 10));
+		Router router = new Router(network);
+		assertEquals(0.1, router.getHeuristicScale(), 1e-9);
+
+		for (Node source : grid) {
+			double expected = getPathLength(Dijkstra.getShortestPath(network, source, last));
+			assertEquals(expected, getPathLength(router.getShortestPathAStar(source, last)), 1e-9);
+			assertEquals(expected, router.getDistance(source, last), 1e-9);
+		}
+	}
+
+	@Test
+	public void testBatchRouterMatchesRouter() {
+		network = new Network();
+		createRandomGrid(network, 15, 10, 11);
+		Node isolated = new Node(-100, -100);
+		network.addNode(isolated);
+		NetworkSnapshot snapshot = network.freeze();
+		int isolatedIndex = snapshot.getNodeIndex(isolated);
+		Router router = new Router(snapshot);
+		BatchRouter batchRouter = new BatchRouter(snapshot);
+		Random random = new Random(13);
+
+		int pairCount = 300;
+		int[] origins = new int[pairCount];
+		int[] destinations = new int[pairCount];
+		for (int i = 0; i < pairCount; i++) {
+			// few distinct origins, so that the pairs are grouped
+			origins[i] = random.nextInt(20);
+			destinations[i] = random.nextInt(snapshot.getNodeCount());
+		}
+		destinations[0] = isolatedIndex;
+		double[] distances = batchRouter.getDistances(origins, destinations);
+		int[][] paths = batchRouter.getPaths(origins, destinations);
+		for (int i = 0; i < pairCount; i++) {
+			double expected = router.getDistance(snapshot.getNode(origins[i]), snapshot.getNode(destinations[i]));
+			assertEquals(expected, distances[i], 1e-9);
+			if (Double.isInfinite(expected)) {
+				assertTrue(paths[i] == null);
+				continue;
+			}
+			double length = 0;
+			int node = origins[i];
+			for (int link : paths[i]) {
+				assertEquals(node, snapshot.getSource(link));
+				node = snapshot.getTarget(link);
+				length += snapshot.getLength(link);
+			}
+			assertEquals(destinations[i], node);
+			assertEquals(expected, length, 1e-9);
+		}
+
+		int[] rowOrigins = { 3, 0, 3, isolatedIndex };
+		int[] columnDestinations = { 0, 5, isolatedIndex, 17, 5 };
+		double[][] matrix = batchRouter.getDistanceMatrix(rowOrigins, columnDestinations);
+		for (int i = 0; i < rowOrigins.length; i++) {
+			for (int j = 0; j < columnDestinations.length; j++) {
+				double expected = router.getDistance(snapshot.getNode(rowOrigins[i]),
+						snapshot.getNode(columnDestinations[j]));
+				assertEquals(expected, matrix[i][j], 1e-9);
+			}
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBatchRouterRejectsUnequalPairs() {
+		network = new Network();
+		createRandomGrid(network, 2, 2, 1);
+		new BatchRouter(network.freeze()).getDistances(new int[] { 0, 1 }, new int[] { 2 });
+	}
+
+	@Test
+	public void testContractionHierarchyMatchesDijkstra() throws IOException {
+		network = new Network();
+		Node[] grid = createRandomGrid(network, 14, 11, 17);
+		Node sink = new Node(-100, 0);
+		network.addNode(sink);
+		network.addLink(new Link(grid[20], sink, 1000));
+		NetworkSnapshot snapshot = network.freeze();
+		ContractionHierarchy hierarchy = ContractionHierarchy.create(snapshot);
+		File file = File.createTempFile("network", ".xml" + ContractionHierarchy.EXTENSION);
+		file.deleteOnExit();
+		hierarchy.save(file);
+		ContractionHierarchy loaded = ContractionHierarchy.load(file, snapshot);
+		assertEquals(hierarchy.getShortcutCount(), loaded.getShortcutCount());
+
+		Random random = new Random(19);
+		for (ContractionHierarchy tested : new ContractionHierarchy[] { hierarchy, loaded }) {
+			ContractionHierarchyRouter router = new ContractionHierarchyRouter(tested);
+			for (int i = 0; i < 200; i++) {
+				Node source = snapshot.getNode(random.nextInt(snapshot.getNodeCount()));
+				Node target = snapshot.getNode(random.nextInt(snapshot.getNodeCount()));
+				List<Link> expected = Dijkstra.getShortestPath(network, source, target);
+				List<Link> path = router.getShortestPath(source, target);
+				if (expected.isEmpty()) {
+					assertTrue(path.isEmpty());
+					continue;
+				}
+				assertPathConnects(path, source, target);
+				assertEquals(getPathLength(expected), getPathLength(path), 1e-9);
+				assertEquals(getPathLength(expected), router.getDistance(source, target), 1e-9);
+			}
+			assertTrue(router.getShortestPath(sink, grid[0]).isEmpty());
+			assertEquals(Double.POSITIVE_INFINITY, router.getDistance(sink, grid[0]), 0);
+		}
+	}
+
+	@Test
+	public void testContractionHierarchyOfSquareNetwork() {
+		network = new Network();
+		int width = 6;
+		int height = 5;
+
+		Node.resetIdReference();
+		createAndAttachNodes(width, height);
+		createAndAttachLinks(width, height);
+		ContractionHierarchyRouter router = new ContractionHierarchyRouter(
+				ContractionHierarchy.create(network.freeze()));
+		for (Node source : network.getNodes()) {
+			for (Node target : network.getNodes()) {
+				List<Link> expected = Dijkstra.getShortestPath(network, source, target);
+				List<Link> path = router.getShortestPath(source, target);
+				assertEquals(getPathLength(expected), getPathLength(path), 1e-9);
+				if (!path.isEmpty()) {
+					assertPathConnects(path, source, target);
+				}
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testContractionHierarchyOfDifferentNetwork() throws IOException {
+		network = new Network();
+		createRandomGrid(network, 4, 4, 1);
+		File file = File.createTempFile("network", ContractionHierarchy.EXTENSION);
+		file.deleteOnExit();
+		ContractionHierarchy.create(network.freeze()).save(file);
+
+		network = new Network();
+		createRandomGrid(network, 4, 4, 2);
+		ContractionHierarchy.load(file, network.freeze());
+	}
+
+	@Test
+	public void testContractionHierarchyKeepsStringIds() throws IOException, SAXException {
+		String xml = "<network><nodes>"
+				+ "<node id=\"west\" x=\"0\" y=\"0\"/>"
+				+ "<node id=\"center\" x=\"100\" y=\"0\"/>"
+				+ "<node id=\"east\" x=\"200\" y=\"0\"/>"
+				+ "</nodes><links>"
+				+ "<link id=\"w-c\" from=\"west\" to=\"center\"/>"
+				+ "<link id=\"c-e\" from=\"center\" to=\"east\"/>"
+				+ "</links></network>";
+		NetworkReader reader = NetworkReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+		File file = File.createTempFile("network", ContractionHierarchy.EXTENSION);
+		file.deleteOnExit();
+		ContractionHierarchy.create(reader.getNetwork().freeze()).save(file, reader);
+
+		// the same network read again gets different numeric IDs
+		NetworkReader again = NetworkReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+		NetworkSnapshot snapshot = again.getNetwork().freeze();
+		ContractionHierarchyRouter router = new ContractionHierarchyRouter(
+				ContractionHierarchy.load(file, snapshot, again));
+		assertEquals(200, router.getDistance(again.getNode("west"), again.getNode("east")), 1e-9);
+
+		NetworkReader renamed = NetworkReader.read(new ByteArrayInputStream(
+				xml.replace("center", "middle").getBytes(StandardCharsets.UTF_8)));
+		try {
+			ContractionHierarchy.load(file, renamed.getNetwork().freeze(), renamed);
+			fail("A hierarchy of a network with different IDs has been loaded.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testContractionHierarchyRejectsInvalidRanks() throws IOException {
+		network = new Network();
+		createRandomGrid(network, 6, 6, 3);
+		NetworkSnapshot snapshot = network.freeze();
+		File file = File.createTempFile("network", ContractionHierarchy.EXTENSION);
+		file.deleteOnExit();
+		ContractionHierarchy.create(snapshot).save(file);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		// the ranks follow the magic number, the version, the fingerprint and the node count
+		ByteBuffer ranks = ByteBuffer.wrap(bytes, 20, 4 * snapshot.getNodeCount()).slice();
+		int lowest = 0;
+		int highest = 0;
+		for (int i = 0; i < snapshot.getNodeCount(); i++) {
+			if (ranks.getInt(4 * i) == 0) {
+				lowest = i;
+			} else if (ranks.getInt(4 * i) == snapshot.getNodeCount() - 1) {
+				highest = i;
+			}
+		}
+
+		// the node contracted first is the middle node of a shortcut
+		ranks.putInt(4 * lowest, snapshot.getNodeCount() - 1);
+		ranks.putInt(4 * highest, 0);
+		Files.write(file.toPath(), bytes);
+		try {
+			ContractionHierarchy.load(file, snapshot);
+			fail("A hierarchy with a shortcut over a more important node has been loaded.");
+		} catch (IOException e) {
+			// expected
+		}
+		ranks.putInt(4 * highest, snapshot.getNodeCount() - 1);
+		Files.write(file.toPath(), bytes);
+		try {
+			ContractionHierarchy.load(file, snapshot);
+			fail("A hierarchy with duplicate ranks has been loaded.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testWriterKeepsToStringOutput() throws IOException {
+		Link link = createSmallNetwork();
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + "\n"
+				+ "<!DOCTYPE network SYSTEM \"http://www.matsim.org/files/dtd/network_v1.dtd\">" + "\n"
+				+ "<network name=\"test\" xml:lang=\"en\" >" + "\n"
+				+ "\t<nodes>" + "\n"
+				+ "\t\t<node id=\"0\" x=\"0.0\" y=\"0.0\" />" + "\n"
+				+ "\t\t<node id=\"1\" x=\"100.5\" y=\"-20.0\" type=\"junction\" origid=\"n2\" />" + "\n"
+				+ "\t</nodes>" + "\n"
+				+ "\t<links capperiod=\"01:00:00\" effectivecellsize=\"7.5\" effectivelanewidth=\"3.75\" >" + "\n"
+				+ "\t\t<link id=\"" + link.getId() + "\" from=\"1\" to=\"0\" length=\"102.47072752742609\" freespeed=\"13.9\" capacity=\"1800.0\" permlanes=\"2.0\" oneway=\"1\" modes=\"car,bus\" volume=\"12.0\" origid=\"l1\" nt_category=\"2\" nt_type=\"road\" type=\"primary\" />" + "\n"
+				+ "\t</links>" + "\n"
+				+ "</network>";
+		assertEquals(expected, network.toString());
+
+		StringWriter writer = new StringWriter();
+		try (NetworkWriter networkWriter = new NetworkWriter(writer)) {
+			networkWriter.write(network);
+		}
+		assertEquals(expected, writer.toString());
+	}
+
+	@Test
+	public void testWriterCompressesOutput() throws IOException {
+		createSmallNetwork();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (NetworkWriter networkWriter = new NetworkWriter(output, true)) {
+			networkWriter.write(network);
+		}
+
+		ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+		try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(output.toByteArray()))) {
+			byte[] buffer = new byte[4096];
+			int count;
+			while ((count = input.read(buffer)) > 0) {
+				decompressed.write(buffer, 0, count);
+			}
+		}
+		assertEquals(network.toString(), new String(decompressed.toByteArray(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testWriterEscapesAttributes() {
+		Node node = new Node(0, 0);
+		node.setType("a<b & \"c\"");
+		assertTrue(node.toString().contains("type=\"a&lt;b &amp; &quot;c&quot;\" "));
+	}
+
+	@Test
+	public void testReaderReadsWrittenNetwork() throws IOException, SAXException {
+		Link link = createSmallNetwork();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (NetworkWriter networkWriter = new NetworkWriter(output, true)) {
+			networkWriter.write(network);
+		}
+		NetworkReader reader = NetworkReader.read(new GZIPInputStream(new ByteArrayInputStream(output.toByteArray())));
+		Network read = reader.getNetwork();
+
+		assertEquals(network.getName(), read.getName());
+		assertEquals(network.getCapPeriod(), read.getCapPeriod());
+		assertEquals(network.getNodes().size(), read.getNodes().size());
+		for (Node node : network.getNodes()) {
+			Node readNode = reader.getNode(Integer.toString(node.getId()));
+			assertEquals(Integer.toString(node.getId()), reader.getId(readNode));
+			assertEquals(node.getX(), readNode.getX(), 0);
+			assertEquals(node.getY(), readNode.getY(), 0);
+			assertEquals(node.getType(), readNode.getType());
+			assertEquals(node.getOrigId(), readNode.getOrigId());
+		}
+		assertEquals(1, read.getLinks().size());
+		Link readLink = reader.getLink(Integer.toString(link.getId()));
+		assertEquals(Integer.toString(link.getId()), reader.getId(readLink));
+		assertEquals(reader.getNode(Integer.toString(link.getFrom().getId())), readLink.getFrom());
+		assertEquals(reader.getNode(Integer.toString(link.getTo().getId())), readLink.getTo());
+		assertEquals(link.getLength(), readLink.getLength(), 0);
+		assertEquals(link.getFreeSpeed(), readLink.getFreeSpeed(), 0);
+		assertEquals(link.getCapacity(), readLink.getCapacity(), 0);
+		assertEquals(link.getPermLanes(), readLink.getPermLanes(), 0);
+		assertEquals(link.getModes(), readLink.getModes());
+		assertEquals(link.getVolume(), readLink.getVolume(), 0);
+		assertEquals(link.getOrigId(), readLink.getOrigId());
+		assertEquals(link.getNtCategory(), readLink.getNtCategory());
+		assertEquals(link.getNtType(), readLink.getNtType());
+		assertEquals(link.getType(), readLink.getType());
+	}
+
+	@Test
+	public void testReaderKeepsStringIds() throws IOException, SAXException {
+		String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+				+ "<!DOCTYPE network SYSTEM \"http://www.matsim.org/files/dtd/network_v1.dtd\">\n"
+				+ "<network><nodes>"
+				+ "<node id=\"main square\" x=\"0\" y=\"0\"/>"
+				+ "<node id=\"A-7\" x=\"30\" y=\"40\"/>"
+				+ "</nodes><links capperiod=\"00:30:00\">"
+				+ "<link id=\"l_12\" from=\"main square\" to=\"A-7\" modes=\"car\"/>"
+				+ "</links></network>";
+		NetworkReader reader = NetworkReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+
+		Link link = reader.getLink("l_12");
+		assertEquals(reader.getNode("main square"), link.getFrom());
+		assertEquals(reader.getNode("A-7"), link.getTo());
+		assertEquals("A-7", reader.getId(link.getTo()));
+		assertEquals(50, link.getLength(), 1e-9);
+		assertEquals(Duration.ofMinutes(30), reader.getNetwork().getCapPeriod());
+	}
+
+	@Test
+	public void testWriterKeepsStringIds() throws IOException, SAXException {
+		String xml = "<network><nodes>"
+				+ "<node id=\"main square\" x=\"0\" y=\"0\"/>"
+				+ "<node id=\"A-7\" x=\"30\" y=\"40\"/>"
+				+ "<node id=\"&lt;depot&gt;\" x=\"-10\" y=\"5\"/>"
+				+ "</nodes><links>"
+				+ "<link id=\"l_12\" from=\"main square\" to=\"A-7\"/>"
+				+ "<link id=\"back\" from=\"A-7\" to=\"&lt;depot&gt;\"/>"
+				+ "</links></network>";
+		NetworkReader reader = NetworkReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+		StringWriter writer = new StringWriter();
+		try (NetworkWriter networkWriter = new NetworkWriter(writer)) {
+			networkWriter.write(reader);
+		}
+		NetworkReader written = NetworkReader.read(
+				new ByteArrayInputStream(writer.toString().getBytes(StandardCharsets.UTF_8)));
+
+		assertEquals(reader.getNodes().keySet(), written.getNodes().keySet());
+		assertEquals(reader.getLinks().keySet(), written.getLinks().keySet());
+		for (String id : reader.getLinks().keySet()) {
+			Link link = reader.getLink(id);
+			Link writtenLink = written.getLink(id);
+			assertEquals(reader.getId(link.getFrom()), written.getId(writtenLink.getFrom()));
+			assertEquals(reader.getId(link.getTo()), written.getId(writtenLink.getTo()));
+			assertEquals(link.getLength(), writtenLink.getLength(), 0);
+		}
+		for (String id : reader.getNodes().keySet()) {
+			assertEquals(reader.getNode(id).getX(), written.getNode(id).getX(), 0);
+			assertEquals(reader.getNode(id).getY(), written.getNode(id).getY(), 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWriterRejectsNodeNotRead() throws IOException, SAXException {
+		String xml = "<network><nodes><node id=\"a\" x=\"0\" y=\"0\"/></nodes><links/></network>";
+		NetworkReader reader = NetworkReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+		reader.getNetwork().addNode(new Node(1, 1));
+		new NetworkWriter(new StringWriter()).write(reader);
+	}
+
+	@Test(expected = SAXException.class)
+	public void testReaderRejectsUnknownNode() throws IOException, SAXException {
+		String xml = "<network><nodes><node id=\"a\" x=\"0\" y=\"0\"/></nodes>"
+				+ "<links><link id=\"l\" from=\"a\" to=\"b\"/></links></network>";
+		NetworkReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void testBinaryFormatReadsWrittenNetwork() throws IOException {
+		Link link = createSmallNetwork();
+		network.setLanguage(Locale.GERMANY);
+		network.setEffectiveLaneWidth(3.5);
+		Node loop = new Node(7, 7);
+		network.addNode(loop);
+		network.addLink(new Link(loop, loop, 0.25));
+		File file = File.createTempFile("network", NetworkBinaryFormat.EXTENSION);
+		file.deleteOnExit();
+		NetworkBinaryFormat.write(network, file);
+		NetworkReader reader = NetworkBinaryFormat.read(file);
+		Network read = reader.getNetwork();
+
+		assertEquals(network.getName(), read.getName());
+		assertEquals(network.getType(), read.getType());
+		assertEquals(network.getLanguage(), read.getLanguage());
+		assertEquals(network.getCapPeriod(), read.getCapPeriod());
+		assertEquals(network.getEffectiveCellSize(), read.getEffectiveCellSize(), 0);
+		assertEquals(network.getEffectiveLaneWidth(), read.getEffectiveLaneWidth(), 0);
+		assertEquals(network.getNodes().size(), read.getNodes().size());
+		for (Node node : network.getNodes()) {
+			Node readNode = reader.getNode(Integer.toString(node.getId()));
+			assertEquals(node.getX(), readNode.getX(), 0);
+			assertEquals(node.getY(), readNode.getY(), 0);
+			assertEquals(node.getType(), readNode.getType());
+			assertEquals(node.getOrigId(), readNode.getOrigId());
+		}
+		assertEquals(network.getLinks().size(), read.getLinks().size());
+		for (Link original : network.getLinks()) {
+			Link readLink = reader.getLink(Integer.toString(original.getId()));
+			assertEquals(reader.getNode(Integer.toString(original.getFrom().getId())), readLink.getFrom());
+			assertEquals(reader.getNode(Integer.toString(original.getTo().getId())), readLink.getTo());
+			assertEquals(original.getLength(), readLink.getLength(), 0);
+			assertEquals(original.getFreeSpeed(), readLink.getFreeSpeed(), 0);
+			assertEquals(original.getCapacity(), readLink.getCapacity(), 0);
+			assertEquals(original.getPermLanes(), readLink.getPermLanes(), 0);
+			assertEquals(original.getModes(), readLink.getModes());
+			assertEquals(original.getVolume(), readLink.getVolume(), 0);
+			assertEquals(original.getOrigId(), readLink.getOrigId());
+			assertEquals(original.getNtCategory(), readLink.getNtCategory());
+			assertEquals(original.getNtType(), readLink.getNtType());
+			assertEquals(original.getType(), readLink.getType());
+		}
+		assertEquals("primary", reader.getLink(Integer.toString(link.getId())).getType());
+	}
+
+	@Test
+	public void testBinaryFormatKeepsStringIds() throws IOException, SAXException {
+		String xml = "<network name=\"Praha\"><nodes>"
+				+ "<node id=\"main square\" x=\"0\" y=\"0\"/>"
+				+ "<node id=\"Hlavn\u00ed n\u00e1dra\u017e\u00ed\" x=\"30\" y=\"40\"/>"
+				+ "</nodes><links>"
+				+ "<link id=\"l_12\" from=\"main square\" to=\"Hlavn\u00ed n\u00e1dra\u017e\u00ed\" modes=\"car,tram\"/>"
+				+ "</links></network>";
+		NetworkReader xmlReader = NetworkReader.read(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+		File file = File.createTempFile("network", NetworkBinaryFormat.EXTENSION);
+		file.deleteOnExit();
+		NetworkBinaryFormat.write(xmlReader, file);
+		NetworkReader reader = NetworkBinaryFormat.read(file);
+
+		assertEquals("Praha", reader.getNetwork().getName());
+		Link link = reader.getLink("l_12");
+		assertEquals(reader.getNode("main square"), link.getFrom());
+		assertEquals(reader.getNode("Hlavn\u00ed n\u00e1dra\u017e\u00ed"), link.getTo());
+		assertEquals("Hlavn\u00ed n\u00e1dra\u017e\u00ed", reader.getId(link.getTo()));
+		assertEquals(Arrays.asList("car", "tram"), link.getModes());
+		assertEquals(50, link.getLength(), 1e-9);
+	}
+
+	@Test
+	public void testBinaryFormatRejectsCorruptedFile() throws IOException {
+		createSmallNetwork();
+		File file = File.createTempFile("network", NetworkBinaryFormat.EXTENSION);
+		file.deleteOnExit();
+		NetworkBinaryFormat.write(network, file);
+		byte[] bytes = Files.readAllBytes(file.toPath());
+
+		Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 3));
+		try {
+			NetworkBinaryFormat.read(file);
+			fail("A truncated file has been read.");
+		} catch (IOException e) {
+			// expected
+		}
+		bytes[0] = '<';
+		Files.write(file.toPath(), bytes);
+		try {
+			NetworkBinaryFormat.read(file);
+			fail("A file with a wrong header has been read.");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testBinaryFormatRejectsTooLargeFile() throws IOException {
+		File file = File.createTempFile("network", NetworkBinaryFormat.EXTENSION);
+		file.deleteOnExit();
+		try (RandomAccessFile sparse = new RandomAccessFile(file, "rw")) {
+			sparse.setLength(Integer.MAX_VALUE + 1L);
+		}
+		try {
+			NetworkBinaryFormat.read(file);
+			fail("A file larger than 2 GB has been read.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("too large"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Creates a network with two nodes and a link between them, using all their attributes.
+	 * @return The link of the network.
+	 */
+	protected Link createSmallNetwork() {
+		Node.resetIdReference();
+		network = new Network();
+		network.setName("test");
+		Node first = new Node(0, 0);
+		Node second = new Node(100.5, -20);
+		second.setType("junction");
+		second.setOrigId("n2");
+		network.addNode(first);
+		network.addNode(second);
+		Link link = new Link(second, first);
+		link.setFreeSpeed(13.9);
+		link.setCapacity(1800);
+		link.setPermLanes(2);
+		link.addMode("car");
+		link.addMode("bus");
+		link.setVolume(12);
+		link.setOrigId("l1");
+		link.setNtCategory("2");
+		link.setNtType("road");
+		link.setType("primary");
+		network.addLink(link);
+		return link;
+	}
+
+	@Test
+	public void testTravelTimeProfiles() {
+		network = new Network();
+		createRandomGrid(network, 6, 6, 5);
+		NetworkSnapshot snapshot = network.freeze();
+		TravelTimeProfiles.Builder builder = new TravelTimeProfiles.Builder(snapshot, 60);
+		// two traversals in the bucket 10, a congestion fading out after the bucket 20
+		builder.addTraversal(0, 610, 860);
+		builder.addTraversal(0, 650, 1000);
+		builder.addTraversal(0, 1200, 1700);
+		Random random = new Random(17);
+		for (int i = 0; i < 2000; i++) {
+			int link = 1 + random.nextInt(snapshot.getLinkCount() - 1);
+			double entered = random.nextDouble() * 3600;
+			builder.addTraversal(link, entered, entered + random.nextDouble() * 400);
+		}
+		TravelTimeProfiles profiles = builder.build();
+
+		double freeFlowTime = snapshot.getLength(0) / snapshot.getFreeSpeed(0);
+		assertEquals(freeFlowTime, profiles.getFreeFlowTime(0), 1e-9);
+		assertEquals(300, profiles.getTravelTime(0, 630), 1e-9);
+		assertEquals(500, profiles.getTravelTime(0, 1230), 1e-9);
+		assertEquals(470, profiles.getTravelTime(0, 1260), 1e-9);
+		assertEquals(440, profiles.getTravelTime(0, 1290), 1e-9);
+		assertEquals(freeFlowTime, profiles.getTravelTime(0, 0), 1e-9);
+		assertEquals(freeFlowTime, profiles.getTravelTime(0, 10000), 1e-9);
+		for (int link = 0; link < snapshot.getLinkCount(); link++) {
+			double previous = Double.NEGATIVE_INFINITY;
+			for (double time = -100; time < 4500; time += 7) {
+				double arrival = profiles.getArrivalTime(link, time);
+				assertTrue(arrival >= previous - 1e-9);
+				previous = arrival;
+			}
+		}
+
+		TravelTimeProfiles freeFlow = TravelTimeProfiles.freeFlow(snapshot);
+		assertEquals(0, freeFlow.getBucketCount());
+		assertFalse(freeFlow.isObserved(0));
+		assertEquals(snapshot.getLength(3), freeFlow.getTravelTime(3, 42), 1e-9);
+	}
+
+	@Test
+	public void testTimeDependentRouterMatchesLabelCorrecting() {
+		network = new Network();
+		Node[] grid = createRandomGrid(network, 10, 8, 23);
+		NetworkSnapshot snapshot = network.freeze();
+		Random random = new Random(29);
+		TravelTimeProfiles.Builder builder = new TravelTimeProfiles.Builder(snapshot, 120);
+		for (int i = 0; i < 5000; i++) {
+			int link = random.nextInt(snapshot.getLinkCount());
+			double entered = random.nextDouble() * 7200;
+			builder.addTraversal(link, entered, entered + random.nextDouble() * 1000);
+		}
+		TravelTimeProfiles profiles = builder.build();
+		TimeDependentRouter router = new TimeDependentRouter(profiles);
+
+		for (int i = 0; i < 100; i++) {
+			Node source = grid[random.nextInt(grid.length)];
+			Node target = grid[random.nextInt(grid.length)];
+			double departure = random.nextDouble() * 7200;
+			double expected = getEarliestArrival(profiles, snapshot.getNodeIndex(source),
+					departure)[snapshot.getNodeIndex(target)];
+			assertEquals(expected, router.getArrivalTime(source, target, departure), 1e-6);
+			List<Link> path = router.getFastestPath(source, target, departure);
+			assertPathConnects(path, source, target);
+			double time = departure;
+			for (Link link : path) {
+				time = profiles.getArrivalTime(snapshot.getLinkIndex(link), time);
+			}
+			assertEquals(expected, time, 1e-6);
+		}
+
+		// with no observations the fastest paths are the shortest ones, as all the free speeds are 1
+		TimeDependentRouter freeFlowRouter = new TimeDependentRouter(TravelTimeProfiles.freeFlow(snapshot));
+		Router staticRouter = new Router(snapshot);
+		for (int i = 0; i < 50; i++) {
+			Node source = grid[random.nextInt(grid.length)];
+			Node target = grid[random.nextInt(grid.length)];
+			assertEquals(100 + staticRouter.getDistance(source, target),
+					freeFlowRouter.getArrivalTime(source, target, 100), 1e-6);
+		}
+	}
+
+	@Test
+	public void testTimeDependentRouterAvoidsCongestion() {
+		Node.resetIdReference();
+		network = new Network();
+		Node start = new Node(0, 0);
+		Node end = new Node(1000, 0);
+		Node detour = new Node(500, 500);
+		network.addNode(start);
+		network.addNode(end);
+		network.addNode(detour);
+		Link direct = new Link(start, end, 1000);
+		direct.setFreeSpeed(10);
+		network.addLink(direct);
+		Link first = new Link(start, detour, 800);
+		first.setFreeSpeed(10);
+		network.addLink(first);
+		Link second = new Link(detour, end, 800);
+		second.setFreeSpeed(10);
+		network.addLink(second);
+		NetworkSnapshot snapshot = network.freeze();
+		TravelTimeProfiles.Builder builder = new TravelTimeProfiles.Builder(snapshot, 600);
+		for (double entered = 7200; entered < 9000; entered += 30) {
+			builder.addTraversal(snapshot.getLinkIndex(direct), entered, entered + 900);
+		}
+		TimeDependentRouter router = new TimeDependentRouter(builder.build());
+
+		assertEquals(Arrays.asList(direct), router.getFastestPath(start, end, 3600));
+		assertEquals(3700, router.getArrivalTime(start, end, 3600), 1e-9);
+		assertEquals(Arrays.asList(first, second), router.getFastestPath(start, end, 8000));
+		assertEquals(8160, router.getArrivalTime(start, end, 8000), 1e-9);
+		assertTrue(router.getFastestPath(end, start, 0).isEmpty());
+		assertEquals(Double.POSITIVE_INFINITY, router.getArrivalTime(end, start, 0), 0);
+	}
+
+	@Test
+	public void testKdTreeMatchesLinearScan() {
+		Random random = new Random(11);
+		double[] xs = new double[2000];
+		double[] ys = new double[2000];
+		for (int i = 0; i < xs.length; i++) {
+			// Round the coordinates so that some of the points coincide
+			xs[i] = Math.round(random.nextDouble() * 500);
+			ys[i] = Math.round(random.nextDouble() * 300);
+		}
+		KdTree tree = new KdTree(xs, ys);
+
+		for (int i = 0; i < 100; i++) {
+			double x = random.nextDouble() * 600 - 50;
+			double y = random.nextDouble() * 400 - 50;
+			int[] nearest = tree.getNearest(x, y, 10);
+			assertEquals(10, nearest.length);
+			double[] distances = new double[xs.length];
+			for (int j = 0; j < xs.length; j++) {
+				distances[j] = Math.hypot(xs[j] - x, ys[j] - y);
+			}
+			double[] sorted = distances.clone();
+			Arrays.sort(sorted);
+			for (int j = 0; j < nearest.length; j++) {
+				assertEquals(sorted[j], distances[nearest[j]], 1e-9);
+			}
+			assertEquals(sorted[0], distances[tree.getNearest(x, y)], 1e-9);
+
+			Set<Integer> within = new HashSet<>();
+			Set<Integer> inRange = new HashSet<>();
+			for (int j = 0; j < xs.length; j++) {
+				if (distances[j] <= 40) {
+					within.add(j);
+				}
+				if (Math.abs(xs[j] - x) <= 30 && Math.abs(ys[j] - y) <= 20) {
+					inRange.add(j);
+				}
+			}
+			assertEquals(within, toSet(tree.getWithin(x, y, 40)));
+			assertEquals(inRange, toSet(tree.getInRange(x - 30, y - 20, x + 30, y + 20)));
+		}
+		assertEquals(-1, new KdTree(new double[0], new double[0]).getNearest(0, 0));
+	}
+
+	@Test
+	public void testSpatialIndexMatchesLinearScan() {
+		network = new Network();
+		createRandomGrid(network, 30, 20, 5);
+		NetworkSnapshot snapshot = network.freeze();
+		SpatialIndex index = snapshot.getSpatialIndex();
+		assertSame(index, snapshot.getSpatialIndex());
+		Random random = new Random(3);
+
+		for (int i = 0; i < 100; i++) {
+			double x = random.nextDouble() * 3500 - 250;
+			double y = random.nextDouble() * 2500 - 250;
+			double nearestDistance = Double.POSITIVE_INFINITY;
+			Set<Link> within = new HashSet<>();
+			Set<Link> inRange = new HashSet<>();
+			for (Link link : network.getLinks()) {
+				double distance = getSegmentDistance(link, x, y);
+				nearestDistance = Math.min(nearestDistance, distance);
+				if (distance <= 150) {
+					within.add(link);
+				}
+				if (Math.max(link.getFrom().getX(), link.getTo().getX()) >= x
+						&& Math.min(link.getFrom().getX(), link.getTo().getX()) <= x + 100
+						&& Math.max(link.getFrom().getY(), link.getTo().getY()) >= y
+						&& Math.min(link.getFrom().getY(), link.getTo().getY()) <= y + 100) {
+					// The links of the grid are horizontal or vertical, so their bounding boxes are exact
+					inRange.add(link);
+				}
+			}
+			assertEquals(nearestDistance, getSegmentDistance(index.getNearestLink(x, y), x, y), 1e-9);
+			List<Link> nearest = index.getNearestLinks(x, y, 5);
+			assertEquals(5, nearest.size());
+			assertEquals(5, new HashSet<>(nearest).size());
+			for (int j = 1; j < nearest.size(); j++) {
+				assertTrue(getSegmentDistance(nearest.get(j - 1), x, y) <= getSegmentDistance(nearest.get(j), x, y));
+			}
+			assertEquals(within, new HashSet<>(index.getLinksWithin(x, y, 150)));
+			assertEquals(inRange, new HashSet<>(index.getLinksInRange(x, y, x + 100, y + 100)));
+
+			Node node = index.getNearestNode(x, y);
+			for (Node other : network.getNodes()) {
+				assertTrue(Math.hypot(node.getX() - x, node.getY() - y) <= Math.hypot(other.getX() - x, other.getY() - y));
+			}
+		}
+	}
+
+	@Test
+	public void testSegmentGridMatchesLinearScanForDiagonalSegments() {
+		Random random = new Random(17);
+		int polylineCount = 150;
+		int[] offsets = new int[polylineCount + 1];
+		double[] coordinates = new double[2 * 3 * polylineCount];
+		for (int i = 0; i < polylineCount; i++) {
+			int pointCount = 1 + random.nextInt(3);
+			offsets[i + 1] = offsets[i] + pointCount;
+			for (int point = offsets[i]; point < offsets[i + 1]; point++) {
+				// Points on the cell borders are frequent, so that the rounding is exercised
+				coordinates[2 * point] = (random.nextInt(4) == 0) ? random.nextInt(21) * 50 : random.nextDouble() * 1000;
+				coordinates[2 * point + 1] = (random.nextInt(4) == 0) ? random.nextInt(21) * 50 : random.nextDouble() * 1000;
+			}
+		}
+		SegmentGrid grid = new SegmentGrid(coordinates, offsets);
+
+		for (int i = 0; i < 200; i++) {
+			double x = random.nextDouble() * 1200 - 100;
+			double y = random.nextDouble() * 1200 - 100;
+			double size = random.nextDouble() * 120;
+			double nearestDistance = Double.POSITIVE_INFINITY;
+			Set<Integer> within = new HashSet<>();
+			Set<Integer> inRange = new HashSet<>();
+			for (int polyline = 0; polyline < polylineCount; polyline++) {
+				int first = offsets[polyline];
+				int last = offsets[polyline + 1] - 1;
+				for (int point = first; point == first || point < last; point++) {
+					int next = Math.min(point + 1, last);
+					double x1 = coordinates[2 * point];
+					double y1 = coordinates[2 * point + 1];
+					double x2 = coordinates[2 * next];
+					double y2 = coordinates[2 * next + 1];
+					double distance = getSegmentDistance(x1, y1, x2, y2, x, y);
+					nearestDistance = Math.min(nearestDistance, distance);
+					if (distance <= size) {
+						within.add(polyline);
+					}
+					if (intersectsRectangle(x1, y1, x2, y2, x, y, x + size, y + size)) {
+						inRange.add(polyline);
+					}
+				}
+			}
+			assertEquals(nearestDistance, grid.getDistance(grid.getNearest(x, y), x, y), 1e-9);
+			assertEquals(within, toSet(grid.getWithin(x, y, size)));
+			assertEquals(inRange, toSet(grid.getInRange(x, y, x + size, y + size)));
+		}
+	}
+
+	@Test
+	public void testSnapshotMatchesNetwork() {
+		network = new Network();
+		int width = 6;
+		int height = 4;
+
+		Node.resetIdReference();
+		createAndAttachNodes(width, height);
+		createAndAttachLinks(width, height);
+		NetworkSnapshot snapshot = network.freeze();
+
+		assertEquals(network.getNodes().size(), snapshot.getNodeCount());
+		assertEquals(network.getLinks().size(), snapshot.getLinkCount());
+		for (int i = 0; i < snapshot.getNodeCount(); i++) {
+			Node node = snapshot.getNode(i);
+			assertEquals(i, snapshot.getNodeIndex(node));
+			assertEquals(node.getX(), snapshot.getX(i), 0);
+			assertEquals(node.getY(), snapshot.getY(i), 0);
+			Set<Link> from = new HashSet<>();
+			for (int j = snapshot.getFirstLink(i); j < snapshot.getFirstLink(i + 1); j++) {
+				Link link = snapshot.getLink(j);
+				from.add(link);
+				assertEquals(j, snapshot.getLinkIndex(link));
+				assertEquals(i, snapshot.getSource(j));
+				assertEquals(snapshot.getNodeIndex(link.getTo()), snapshot.getTarget(j));
+				assertEquals(link.getLength(), snapshot.getLength(j), 0);
+				assertEquals(link.getFreeSpeed(), snapshot.getFreeSpeed(j), 0);
+				assertEquals(link.getCapacity(), snapshot.getCapacity(j), 0);
+			}
+			assertEquals(network.getLinksFrom(node), from);
+		}
+		assertEquals(-1, snapshot.getNodeIndex(new Node(0, 0)));
+	}
+
+	@Test
+	public void testConnectivity() {
+		network = new Network();
+
+		Node.resetIdReference();
+		createAndAttachNodes(5, 4);
+		createAndAttachLinks(5, 4);
+		network.addNode(new Node(10, 10));
+		NetworkSnapshot snapshot = network.freeze();
+
+		// the links of the square network lead away from the corner only
+		assertEquals(21, Connectivity.getComponentCount(Connectivity.getStrongComponents(snapshot)));
+		int[] weak = Connectivity.getWeakComponents(snapshot);
+		assertEquals(2, Connectivity.getComponentCount(weak));
+		assertEquals(0, weak[0]);
+		assertEquals(1, weak[20]);
+
+		network = new Network();
+		createRandomGrid(network, 7, 5, 3);
+		Node sink = new Node(-100, 0);
+		network.addNode(sink);
+		network.addLink(new Link(network.getNodes().iterator().next(), sink, 1000));
+		snapshot = network.freeze();
+		int[] strong = Connectivity.getStrongComponents(snapshot);
+		assertEquals(2, Connectivity.getComponentCount(strong));
+		assertEquals(1, Connectivity.getComponentCount(Connectivity.getWeakComponents(snapshot)));
+	}
+
+	@Test
+	public void testCentrality() {
+		network = new Network();
+		Node a = new Node(0, 0);
+		Node b = new Node(1, 0);
+		Node c = new Node(2, 0);
+		Node d = new Node(1, 1);
+		network.addNode(a);
+		network.addNode(b);
+		network.addNode(c);
+		network.addNode(d);
+		network.addLink(new Link(a, b, 1));
+		network.addLink(new Link(b, c, 1));
+		network.addLink(new Link(a, d, 1));
+		network.addLink(new Link(d, c, 1));
+		NetworkSnapshot snapshot = network.freeze();
+
+		double[] betweenness = Centrality.getBetweenness(snapshot);
+		assertEquals(0, betweenness[snapshot.getNodeIndex(a)], 1e-9);
+		assertEquals(0.5, betweenness[snapshot.getNodeIndex(b)], 1e-9);
+		assertEquals(0, betweenness[snapshot.getNodeIndex(c)], 1e-9);
+		assertEquals(0.5, betweenness[snapshot.getNodeIndex(d)], 1e-9);
+
+		double[] closeness = Centrality.getCloseness(snapshot);
+		assertEquals(3.0 / 4, closeness[snapshot.getNodeIndex(a)], 1e-9);
+		assertEquals(1, closeness[snapshot.getNodeIndex(b)], 1e-9);
+		assertEquals(0, closeness[snapshot.getNodeIndex(c)], 1e-9);
+	}
+
+	@Test
+	public void testSnapshotMemoryFootprint() {
+		network = new Network();
+		createRandomGrid(network, 150, 150, 5);
+		NetworkSnapshot snapshot = network.freeze();
+		long nodeCount = snapshot.getNodeCount();
+		long linkCount = snapshot.getLinkCount();
+
+		// Every node and link takes a fixed number of array slots, at most 32 bytes
+		// per node and 48 bytes per link, plus the headers of the arrays.
+		long footprint = snapshot.getFootprint();
+		assertTrue(footprint > 4 * (nodeCount + linkCount));
+		assertTrue(footprint <= 32 * nodeCount + 48 * linkCount + 256);
+	}
+
+	/**
+	 * Computes the distance of a position from the straight segment of the link.
+	 * @param link The link.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @return The distance of the position from the link.
+	 */
+	private static double getSegmentDistance(Link link, double x, double y) {
+		return getSegmentDistance(link.getFrom().getX(), link.getFrom().getY(),
+				link.getTo().getX(), link.getTo().getY(), x, y);
+	}
+
+	/**
+	 * Computes the distance of a position from a straight segment.
+	 * @param x1 The x coordinate of the start of the segment.
+	 * @param y1 The y coordinate of the start of the segment.
+	 * @param x2 The x coordinate of the end of the segment.
+	 * @param y2 The y coordinate of the end of the segment.
+	 * @param x The x coordinate of the position.
+	 * @param y The y coordinate of the position.
+	 * @return The distance of the position from the segment.
+	 */
+	private static double getSegmentDistance(double x1, double y1, double x2, double y2, double x, double y) {
+		double dx = x2 - x1;
+		double dy = y2 - y1;
+		double squaredLength = dx * dx + dy * dy;
+		double t = (squaredLength == 0) ? 0
+				: Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / squaredLength));
+		return Math.hypot(x1 + t * dx - x, y1 + t * dy - y);
+	}
+
+	/**
+	 * Checks whether a straight segment passes through a rectangle, including its borders.
+	 * @param x1 The x coordinate of the start of the segment.
+	 * @param y1 The y coordinate of the start of the segment.
+	 * @param x2 The x coordinate of the end of the segment.
+	 * @param y2 The y coordinate of the end of the segment.
+	 * @param minX The lowest x coordinate of the rectangle.
+	 * @param minY The lowest y coordinate of the rectangle.
+	 * @param maxX The highest x coordinate of the rectangle.
+	 * @param maxY The highest y coordinate of the rectangle.
+	 * @return True if a point of the segment lies in the rectangle.
+	 */
+	private static boolean intersectsRectangle(double x1, double y1, double x2, double y2,
+			double minX, double minY, double maxX, double maxY) {
+		if (isInRectangle(x1, y1, minX, minY, maxX, maxY) || isInRectangle(x2, y2, minX, minY, maxX, maxY)) {
+			return true;
+		}
+		return crosses(x1, y1, x2, y2, minX, minY, maxX, minY) || crosses(x1, y1, x2, y2, maxX, minY, maxX, maxY)
+				|| crosses(x1, y1, x2, y2, maxX, maxY, minX, maxY) || crosses(x1, y1, x2, y2, minX, maxY, minX, minY);
+	}
+
+	/**
+	 * Checks whether a position lies in a rectangle, including its borders.
+	 * @return True if the position lies in the rectangle.
+	 */
+	private static boolean isInRectangle(double x, double y, double minX, double minY, double maxX, double maxY) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY;
+	}
+
+	/**
+	 * Checks whether two straight segments have a common point.
+	 * @return True if the segments touch or cross each other.
+	 */
+	private static boolean crosses(double ax, double ay, double bx, double by,
+			double cx, double cy, double dx, double dy) {
+		double d1 = orientation(cx, cy, dx, dy, ax, ay);
+		double d2 = orientation(cx, cy, dx, dy, bx, by);
+		double d3 = orientation(ax, ay, bx, by, cx, cy);
+		double d4 = orientation(ax, ay, bx, by, dx, dy);
+		if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+			return true;
+		}
+		return (d1 == 0 && isInRectangle(ax, ay, Math.min(cx, dx), Math.min(cy, dy), Math.max(cx, dx), Math.max(cy, dy)))
+				|| (d2 == 0 && isInRectangle(bx, by, Math.min(cx, dx), Math.min(cy, dy), Math.max(cx, dx), Math.max(cy, dy)))
+				|| (d3 == 0 && isInRectangle(cx, cy, Math.min(ax, bx), Math.min(ay, by), Math.max(ax, bx), Math.max(ay, by)))
+				|| (d4 == 0 && isInRectangle(dx, dy, Math.min(ax, bx), Math.min(ay, by), Math.max(ax, bx), Math.max(ay, by)));
+	}
+
+	/**
+	 * Computes on which side of the line through a and b the position p lies.
+	 * @return Positive on the left side, negative on the right side, zero on the line.
+	 */
+	private static double orientation(double ax, double ay, double bx, double by, double px, double py) {
+		return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+	}
+
+	/**
+	 * Copies the elements of the array to a set.
+	 * @param elements The elements.
+	 * @return The set of the elements.
+	 */
+	private static Set<Integer> toSet(int[] elements) {
+		Set<Integer> set = new HashSet<>();
+		for (int element : elements) {
+			set.add(element);
+		}
+		return set;
+	}
+
+	/**
+	 * Fills the network with a grid of nodes, each of them connected in both directions
+	 * to its horizontal and vertical neighbours. The lengths of the links are random,
+	 * but never shorter than the Euclidean distance of their end nodes.
+	 * @return The nodes of the grid, row by row.
+	 */
+	static Node[] createRandomGrid(Network network, int width, int height, long seed) {
+		Random random = new Random(seed);
+		Node[] grid = new Node[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Node node = new Node(x * 100, y * 100);
+				grid[y * width + x] = node;
+				network.addNode(node);
+			}
+		}
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				Node node = grid[y * width + x];
+				if (x + 1 < width) {
+					Node right = grid[y * width + x + 1];
+					network.addLink(new Link(node, right, 100 * (1 + random.nextDouble())));
+					network.addLink(new Link(right, node, 100 * (1 + random.nextDouble())));
+				}
+				if (y + 1 < height) {
+					Node below = grid[(y + 1) * width + x];
+					network.addLink(new Link(node, below, 100 * (1 + random.nextDouble())));
+					network.addLink(new Link(below, node, 100 * (1 + random.nextDouble())));
+				}
+			}
+		}
+		return grid;
+	}
+
+	/**
+	 * Computes the earliest arrival times to all the nodes by relaxing all the links
+	 * until nothing changes, independently of {@link TimeDependentRouter}.
+	 */
+	private static double[] getEarliestArrival(TravelTimeProfiles profiles, int source, double departure) {
+		NetworkSnapshot snapshot = profiles.getNetwork();
+		double[] arrivals = new double[snapshot.getNodeCount()];
+		Arrays.fill(arrivals, Double.POSITIVE_INFINITY);
+		arrivals[source] = departure;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int link = 0; link < snapshot.getLinkCount(); link++) {
+				double entered = arrivals[snapshot.getSource(link)];
+				if (Double.isInfinite(entered)) {
+					continue;
+				}
+				double arrival = profiles.getArrivalTime(link, entered);
+				if (arrival < arrivals[snapshot.getTarget(link)]) {
+					arrivals[snapshot.getTarget(link)] = arrival;
+					changed = true;
+				}
+			}
+		}
+		return arrivals;
+	}
+
+	static double getPathLength(List<Link> path) {
+		double length = 0;
+		for (Link link : path) {
+			length += link.getLength();
+		}
+		return length;
+	}
+
+	private static void assertPathConnects(List<Link> path, Node source, Node target) {
+		Node current = source;
+		for (Link link : path) {
+			assertEquals(current, link.getFrom());
+			current = link.getTo();
+		}
+		assertEquals(target, current);
+	}
+
+	/**
+	 * Compares the neighbourhood queries of the {@link #network} with
+	 * a scan over all of its links.
+	 */
+	protected void assertAdjacencyConsistent() {
+		for (Node node : network.getNodes()) {
+			Set<Link> from = new HashSet<>();
+			Set<Link> to = new HashSet<>();
+			Set<Node> successors = new HashSet<>();
+			for (Link link : network.getLinks()) {
+				if (link.getFrom().equals(node)) {
+					from.add(link);
+					successors.add(link.getTo());
+				}
+				if (link.getTo().equals(node)) {
+					to.add(link);
+				}
+			}
+			Set<Link> incident = new HashSet<>(from);
+			incident.addAll(to);
+			assertEquals(from, network.getLinksFrom(node));
+			assertEquals(to, network.getLinksTo(node));
+			assertEquals(incident, network.getIncidentLinks(node));
+			assertEquals(successors, network.getSuccessors(node));
+		}
+	}
+
 	protected void createAndAttachNodes(int width, int height) {
 		for (int i = 0; i < width; i++) {
 			for (int j = 0; j < height; j++) {
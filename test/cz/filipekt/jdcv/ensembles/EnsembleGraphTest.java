@@ -0,0 +1,112 @@
+package cz.filipekt.jdcv.ensembles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import cz.filipekt.jdcv.events.EnsembleEvent;
+
+public class EnsembleGraphTest {
+
+	private final MembershipRelation first = new MembershipRelation("E1", "c1", "m1");
+
+	private final MembershipRelation second = new MembershipRelation("E1", "c1", "m2");
+
+	private final MembershipRelation third = new MembershipRelation("E1", "c2", "m3");
+
+	private final MembershipRelation fourth = new MembershipRelation("E2", "c3", "m4");
+
+	@Test
+	public void testEnsembleGraphReportsChanges() {
+		EnsembleGraph graph = new EnsembleGraph(new MembershipIntervals(Arrays.asList(
+				join(first, 1), leave(first, 3), join(first, 5), join(second, 2), leave(second, 4))));
+		final List<String> changes = new ArrayList<>();
+		graph.addListener(new EnsembleGraph.Listener() {
+
+			@Override
+			public void edgeAdded(int edge, MembershipRelation relation) {
+				changes.add("+" + relation.getMember());
+			}
+
+			@Override
+			public void edgeRemoved(int edge, MembershipRelation relation) {
+				changes.add("-" + relation.getMember());
+			}
+		});
+		assertEquals(2, graph.getEdgeCount());
+		assertEquals(5, graph.getToggleCount());
+		assertEquals(0, graph.getEdgeIndex(first));
+		assertEquals(-1, graph.getEdgeIndex(fourth));
+
+		graph.advanceTo(2.5);
+		assertEquals(Arrays.asList("+m1", "+m2"), changes);
+		assertEquals(2, graph.getActiveCount());
+
+		changes.clear();
+		graph.advanceTo(3.5);
+		assertEquals(Arrays.asList("-m1"), changes);
+
+		changes.clear();
+		graph.advanceTo(0);
+		assertEquals(Arrays.asList("-m2"), changes);
+		assertEquals(0, graph.getActiveCount());
+
+		changes.clear();
+		graph.advanceTo(4.5);
+		assertEquals(Collections.emptyList(), changes);
+
+		graph.advanceTo(10);
+		assertEquals(Arrays.asList("+m1"), changes);
+		assertTrue(graph.isActive(0));
+		assertFalse(graph.isActive(1));
+
+		changes.clear();
+		graph.reset();
+		assertEquals(0, graph.getActiveCount());
+		assertEquals(Collections.emptyList(), changes);
+	}
+
+	@Test
+	public void testEnsembleGraphFollowsIntervals() {
+		Random random = new Random(7);
+		List<MembershipRelation> relations = Arrays.asList(first, second, third, fourth);
+		List<EnsembleEvent> events = new ArrayList<>();
+		for (int i = 0; i < 400; i++) {
+			MembershipRelation relation = relations.get(random.nextInt(relations.size()));
+			double time = random.nextInt(1000) / 10.0;
+			events.add(random.nextBoolean() ? join(relation, time) : leave(relation, time));
+		}
+		MembershipIntervals intervals = new MembershipIntervals(events);
+		EnsembleGraph graph = new EnsembleGraph(intervals);
+		for (int step = 0; step < 200; step++) {
+			double time = random.nextDouble() * 110 - 5;
+			graph.advanceTo(time);
+			int active = 0;
+			for (int edge = 0; edge < graph.getEdgeCount(); edge++) {
+				assertEquals(intervals.isActive(graph.getEdge(edge), time), graph.isActive(edge));
+				if (graph.isActive(edge)) {
+					active++;
+				}
+			}
+			assertEquals(active, graph.getActiveCount());
+		}
+	}
+
+	private static EnsembleEvent join(MembershipRelation relation, double time) {
+		return new EnsembleEvent(relation.getCoordinator(), relation.getMember(), true,
+				relation.getEnsembleName(), time);
+	}
+
+	private static EnsembleEvent leave(MembershipRelation relation, double time) {
+		return new EnsembleEvent(relation.getCoordinator(), relation.getMember(), false,
+				relation.getEnsembleName(), time);
+	}
+}
@@ -0,0 +1,68 @@
+package cz.filipekt.jdcv.ensembles;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import cz.filipekt.jdcv.events.EnsembleEvent;
+
+public class EnsembleStatisticsTest {
+
+	private final MembershipRelation first = new MembershipRelation("E1", "c1", "m1");
+
+	private final MembershipRelation second = new MembershipRelation("E1", "c1", "m2");
+
+	private final MembershipRelation third = new MembershipRelation("E1", "c2", "m3");
+
+	private final MembershipRelation fourth = new MembershipRelation("E2", "c3", "m4");
+
+	@Test
+	public void testEnsembleStatistics() {
+		MembershipIntervals intervals = new MembershipIntervals(Arrays.asList(
+				join(first, 1), leave(first, 3), join(second, 2), leave(second, 4),
+				join(third, 5), join(fourth, 0), leave(fourth, 10)));
+		EnsembleStatistics statistics = new EnsembleStatistics(intervals, 0, 10, 5);
+
+		assertEquals(Arrays.asList("E2", "E1"), statistics.getEnsembleNames());
+		assertEquals(2, statistics.getBucketWidth(), 0);
+		assertEquals(4, statistics.getBucketStart(2), 0);
+		assertEquals(4, statistics.getBucketIndex(9.9));
+		assertEquals(-1, statistics.getBucketIndex(10));
+		assertEquals(-1, statistics.getBucketIndex(-0.1));
+
+		assertArrayEquals(new int[]{0, 2, 0, 1, 1}, statistics.getActiveMembershipsSeries("E1"));
+		assertArrayEquals(new int[]{0, 1, 0, 1, 1}, statistics.getActiveEnsemblesSeries("E1"));
+		assertArrayEquals(new int[]{1, 1, 1, 0, 0}, statistics.getJoinsSeries("E1"));
+		assertArrayEquals(new int[]{0, 1, 1, 0, 0}, statistics.getLeavesSeries("E1"));
+		assertEquals(2, statistics.getMembersPerCoordinator("E1", 1), 0);
+		assertEquals(0, statistics.getMembersPerCoordinator("E1", 0), 0);
+		assertEquals(2, statistics.getMaxValue("E1"));
+
+		assertArrayEquals(new int[]{1, 1, 1, 1, 1}, statistics.getActiveMembershipsSeries("E2"));
+		assertArrayEquals(new int[]{1, 0, 0, 0, 0}, statistics.getJoinsSeries("E2"));
+		assertArrayEquals(new int[]{0, 0, 0, 0, 0}, statistics.getLeavesSeries("E2"));
+
+		assertArrayEquals(new int[]{1, 3, 1, 2, 2}, statistics.getActiveMembershipsSeries(null));
+		assertEquals(3, statistics.getActiveMemberships(null, 1));
+		assertEquals(2, statistics.getJoins(null, 0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEnsembleStatisticsRejectUnknownEnsemble() {
+		MembershipIntervals intervals = new MembershipIntervals(Arrays.asList(join(first, 1)));
+		new EnsembleStatistics(intervals, 0, 10, 5).getActiveMemberships("E2", 0);
+	}
+
+	private static EnsembleEvent join(MembershipRelation relation, double time) {
+		return new EnsembleEvent(relation.getCoordinator(), relation.getMember(), true,
+				relation.getEnsembleName(), time);
+	}
+
+	private static EnsembleEvent leave(MembershipRelation relation, double time) {
+		return new EnsembleEvent(relation.getCoordinator(), relation.getMember(), false,
+				relation.getEnsembleName(), time);
+	}
+}
@@ -0,0 +1,81 @@
+package cz.filipekt.jdcv.ensembles;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import cz.filipekt.jdcv.events.EnsembleEvent;
+
+public class MembershipIntervalsTest {
+
+	private final MembershipRelation first = new MembershipRelation("E1", "c1", "m1");
+
+	private final MembershipRelation second = new MembershipRelation("E1", "c1", "m2");
+
+	private final MembershipRelation third = new MembershipRelation("E1", "c2", "m3");
+
+	private final MembershipRelation fourth = new MembershipRelation("E2", "c3", "m4");
+
+	@Test
+	public void testMembershipIntervals() {
+		List<EnsembleEvent> events = new ArrayList<>();
+		events.add(join(first, 5));
+		events.add(join(first, 1));
+		events.add(join(second, 2));
+		events.add(join(first, 2));
+		events.add(leave(first, 3));
+		events.add(leave(second, 4));
+		events.add(join(third, 6));
+		events.add(leave(third, 6));
+		MembershipIntervals intervals = new MembershipIntervals(events);
+
+		assertEquals(Arrays.asList(first, second, third), new ArrayList<>(intervals.getRelations()));
+		assertEquals(6, intervals.getLastEventTime(), 0);
+		assertEquals(2, intervals.getIntervalCount(first));
+		assertEquals(1, intervals.getStart(first, 0), 0);
+		assertEquals(3, intervals.getEnd(first, 0), 0);
+		assertEquals(5, intervals.getStart(first, 1), 0);
+		assertEquals(Double.POSITIVE_INFINITY, intervals.getEnd(first, 1), 0);
+		assertEquals(0, intervals.getIntervalCount(third));
+		assertEquals(0, intervals.getIntervalCount(fourth));
+
+		assertFalse(intervals.isActive(first, 0.5));
+		assertTrue(intervals.isActive(first, 1));
+		assertTrue(intervals.isActive(first, 2.9));
+		assertFalse(intervals.isActive(first, 3));
+		assertTrue(intervals.isActive(first, 100));
+		assertFalse(intervals.isActive(fourth, 2));
+		assertEquals(Arrays.asList(first, second), intervals.getActiveAt(2.5));
+		assertEquals(Arrays.asList(second), intervals.getActiveAt(3.5));
+		assertEquals(Collections.emptyList(), intervals.getActiveAt(4.5));
+
+		assertEquals(7, intervals.getDuration(first, 0, 10), 1e-9);
+		assertEquals(1, intervals.getDuration(first, 2.5, 5.5), 1e-9);
+		assertEquals(0, intervals.getDuration(fourth, 0, 10), 0);
+	}
+
+	@Test
+	public void testEmptyMembershipIntervals() {
+		MembershipIntervals intervals = new MembershipIntervals(Collections.<EnsembleEvent>emptyList());
+		assertTrue(intervals.getRelations().isEmpty());
+		assertEquals(Double.NEGATIVE_INFINITY, intervals.getLastEventTime(), 0);
+		assertTrue(intervals.getActiveAt(0).isEmpty());
+	}
+
+	private static EnsembleEvent join(MembershipRelation relation, double time) {
+		return new EnsembleEvent(relation.getCoordinator(), relation.getMember(), true,
+				relation.getEnsembleName(), time);
+	}
+
+	private static EnsembleEvent leave(MembershipRelation relation, double time) {
+		return new EnsembleEvent(relation.getCoordinator(), relation.getMember(), false,
+				relation.getEnsembleName(), time);
+	}
+}
@@ -0,0 +1,119 @@
+package cz.filipekt.jdcv.recording;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DeltaFrameTest {
+
+	@Test
+	public void testDeltaFramesReadAsWritten() throws IOException {
+		int width = 100;
+		int height = 75;
+		Random random = new Random(5);
+		List<int[]> frames = new ArrayList<>();
+		int[] previous = null;
+		for (int i = 0; i < 6; i++) {
+			int[] pixels = (previous == null) ? createPixels(width, height, random) : previous.clone();
+			if (i == 3) {
+				frames.add(pixels);
+				previous = pixels;
+				continue;
+			}
+			for (int j = 0; j < 30; j++) {
+				pixels[random.nextInt(pixels.length)] = random.nextInt() & 0xFFFFFF;
+			}
+			frames.add(pixels);
+			previous = pixels;
+		}
+		File file = File.createTempFile("frames", "." + DeltaFrameOutput.extension);
+		file.deleteOnExit();
+		DeltaFrameOutput output = new DeltaFrameOutput(file, 25);
+		assertTrue(output.isDeltaEncoded());
+		for (int i = 0; i < frames.size(); i++) {
+			BufferedImage image = createImage(frames.get(i), width, height, output.getImageType());
+			byte[] data = (i == 0) ? output.encode(image) : output.encode(image, frames.get(i - 1));
+			output.write(i, data, width, height);
+		}
+		output.close();
+		assertEquals(frames.size(), output.getFrameCount());
+
+		try (DeltaFrameReader reader = new DeltaFrameReader(file)) {
+			assertEquals(width, reader.getWidth());
+			assertEquals(height, reader.getHeight());
+			assertEquals(25, reader.getFramesPerSecond(), 0);
+			int[] pixels = new int[width * height];
+			for (int[] frame : frames) {
+				assertTrue(reader.readFrame(pixels));
+				for (int i = 0; i < pixels.length; i++) {
+					assertEquals(frame[i], pixels[i] & 0xFFFFFF);
+				}
+			}
+			assertFalse(reader.readFrame(pixels));
+			assertEquals(frames.size(), reader.getFramesRead());
+		}
+	}
+
+	@Test
+	public void testDeltaFrameStoresOnlyChangedTiles() throws IOException {
+		int width = 64;
+		int height = 64;
+		int[] first = createPixels(width, height, new Random(9));
+		int[] second = first.clone();
+		second[width * 40 + 40] ^= 0xFF;
+		File file = File.createTempFile("frames", "." + DeltaFrameOutput.extension);
+		file.deleteOnExit();
+		DeltaFrameOutput output = new DeltaFrameOutput(file, 10);
+		try {
+			byte[] whole = output.encode(createImage(second, width, height, output.getImageType()));
+			byte[] delta = output.encode(createImage(second, width, height, output.getImageType()), first);
+			byte[] unchanged = output.encode(createImage(first, width, height, output.getImageType()), first);
+			assertEquals(4, ByteBuffer.wrap(whole).getInt());
+			assertEquals(1, ByteBuffer.wrap(delta).getInt());
+			assertEquals(3, ByteBuffer.wrap(delta).getInt(4));
+			assertArrayEquals(new byte[4], unchanged);
+		} finally {
+			output.close();
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testDeltaFrameOutputRejectsDifferentSizes() throws IOException {
+		File file = File.createTempFile("frames", "." + DeltaFrameOutput.extension);
+		file.deleteOnExit();
+		DeltaFrameOutput output = new DeltaFrameOutput(file, 10);
+		try {
+			output.write(0, output.encode(createImage(new int[100], 10, 10, output.getImageType())), 10, 10);
+			output.write(1, output.encode(createImage(new int[200], 20, 10, output.getImageType())), 20, 10);
+		} finally {
+			output.close();
+		}
+	}
+
+	private static int[] createPixels(int width, int height, Random random) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = random.nextInt() & 0xFFFFFF;
+		}
+		return pixels;
+	}
+
+	private static BufferedImage createImage(int[] pixels, int width, int height, int type) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(pixels, 0, data, 0, width * height);
+		return image;
+	}
+}
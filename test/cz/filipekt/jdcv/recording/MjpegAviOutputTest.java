@@ -0,0 +1,99 @@
+package cz.filipekt.jdcv.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class MjpegAviOutputTest {
+
+	@Test
+	public void testMjpegAviStructure() throws IOException {
+		int width = 48;
+		int height = 32;
+		int frameCount = 3;
+		File file = File.createTempFile("video", ".avi");
+		file.deleteOnExit();
+		MjpegAviOutput output = new MjpegAviOutput(file, 12.5, 0.8f);
+		Random random = new Random(11);
+		for (int i = 0; i < frameCount; i++) {
+			BufferedImage image = createImage(createPixels(width, height, random), width, height, output.getImageType());
+			output.write(i, output.encode(image), width, height);
+		}
+		output.close();
+		assertEquals(frameCount, output.getFrameCount());
+
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		ByteBuffer avi = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals("RIFF", getFourCC(avi, 0));
+		assertEquals(bytes.length - 8, avi.getInt(4));
+		assertEquals("AVI ", getFourCC(avi, 8));
+		assertEquals("avih", getFourCC(avi, 24));
+		assertEquals(80000, avi.getInt(32));
+		assertEquals(frameCount, avi.getInt(48));
+		assertEquals(width, avi.getInt(64));
+		assertEquals(height, avi.getInt(68));
+
+		int moviList = 212;
+		assertEquals("LIST", getFourCC(avi, moviList));
+		assertEquals("movi", getFourCC(avi, moviList + 8));
+		int moviPosition = moviList + 8;
+		int indexPosition = moviPosition + avi.getInt(moviList + 4);
+		assertEquals("idx1", getFourCC(avi, indexPosition));
+		assertEquals(16 * frameCount, avi.getInt(indexPosition + 4));
+		assertEquals(bytes.length, indexPosition + 8 + 16 * frameCount);
+
+		int expectedChunk = moviPosition + 4;
+		for (int i = 0; i < frameCount; i++) {
+			int entry = indexPosition + 8 + 16 * i;
+			assertEquals("00dc", getFourCC(avi, entry));
+			int chunk = moviPosition + avi.getInt(entry + 8);
+			int size = avi.getInt(entry + 12);
+			assertEquals(expectedChunk, chunk);
+			assertEquals("00dc", getFourCC(avi, chunk));
+			assertEquals(size, avi.getInt(chunk + 4));
+			BufferedImage frame = ImageIO.read(new ByteArrayInputStream(bytes, chunk + 8, size));
+			assertNotNull(frame);
+			assertEquals(width, frame.getWidth());
+			assertEquals(height, frame.getHeight());
+			expectedChunk = chunk + 8 + size + (size % 2);
+		}
+		assertEquals(indexPosition, expectedChunk);
+	}
+
+	private static int[] createPixels(int width, int height, Random random) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = random.nextInt() & 0xFFFFFF;
+		}
+		return pixels;
+	}
+
+	private static BufferedImage createImage(int[] pixels, int width, int height, int type) {
+		BufferedImage image = new BufferedImage(width, height, type);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(pixels, 0, data, 0, width * height);
+		return image;
+	}
+
+	private static String getFourCC(ByteBuffer buffer, int position) {
+		byte[] code = new byte[4];
+		for (int i = 0; i < code.length; i++) {
+			code[i] = buffer.get(position + i);
+		}
+		return new String(code, StandardCharsets.US_ASCII);
+	}
+}
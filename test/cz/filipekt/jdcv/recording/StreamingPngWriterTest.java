@@ -0,0 +1,98 @@
+package cz.filipekt.jdcv.recording;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class StreamingPngWriterTest {
+
+	@Test
+	public void testStreamingPngWriterOutputDecodes() throws IOException {
+		int width = 150;
+		int height = 70;
+		int[] pixels = createPixels(width, height, new Random(3));
+		File file = File.createTempFile("frame", ".png");
+		file.deleteOnExit();
+		try (StreamingPngWriter writer = new StreamingPngWriter(file, width, height)) {
+			writer.writeRows(pixels, 0, width, 1);
+			writer.writeRows(pixels, width, width, 40);
+			writer.writeRows(pixels, 41 * width, width, height - 41);
+			assertEquals(height, writer.getRowsWritten());
+		}
+
+		BufferedImage image = ImageIO.read(file);
+		assertNotNull(image);
+		assertEquals(width, image.getWidth());
+		assertEquals(height, image.getHeight());
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				assertEquals(pixels[y * width + x] & 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF);
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testStreamingPngWriterRejectsMissingRows() throws IOException {
+		File file = File.createTempFile("frame", ".png");
+		file.deleteOnExit();
+		StreamingPngWriter writer = new StreamingPngWriter(file, 10, 10);
+		writer.writeRows(new int[100], 0, 10, 5);
+		writer.close();
+	}
+
+	@Test
+	public void testStreamingPngWriterTiledBands() throws IOException {
+		int width = 100;
+		int height = 70;
+		int tileSize = 32;
+		int[] pixels = createPixels(width, height, new Random(4));
+		File file = File.createTempFile("tiled", ".png");
+		file.deleteOnExit();
+		int[] band = new int[width * tileSize];
+		try (StreamingPngWriter writer = new StreamingPngWriter(file, width, height)) {
+			for (int y = 0; y < height; y += tileSize) {
+				int h = Math.min(tileSize, height - y);
+				for (int x = 0; x < width; x += tileSize) {
+					int w = Math.min(tileSize, width - x);
+					for (int row = 0; row < h; row++) {
+						System.arraycopy(pixels, (y + row) * width + x, band, row * width + x, w);
+					}
+				}
+				writer.writeRows(band, 0, width, h);
+			}
+		}
+
+		BufferedImage image = ImageIO.read(file);
+		assertNotNull(image);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				assertEquals(pixels[y * width + x] & 0xFFFFFF, image.getRGB(x, y) & 0xFFFFFF);
+			}
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStreamingPngWriterRejectsExtraRows() throws IOException {
+		File file = File.createTempFile("frame", ".png");
+		file.deleteOnExit();
+		try (StreamingPngWriter writer = new StreamingPngWriter(file, 10, 10)) {
+			writer.writeRows(new int[110], 0, 10, 11);
+		}
+	}
+
+	private static int[] createPixels(int width, int height, Random random) {
+		int[] pixels = new int[width * height];
+		for (int i = 0; i < pixels.length; i++) {
+			pixels[i] = random.nextInt() & 0xFFFFFF;
+		}
+		return pixels;
+	}
+}
@@ -0,0 +1,120 @@
+package cz.filipekt.jdcv.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class WorkerPoolTest {
+
+	@Test
+	public void testMapKeepsOrder() throws IOException {
+		List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			items.add(i);
+		}
+		List<String> results = WorkerPool.map(items, new WorkerPool.Job<Integer,String>() {
+
+			@Override
+			public String process(Integer item) {
+				return "item" + item;
+			}
+		}, null);
+		assertEquals(items.size(), results.size());
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals("item" + i, results.get(i));
+		}
+		assertTrue(WorkerPool.map(Collections.<Integer>emptyList(), new WorkerPool.Job<Integer,String>() {
+
+			@Override
+			public String process(Integer item) {
+				return "item" + item;
+			}
+		}, null).isEmpty());
+	}
+
+	@Test
+	public void testProgressNeverDecreases() throws IOException {
+		List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			items.add(i);
+		}
+		final List<Double> progress = Collections.synchronizedList(new ArrayList<Double>());
+		for (int run = 0; run < 20; run++) {
+			progress.clear();
+			WorkerPool.map(items, new WorkerPool.Job<Integer,Integer>() {
+
+				@Override
+				public Integer process(Integer item) {
+					return item * 2;
+				}
+			}, new WorkerPool.ProgressListener() {
+
+				@Override
+				public void progressChanged(double value) {
+					progress.add(value);
+				}
+			});
+			assertTrue(progress.size() > 0);
+			for (int i = 1; i < progress.size(); i++) {
+				assertTrue(progress.get(i - 1) < progress.get(i));
+			}
+			assertEquals(1, progress.get(progress.size() - 1), 0);
+		}
+	}
+
+	@Test
+	public void testNestedMap() throws IOException {
+		final List<Integer> inner = new ArrayList<>();
+		for (int i = 0; i < 50; i++) {
+			inner.add(i);
+		}
+		List<Integer> outer = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			outer.add(i);
+		}
+		List<Integer> sums = WorkerPool.map(outer, new WorkerPool.Job<Integer,Integer>() {
+
+			@Override
+			public Integer process(Integer item) throws IOException {
+				int sum = 0;
+				for (Integer value : WorkerPool.map(inner, new WorkerPool.Job<Integer,Integer>() {
+
+					@Override
+					public Integer process(Integer value) {
+						return value;
+					}
+				}, null)) {
+					sum += value;
+				}
+				return sum + item;
+			}
+		}, null);
+		for (int i = 0; i < outer.size(); i++) {
+			assertEquals(1225 + i, (int) sums.get(i));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMapRethrowsFailure() throws IOException {
+		List<Integer> items = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			items.add(i);
+		}
+		WorkerPool.map(items, new WorkerPool.Job<Integer,Integer>() {
+
+			@Override
+			public Integer process(Integer item) throws IOException {
+				if (item == 77) {
+					throw new IOException("Item " + item + " could not be processed.");
+				}
+				return item;
+			}
+		}, null);
+	}
+}
@@ -0,0 +1,156 @@
+package cz.filipekt.jdcv.xml;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.xml.sax.SAXException;
+
+import cz.filipekt.jdcv.events.EnsembleEvent;
+
+public class EnsembleLogParserTest {
+
+	private static final String ensembleType = "cz.cuni.mff.d3s.deeco.runtimelog.EnsembleLogRecord";
+
+	@Test
+	public void testParseEvents() throws IOException, SAXException {
+		String log = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<events>\n"
+				+ event("1.5", "c1", "m1", "true", "Exchange")
+				+ "<event time=\"2\" eventType=\"some.OtherRecord\"><coordinatorID>x</coordinatorID></event>\n"
+				+ "<eventual time=\"2\"/>\n"
+				+ event("3", "c1", "m1", "false", "Exchange")
+				+ event("4.25", "c&amp;2", "m1", "true", "Exchange")
+				+ "<event eventType='" + ensembleType + "' time='5'/>\n"
+				+ "</events>";
+		List<EnsembleEvent> events = parse(log, new EnsembleLogParser(null, null), StandardCharsets.UTF_8);
+
+		assertEquals(4, events.size());
+		EnsembleEvent first = events.get(0);
+		assertEquals(1.5, first.getTime(), 0);
+		assertEquals("c1", first.getCoordinator());
+		assertEquals("m1", first.getMember());
+		assertEquals("Exchange", first.getEnsemble());
+		assertTrue(first.getMembership());
+		assertFalse(events.get(1).getMembership());
+		assertEquals(3, events.get(1).getTime(), 0);
+		assertEquals("c&2", events.get(2).getCoordinator());
+		assertEquals(5, events.get(3).getTime(), 0);
+		assertSame(first.getMember(), events.get(1).getMember());
+		assertSame(first.getEnsemble(), events.get(2).getEnsemble());
+	}
+
+	@Test
+	public void testParseSelectedInterval() throws IOException, SAXException {
+		StringBuilder log = new StringBuilder("<events>\n");
+		for (int i = 0; i < 10; i++) {
+			log.append(event(Integer.toString(i), "c", "m" + i, "true", "Exchange"));
+		}
+		log.append("</events>");
+		List<EnsembleEvent> events = parse(log.toString(), new EnsembleLogParser(3.0, 6.0), StandardCharsets.UTF_8);
+
+		assertEquals(4, events.size());
+		assertEquals(3, events.get(0).getTime(), 0);
+		assertEquals("m6", events.get(3).getMember());
+	}
+
+	@Test
+	public void testParseEventsSpanningChunks() throws IOException, SAXException {
+		StringBuilder log = new StringBuilder("<events>\n");
+		int count = 5000;
+		for (int i = 0; i < count; i++) {
+			log.append(event(i + ".125", "coordinator" + (i % 7), "member\u00e9" + (i % 13), "true", "Exchange"));
+		}
+		log.append("</events>");
+		List<EnsembleEvent> events = parse(log.toString(), new EnsembleLogParser(null, null), StandardCharsets.UTF_8);
+
+		assertEquals(count, events.size());
+		for (int i = 0; i < count; i++) {
+			EnsembleEvent event = events.get(i);
+			assertEquals(i + 0.125, event.getTime(), 0);
+			assertEquals("coordinator" + (i % 7), event.getCoordinator());
+			assertEquals("member\u00e9" + (i % 13), event.getMember());
+		}
+	}
+
+	@Test(expected = SAXException.class)
+	public void testParseRejectsInvalidMembership() throws IOException, SAXException {
+		String log = "<events>" + event("1", "c", "m", "yes", "Exchange") + "</events>";
+		parse(log, new EnsembleLogParser(null, null), StandardCharsets.UTF_8);
+	}
+
+	@Test(expected = SAXException.class)
+	public void testParseRejectsInvalidTime() throws IOException, SAXException {
+		String log = "<events>" + event("soon", "c", "m", "true", "Exchange") + "</events>";
+		parse(log, new EnsembleLogParser(null, null), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testParseMatchesEnsembleHandler() throws Exception {
+		Random random = new Random(17);
+		StringBuilder log = new StringBuilder("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n<events>\n");
+		for (int i = 0; i < 300; i++) {
+			String time = Double.toString(i / 20.0);
+			log.append(event(time, "c" + random.nextInt(5), "m" + random.nextInt(20),
+					Boolean.toString(random.nextBoolean()), "E" + random.nextInt(3)));
+		}
+		log.append("</events>");
+		Charset charset = StandardCharsets.ISO_8859_1;
+		EnsembleHandler handler = new EnsembleHandler(null, null);
+		try (InputStream stream = new ByteArrayInputStream(log.toString().getBytes(charset))) {
+			XMLextractor.run(stream, charset.name(), handler);
+		}
+		List<EnsembleEvent> all = handler.getEvents();
+		for (Double[] window : new Double[][]{{null, null}, {2.5, 7.0}, {null, 4.0}, {11.0, null}}) {
+			List<EnsembleEvent> expected = new ArrayList<>();
+			for (EnsembleEvent event : all) {
+				if (((window[0] == null) || (event.getTime() >= window[0]))
+						&& ((window[1] == null) || (event.getTime() <= window[1]))) {
+					expected.add(event);
+				}
+			}
+			List<EnsembleEvent> parsed = parse(log.toString(), new EnsembleLogParser(window[0], window[1]), charset);
+			assertEquals(expected.size(), parsed.size());
+			for (int i = 0; i < expected.size(); i++) {
+				assertEquals(expected.get(i).getTime(), parsed.get(i).getTime(), 0);
+				assertEquals(expected.get(i).getCoordinator(), parsed.get(i).getCoordinator());
+				assertEquals(expected.get(i).getMember(), parsed.get(i).getMember());
+				assertEquals(expected.get(i).getEnsemble(), parsed.get(i).getEnsemble());
+				assertEquals(expected.get(i).getMembership(), parsed.get(i).getMembership());
+			}
+		}
+	}
+
+	@Test
+	public void testSupportedCharsets() {
+		assertTrue(EnsembleLogParser.supports(StandardCharsets.UTF_8));
+		assertTrue(EnsembleLogParser.supports(StandardCharsets.ISO_8859_1));
+		assertFalse(EnsembleLogParser.supports(StandardCharsets.UTF_16));
+	}
+
+	private static String event(String time, String coordinator, String member, String membership, String ensemble) {
+		return "<event time=\"" + time + "\" id=\"EnsembleTask\" eventType=\"" + ensembleType + "\" >\n"
+				+ "\t<coordinatorID>" + coordinator + "</coordinatorID>\n"
+				+ "\t<membership>" + membership + "</membership>\n"
+				+ "\t<ensembleName>" + ensemble + "</ensembleName>\n"
+				+ "\t<memberID>" + member + "</memberID>\n"
+				+ "</event>\n";
+	}
+
+	private static List<EnsembleEvent> parse(String log, EnsembleLogParser parser, Charset charset)
+			throws IOException, SAXException {
+		try (InputStream stream = new ByteArrayInputStream(log.getBytes(charset))) {
+			return parser.parse(stream, charset);
+		}
+	}
+}